@@ -103,6 +103,7 @@ public interface CloudClientListener {
     /**
      * Called by the CloudClient when a message has been transfered from the publishing queue
      * to the underlying {@link DataTransportService} for publishing on the wire.
+     * The message id is negative for the QoS 0 messages which bypassed the store of the DataService.
      */
     void onMessagePublished(int messageId, String appTopic);
 }
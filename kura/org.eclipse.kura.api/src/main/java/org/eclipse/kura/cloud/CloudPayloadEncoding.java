@@ -18,7 +18,14 @@ package org.eclipse.kura.cloud;
  */
 public enum CloudPayloadEncoding {
     KURA_PROTOBUF("kura-protobuf"),
-    SIMPLE_JSON("simple-json");
+    SIMPLE_JSON("simple-json"),
+    /**
+     * The Kura protobuf encoding where the metrics are sent by their index in a dictionary of metric names, which is
+     * published by the device when it changes.
+     *
+     * @since 2.0
+     */
+    KURA_PROTOBUF_DICTIONARY("kura-protobuf-dictionary");
 
     private final String encodingText;
 
@@ -148,7 +148,8 @@ public interface DataService {
      * @param qos
      * @param retain
      * @param priority
-     * @return
+     * @return the ID of the message, negative if the message took the volatile fast path
+     *         and is not held in the store
      * @throws KuraStoreException
      */
     public int publish(String topic, byte[] payload, int qos, boolean retain, int priority) throws KuraStoreException;
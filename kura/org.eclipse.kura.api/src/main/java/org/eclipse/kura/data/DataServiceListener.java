@@ -69,6 +69,9 @@ public interface DataServiceListener {
      * message has been actually transmitted over the wire or that it eventually
      * will. The only guarantee is that message byte have been passed to the
      * underlying OS.
+     * <br>
+     * QoS 0 messages which bypassed the store through the volatile fast path of the DataService
+     * are notified with a negative message ID, the same ID returned to the publisher.
      *
      * @param messageId
      */
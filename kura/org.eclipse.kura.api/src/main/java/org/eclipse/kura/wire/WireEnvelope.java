@@ -51,10 +51,12 @@ public class WireEnvelope extends BasicEnvelope {
      * @param emitterPid
      *            the wire emitter PID
      * @param wireRecords
-     *            the {@link WireRecord}s
+     *            the {@link WireRecord}s, if this is a {@link WireRecordBatch} it is made available through
+     *            {@link #getRecordBatch()}
      */
     public WireEnvelope(final String emitterPid, final List<WireRecord> wireRecords) {
-        super(Collections.unmodifiableList(wireRecords), emitterPid, SCOPE);
+        super(wireRecords instanceof WireRecordBatch ? wireRecords : Collections.unmodifiableList(wireRecords),
+                emitterPid, SCOPE);
     }
 
     /**
@@ -75,4 +77,16 @@ public class WireEnvelope extends BasicEnvelope {
     public List<WireRecord> getRecords() {
         return (List<WireRecord>) getValue();
     }
+
+    /**
+     * Gets the {@link WireRecordBatch} carried by this envelope, if the emitter provided the records as a batch.
+     * The wire components supporting batches can use it to process the records without boxing each value.
+     *
+     * @return the {@link WireRecordBatch}, or null if the records have not been provided as a batch
+     * @since 2.0
+     */
+    public WireRecordBatch getRecordBatch() {
+        final Object value = getValue();
+        return value instanceof WireRecordBatch ? (WireRecordBatch) value : null;
+    }
 }
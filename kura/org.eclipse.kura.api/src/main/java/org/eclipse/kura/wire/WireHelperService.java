@@ -13,6 +13,10 @@
  *******************************************************************************/
 package org.eclipse.kura.wire;
 
+import java.util.List;
+
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireStatistics;
 import org.osgi.annotation.versioning.ProviderType;
 import org.osgi.framework.ServiceReference;
 
@@ -104,4 +108,21 @@ public interface WireHelperService {
      */
     public WireSupport newWireSupport(WireComponent wireComponent, ServiceReference<WireComponent> wireComponentRef);
 
+    /**
+     * Returns the runtime statistics collected by the {@link WireSupport} instances of the Wire Components
+     *
+     * @return the list of {@link WireComponentStatistics}, sorted by Wire Component PID
+     * @since 2.0
+     */
+    public List<WireComponentStatistics> getComponentStatistics();
+
+    /**
+     * Returns the runtime statistics of the Wires, collected by the {@link WireSupport} instances of the receiver
+     * Wire Components
+     *
+     * @return the list of {@link WireStatistics}, sorted by emitter and receiver PID
+     * @since 2.0
+     */
+    public List<WireStatistics> getWireStatistics();
+
 }
@@ -0,0 +1,810 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.NotThreadSafe;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.eclipse.kura.type.BooleanValue;
+import org.eclipse.kura.type.ByteArrayValue;
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.DoubleValue;
+import org.eclipse.kura.type.FloatValue;
+import org.eclipse.kura.type.IntegerValue;
+import org.eclipse.kura.type.LongValue;
+import org.eclipse.kura.type.StringValue;
+import org.eclipse.kura.type.TypedValue;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Class WireRecordBatch represents a sequence of records sharing the same {@link Schema}, stored by column.
+ * <p>
+ * The values of each column are kept in a primitive array, so that the wire components supporting this type can
+ * produce and process whole batches without creating a {@link TypedValue} for each value. A row may lack the value
+ * of some columns, see {@link #isPresent(int, int)}.
+ * <p>
+ * For backward compatibility the batch is also a {@link List} of {@link WireRecord}s: each element is a
+ * read only view of a row, whose properties are boxed on access. A batch can be emitted as is through
+ * {@link WireSupport#emit(List)}, and is returned by {@link WireEnvelope#getRecordBatch()} on the
+ * receiving side.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 2.0
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public final class WireRecordBatch extends AbstractList<WireRecord> implements RandomAccess {
+
+    private final Schema schema;
+    private final int rowCount;
+    private final Object[] columns;
+    private final BitSet[] presence;
+
+    private WireRecordBatch(final Schema schema, final int rowCount, final Object[] columns,
+            final BitSet[] presence) {
+        this.schema = schema;
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.presence = presence;
+    }
+
+    /**
+     * Returns the {@link Schema} shared by all the rows of this batch
+     *
+     * @return the schema
+     */
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns the number of rows in this batch
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Checks whether a row contains a value for the provided column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return true if the value is present
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public boolean isPresent(final int row, final int column) {
+        checkRow(row);
+        return this.presence[column].get(row);
+    }
+
+    /**
+     * Returns the value of a {@link DataType#BOOLEAN} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or false if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public boolean getBoolean(final int row, final int column) {
+        return ((boolean[]) column(row, column, DataType.BOOLEAN))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#INTEGER} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or 0 if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public int getInt(final int row, final int column) {
+        return ((int[]) column(row, column, DataType.INTEGER))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#LONG} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or 0 if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public long getLong(final int row, final int column) {
+        return ((long[]) column(row, column, DataType.LONG))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#FLOAT} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or 0 if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public float getFloat(final int row, final int column) {
+        return ((float[]) column(row, column, DataType.FLOAT))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#DOUBLE} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or 0 if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public double getDouble(final int row, final int column) {
+        return ((double[]) column(row, column, DataType.DOUBLE))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#STRING} column
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or null if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public String getString(final int row, final int column) {
+        return ((String[]) column(row, column, DataType.STRING))[row];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#BYTE_ARRAY} column. The returned array must not be modified.
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or null if not present
+     * @throws IllegalArgumentException
+     *             if the column has a different type
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public byte[] getByteArray(final int row, final int column) {
+        return ((byte[][]) column(row, column, DataType.BYTE_ARRAY))[row];
+    }
+
+    /**
+     * Returns the value of a column as a {@link TypedValue}
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the column index
+     * @return the value, or null if not present
+     * @throws IndexOutOfBoundsException
+     *             if the row or the column index is out of range
+     */
+    public TypedValue<?> getValue(final int row, final int column) {
+        if (!isPresent(row, column)) {
+            return null;
+        }
+        final Object values = this.columns[column];
+        switch (this.schema.getType(column)) {
+        case BOOLEAN:
+            return new BooleanValue(((boolean[]) values)[row]);
+        case INTEGER:
+            return new IntegerValue(((int[]) values)[row]);
+        case LONG:
+            return new LongValue(((long[]) values)[row]);
+        case FLOAT:
+            return new FloatValue(((float[]) values)[row]);
+        case DOUBLE:
+            return new DoubleValue(((double[]) values)[row]);
+        case STRING:
+            return new StringValue(((String[]) values)[row]);
+        case BYTE_ARRAY:
+            return new ByteArrayValue(((byte[][]) values)[row]);
+        default:
+            throw new IllegalStateException("Unsupported data type: " + this.schema.getType(column));
+        }
+    }
+
+    private Object column(final int row, final int column, final DataType type) {
+        checkRow(row);
+        if (this.schema.getType(column) != type) {
+            throw new IllegalArgumentException(
+                    "Column " + this.schema.getName(column) + " is of type " + this.schema.getType(column));
+        }
+        return this.columns[column];
+    }
+
+    private void checkRow(final int row) {
+        if (row < 0 || row >= this.rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + this.rowCount);
+        }
+    }
+
+    /**
+     * Returns a {@link WireRecord} view of a row. The properties of the record contain the present values only.
+     *
+     * @param row
+     *            the row index
+     * @return the record
+     * @throws IndexOutOfBoundsException
+     *             if the row index is out of range
+     */
+    @Override
+    public WireRecord get(final int row) {
+        checkRow(row);
+        return new WireRecord(new RowView(row));
+    }
+
+    @Override
+    public int size() {
+        return this.rowCount;
+    }
+
+    /**
+     * Converts a list of {@link WireRecord}s to a batch. The schema has a column for each property name found in
+     * the records, in order of appearance, and the properties missing from a record are not present in its row. If
+     * the list is already a batch it is returned as is.
+     *
+     * @param wireRecords
+     *            the records to convert
+     * @return the batch, or null if a property has different types in different records
+     * @throws NullPointerException
+     *             if the argument is null
+     */
+    public static WireRecordBatch from(final List<WireRecord> wireRecords) {
+        requireNonNull(wireRecords, "Wire Records cannot be null");
+        if (wireRecords instanceof WireRecordBatch) {
+            return (WireRecordBatch) wireRecords;
+        }
+
+        final Map<String, DataType> columnTypes = new LinkedHashMap<>();
+        for (final WireRecord wireRecord : wireRecords) {
+            for (final Map.Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+                final DataType type = entry.getValue().getType();
+                final DataType previous = columnTypes.putIfAbsent(entry.getKey(), type);
+                if (previous != null && previous != type) {
+                    return null;
+                }
+            }
+        }
+
+        final String[] names = columnTypes.keySet().toArray(new String[0]);
+        final DataType[] types = columnTypes.values().toArray(new DataType[0]);
+        final Schema schema = new Schema(names, types);
+        final Builder builder = new Builder(schema, wireRecords.size());
+        for (final WireRecord wireRecord : wireRecords) {
+            builder.addRow();
+            for (final Map.Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+                builder.setValue(schema.indexOf(entry.getKey()), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private final class RowView extends AbstractMap<String, TypedValue<?>> {
+
+        private final int row;
+
+        RowView(final int row) {
+            this.row = row;
+        }
+
+        @Override
+        public TypedValue<?> get(final Object key) {
+            final int column = key instanceof String ? WireRecordBatch.this.schema.indexOf((String) key) : -1;
+            return column >= 0 ? getValue(this.row, column) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            final int column = key instanceof String ? WireRecordBatch.this.schema.indexOf((String) key) : -1;
+            return column >= 0 && isPresent(this.row, column);
+        }
+
+        @Override
+        public Set<Map.Entry<String, TypedValue<?>>> entrySet() {
+            return new AbstractSet<Map.Entry<String, TypedValue<?>>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, TypedValue<?>>> iterator() {
+                    return new Iterator<Map.Entry<String, TypedValue<?>>>() {
+
+                        private int next = nextPresent(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.next >= 0;
+                        }
+
+                        @Override
+                        public Map.Entry<String, TypedValue<?>> next() {
+                            if (this.next < 0) {
+                                throw new NoSuchElementException();
+                            }
+                            final int column = this.next;
+                            this.next = nextPresent(column + 1);
+                            return new SimpleImmutableEntry<>(WireRecordBatch.this.schema.getName(column),
+                                    getValue(RowView.this.row, column));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (final BitSet columnPresence : WireRecordBatch.this.presence) {
+                        if (columnPresence.get(RowView.this.row)) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+
+        private int nextPresent(final int from) {
+            for (int column = from; column < WireRecordBatch.this.columns.length; column++) {
+                if (WireRecordBatch.this.presence[column].get(this.row)) {
+                    return column;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The names and the {@link DataType}s of the columns of a {@link WireRecordBatch}. A schema is immutable and can
+     * be reused by all the batches produced by a wire component.
+     *
+     * @since 2.0
+     */
+    @Immutable
+    @ThreadSafe
+    @ProviderType
+    public static final class Schema {
+
+        private final String[] names;
+        private final DataType[] types;
+        private final Map<String, Integer> indexes;
+
+        /**
+         * Instantiates a new {@link Schema}.
+         *
+         * @param names
+         *            the column names
+         * @param types
+         *            the column types, in the same order as the names
+         * @throws NullPointerException
+         *             if any of the arguments or of their elements is null
+         * @throws IllegalArgumentException
+         *             if the arguments have different lengths or the names are not unique
+         */
+        public Schema(final String[] names, final DataType[] types) {
+            requireNonNull(names, "Column names cannot be null");
+            requireNonNull(types, "Column types cannot be null");
+            if (names.length != types.length) {
+                throw new IllegalArgumentException("Column names and types must have the same length");
+            }
+
+            this.names = names.clone();
+            this.types = types.clone();
+            final Map<String, Integer> columnIndexes = new HashMap<>();
+            for (int i = 0; i < this.names.length; i++) {
+                requireNonNull(this.names[i], "Column name cannot be null");
+                requireNonNull(this.types[i], "Column type cannot be null");
+                if (columnIndexes.put(this.names[i], i) != null) {
+                    throw new IllegalArgumentException("Duplicate column name: " + this.names[i]);
+                }
+            }
+            this.indexes = Collections.unmodifiableMap(columnIndexes);
+        }
+
+        /**
+         * Returns the number of columns
+         *
+         * @return the number of columns
+         */
+        public int size() {
+            return this.names.length;
+        }
+
+        /**
+         * Returns the name of a column
+         *
+         * @param column
+         *            the column index
+         * @return the column name
+         */
+        public String getName(final int column) {
+            return this.names[column];
+        }
+
+        /**
+         * Returns the {@link DataType} of a column
+         *
+         * @param column
+         *            the column index
+         * @return the column type
+         */
+        public DataType getType(final int column) {
+            return this.types[column];
+        }
+
+        /**
+         * Returns the index of a column
+         *
+         * @param name
+         *            the column name
+         * @return the column index, or -1 if the schema has no column with the provided name
+         */
+        public int indexOf(final String name) {
+            final Integer index = this.indexes.get(name);
+            return index != null ? index : -1;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Schema)) {
+                return false;
+            }
+            final Schema other = (Schema) obj;
+            return Arrays.equals(this.names, other.names) && Arrays.equals(this.types, other.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(this.names) + Arrays.hashCode(this.types);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Schema [");
+            for (int i = 0; i < this.names.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(this.names[i]).append(':').append(this.types[i]);
+            }
+            return sb.append(']').toString();
+        }
+    }
+
+    /**
+     * Builds a {@link WireRecordBatch} one row at a time. {@link #addRow()} starts a new row, and the setters set the
+     * values of the current row; the values that are not set are not present.
+     *
+     * @since 2.0
+     */
+    @NotThreadSafe
+    @ProviderType
+    public static final class Builder {
+
+        private final Schema schema;
+        private final Object[] columns;
+        private final BitSet[] presence;
+        private int capacity;
+        private int row = -1;
+
+        /**
+         * Instantiates a new {@link Builder}.
+         *
+         * @param schema
+         *            the schema of the batch
+         * @param expectedRows
+         *            the initial capacity, in rows
+         * @throws NullPointerException
+         *             if the schema is null
+         */
+        public Builder(final Schema schema, final int expectedRows) {
+            requireNonNull(schema, "Schema cannot be null");
+            this.schema = schema;
+            this.capacity = Math.max(expectedRows, 1);
+            this.columns = new Object[schema.size()];
+            this.presence = new BitSet[schema.size()];
+            for (int column = 0; column < this.columns.length; column++) {
+                this.columns[column] = newColumn(schema.getType(column), this.capacity);
+                this.presence[column] = new BitSet(this.capacity);
+            }
+        }
+
+        private static Object newColumn(final DataType type, final int length) {
+            switch (type) {
+            case BOOLEAN:
+                return new boolean[length];
+            case INTEGER:
+                return new int[length];
+            case LONG:
+                return new long[length];
+            case FLOAT:
+                return new float[length];
+            case DOUBLE:
+                return new double[length];
+            case STRING:
+                return new String[length];
+            case BYTE_ARRAY:
+                return new byte[length][];
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + type);
+            }
+        }
+
+        private static Object copyColumn(final Object values, final int length) {
+            if (values instanceof boolean[]) {
+                return Arrays.copyOf((boolean[]) values, length);
+            } else if (values instanceof int[]) {
+                return Arrays.copyOf((int[]) values, length);
+            } else if (values instanceof long[]) {
+                return Arrays.copyOf((long[]) values, length);
+            } else if (values instanceof float[]) {
+                return Arrays.copyOf((float[]) values, length);
+            } else if (values instanceof double[]) {
+                return Arrays.copyOf((double[]) values, length);
+            } else {
+                return Arrays.copyOf((Object[]) values, length);
+            }
+        }
+
+        /**
+         * Starts a new row
+         *
+         * @return this builder
+         */
+        public Builder addRow() {
+            this.row++;
+            if (this.row == this.capacity) {
+                this.capacity *= 2;
+                for (int column = 0; column < this.columns.length; column++) {
+                    this.columns[column] = copyColumn(this.columns[column], this.capacity);
+                }
+            }
+            return this;
+        }
+
+        private Object column(final int column, final DataType type) {
+            if (this.row < 0) {
+                throw new IllegalStateException("addRow() must be called before setting the values");
+            }
+            if (this.schema.getType(column) != type) {
+                throw new IllegalArgumentException(
+                        "Column " + this.schema.getName(column) + " is of type " + this.schema.getType(column));
+            }
+            this.presence[column].set(this.row);
+            return this.columns[column];
+        }
+
+        /**
+         * Sets the value of a {@link DataType#BOOLEAN} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setBoolean(final int column, final boolean value) {
+            ((boolean[]) column(column, DataType.BOOLEAN))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#INTEGER} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setInt(final int column, final int value) {
+            ((int[]) column(column, DataType.INTEGER))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#LONG} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setLong(final int column, final long value) {
+            ((long[]) column(column, DataType.LONG))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#FLOAT} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setFloat(final int column, final float value) {
+            ((float[]) column(column, DataType.FLOAT))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#DOUBLE} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setDouble(final int column, final double value) {
+            ((double[]) column(column, DataType.DOUBLE))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#STRING} column in the current row
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws NullPointerException
+         *             if the value is null
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setString(final int column, final String value) {
+            requireNonNull(value, "Value cannot be null");
+            ((String[]) column(column, DataType.STRING))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a {@link DataType#BYTE_ARRAY} column in the current row. The array is not copied.
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws NullPointerException
+         *             if the value is null
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setByteArray(final int column, final byte[] value) {
+            requireNonNull(value, "Value cannot be null");
+            ((byte[][]) column(column, DataType.BYTE_ARRAY))[this.row] = value;
+            return this;
+        }
+
+        /**
+         * Sets the value of a column in the current row from a {@link TypedValue}
+         *
+         * @param column
+         *            the column index
+         * @param value
+         *            the value, if null the value is not present
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column has a different type
+         */
+        public Builder setValue(final int column, final TypedValue<?> value) {
+            if (value == null) {
+                if (this.row < 0) {
+                    throw new IllegalStateException("addRow() must be called before setting the values");
+                }
+                this.presence[column].clear(this.row);
+                return this;
+            }
+            switch (value.getType()) {
+            case BOOLEAN:
+                return setBoolean(column, (Boolean) value.getValue());
+            case INTEGER:
+                return setInt(column, (Integer) value.getValue());
+            case LONG:
+                return setLong(column, (Long) value.getValue());
+            case FLOAT:
+                return setFloat(column, (Float) value.getValue());
+            case DOUBLE:
+                return setDouble(column, (Double) value.getValue());
+            case STRING:
+                return setString(column, (String) value.getValue());
+            case BYTE_ARRAY:
+                return setByteArray(column, (byte[]) value.getValue());
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + value.getType());
+            }
+        }
+
+        /**
+         * Builds the batch. The builder must not be used afterwards.
+         *
+         * @return the batch
+         */
+        public WireRecordBatch build() {
+            final int rowCount = this.row + 1;
+            final Object[] trimmed = new Object[this.columns.length];
+            for (int column = 0; column < this.columns.length; column++) {
+                trimmed[column] = rowCount == this.capacity ? this.columns[column]
+                        : copyColumn(this.columns[column], rowCount);
+            }
+            return new WireRecordBatch(this.schema, rowCount, trimmed, this.presence);
+        }
+    }
+}
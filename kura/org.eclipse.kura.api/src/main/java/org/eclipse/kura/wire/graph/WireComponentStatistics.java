@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire.graph;
+
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A snapshot of the runtime statistics of a Wire Component, collected since the Wire Component has been created.
+ * The receive time is the time spent in the {@code onWireReceive} method of the Wire Component, or in the consumer
+ * of one of its receiver ports.
+ *
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @since 2.0
+ */
+@ProviderType
+public interface WireComponentStatistics {
+
+    /**
+     * Returns the kura.service.pid of the Wire Component
+     *
+     * @return the Wire Component PID
+     */
+    public String getPid();
+
+    /**
+     * Returns the number of envelopes delivered to the Wire Component
+     *
+     * @return the number of invocations
+     */
+    public long getInvocations();
+
+    /**
+     * Returns the time spent processing all the delivered envelopes
+     *
+     * @param unit
+     *            the time unit of the result
+     * @return the cumulative receive time
+     */
+    public long getTotalReceiveTime(TimeUnit unit);
+
+    /**
+     * Returns the longest time spent processing a single envelope
+     *
+     * @param unit
+     *            the time unit of the result
+     * @return the maximum receive time
+     */
+    public long getMaxReceiveTime(TimeUnit unit);
+
+    /**
+     * Returns an estimate of a percentile of the time spent processing a single envelope. The estimate is
+     * accurate within a factor of two.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @param unit
+     *            the time unit of the result
+     * @return the receive time percentile
+     * @throws IllegalArgumentException
+     *             if the percentile is out of range
+     */
+    public long getReceiveTimePercentile(double percentile, TimeUnit unit);
+
+    /**
+     * Returns the number of Wire Records received by the Wire Component
+     *
+     * @return the records received
+     */
+    public long getRecordsIn();
+
+    /**
+     * Returns the number of Wire Records emitted by the Wire Component
+     *
+     * @return the records emitted
+     */
+    public long getRecordsOut();
+
+    /**
+     * Returns the number of envelopes addressed to the Wire Component that have been dropped because its mailbox
+     * was full, when the Wire Graph runs asynchronously
+     *
+     * @return the envelopes dropped
+     */
+    public long getEnvelopesDropped();
+}
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kura.wire.graph;
 
+import java.util.List;
+
 import org.eclipse.kura.KuraException;
 import org.osgi.annotation.versioning.ProviderType;
 
@@ -55,4 +57,22 @@ public interface WireGraphService {
      */
     public WireGraphConfiguration get() throws KuraException;
 
+    /**
+     * This method returns the runtime statistics of the Wire Components of the
+     * current Wire Graph.
+     *
+     * @return the list of {@link WireComponentStatistics}, sorted by Wire Component PID
+     * @since 2.0
+     */
+    public List<WireComponentStatistics> getComponentStatistics();
+
+    /**
+     * This method returns the runtime statistics of the Wires of the current
+     * Wire Graph.
+     *
+     * @return the list of {@link WireStatistics}, sorted by emitter and receiver PID
+     * @since 2.0
+     */
+    public List<WireStatistics> getWireStatistics();
+
 }
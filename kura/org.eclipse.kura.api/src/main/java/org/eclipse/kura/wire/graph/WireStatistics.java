@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire.graph;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A snapshot of the runtime statistics of a Wire, identified by the emitter and receiver Wire Components and ports
+ * it connects.
+ *
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @since 2.0
+ */
+@ProviderType
+public interface WireStatistics {
+
+    /**
+     * Returns the kura.service.pid of the emitter Wire Component
+     *
+     * @return the emitter PID
+     */
+    public String getEmitterPid();
+
+    /**
+     * Returns the index of the emitter port
+     *
+     * @return the emitter port
+     */
+    public int getEmitterPort();
+
+    /**
+     * Returns the kura.service.pid of the receiver Wire Component
+     *
+     * @return the receiver PID
+     */
+    public String getReceiverPid();
+
+    /**
+     * Returns the index of the receiver port
+     *
+     * @return the receiver port
+     */
+    public int getReceiverPort();
+
+    /**
+     * Returns the number of envelopes that have been transmitted over the Wire
+     *
+     * @return the envelopes transmitted
+     */
+    public long getEnvelopes();
+
+    /**
+     * Returns the number of Wire Records that have been transmitted over the Wire
+     *
+     * @return the records transmitted
+     */
+    public long getRecords();
+
+    /**
+     * Returns the number of envelopes transmitted over the Wire that have been dropped because the mailbox of the
+     * receiver was full, when the Wire Graph runs asynchronously
+     *
+     * @return the envelopes dropped
+     */
+    public long getEnvelopesDropped();
+}
@@ -121,7 +121,7 @@ public class CloudClientImpl implements CloudClient, CloudClientListener {
     @Override
     public int publish(String deviceId, String appTopic, KuraPayload payload, int qos, boolean retain, int priority)
             throws KuraException {
-        byte[] appPayload = this.cloudServiceImpl.encodePayload(payload);
+        byte[] appPayload = this.cloudServiceImpl.encodePayload(payload, this.applicationId);
         return publish(deviceId, appTopic, appPayload, qos, retain, priority);
     }
 
@@ -149,7 +149,7 @@ public class CloudClientImpl implements CloudClient, CloudClientListener {
     @Override
     public int controlPublish(String deviceId, String appTopic, KuraPayload payload, int qos, boolean retain,
             int priority) throws KuraException {
-        byte[] appPayload = this.cloudServiceImpl.encodePayload(payload);
+        byte[] appPayload = this.cloudServiceImpl.encodePayload(payload, this.applicationId);
         return controlPublish(deviceId, appTopic, appPayload, qos, retain, priority);
     }
 
@@ -18,17 +18,37 @@ import org.eclipse.kura.core.util.GZipUtil;
 public class CloudPayloadGZipEncoder implements CloudPayloadEncoder {
 
     private final CloudPayloadEncoder decorated;
+    private final CompressionStats stats;
 
     public CloudPayloadGZipEncoder(CloudPayloadEncoder decorated) {
+        this(decorated, null);
+    }
+
+    /**
+     * @param stats
+     *            the statistics of the publisher, which decide whether the payload is worth compressing,
+     *            or null to always try to compress the payload
+     */
+    public CloudPayloadGZipEncoder(CloudPayloadEncoder decorated, CompressionStats stats) {
         this.decorated = decorated;
+        this.stats = stats;
     }
 
     @Override
     public byte[] getBytes() throws IOException {
         byte[] source = this.decorated.getBytes();
+        if (this.stats != null && !this.stats.shouldCompress(source.length)) {
+            return source;
+        }
+
+        long start = System.nanoTime();
         byte[] compressed = GZipUtil.compress(source);
 
         // Return gzip compressed data only if shorter than uncompressed one
-        return compressed.length < source.length ? compressed : source;
+        boolean shorter = compressed.length < source.length;
+        if (this.stats != null) {
+            this.stats.record(source.length, compressed.length, System.nanoTime() - start, shorter);
+        }
+        return shorter ? compressed : source;
     }
 }
@@ -11,31 +11,98 @@
  *******************************************************************************/
 package org.eclipse.kura.core.cloud;
 
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.BODY_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.DICTIONARY_VERSION_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_BOOL_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_BYTES_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_DOUBLE_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_FLOAT_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_INT_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_LONG_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_NAME_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_STRING_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.METRIC_TYPE_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_ALTITUDE_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_HEADING_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_LATITUDE_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_LONGITUDE_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_PRECISION_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_SATELLITES_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_SPEED_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_STATUS_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.POSITION_TIMESTAMP_FIELD;
+import static org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl.TIMESTAMP_FIELD;
+
 import java.io.IOException;
 import java.util.Date;
 
 import org.eclipse.kura.KuraInvalidMessageException;
-import org.eclipse.kura.KuraInvalidMetricTypeException;
-import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
 import org.eclipse.kura.core.util.GZipUtil;
 import org.eclipse.kura.message.KuraPayload;
 import org.eclipse.kura.message.KuraPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 
+/**
+ * Decodes an KuraPayload class from the Google ProtoBuf binary format.
+ * <p>
+ * The fields are read straight from the byte array into the KuraPayload, without building the intermediate
+ * protobuf messages. Payloads are accepted and rejected as the generated {@code KuraPayloadProto} classes do.
+ */
 public class CloudPayloadProtoBufDecoderImpl {
 
     private static final Logger s_logger = LoggerFactory.getLogger(CloudPayloadProtoBufDecoderImpl.class);
 
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private static final int TIMESTAMP_TAG = tag(TIMESTAMP_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int POSITION_TAG = tag(POSITION_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int DICTIONARY_VERSION_TAG = tag(DICTIONARY_VERSION_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int METRIC_TAG = tag(METRIC_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int BODY_TAG = tag(BODY_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int METRIC_NAME_TAG = tag(METRIC_NAME_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int METRIC_TYPE_TAG = tag(METRIC_TYPE_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int METRIC_DOUBLE_TAG = tag(METRIC_DOUBLE_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int METRIC_FLOAT_TAG = tag(METRIC_FLOAT_FIELD, WireFormat.WIRETYPE_FIXED32);
+    private static final int METRIC_LONG_TAG = tag(METRIC_LONG_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int METRIC_INT_TAG = tag(METRIC_INT_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int METRIC_BOOL_TAG = tag(METRIC_BOOL_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int METRIC_STRING_TAG = tag(METRIC_STRING_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int METRIC_BYTES_TAG = tag(METRIC_BYTES_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int POSITION_LATITUDE_TAG = tag(POSITION_LATITUDE_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_LONGITUDE_TAG = tag(POSITION_LONGITUDE_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_ALTITUDE_TAG = tag(POSITION_ALTITUDE_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_PRECISION_TAG = tag(POSITION_PRECISION_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_HEADING_TAG = tag(POSITION_HEADING_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_SPEED_TAG = tag(POSITION_SPEED_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private static final int POSITION_TIMESTAMP_TAG = tag(POSITION_TIMESTAMP_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int POSITION_SATELLITES_TAG = tag(POSITION_SATELLITES_FIELD, WireFormat.WIRETYPE_VARINT);
+    private static final int POSITION_STATUS_TAG = tag(POSITION_STATUS_FIELD, WireFormat.WIRETYPE_VARINT);
+
     private byte[] m_bytes;
+    private Long m_dictionaryVersion;
 
     public CloudPayloadProtoBufDecoderImpl(byte[] bytes) {
         this.m_bytes = bytes;
     }
 
+    /**
+     * Returns the version of the metric dictionary the payload has been encoded with, or null if the metrics of the
+     * payload are sent by name. Only available after the payload has been decoded.
+     */
+    Long getDictionaryVersion() {
+        return this.m_dictionaryVersion;
+    }
+
     /**
      * Factory method to build an KuraPayload instance from a byte array.
      *
@@ -55,108 +122,155 @@ public class CloudPayloadProtoBufDecoderImpl {
             }
         }
 
-        // build the KuraPayloadProto.KuraPayload
-        KuraPayloadProto.KuraPayload protoMsg = null;
         try {
-            protoMsg = KuraPayloadProto.KuraPayload.parseFrom(this.m_bytes);
+            return readPayload(CodedInputStream.newInstance(this.m_bytes));
         } catch (InvalidProtocolBufferException ipbe) {
             throw new KuraInvalidMessageException(ipbe);
         }
+    }
 
-        // build the KuraPayload
+    private KuraPayload readPayload(CodedInputStream input) throws IOException {
         KuraPayload kuraMsg = new KuraPayload();
+        KuraPosition position = null;
 
-        // set the timestamp
-        if (protoMsg.hasTimestamp()) {
-            kuraMsg.setTimestamp(new Date(protoMsg.getTimestamp()));
-        }
-
-        // set the position
-        if (protoMsg.hasPosition()) {
-            kuraMsg.setPosition(buildFromProtoBuf(protoMsg.getPosition()));
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            } else if (tag == TIMESTAMP_TAG) {
+                kuraMsg.setTimestamp(new Date(input.readInt64()));
+            } else if (tag == POSITION_TAG) {
+                // repeated occurrences of an embedded message are merged
+                if (position == null) {
+                    position = new KuraPosition();
+                }
+                int limit = input.pushLimit(input.readRawVarint32());
+                readPosition(input, position);
+                input.popLimit(limit);
+            } else if (tag == DICTIONARY_VERSION_TAG) {
+                this.m_dictionaryVersion = input.readInt64();
+            } else if (tag == METRIC_TAG) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                readMetric(input, kuraMsg);
+                input.popLimit(limit);
+            } else if (tag == BODY_TAG) {
+                kuraMsg.setBody(input.readByteArray());
+            } else if (!input.skipField(tag)) {
+                break;
+            }
         }
 
-        // set the metrics
-        for (int i = 0; i < protoMsg.getMetricCount(); i++) {
-            String name = protoMsg.getMetric(i).getName();
-            try {
-                Object value = getProtoKuraMetricValue(protoMsg.getMetric(i), protoMsg.getMetric(i).getType());
-                kuraMsg.addMetric(name, value);
-            } catch (KuraInvalidMetricTypeException ihte) {
-                s_logger.warn("During deserialization, ignoring metric named: {}. Unrecognized value type: {}", name,
-                        protoMsg.getMetric(i).getType(), ihte);
+        if (position != null) {
+            if (position.getLatitude() == null || position.getLongitude() == null) {
+                throw new InvalidProtocolBufferException("Message missing required fields: position");
             }
+            kuraMsg.setPosition(position);
         }
+        return kuraMsg;
+    }
 
-        // set the body
-        if (protoMsg.hasBody()) {
-            kuraMsg.setBody(protoMsg.getBody().toByteArray());
+    private static void readPosition(CodedInputStream input, KuraPosition position) throws IOException {
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                return;
+            } else if (tag == POSITION_LATITUDE_TAG) {
+                position.setLatitude(input.readDouble());
+            } else if (tag == POSITION_LONGITUDE_TAG) {
+                position.setLongitude(input.readDouble());
+            } else if (tag == POSITION_ALTITUDE_TAG) {
+                position.setAltitude(input.readDouble());
+            } else if (tag == POSITION_PRECISION_TAG) {
+                position.setPrecision(input.readDouble());
+            } else if (tag == POSITION_HEADING_TAG) {
+                position.setHeading(input.readDouble());
+            } else if (tag == POSITION_SPEED_TAG) {
+                position.setSpeed(input.readDouble());
+            } else if (tag == POSITION_TIMESTAMP_TAG) {
+                position.setTimestamp(new Date(input.readInt64()));
+            } else if (tag == POSITION_SATELLITES_TAG) {
+                position.setSatellites(input.readInt32());
+            } else if (tag == POSITION_STATUS_TAG) {
+                position.setStatus(input.readInt32());
+            } else if (!input.skipField(tag)) {
+                return;
+            }
         }
-
-        return kuraMsg;
     }
 
-    private KuraPosition buildFromProtoBuf(KuraPayloadProto.KuraPayload.KuraPosition protoPosition) {
-        KuraPosition position = new KuraPosition();
+    private static void readMetric(CodedInputStream input, KuraPayload kuraMsg) throws IOException {
+        String name = null;
+        ValueType type = null;
+        double doubleValue = 0;
+        float floatValue = 0;
+        long longValue = 0;
+        int intValue = 0;
+        boolean boolValue = false;
+        String stringValue = "";
+        byte[] bytesValue = EMPTY_BYTES;
 
-        if (protoPosition.hasLatitude()) {
-            position.setLatitude(protoPosition.getLatitude());
-        }
-        if (protoPosition.hasLongitude()) {
-            position.setLongitude(protoPosition.getLongitude());
-        }
-        if (protoPosition.hasAltitude()) {
-            position.setAltitude(protoPosition.getAltitude());
-        }
-        if (protoPosition.hasPrecision()) {
-            position.setPrecision(protoPosition.getPrecision());
-        }
-        if (protoPosition.hasHeading()) {
-            position.setHeading(protoPosition.getHeading());
-        }
-        if (protoPosition.hasSpeed()) {
-            position.setSpeed(protoPosition.getSpeed());
-        }
-        if (protoPosition.hasSatellites()) {
-            position.setSatellites(protoPosition.getSatellites());
-        }
-        if (protoPosition.hasStatus()) {
-            position.setStatus(protoPosition.getStatus());
+        boolean done = false;
+        while (!done) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                done = true;
+            } else if (tag == METRIC_NAME_TAG) {
+                name = input.readString();
+            } else if (tag == METRIC_TYPE_TAG) {
+                // unknown enum values are ignored, leaving the type unset
+                ValueType value = ValueType.valueOf(input.readEnum());
+                if (value != null) {
+                    type = value;
+                }
+            } else if (tag == METRIC_DOUBLE_TAG) {
+                doubleValue = input.readDouble();
+            } else if (tag == METRIC_FLOAT_TAG) {
+                floatValue = input.readFloat();
+            } else if (tag == METRIC_LONG_TAG) {
+                longValue = input.readInt64();
+            } else if (tag == METRIC_INT_TAG) {
+                intValue = input.readInt32();
+            } else if (tag == METRIC_BOOL_TAG) {
+                boolValue = input.readBool();
+            } else if (tag == METRIC_STRING_TAG) {
+                stringValue = input.readString();
+            } else if (tag == METRIC_BYTES_TAG) {
+                bytesValue = input.readByteArray();
+            } else if (!input.skipField(tag)) {
+                done = true;
+            }
         }
-        if (protoPosition.hasTimestamp()) {
-            position.setTimestamp(new Date(protoPosition.getTimestamp()));
+
+        if (name == null || type == null) {
+            throw new InvalidProtocolBufferException("Message missing required fields: metric");
         }
-        return position;
-    }
 
-    private Object getProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric metric,
-            KuraPayloadProto.KuraPayload.KuraMetric.ValueType type) throws KuraInvalidMetricTypeException {
         switch (type) {
-
         case DOUBLE:
-            return metric.getDoubleValue();
-
+            kuraMsg.addMetric(name, doubleValue);
+            break;
         case FLOAT:
-            return metric.getFloatValue();
-
+            kuraMsg.addMetric(name, floatValue);
+            break;
         case INT64:
-            return metric.getLongValue();
-
+            kuraMsg.addMetric(name, longValue);
+            break;
         case INT32:
-            return metric.getIntValue();
-
+            kuraMsg.addMetric(name, intValue);
+            break;
         case BOOL:
-            return metric.getBoolValue();
-
+            kuraMsg.addMetric(name, boolValue);
+            break;
         case STRING:
-            return metric.getStringValue();
-
-        case BYTES:
-            ByteString bs = metric.getBytesValue();
-            return bs.toByteArray();
-
+            kuraMsg.addMetric(name, stringValue);
+            break;
         default:
-            throw new KuraInvalidMetricTypeException(type);
+            kuraMsg.addMetric(name, bytesValue);
+            break;
         }
     }
+
+    private static int tag(int field, int wireType) {
+        return field << 3 | wireType;
+    }
 }
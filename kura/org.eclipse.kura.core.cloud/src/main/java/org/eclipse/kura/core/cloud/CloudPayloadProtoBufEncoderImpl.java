@@ -13,29 +13,74 @@
 package org.eclipse.kura.core.cloud;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import org.eclipse.kura.KuraInvalidMetricTypeException;
-import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
-import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
 import org.eclipse.kura.message.KuraPayload;
 import org.eclipse.kura.message.KuraPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 
 /**
  * Encodes an KuraPayload class using the Google ProtoBuf binary format.
+ * <p>
+ * The payload is written field by field into a single array of the exact size, without building the intermediate
+ * protobuf messages. The output is the same as the one of the generated {@code KuraPayloadProto} classes.
  */
 public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
 
     private static final Logger logger = LoggerFactory.getLogger(CloudPayloadProtoBufEncoderImpl.class);
 
+    // KuraPayload fields
+    static final int TIMESTAMP_FIELD = 1;
+    static final int POSITION_FIELD = 2;
+    // extension field carrying the version of the metric dictionary, see MetricDictionary
+    static final int DICTIONARY_VERSION_FIELD = 3;
+    static final int METRIC_FIELD = 5000;
+    static final int BODY_FIELD = 5001;
+
+    // KuraMetric fields
+    static final int METRIC_NAME_FIELD = 1;
+    static final int METRIC_TYPE_FIELD = 2;
+    static final int METRIC_DOUBLE_FIELD = 3;
+    static final int METRIC_FLOAT_FIELD = 4;
+    static final int METRIC_LONG_FIELD = 5;
+    static final int METRIC_INT_FIELD = 6;
+    static final int METRIC_BOOL_FIELD = 7;
+    static final int METRIC_STRING_FIELD = 8;
+    static final int METRIC_BYTES_FIELD = 9;
+
+    // KuraPosition fields
+    static final int POSITION_LATITUDE_FIELD = 1;
+    static final int POSITION_LONGITUDE_FIELD = 2;
+    static final int POSITION_ALTITUDE_FIELD = 3;
+    static final int POSITION_PRECISION_FIELD = 4;
+    static final int POSITION_HEADING_FIELD = 5;
+    static final int POSITION_SPEED_FIELD = 6;
+    static final int POSITION_TIMESTAMP_FIELD = 7;
+    static final int POSITION_SATELLITES_FIELD = 8;
+    static final int POSITION_STATUS_FIELD = 9;
+
     private final KuraPayload kuraPayload;
+    private final MetricDictionary.Snapshot dictionary;
 
     public CloudPayloadProtoBufEncoderImpl(KuraPayload kuraPayload) {
+        this(kuraPayload, null);
+    }
+
+    /**
+     * Creates an encoder sending the metrics by their index in the dictionary instead of by name.
+     * The metrics missing from the dictionary are sent by name, the dictionary must contain the names that could be
+     * mistaken for an index, see {@link MetricDictionary.Snapshot#canEncode(java.util.Collection)}.
+     */
+    CloudPayloadProtoBufEncoderImpl(KuraPayload kuraPayload, MetricDictionary.Snapshot dictionary) {
         this.kuraPayload = kuraPayload;
+        this.dictionary = dictionary;
     }
 
     /**
@@ -45,117 +90,244 @@ public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
      */
     @Override
     public byte[] getBytes() throws IOException {
-        // Build the message
-        KuraPayloadProto.KuraPayload.Builder protoMsg = KuraPayloadProto.KuraPayload.newBuilder();
+        final KuraPosition position = this.kuraPayload.getPosition();
+        final byte[] body = this.kuraPayload.getBody();
 
-        // set the timestamp
+        // encode the names and string values once, they are needed for both sizing and writing
+        final Map<String, Object> metrics = this.kuraPayload.metrics();
+        final int metricCount = metrics.size();
+        final byte[][] names = new byte[metricCount][];
+        final Object[] values = new Object[metricCount];
+        final ValueType[] types = new ValueType[metricCount];
+        final int[] metricSizes = new int[metricCount];
+
+        int size = 0;
         if (this.kuraPayload.getTimestamp() != null) {
-            protoMsg.setTimestamp(this.kuraPayload.getTimestamp().getTime());
+            size += CodedOutputStream.computeInt64Size(TIMESTAMP_FIELD, this.kuraPayload.getTimestamp().getTime());
+        }
+
+        int positionSize = 0;
+        if (position != null) {
+            if (position.getLatitude() == null || position.getLongitude() == null) {
+                throw new IOException("The latitude and the longitude of the position are required");
+            }
+            positionSize = computePositionSize(position);
+            size += computeEmbeddedSize(POSITION_FIELD, positionSize);
         }
 
-        // set the position
-        if (this.kuraPayload.getPosition() != null) {
-            protoMsg.setPosition(buildPositionProtoBuf());
+        if (this.dictionary != null) {
+            size += CodedOutputStream.computeInt64Size(DICTIONARY_VERSION_FIELD, this.dictionary.getVersion());
         }
 
-        // set the metrics
-        for (final Map.Entry<String, Object> entry : this.kuraPayload.metrics().entrySet()) {
+        int i = 0;
+        for (final Map.Entry<String, Object> entry : metrics.entrySet()) {
             final String name = entry.getKey();
             final Object value = entry.getValue();
 
-            // build a metric
             try {
-                KuraMetric.Builder metricB = KuraMetric.newBuilder();
-                metricB.setName(name);
-
-                boolean result = setProtoKuraMetricValue(metricB, value);
-                if (result) {
-                    // add it to the message
-                    protoMsg.addMetric(metricB);
+                final ValueType type = getValueType(value);
+                if (type == null) {
+                    continue;
                 }
+                names[i] = encodeName(name);
+                types[i] = type;
+                values[i] = type == ValueType.STRING ? ((String) value).getBytes(StandardCharsets.UTF_8) : value;
+                metricSizes[i] = computeMetricSize(names[i], type, values[i]);
+                size += computeEmbeddedSize(METRIC_FIELD, metricSizes[i]);
+                i++;
             } catch (KuraInvalidMetricTypeException e) {
                 logger.error("During serialization, ignoring metric named: {}. Unrecognized value type: {}.", name,
                         value != null ? value.getClass().getName() : "<null>");
                 throw new RuntimeException(e);
             }
         }
+        final int encodedMetrics = i;
+
+        if (body != null) {
+            size += CodedOutputStream.computeByteArraySize(BODY_FIELD, body);
+        }
 
-        // set the body
-        if (this.kuraPayload.getBody() != null) {
-            protoMsg.setBody(ByteString.copyFrom(this.kuraPayload.getBody()));
+        final byte[] result = new byte[size];
+        final CodedOutputStream output = CodedOutputStream.newInstance(result);
+
+        if (this.kuraPayload.getTimestamp() != null) {
+            output.writeInt64(TIMESTAMP_FIELD, this.kuraPayload.getTimestamp().getTime());
+        }
+
+        if (position != null) {
+            writeEmbeddedHeader(output, POSITION_FIELD, positionSize);
+            writePosition(output, position);
+        }
+
+        if (this.dictionary != null) {
+            output.writeInt64(DICTIONARY_VERSION_FIELD, this.dictionary.getVersion());
+        }
+
+        for (i = 0; i < encodedMetrics; i++) {
+            writeEmbeddedHeader(output, METRIC_FIELD, metricSizes[i]);
+            writeMetric(output, names[i], types[i], values[i]);
+        }
+
+        if (body != null) {
+            output.writeByteArray(BODY_FIELD, body);
         }
 
-        return protoMsg.build().toByteArray();
+        output.checkNoSpaceLeft();
+        return result;
+    }
+
+    private byte[] encodeName(String name) throws IOException {
+        if (this.dictionary == null) {
+            return name.getBytes(StandardCharsets.UTF_8);
+        }
+        final int index = this.dictionary.getIndex(name);
+        if (index < 0 && !MetricDictionary.isIndex(name)) {
+            return name.getBytes(StandardCharsets.UTF_8);
+        } else if (index < 0) {
+            throw new IOException(
+                    "Metric " + name + " not found in dictionary version " + this.dictionary.getVersion());
+        }
+        return Integer.toString(index).getBytes(StandardCharsets.US_ASCII);
     }
 
     //
-    // Helper methods to convert the KuraMetrics
+    // Helper methods to size and write the embedded messages
     //
-    private KuraPayloadProto.KuraPayload.KuraPosition buildPositionProtoBuf() {
-        KuraPayloadProto.KuraPayload.KuraPosition.Builder protoPos = KuraPayloadProto.KuraPayload.KuraPosition
-                .newBuilder();
+    private static int computeEmbeddedSize(int field, int size) {
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeRawVarint32Size(size) + size;
+    }
+
+    private static void writeEmbeddedHeader(CodedOutputStream output, int field, int size) throws IOException {
+        output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeRawVarint32(size);
+    }
 
-        KuraPosition position = this.kuraPayload.getPosition();
-        if (position.getLatitude() != null) {
-            protoPos.setLatitude(position.getLatitude());
+    private static int computePositionSize(KuraPosition position) {
+        int size = CodedOutputStream.computeDoubleSize(POSITION_LATITUDE_FIELD, position.getLatitude());
+        size += CodedOutputStream.computeDoubleSize(POSITION_LONGITUDE_FIELD, position.getLongitude());
+        if (position.getAltitude() != null) {
+            size += CodedOutputStream.computeDoubleSize(POSITION_ALTITUDE_FIELD, position.getAltitude());
+        }
+        if (position.getPrecision() != null) {
+            size += CodedOutputStream.computeDoubleSize(POSITION_PRECISION_FIELD, position.getPrecision());
+        }
+        if (position.getHeading() != null) {
+            size += CodedOutputStream.computeDoubleSize(POSITION_HEADING_FIELD, position.getHeading());
+        }
+        if (position.getSpeed() != null) {
+            size += CodedOutputStream.computeDoubleSize(POSITION_SPEED_FIELD, position.getSpeed());
+        }
+        if (position.getTimestamp() != null) {
+            size += CodedOutputStream.computeInt64Size(POSITION_TIMESTAMP_FIELD, position.getTimestamp().getTime());
+        }
+        if (position.getSatellites() != null) {
+            size += CodedOutputStream.computeInt32Size(POSITION_SATELLITES_FIELD, position.getSatellites());
         }
-        if (position.getLongitude() != null) {
-            protoPos.setLongitude(position.getLongitude());
+        if (position.getStatus() != null) {
+            size += CodedOutputStream.computeInt32Size(POSITION_STATUS_FIELD, position.getStatus());
         }
+        return size;
+    }
+
+    private static void writePosition(CodedOutputStream output, KuraPosition position) throws IOException {
+        output.writeDouble(POSITION_LATITUDE_FIELD, position.getLatitude());
+        output.writeDouble(POSITION_LONGITUDE_FIELD, position.getLongitude());
         if (position.getAltitude() != null) {
-            protoPos.setAltitude(position.getAltitude());
+            output.writeDouble(POSITION_ALTITUDE_FIELD, position.getAltitude());
         }
         if (position.getPrecision() != null) {
-            protoPos.setPrecision(position.getPrecision());
+            output.writeDouble(POSITION_PRECISION_FIELD, position.getPrecision());
         }
         if (position.getHeading() != null) {
-            protoPos.setHeading(position.getHeading());
+            output.writeDouble(POSITION_HEADING_FIELD, position.getHeading());
         }
         if (position.getSpeed() != null) {
-            protoPos.setSpeed(position.getSpeed());
+            output.writeDouble(POSITION_SPEED_FIELD, position.getSpeed());
         }
         if (position.getTimestamp() != null) {
-            protoPos.setTimestamp(position.getTimestamp().getTime());
+            output.writeInt64(POSITION_TIMESTAMP_FIELD, position.getTimestamp().getTime());
         }
         if (position.getSatellites() != null) {
-            protoPos.setSatellites(position.getSatellites());
+            output.writeInt32(POSITION_SATELLITES_FIELD, position.getSatellites());
         }
         if (position.getStatus() != null) {
-            protoPos.setStatus(position.getStatus());
+            output.writeInt32(POSITION_STATUS_FIELD, position.getStatus());
         }
-        return protoPos.build();
     }
 
-    private static boolean setProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric.Builder metric, Object o)
-            throws KuraInvalidMetricTypeException {
-
+    //
+    // Helper methods to convert the KuraMetrics
+    //
+    private static ValueType getValueType(Object o) throws KuraInvalidMetricTypeException {
         if (o instanceof String) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.STRING);
-            metric.setStringValue((String) o);
+            return ValueType.STRING;
         } else if (o instanceof Double) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.DOUBLE);
-            metric.setDoubleValue((Double) o);
+            return ValueType.DOUBLE;
         } else if (o instanceof Integer) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT32);
-            metric.setIntValue((Integer) o);
+            return ValueType.INT32;
         } else if (o instanceof Float) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.FLOAT);
-            metric.setFloatValue((Float) o);
+            return ValueType.FLOAT;
         } else if (o instanceof Long) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT64);
-            metric.setLongValue((Long) o);
+            return ValueType.INT64;
         } else if (o instanceof Boolean) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BOOL);
-            metric.setBoolValue((Boolean) o);
+            return ValueType.BOOL;
         } else if (o instanceof byte[]) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BYTES);
-            metric.setBytesValue(ByteString.copyFrom((byte[]) o));
+            return ValueType.BYTES;
         } else if (o == null) {
             logger.warn("Received a metric with a null value!");
-            return false;
+            return null;
         } else {
             throw new KuraInvalidMetricTypeException(o.getClass().getName());
         }
-        return true;
+    }
+
+    private static int computeMetricSize(byte[] name, ValueType type, Object value) {
+        int size = CodedOutputStream.computeByteArraySize(METRIC_NAME_FIELD, name);
+        size += CodedOutputStream.computeEnumSize(METRIC_TYPE_FIELD, type.getNumber());
+        switch (type) {
+        case DOUBLE:
+            return size + CodedOutputStream.computeDoubleSize(METRIC_DOUBLE_FIELD, (Double) value);
+        case FLOAT:
+            return size + CodedOutputStream.computeFloatSize(METRIC_FLOAT_FIELD, (Float) value);
+        case INT64:
+            return size + CodedOutputStream.computeInt64Size(METRIC_LONG_FIELD, (Long) value);
+        case INT32:
+            return size + CodedOutputStream.computeInt32Size(METRIC_INT_FIELD, (Integer) value);
+        case BOOL:
+            return size + CodedOutputStream.computeBoolSize(METRIC_BOOL_FIELD, (Boolean) value);
+        case STRING:
+            return size + CodedOutputStream.computeByteArraySize(METRIC_STRING_FIELD, (byte[]) value);
+        default:
+            return size + CodedOutputStream.computeByteArraySize(METRIC_BYTES_FIELD, (byte[]) value);
+        }
+    }
+
+    private static void writeMetric(CodedOutputStream output, byte[] name, ValueType type, Object value)
+            throws IOException {
+        output.writeByteArray(METRIC_NAME_FIELD, name);
+        output.writeEnum(METRIC_TYPE_FIELD, type.getNumber());
+        switch (type) {
+        case DOUBLE:
+            output.writeDouble(METRIC_DOUBLE_FIELD, (Double) value);
+            break;
+        case FLOAT:
+            output.writeFloat(METRIC_FLOAT_FIELD, (Float) value);
+            break;
+        case INT64:
+            output.writeInt64(METRIC_LONG_FIELD, (Long) value);
+            break;
+        case INT32:
+            output.writeInt32(METRIC_INT_FIELD, (Integer) value);
+            break;
+        case BOOL:
+            output.writeBool(METRIC_BOOL_FIELD, (Boolean) value);
+            break;
+        case STRING:
+            output.writeByteArray(METRIC_STRING_FIELD, (byte[]) value);
+            break;
+        default:
+            output.writeByteArray(METRIC_BYTES_FIELD, (byte[]) value);
+            break;
+        }
     }
 }
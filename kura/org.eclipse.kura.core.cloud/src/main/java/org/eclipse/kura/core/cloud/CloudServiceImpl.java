@@ -13,6 +13,7 @@ package org.eclipse.kura.core.cloud;
 
 import static java.util.Objects.isNull;
 import static org.eclipse.kura.cloud.CloudPayloadEncoding.KURA_PROTOBUF;
+import static org.eclipse.kura.cloud.CloudPayloadEncoding.KURA_PROTOBUF_DICTIONARY;
 import static org.eclipse.kura.cloud.CloudPayloadEncoding.SIMPLE_JSON;
 import static org.eclipse.kura.configuration.ConfigurationService.KURA_SERVICE_PID;
 import static org.eclipse.kura.core.message.MessageConstants.APP_ID;
@@ -39,8 +40,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraErrorCode;
@@ -67,7 +68,9 @@ import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.core.cloud.publisher.NotificationPublisherImpl;
 import org.eclipse.kura.core.cloud.subscriber.CloudSubscriptionRecord;
+import org.eclipse.kura.core.cloud.subscriber.SubscriptionTrie;
 import org.eclipse.kura.core.data.DataServiceImpl;
+import org.eclipse.kura.core.util.TopicActivityLog;
 import org.eclipse.kura.data.DataService;
 import org.eclipse.kura.data.listener.DataServiceListener;
 import org.eclipse.kura.message.KuraApplicationTopic;
@@ -103,6 +106,13 @@ public class CloudServiceImpl
 
     private static final int NUM_CONCURRENT_CALLBACKS = 2;
 
+    // the publisher of the lifecycle messages and of the payloads encoded without a publisher
+    private static final String DEFAULT_PUBLISHER = "CloudService";
+
+    private static final long ACTIVITY_LOG_INTERVAL_SECONDS = 300;
+
+    private static final long INBOUND_DRAIN_TIMEOUT_SECONDS = 30;
+
     private static ExecutorService callbackExecutor = Executors.newFixedThreadPool(NUM_CONCURRENT_CALLBACKS);
 
     private ComponentContext ctx;
@@ -119,10 +129,12 @@ public class CloudServiceImpl
 
     // use a synchronized implementation for the list
     private final List<CloudClientImpl> cloudClients;
+    private final Map<String, List<CloudClientImpl>> cloudClientsByApplicationId;
     private final Set<CloudConnectionListener> registeredCloudConnectionListeners;
     private final Set<CloudPublisherDeliveryListener> registeredCloudPublisherDeliveryListeners;
     private final Set<CloudDeliveryListener> registeredCloudDeliveryListeners;
     private final Map<CloudSubscriptionRecord, List<CloudSubscriberListener>> registeredSubscribers;
+    private final SubscriptionTrie subscriptionTrie;
 
     // package visibility for LyfeCyclePayloadBuilder
     String imei;
@@ -142,11 +154,29 @@ public class CloudServiceImpl
     private ServiceRegistration<?> notificationPublisherRegistration;
     private final CloudNotificationPublisher notificationPublisher;
 
+    private volatile InboundMessagePool inboundPool;
+
+    private final Map<String, CompressionStats> compressionStats = new ConcurrentHashMap<>();
+
+    private final MetricDictionary metricDictionary = new MetricDictionary();
+    private final Object dictionaryLock = new Object();
+    // the last version handed to the data service, read without the lock on every publish
+    private volatile long publishedDictionaryVersion = -1;
+    // the dictionary messages not confirmed yet, by message ID
+    private final Map<Integer, MetricDictionary.Snapshot> unconfirmedDictionaries = new HashMap<>();
+    // the last version confirmed by the broker, its names can be sent by index
+    private volatile MetricDictionary.Snapshot confirmedDictionary;
+
+    private final TopicActivityLog arrivedLog = new TopicActivityLog(logger, "Received",
+            ACTIVITY_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
     public CloudServiceImpl() {
         this.cloudClients = new CopyOnWriteArrayList<>();
+        this.cloudClientsByApplicationId = new ConcurrentHashMap<>();
         this.messageId = new AtomicInteger();
         this.registeredRequestHandlers = new HashMap<>();
         this.registeredSubscribers = new ConcurrentHashMap<>();
+        this.subscriptionTrie = new SubscriptionTrie();
         this.registeredCloudConnectionListeners = new CopyOnWriteArraySet<>();
         this.registeredCloudPublisherDeliveryListeners = new CopyOnWriteArraySet<>();
         this.registeredCloudDeliveryListeners = new CopyOnWriteArraySet<>();
@@ -240,6 +270,7 @@ public class CloudServiceImpl
         // save the bundle context and the properties
         this.ctx = componentContext;
         this.options = new CloudServiceOptions(properties, this.systemService);
+        updateInboundPool();
         //
         // install event listener for GPS locked event
         Dictionary<String, Object> props = new Hashtable<>();
@@ -278,6 +309,7 @@ public class CloudServiceImpl
 
         // Update properties and re-publish Birth certificate
         this.options = new CloudServiceOptions(properties, this.systemService);
+        updateInboundPool();
         if (isConnected()) {
             try {
                 setupCloudConnection(false);
@@ -300,10 +332,16 @@ public class CloudServiceImpl
 
         this.dataService.removeDataServiceListener(this);
 
+        if (this.inboundPool != null) {
+            this.inboundPool.shutdown();
+            this.inboundPool = null;
+        }
+
         // no need to release the cloud clients as the updated app
         // certificate is already published due the missing dependency
         // we only need to empty our CloudClient list
         this.cloudClients.clear();
+        this.cloudClientsByApplicationId.clear();
 
         this.dataService = null;
         this.systemService = null;
@@ -317,6 +355,42 @@ public class CloudServiceImpl
         this.notificationPublisherRegistration.unregister();
     }
 
+    private void updateInboundPool() {
+        final InboundMessagePool current = this.inboundPool;
+        final int workers = this.options.getInboundWorkers();
+        final int capacity = this.options.getInboundQueueCapacity();
+        final InboundMessagePool.OverflowPolicy overflowPolicy = this.options.getInboundOverflowPolicy();
+
+        if (current != null && current.getWorkers() == workers && current.getCapacity() == capacity
+                && current.getOverflowPolicy() == overflowPolicy) {
+            return;
+        }
+
+        if (workers > 0) {
+            // the new workers start once the messages queued in the current pool have been processed
+            this.inboundPool = new InboundMessagePool("CloudServiceImpl:Inbound", workers, capacity, overflowPolicy,
+                    current);
+            if (current != null) {
+                current.shutdown();
+            }
+        } else if (current != null) {
+            // the messages are going to be processed inline, process the queued ones first
+            current.shutdown();
+            try {
+                if (!current.awaitTermination(INBOUND_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warn("Inbound messages still queued after {} s", INBOUND_DRAIN_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.inboundPool = null;
+        }
+    }
+
+    InboundMessagePool getInboundMessagePool() {
+        return this.inboundPool;
+    }
+
     @Override
     public void handleEvent(Event event) {
         if (PositionLockedEvent.POSITION_LOCKED_EVENT_TOPIC.contains(event.getTopic())) {
@@ -369,6 +443,8 @@ public class CloudServiceImpl
         // create new instance
         CloudClientImpl cloudClient = new CloudClientImpl(applicationId, this.dataService, this);
         this.cloudClients.add(cloudClient);
+        this.cloudClientsByApplicationId.computeIfAbsent(applicationId, id -> new CopyOnWriteArrayList<>())
+                .add(cloudClient);
 
         // publish updated birth certificate with list of active apps
         if (isConnected()) {
@@ -410,6 +486,10 @@ public class CloudServiceImpl
     public void removeCloudClient(CloudClientImpl cloudClient) {
         // remove the client
         this.cloudClients.remove(cloudClient);
+        this.cloudClientsByApplicationId.computeIfPresent(cloudClient.getApplicationId(), (id, clients) -> {
+            clients.remove(cloudClient);
+            return clients.isEmpty() ? null : clients;
+        });
 
         // publish updated birth certificate with updated list of active apps
         if (isConnected()) {
@@ -421,12 +501,37 @@ public class CloudServiceImpl
         }
     }
 
+    /**
+     * Encodes the payload of a lifecycle message or of a response. With the dictionary encoding, these payloads are
+     * sent as plain protobuf, so that they can be decoded without knowing the dictionary.
+     */
     public byte[] encodePayload(KuraPayload payload) throws KuraException {
+        return encodePayload(payload, DEFAULT_PUBLISHER, false);
+    }
+
+    /**
+     * Encodes the payload of a message sent by a publisher, usually identified by its application ID.
+     * The compression statistics are kept by publisher.
+     */
+    public byte[] encodePayload(KuraPayload payload, String publisher) throws KuraException {
+        return encodePayload(payload, publisher, true);
+    }
+
+    private byte[] encodePayload(KuraPayload payload, String publisher, boolean useDictionary) throws KuraException {
         byte[] bytes;
         CloudPayloadEncoding preferencesEncoding = this.options.getPayloadEncoding();
 
         if (preferencesEncoding == KURA_PROTOBUF) {
-            bytes = encodeProtobufPayload(payload);
+            bytes = encodeProtobufPayload(payload, publisher, null);
+        } else if (preferencesEncoding == KURA_PROTOBUF_DICTIONARY) {
+            MetricDictionary.Snapshot dictionary = null;
+            if (useDictionary && payload != null) {
+                dictionary = this.metricDictionary.resolve(payload.metrics().keySet());
+                if (dictionary.getVersion() > this.publishedDictionaryVersion) {
+                    publishDictionary(dictionary, false);
+                }
+            }
+            bytes = encodeProtobufPayload(payload, publisher, getEncodingDictionary(dictionary, payload));
         } else if (preferencesEncoding == SIMPLE_JSON) {
             bytes = encodeJsonPayload(payload);
         } else {
@@ -505,32 +610,60 @@ public class CloudServiceImpl
 
     @Override
     public void onMessageArrived(String topic, byte[] payload, int qos, boolean retained) {
-        logger.info("Message arrived on topic: {}", topic);
+        logger.debug("Message arrived on topic: {}", topic);
+        this.arrivedLog.record(topic);
+
+        final InboundMessagePool pool = this.inboundPool;
+        if (pool == null) {
+            processMessage(topic, payload, qos, retained);
+        } else if (!pool.submit(topic, () -> processMessage(topic, payload, qos, retained)) && pool.isShutdown()) {
+            // the pool is being replaced
+            final InboundMessagePool next = this.inboundPool;
+            if (next == null || next == pool) {
+                processMessage(topic, payload, qos, retained);
+            } else {
+                next.submit(topic, () -> processMessage(topic, payload, qos, retained));
+            }
+        }
+    }
 
+    private void processMessage(String topic, byte[] payload, int qos, boolean retained) {
         // notify listeners
         KuraTopicImpl kuraTopic = new KuraTopicImpl(topic, this.options.getTopicControlPrefix());
         if (TOPIC_MQTT_APP.equals(kuraTopic.getApplicationId()) || TOPIC_BA_APP.equals(kuraTopic.getApplicationId())) {
-            logger.info("Ignoring feedback message from {}", topic);
+            logger.debug("Ignoring feedback message from {}", topic);
         } else {
-            KuraPayload kuraPayload = null;
+            // route the message first, so that the payload is not decoded if nobody is interested in it
+            boolean control = this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix());
+            String applicationId = kuraTopic.getApplicationId();
+            RequestHandler cloudlet = control ? this.registeredRequestHandlers.get(applicationId) : null;
+            if (cloudlet != null && kuraTopic.getApplicationTopic().startsWith(applicationId + "/REPLY")) {
+                // Ignore replies
+                return;
+            }
+            List<CloudClientImpl> clients = getCloudClients(applicationId);
+            List<List<CloudSubscriberListener>> subscribers = matchSubscribers(kuraTopic.getFullTopic());
 
-            if (this.options.getPayloadEncoding() == SIMPLE_JSON) {
-                kuraPayload = createKuraPayloadFromJson(payload);
-            } else if (this.options.getPayloadEncoding() == KURA_PROTOBUF) {
-                kuraPayload = createKuraPayloadFromProtoBuf(topic, payload);
+            if (cloudlet == null && clients.isEmpty() && subscribers.isEmpty()) {
+                logger.debug("No listener for message on topic {}, not decoding it", topic);
+                return;
             }
 
+            // decoded on first access and shared by all the listeners
+            KuraPayload kuraPayload = new LazyKuraPayload(() -> decodePayload(topic, payload));
+
             try {
-                if (this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix())) {
+                if (control) {
                     boolean validMessage = isValidMessage(kuraTopic, kuraPayload);
 
                     if (validMessage) {
-                        dispatchControlMessage(qos, retained, kuraTopic, kuraPayload);
+                        dispatchControlMessage(qos, retained, kuraTopic, kuraPayload, cloudlet, clients,
+                                subscribers);
                     } else {
                         logger.warn("Message verification failed! Not valid signature or message not signed.");
                     }
                 } else {
-                    dispatchDataMessage(qos, retained, kuraTopic, kuraPayload);
+                    dispatchDataMessage(qos, retained, kuraTopic, kuraPayload, clients, subscribers);
                 }
             } catch (Exception e) {
                 logger.error("Error during CloudClientListener notification.", e);
@@ -539,42 +672,64 @@ public class CloudServiceImpl
 
     }
 
-    private void dispatchControlMessage(int qos, boolean retained, KuraTopicImpl kuraTopic, KuraPayload kuraPayload) {
-        String applicationId = kuraTopic.getApplicationId();
+    private KuraPayload decodePayload(String topic, byte[] payload) {
+        KuraPayload kuraPayload = null;
 
-        RequestHandler cloudlet = this.registeredRequestHandlers.get(applicationId);
-        if (cloudlet != null) {
-            StringBuilder sb = new StringBuilder(applicationId).append("/").append("REPLY");
+        if (this.options.getPayloadEncoding() == SIMPLE_JSON) {
+            kuraPayload = createKuraPayloadFromJson(payload);
+        } else if (this.options.getPayloadEncoding() == KURA_PROTOBUF
+                || this.options.getPayloadEncoding() == KURA_PROTOBUF_DICTIONARY) {
+            kuraPayload = createKuraPayloadFromProtoBuf(topic, payload);
+        }
 
-            if (kuraTopic.getApplicationTopic().startsWith(sb.toString())) {
-                // Ignore replies
-                return;
-            }
+        return kuraPayload != null ? kuraPayload : new KuraPayload();
+    }
 
+    private void dispatchControlMessage(int qos, boolean retained, KuraTopicImpl kuraTopic, KuraPayload kuraPayload,
+            RequestHandler cloudlet, List<CloudClientImpl> clients, List<List<CloudSubscriberListener>> subscribers) {
+        String applicationId = kuraTopic.getApplicationId();
+
+        if (cloudlet != null) {
             callbackExecutor.submit(new MessageHandlerCallable(cloudlet, applicationId, kuraTopic.getApplicationTopic(),
                     kuraPayload, this));
         }
-        this.cloudClients.stream()
-                .filter(cloudClient -> cloudClient.getApplicationId().equals(kuraTopic.getApplicationId()))
-                .forEach(cloudClient -> cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(),
-                        kuraTopic.getApplicationTopic(), kuraPayload, qos, retained));
+        clients.forEach(cloudClient -> cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(),
+                kuraTopic.getApplicationTopic(), kuraPayload, qos, retained));
 
-        Map<String, Object> properties = new HashMap<>();
-        properties.put("deviceId", kuraTopic.getDeviceId());
-        properties.put("appTopic", kuraTopic.getApplicationTopic());
+        dispatchToSubscribers(kuraTopic, kuraPayload, subscribers);
+    }
 
-        KuraMessage receivedMessage = new KuraMessage(kuraPayload, properties);
+    private void dispatchDataMessage(int qos, boolean retained, KuraTopicImpl kuraTopic, KuraPayload kuraPayload,
+            List<CloudClientImpl> clients, List<List<CloudSubscriberListener>> subscribers) {
+        clients.forEach(cloudClient -> cloudClient.onMessageArrived(kuraTopic.getDeviceId(),
+                kuraTopic.getApplicationTopic(), kuraPayload, qos, retained));
 
-        this.registeredSubscribers.entrySet().stream()
-                .filter(cloudSubscriberEntry -> cloudSubscriberEntry.getKey().matches(kuraTopic.getFullTopic()))
-                .forEach(e -> dispatchMessage(receivedMessage, e.getValue()));
+        dispatchToSubscribers(kuraTopic, kuraPayload, subscribers);
     }
 
-    private void dispatchDataMessage(int qos, boolean retained, KuraTopicImpl kuraTopic, KuraPayload kuraPayload) {
-        this.cloudClients.stream()
-                .filter(cloudClient -> cloudClient.getApplicationId().equals(kuraTopic.getApplicationId()))
-                .forEach(cloudClient -> cloudClient.onMessageArrived(kuraTopic.getDeviceId(),
-                        kuraTopic.getApplicationTopic(), kuraPayload, qos, retained));
+    private List<CloudClientImpl> getCloudClients(String applicationId) {
+        return this.cloudClientsByApplicationId.getOrDefault(applicationId, Collections.emptyList());
+    }
+
+    private List<List<CloudSubscriberListener>> matchSubscribers(final String fullTopic) {
+        List<List<CloudSubscriberListener>> result = Collections.emptyList();
+        for (final CloudSubscriptionRecord subscription : this.subscriptionTrie.match(fullTopic)) {
+            final List<CloudSubscriberListener> listeners = this.registeredSubscribers.get(subscription);
+            if (listeners != null && !listeners.isEmpty()) {
+                if (result.isEmpty()) {
+                    result = new ArrayList<>();
+                }
+                result.add(listeners);
+            }
+        }
+        return result;
+    }
+
+    private static void dispatchToSubscribers(final KuraTopicImpl kuraTopic, final KuraPayload kuraPayload,
+            final List<List<CloudSubscriberListener>> subscribers) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
 
         Map<String, Object> properties = new HashMap<>();
         properties.put("deviceId", kuraTopic.getDeviceId());
@@ -582,9 +737,9 @@ public class CloudServiceImpl
 
         KuraMessage receivedMessage = new KuraMessage(kuraPayload, properties);
 
-        this.registeredSubscribers.entrySet().stream()
-                .filter(cloudSubscriberEntry -> cloudSubscriberEntry.getKey().matches(kuraTopic.getFullTopic()))
-                .forEach(e -> dispatchMessage(receivedMessage, e.getValue()));
+        for (final List<CloudSubscriberListener> listeners : subscribers) {
+            dispatchMessage(receivedMessage, listeners);
+        }
     }
 
     private static void dispatchMessage(final KuraMessage message, final List<CloudSubscriberListener> listeners) {
@@ -626,14 +781,16 @@ public class CloudServiceImpl
 
         // notify listeners
         KuraApplicationTopic kuraTopic = new KuraTopicImpl(topic, this.options.getTopicControlPrefix());
-        this.cloudClients.stream()
-                .filter(cloudClient -> cloudClient.getApplicationId().equals(kuraTopic.getApplicationId()))
-                .collect(Collectors.toList())
+        getCloudClients(kuraTopic.getApplicationId())
                 .forEach(cloudClient -> cloudClient.onMessagePublished(messageId, kuraTopic.getApplicationTopic()));
     }
 
     @Override
     public void onMessageConfirmed(int messageId, String topic) {
+        if (topic.endsWith(CloudServiceOptions.getTopicDictionarySuffix())) {
+            onDictionaryConfirmed(messageId);
+        }
+
         synchronized (this.messageId) {
             if (this.messageId.get() != -1 && this.messageId.get() == messageId) {
                 this.messageId.set(-1);
@@ -644,9 +801,7 @@ public class CloudServiceImpl
 
         // notify listeners
         KuraApplicationTopic kuraTopic = new KuraTopicImpl(topic, this.options.getTopicControlPrefix());
-        this.cloudClients.stream()
-                .filter(cloudClient -> cloudClient.getApplicationId().equals(kuraTopic.getApplicationId()))
-                .collect(Collectors.toList())
+        getCloudClients(kuraTopic.getApplicationId())
                 .forEach(cloudClient -> cloudClient.onMessageConfirmed(messageId, kuraTopic.getApplicationTopic()));
 
         this.registeredCloudPublisherDeliveryListeners
@@ -723,6 +878,16 @@ public class CloudServiceImpl
             this.birthPublished = true;
         }
 
+        // republish the metric dictionary for the applications that have just connected
+        if (this.options.getPayloadEncoding() == KURA_PROTOBUF_DICTIONARY) {
+            synchronized (this.dictionaryLock) {
+                // the broker may not know the names confirmed in the previous session
+                this.unconfirmedDictionaries.clear();
+                this.confirmedDictionary = null;
+            }
+            publishDictionary(this.metricDictionary.getSnapshot(), true);
+        }
+
         // restore or remove default subscriptions
         if (this.options.getEnableDefaultSubscriptions()) {
             if (!this.subscribed) {
@@ -815,15 +980,76 @@ public class CloudServiceImpl
         }
     }
 
-    private byte[] encodeProtobufPayload(KuraPayload payload) throws KuraException {
+    /**
+     * Publishes the dictionary retained, unless a later version has already been published.
+     * <p>
+     * The whole dictionary is published on every version, so that the receivers subscribing later get the last
+     * version retained by the broker, which decodes the payloads encoded with any version of its epoch. The versions
+     * only change when names are added, which is rare once the publishers are running.
+     * The dictionary messages and the data messages may be sent on different stripes of the transport, so the
+     * payloads are encoded with the last version confirmed by the broker, see
+     * {@link #getEncodingDictionary(MetricDictionary.Snapshot, KuraPayload)}.
+     */
+    private void publishDictionary(MetricDictionary.Snapshot dictionary, boolean force) throws KuraException {
+        synchronized (this.dictionaryLock) {
+            if (dictionary.getVersion() < this.publishedDictionaryVersion
+                    || dictionary.getVersion() == this.publishedDictionaryVersion && !force) {
+                return;
+            }
+
+            StringBuilder sbTopic = new StringBuilder();
+            sbTopic.append(this.options.getTopicControlPrefix()).append(CloudServiceOptions.getTopicSeparator())
+                    .append(CloudServiceOptions.getTopicAccountToken()).append(CloudServiceOptions.getTopicSeparator())
+                    .append(CloudServiceOptions.getTopicClientIdToken()).append(CloudServiceOptions.getTopicSeparator())
+                    .append(CloudServiceOptions.getTopicDictionarySuffix());
+
+            byte[] encodedPayload = encodeProtobufPayload(dictionary.toPayload(), DEFAULT_PUBLISHER, null);
+            // unlike the lifecycle messages, the dictionary must not be lost
+            int messageId = this.dataService.publish(sbTopic.toString(), encodedPayload, 1, true,
+                    CloudServiceOptions.getLifeCycleMessagePriority());
+            this.unconfirmedDictionaries.put(messageId, dictionary);
+            this.publishedDictionaryVersion = dictionary.getVersion();
+            logger.debug("Published metric dictionary version {} with {} names", dictionary.getVersion(),
+                    dictionary.getNames().size());
+        }
+    }
+
+    private void onDictionaryConfirmed(int messageId) {
+        synchronized (this.dictionaryLock) {
+            final MetricDictionary.Snapshot dictionary = this.unconfirmedDictionaries.remove(messageId);
+            final MetricDictionary.Snapshot confirmed = this.confirmedDictionary;
+            if (dictionary != null && (confirmed == null || dictionary.getVersion() > confirmed.getVersion())) {
+                this.confirmedDictionary = dictionary;
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the dictionary the payload is encoded with: the last version confirmed by the broker,
+     * whose names the receivers are known to have been sent. The names added later are sent by name.
+     * Returns null if there is no such version in the epoch of the dictionary, or if it cannot encode the payload,
+     * in which case the metrics are all sent by name.
+     */
+    private MetricDictionary.Snapshot getEncodingDictionary(MetricDictionary.Snapshot dictionary,
+            KuraPayload payload) {
+        final MetricDictionary.Snapshot confirmed = this.confirmedDictionary;
+        if (dictionary == null || confirmed == null || confirmed.getBase() != dictionary.getBase()
+                || !confirmed.canEncode(payload.metrics().keySet())) {
+            return null;
+        }
+        return confirmed;
+    }
+
+    private byte[] encodeProtobufPayload(KuraPayload payload, String publisher, MetricDictionary.Snapshot dictionary)
+            throws KuraException {
         byte[] bytes = new byte[0];
         if (payload == null) {
             return bytes;
         }
 
-        CloudPayloadEncoder encoder = new CloudPayloadProtoBufEncoderImpl(payload);
+        CloudPayloadEncoder encoder = new CloudPayloadProtoBufEncoderImpl(payload, dictionary);
         if (this.options.getEncodeGzip()) {
-            encoder = new CloudPayloadGZipEncoder(encoder);
+            encoder = new CloudPayloadGZipEncoder(encoder, getCompressionStats(publisher));
         }
 
         try {
@@ -834,6 +1060,24 @@ public class CloudServiceImpl
         return bytes;
     }
 
+    /**
+     * Returns the compression statistics of the publishers, by publisher.
+     */
+    public Map<String, CompressionStats> getCompressionStats() {
+        return Collections.unmodifiableMap(this.compressionStats);
+    }
+
+    private CompressionStats getCompressionStats(String publisher) {
+        final int minSize = this.options.getEncodeGzipMinSize();
+        return this.compressionStats.compute(publisher, (p, stats) -> {
+            // start over if the configuration has changed
+            if (stats == null || stats.getMinSize() != minSize) {
+                return new CompressionStats(p, minSize);
+            }
+            return stats;
+        });
+    }
+
     private byte[] encodeJsonPayload(KuraPayload payload) {
         return CloudPayloadJsonEncoder.getBytes(payload);
     }
@@ -957,7 +1201,8 @@ public class CloudServiceImpl
             fullTopic = encodeTopic(appId, deviceId, appTopic, isControl);
         }
 
-        byte[] appPayload = encodePayload(message.getPayload());
+        String publisher = (String) messageProps.get(APP_ID.name());
+        byte[] appPayload = encodePayload(message.getPayload(), publisher != null ? publisher : DEFAULT_PUBLISHER);
 
         int id = this.dataService.publish(fullTopic, appPayload, qos, retain, priority);
 
@@ -987,6 +1232,7 @@ public class CloudServiceImpl
         synchronized (this) {
             subscribers = this.registeredSubscribers.compute(subscriptionRecord, (t, list) -> {
                 if (list == null) {
+                    this.subscriptionTrie.add(t);
                     return new CopyOnWriteArrayList<>(Collections.singletonList(subscriber));
                 }
                 list.add(subscriber);
@@ -1011,6 +1257,7 @@ public class CloudServiceImpl
                 subscribers.removeIf(s -> s == subscriber);
 
                 if (subscribers.isEmpty()) {
+                    this.subscriptionTrie.remove(e.getKey());
                     toUnsubscribe.add(e.getKey());
                     return true;
                 } else {
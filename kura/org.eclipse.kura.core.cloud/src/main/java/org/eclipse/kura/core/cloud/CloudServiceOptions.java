@@ -31,6 +31,7 @@ public class CloudServiceOptions {
     private static final String TOPIC_BIRTH_SUFFIX = "MQTT/BIRTH";
     private static final String TOPIC_DISCONNECT_SUFFIX = "MQTT/DC";
     private static final String TOPIC_APPS_SUFFIX = "MQTT/APPS";
+    private static final String TOPIC_DICTIONARY_SUFFIX = "MQTT/DICTIONARY";
     private static final String TOPIC_CONTROL_PREFIX = "topic.control-prefix";
     private static final String TOPIC_CONTROL_PREFIX_DEFAULT = "$EDC";
     private static final String TOPIC_WILD_CARD = "#";
@@ -38,11 +39,19 @@ public class CloudServiceOptions {
     private static final String DEVICE_DISPLAY_NAME = "device.display-name";
     private static final String DEVICE_CUSTOM_NAME = "device.custom-name";
     private static final String ENCODE_GZIP = "encode.gzip";
+    private static final String ENCODE_GZIP_MIN_SIZE = "encode.gzip.min-size";
     private static final String REPUB_BIRTH_ON_GPS_LOCK = "republish.mqtt.birth.cert.on.gps.lock";
     private static final String REPUB_BIRTH_ON_MODEM_DETECT = "republish.mqtt.birth.cert.on.modem.detect";
     private static final String ENABLE_DFLT_SUBSCRIPTIONS = "enable.default.subscriptions";
     private static final String BIRTH_CERT_POLICY = "birth.cert.policy";
     private static final String PAYLOAD_ENCODING = "payload.encoding";
+    private static final String INBOUND_WORKERS = "inbound.workers";
+    private static final String INBOUND_QUEUE_CAPACITY = "inbound.queue.capacity";
+    private static final String INBOUND_OVERFLOW_POLICY = "inbound.queue.overflow-policy";
+
+    private static final int ENCODE_GZIP_MIN_SIZE_DEFAULT = 64;
+    private static final int INBOUND_WORKERS_DEFAULT = 1;
+    private static final int INBOUND_QUEUE_CAPACITY_DEFAULT = 1000;
 
     private static final int LIFECYCLE_QOS = 0;
     private static final int LIFECYCLE_PRIORITY = 0;
@@ -104,6 +113,19 @@ public class CloudServiceOptions {
         return encodeGzip;
     }
 
+    /**
+     * Returns the size in bytes below which the payloads are never compressed.
+     *
+     * @return an int value.
+     */
+    public int getEncodeGzipMinSize() {
+        int minSize = ENCODE_GZIP_MIN_SIZE_DEFAULT;
+        if (this.properties != null && this.properties.get(ENCODE_GZIP_MIN_SIZE) instanceof Integer) {
+            minSize = (Integer) this.properties.get(ENCODE_GZIP_MIN_SIZE);
+        }
+        return minSize;
+    }
+
     /**
      * Returns true if the current CloudService configuration
      * specifies the cloud client should republish the MQTT birth
@@ -220,6 +242,52 @@ public class CloudServiceOptions {
         return result;
     }
 
+    /**
+     * Returns the number of threads processing the inbound messages. If 0, the messages are processed on the
+     * transport callback thread.
+     *
+     * @return an int value.
+     */
+    public int getInboundWorkers() {
+        int workers = INBOUND_WORKERS_DEFAULT;
+        if (this.properties != null && this.properties.get(INBOUND_WORKERS) instanceof Integer) {
+            workers = Math.max(0, (Integer) this.properties.get(INBOUND_WORKERS));
+        }
+        return workers;
+    }
+
+    /**
+     * Returns the maximum number of inbound messages waiting to be processed by each worker.
+     *
+     * @return an int value.
+     */
+    public int getInboundQueueCapacity() {
+        int capacity = INBOUND_QUEUE_CAPACITY_DEFAULT;
+        if (this.properties != null && this.properties.get(INBOUND_QUEUE_CAPACITY) instanceof Integer) {
+            capacity = Math.max(1, (Integer) this.properties.get(INBOUND_QUEUE_CAPACITY));
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns what to do with an inbound message when the queue of its worker is full.
+     * By default, the transport callback thread is blocked until there is room in the queue.
+     *
+     * @return an {@link InboundMessagePool.OverflowPolicy} value.
+     */
+    public InboundMessagePool.OverflowPolicy getInboundOverflowPolicy() {
+        InboundMessagePool.OverflowPolicy policy = InboundMessagePool.OverflowPolicy.BLOCK;
+        if (this.properties != null && this.properties.get(INBOUND_OVERFLOW_POLICY) instanceof String) {
+            try {
+                policy = InboundMessagePool.OverflowPolicy
+                        .valueOf(((String) this.properties.get(INBOUND_OVERFLOW_POLICY)).toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Cannot parse the provided inbound overflow policy.", e);
+            }
+        }
+        return policy;
+    }
+
     public static String getTopicSeparator() {
         return TOPIC_SEPARATOR;
     }
@@ -244,6 +312,10 @@ public class CloudServiceOptions {
         return TOPIC_APPS_SUFFIX;
     }
 
+    public static String getTopicDictionarySuffix() {
+        return TOPIC_DICTIONARY_SUFFIX;
+    }
+
     public static String getTopicWildCard() {
         return TOPIC_WILD_CARD;
     }
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compression statistics of a publisher, which also decide whether its next payload is worth compressing.
+ * <p>
+ * Payloads smaller than the minimum size are never compressed. After a few payloads in a row have shrunk by less
+ * than {@link #POOR_RATIO}, the next payloads are sent uncompressed for a while, then compression is tried again.
+ * The statistics are logged when a payload is compressed, at most once per report interval: the report is not timed,
+ * nothing is logged while no payload is compressed. They can be read at any time through the getters.
+ */
+public class CompressionStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressionStats.class);
+
+    static final double POOR_RATIO = 0.9;
+    static final int POOR_STREAK = 3;
+    static final int BACKOFF_MESSAGES = 32;
+
+    static final long REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final String publisher;
+    private final int minSize;
+    private final LongSupplier clock;
+
+    private final AtomicInteger poorStreak = new AtomicInteger();
+    private final AtomicInteger backoff = new AtomicInteger();
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder compressedMessages = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final AtomicLong nextReport;
+
+    public CompressionStats(String publisher, int minSize) {
+        this(publisher, minSize, System::nanoTime);
+    }
+
+    CompressionStats(String publisher, int minSize, LongSupplier clock) {
+        this.publisher = publisher;
+        this.minSize = minSize;
+        this.clock = clock;
+        this.nextReport = new AtomicLong(clock.getAsLong() + REPORT_INTERVAL_NANOS);
+    }
+
+    public String getPublisher() {
+        return this.publisher;
+    }
+
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * Returns true if a payload of the given size should be compressed.
+     */
+    public boolean shouldCompress(int size) {
+        this.messages.increment();
+        if (size < this.minSize) {
+            return false;
+        }
+        return this.backoff.getAndUpdate(b -> b > 0 ? b - 1 : 0) == 0;
+    }
+
+    /**
+     * Records the outcome of the compression of a payload.
+     *
+     * @param size
+     *            the size of the payload
+     * @param compressedSize
+     *            the size of the compressed payload
+     * @param nanos
+     *            the time spent compressing the payload
+     * @param used
+     *            true if the compressed payload has been sent
+     */
+    public void record(int size, int compressedSize, long nanos, boolean used) {
+        this.compressionNanos.add(nanos);
+        if (used) {
+            this.compressedMessages.increment();
+            this.uncompressedBytes.add(size);
+            this.compressedBytes.add(compressedSize);
+        }
+
+        if (compressedSize > size * POOR_RATIO) {
+            if (this.poorStreak.incrementAndGet() >= POOR_STREAK) {
+                this.poorStreak.set(0);
+                this.backoff.set(BACKOFF_MESSAGES);
+                logger.debug("Payloads of {} do not compress well, sending the next {} uncompressed", this.publisher,
+                        BACKOFF_MESSAGES);
+            }
+        } else {
+            this.poorStreak.set(0);
+        }
+
+        long now = this.clock.getAsLong();
+        long due = this.nextReport.get();
+        if (now - due >= 0 && this.nextReport.compareAndSet(due, now + REPORT_INTERVAL_NANOS)) {
+            logger.info("Compression of {}: {}", this.publisher, this);
+        }
+    }
+
+    public long getMessages() {
+        return this.messages.sum();
+    }
+
+    public long getCompressedMessages() {
+        return this.compressedMessages.sum();
+    }
+
+    /**
+     * Returns the ratio between the compressed and the uncompressed sizes of the payloads sent compressed.
+     */
+    public double getCompressionRatio() {
+        long uncompressed = this.uncompressedBytes.sum();
+        return uncompressed == 0 ? 1 : (double) this.compressedBytes.sum() / uncompressed;
+    }
+
+    public long getCompressionTime(TimeUnit unit) {
+        return unit.convert(this.compressionNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d messages, %d compressed, ratio %.2f, %d ms compressing", getMessages(),
+                getCompressedMessages(), getCompressionRatio(), getCompressionTime(TimeUnit.MILLISECONDS));
+    }
+}
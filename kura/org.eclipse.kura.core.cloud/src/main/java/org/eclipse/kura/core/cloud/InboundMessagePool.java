@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the inbound messages on a fixed number of worker threads, off the transport callback thread.
+ * <p>
+ * Each worker owns a bounded queue, or lane. The messages are assigned to the lanes by hashing their topic, so that
+ * the messages received on a topic are processed in order while different topics are processed in parallel.
+ * When a lane is full, the message is either dropped or the caller is blocked until there is room in the lane,
+ * depending on the {@link OverflowPolicy}.
+ * <p>
+ * A pool replacing another one only starts processing once the previous pool has processed the messages it had
+ * already queued, so that the order of the messages on a topic is kept across reconfigurations.
+ * The queue depths and the processed and dropped message counts are logged at most once per minute.
+ */
+public class InboundMessagePool {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboundMessagePool.class);
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final long DROP_REPORT_INTERVAL = 1000;
+    private static final long STATS_REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long PREVIOUS_DRAIN_TIMEOUT_MILLIS = 30000;
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private final Lane[] lanes;
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
+    private final String name;
+    private final InboundMessagePool previous;
+
+    private final LongAdder processedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final AtomicLong nextStatsReport = new AtomicLong(System.nanoTime() + STATS_REPORT_INTERVAL_NANOS);
+
+    public InboundMessagePool(String name, int workers, int capacity, OverflowPolicy overflowPolicy) {
+        this(name, workers, capacity, overflowPolicy, null);
+    }
+
+    /**
+     * Creates a pool replacing the previous one, the workers wait for the previous pool to terminate before
+     * processing any message.
+     *
+     * @param previous
+     *            the pool being replaced, or null. The caller is responsible for shutting it down.
+     */
+    public InboundMessagePool(String name, int workers, int capacity, OverflowPolicy overflowPolicy,
+            InboundMessagePool previous) {
+        if (workers < 1 || capacity < 1) {
+            throw new IllegalArgumentException("The number of workers and the capacity must be positive");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = capacity;
+        this.name = name;
+        this.previous = previous;
+        this.lanes = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            this.lanes[i] = new Lane(name + "-" + i, capacity);
+        }
+    }
+
+    public int getWorkers() {
+        return this.lanes.length;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Queues the processing of a message received on the topic.
+     *
+     * @return false if the message has been dropped because its lane is full or the pool has been shut down
+     */
+    public boolean submit(String topic, Runnable task) {
+        Lane lane = this.lanes[Math.floorMod(topic.hashCode(), this.lanes.length)];
+        if (lane.stopped) {
+            return false;
+        }
+
+        if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                lane.queue.put(task);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (lane.queue.offer(task)) {
+            return true;
+        }
+
+        this.droppedCount.increment();
+        long dropped = this.droppedCount.sum();
+        if (dropped == 1 || dropped % DROP_REPORT_INTERVAL == 0) {
+            logger.warn("Inbound queue full, dropped message on topic {} ({} dropped so far)", topic, dropped);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of messages waiting to be processed in all the lanes.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : this.lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of messages waiting to be processed in each lane.
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[this.lanes.length];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = this.lanes[i].queue.size();
+        }
+        return depths;
+    }
+
+    public long getProcessedMessages() {
+        return this.processedCount.sum();
+    }
+
+    public long getDroppedMessages() {
+        return this.droppedCount.sum();
+    }
+
+    /**
+     * Stops accepting messages, the messages already queued are still processed.
+     */
+    public void shutdown() {
+        for (Lane lane : this.lanes) {
+            lane.stopped = true;
+        }
+    }
+
+    public boolean isShutdown() {
+        return this.lanes[0].stopped;
+    }
+
+    /**
+     * Waits for the workers to exit after a shutdown, that is for the queued messages to be processed.
+     *
+     * @return false if the timeout elapsed before all the workers exited
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : this.lanes) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0 && lane.thread.isAlive()) {
+                return false;
+            }
+            lane.thread.join(Math.max(remaining, 1));
+            if (lane.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void awaitPrevious() {
+        try {
+            if (!this.previous.awaitTermination(PREVIOUS_DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("{}: the previous inbound pool did not terminate in {} ms, starting anyway", this.name,
+                        PREVIOUS_DRAIN_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reportStatistics() {
+        long now = System.nanoTime();
+        long due = this.nextStatsReport.get();
+        if (now - due >= 0 && this.nextStatsReport.compareAndSet(due, now + STATS_REPORT_INTERVAL_NANOS)) {
+            logger.info("{}: queue depth {} {}, {} messages processed, {} dropped", this.name, getQueueDepth(),
+                    Arrays.toString(getQueueDepths()), getProcessedMessages(), getDroppedMessages());
+        }
+    }
+
+    /**
+     * Stops accepting messages and discards the messages already queued.
+     */
+    public void shutdownNow() {
+        for (Lane lane : this.lanes) {
+            lane.stopped = true;
+            lane.queue.clear();
+            lane.thread.interrupt();
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private volatile boolean stopped;
+
+        private Lane(String name, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            if (InboundMessagePool.this.previous != null) {
+                awaitPrevious();
+            }
+            while (!this.stopped || !this.queue.isEmpty()) {
+                Runnable task;
+                try {
+                    task = this.queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    if (this.stopped) {
+                        return;
+                    }
+                    continue;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Error processing inbound message", e);
+                }
+                InboundMessagePool.this.processedCount.increment();
+                reportStatistics();
+            }
+        }
+    }
+}
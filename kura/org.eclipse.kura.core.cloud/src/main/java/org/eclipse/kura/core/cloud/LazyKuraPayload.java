@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+
+/**
+ * A {@link KuraPayload} decoded from the received bytes the first time one of its members is accessed.
+ * <p>
+ * The same instance is handed to all the listeners of a message, so the bytes are decoded at most once, and not at
+ * all if no listener looks at the payload.
+ */
+final class LazyKuraPayload extends KuraPayload {
+
+    private Supplier<KuraPayload> decoder;
+    private volatile boolean decoded;
+
+    LazyKuraPayload(Supplier<KuraPayload> decoder) {
+        this.decoder = decoder;
+    }
+
+    boolean isDecoded() {
+        return this.decoded;
+    }
+
+    private void ensureDecoded() {
+        if (this.decoded) {
+            return;
+        }
+        synchronized (this) {
+            if (this.decoded) {
+                return;
+            }
+            KuraPayload payload = this.decoder.get();
+            super.setTimestamp(payload.getTimestamp());
+            super.setPosition(payload.getPosition());
+            for (Map.Entry<String, Object> metric : payload.metrics().entrySet()) {
+                super.addMetric(metric.getKey(), metric.getValue());
+            }
+            super.setBody(payload.getBody());
+
+            this.decoder = null;
+            this.decoded = true;
+        }
+    }
+
+    @Override
+    public Date getTimestamp() {
+        ensureDecoded();
+        return super.getTimestamp();
+    }
+
+    @Override
+    public void setTimestamp(Date timestamp) {
+        ensureDecoded();
+        super.setTimestamp(timestamp);
+    }
+
+    @Override
+    public KuraPosition getPosition() {
+        ensureDecoded();
+        return super.getPosition();
+    }
+
+    @Override
+    public void setPosition(KuraPosition position) {
+        ensureDecoded();
+        super.setPosition(position);
+    }
+
+    @Override
+    public Object getMetric(String name) {
+        ensureDecoded();
+        return super.getMetric(name);
+    }
+
+    @Override
+    public void addMetric(String name, Object value) {
+        ensureDecoded();
+        super.addMetric(name, value);
+    }
+
+    @Override
+    public void removeMetric(String name) {
+        ensureDecoded();
+        super.removeMetric(name);
+    }
+
+    @Override
+    public void removeAllMetrics() {
+        ensureDecoded();
+        super.removeAllMetrics();
+    }
+
+    @Override
+    public Set<String> metricNames() {
+        ensureDecoded();
+        return super.metricNames();
+    }
+
+    @Override
+    public Iterator<String> metricsIterator() {
+        ensureDecoded();
+        return super.metricsIterator();
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        ensureDecoded();
+        return super.metrics();
+    }
+
+    @Override
+    public byte[] getBody() {
+        ensureDecoded();
+        return super.getBody();
+    }
+
+    @Override
+    public void setBody(byte[] body) {
+        ensureDecoded();
+        super.setBody(body);
+    }
+}
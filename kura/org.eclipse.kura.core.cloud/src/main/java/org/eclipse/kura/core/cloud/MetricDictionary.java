@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import org.eclipse.kura.message.KuraPayload;
+
+/**
+ * The dictionary of the metric names used by the {@code kura-protobuf-dictionary} payload encoding, where the
+ * metrics are sent by index instead of by name.
+ * <p>
+ * The dictionary is append-only within an epoch: a name keeps its index for the lifetime of the epoch, so that the
+ * payloads encoded with a version of the dictionary can be decoded with any later version of the same epoch. Each
+ * time names are added, the version is incremented. The dictionary is bounded: when a name would exceed the
+ * maximum number of names, a new epoch starts from an empty dictionary. Epochs are identified by their base, the
+ * first version of the epoch. Bases start from the current time in milliseconds and are always greater than the
+ * versions of the previous epoch, so that versions keep increasing across epochs and restarts.
+ */
+public class MetricDictionary {
+
+    public static final String BASE_METRIC = "dictionary.base";
+    public static final String VERSION_METRIC = "dictionary.version";
+
+    static final int DEFAULT_MAX_NAMES = 4096;
+
+    /**
+     * An immutable version of the dictionary.
+     */
+    public static final class Snapshot {
+
+        private final long base;
+        private final long version;
+        private final List<String> names;
+        private final Map<String, Integer> indices;
+
+        Snapshot(long base, long version, List<String> names) {
+            this.base = base;
+            this.version = version;
+            this.names = Collections.unmodifiableList(names);
+            Map<String, Integer> map = new HashMap<>(names.size() * 2);
+            for (int i = 0; i < names.size(); i++) {
+                map.put(names.get(i), i);
+            }
+            this.indices = map;
+        }
+
+        public long getBase() {
+            return this.base;
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        public List<String> getNames() {
+            return this.names;
+        }
+
+        /**
+         * Returns the index of the metric name, or -1 if the name is not in the dictionary.
+         */
+        public int getIndex(String name) {
+            Integer index = this.indices.get(name);
+            return index != null ? index : -1;
+        }
+
+        boolean containsAll(Collection<String> names) {
+            for (String name : names) {
+                if (!this.indices.containsKey(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns true if a payload with the given metric names can be encoded with this version: the names that are
+         * not in the dictionary are sent by name, so they must not be mistaken for an index.
+         */
+        boolean canEncode(Collection<String> names) {
+            for (String name : names) {
+                if (isIndex(name) && !this.indices.containsKey(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the payload publishing this version of the dictionary: the base and the version, plus one string
+         * metric per name, named after its index.
+         */
+        public KuraPayload toPayload() {
+            KuraPayload payload = new KuraPayload();
+            payload.addMetric(BASE_METRIC, this.base);
+            payload.addMetric(VERSION_METRIC, this.version);
+            for (int i = 0; i < this.names.size(); i++) {
+                payload.addMetric(Integer.toString(i), this.names.get(i));
+            }
+            return payload;
+        }
+    }
+
+    private final int maxNames;
+    private final LongSupplier clock;
+    private volatile Snapshot current;
+
+    public MetricDictionary() {
+        this(DEFAULT_MAX_NAMES, System::currentTimeMillis);
+    }
+
+    MetricDictionary(long base) {
+        this(DEFAULT_MAX_NAMES, () -> base);
+    }
+
+    MetricDictionary(int maxNames, LongSupplier clock) {
+        this.maxNames = maxNames;
+        this.clock = clock;
+        long base = clock.getAsLong();
+        this.current = new Snapshot(base, base, new ArrayList<>());
+    }
+
+    /**
+     * Returns true if the metric name of an encoded payload is an index in the dictionary, as opposed to a name
+     * sent as it is.
+     */
+    static boolean isIndex(String name) {
+        if (name.isEmpty() || name.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Snapshot getSnapshot() {
+        return this.current;
+    }
+
+    /**
+     * Returns a version of the dictionary containing all the names, adding the missing ones.
+     * If the names do not fit in the current epoch, they are added to a new epoch.
+     */
+    public Snapshot resolve(Collection<String> names) {
+        Snapshot snapshot = this.current;
+        if (snapshot.containsAll(names)) {
+            return snapshot;
+        }
+
+        synchronized (this) {
+            snapshot = this.current;
+            Set<String> added = new LinkedHashSet<>();
+            for (String name : names) {
+                if (snapshot.getIndex(name) < 0) {
+                    added.add(name);
+                }
+            }
+            if (added.isEmpty()) {
+                return snapshot;
+            }
+
+            if (snapshot.names.size() + added.size() > this.maxNames && !snapshot.names.isEmpty()) {
+                // start a new epoch with the names of the payload only
+                long base = Math.max(this.clock.getAsLong(), snapshot.version + 1);
+                snapshot = new Snapshot(base, base + 1, new ArrayList<>(new LinkedHashSet<>(names)));
+            } else {
+                List<String> updated = new ArrayList<>(snapshot.names.size() + added.size());
+                updated.addAll(snapshot.names);
+                updated.addAll(added);
+                snapshot = new Snapshot(snapshot.base, snapshot.version + 1, updated);
+            }
+            this.current = snapshot;
+            return snapshot;
+        }
+    }
+}
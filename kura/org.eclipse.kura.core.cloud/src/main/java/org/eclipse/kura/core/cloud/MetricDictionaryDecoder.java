@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.kura.KuraInvalidMessageException;
+import org.eclipse.kura.message.KuraPayload;
+
+/**
+ * Reference decoder of the payloads of a device using the {@code kura-protobuf-dictionary} encoding.
+ * <p>
+ * The decoder is updated with the dictionaries published by the device on the
+ * {@code $EDC/<account-name>/<client-id>/MQTT/DICTIONARY} topic, where the last version is retained. As a dictionary is append-only, the payloads encoded with any version of a dictionary, from its
+ * base to the last version received, can be decoded. The dictionaries of the previous epochs and runs of the device
+ * are kept, so that the stored messages published after a new epoch or a restart can still be decoded.
+ * <p>
+ * The metrics whose names were not yet known by the receivers when the payload was encoded are sent by name, they
+ * are decoded as they are.
+ */
+public class MetricDictionaryDecoder {
+
+    private static final int MAX_DICTIONARIES = 16;
+
+    private static final class Entry {
+
+        private final long version;
+        private final List<String> names;
+
+        private Entry(long version, List<String> names) {
+            this.version = version;
+            this.names = names;
+        }
+    }
+
+    // by base
+    private final TreeMap<Long, Entry> dictionaries = new TreeMap<>();
+
+    /**
+     * Updates the decoder with a dictionary published by the device.
+     *
+     * @throws KuraInvalidMessageException
+     *             if the dictionary is invalid
+     */
+    public synchronized void update(KuraPayload dictionary) throws KuraInvalidMessageException {
+        Object base = dictionary.getMetric(MetricDictionary.BASE_METRIC);
+        Object version = dictionary.getMetric(MetricDictionary.VERSION_METRIC);
+        if (!(base instanceof Long) || !(version instanceof Long)) {
+            throw new KuraInvalidMessageException("Missing dictionary base or version");
+        }
+
+        Entry current = this.dictionaries.get(base);
+        if (current != null && current.version >= (Long) version) {
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0;; i++) {
+            Object name = dictionary.getMetric(Integer.toString(i));
+            if (name == null) {
+                break;
+            }
+            names.add(name.toString());
+        }
+
+        this.dictionaries.put((Long) base, new Entry((Long) version, names));
+        while (this.dictionaries.size() > MAX_DICTIONARIES) {
+            this.dictionaries.pollFirstEntry();
+        }
+    }
+
+    /**
+     * Decodes a payload, replacing the metric indices with the metric names.
+     * The payloads that have not been encoded with a dictionary are returned as they are.
+     *
+     * @throws KuraInvalidMessageException
+     *             if the dictionary the payload has been encoded with is not known, or if the payload contains an
+     *             unknown metric index
+     */
+    public KuraPayload decode(byte[] bytes) throws KuraInvalidMessageException, IOException {
+        CloudPayloadProtoBufDecoderImpl decoder = new CloudPayloadProtoBufDecoderImpl(bytes);
+        KuraPayload payload = decoder.buildFromByteArray();
+        Long version = decoder.getDictionaryVersion();
+        if (version == null) {
+            return payload;
+        }
+
+        List<String> names = null;
+
+        KuraPayload result = new KuraPayload();
+        result.setTimestamp(payload.getTimestamp());
+        result.setPosition(payload.getPosition());
+        result.setBody(payload.getBody());
+        for (Map.Entry<String, Object> metric : payload.metrics().entrySet()) {
+            if (!MetricDictionary.isIndex(metric.getKey())) {
+                // sent by name
+                result.addMetric(metric.getKey(), metric.getValue());
+                continue;
+            }
+            if (names == null) {
+                names = getNames(version);
+            }
+            int index = Integer.parseInt(metric.getKey());
+            if (index >= names.size()) {
+                throw new KuraInvalidMessageException("Unknown metric index " + index + " in dictionary version "
+                        + version);
+            }
+            result.addMetric(names.get(index), metric.getValue());
+        }
+        return result;
+    }
+
+    private synchronized List<String> getNames(long version) throws KuraInvalidMessageException {
+        Map.Entry<Long, Entry> dictionary = this.dictionaries.floorEntry(version);
+        if (dictionary == null || dictionary.getValue().version < version) {
+            throw new KuraInvalidMessageException("Unknown dictionary version " + version);
+        }
+        return dictionary.getValue().names;
+    }
+}
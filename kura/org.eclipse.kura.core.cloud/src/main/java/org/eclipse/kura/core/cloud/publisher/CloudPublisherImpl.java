@@ -23,8 +23,6 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.eclipse.kura.KuraErrorCode;
 import org.eclipse.kura.KuraException;
@@ -37,6 +35,7 @@ import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.core.cloud.CloudPublisherDeliveryListener;
 import org.eclipse.kura.core.cloud.CloudServiceImpl;
 import org.eclipse.kura.core.message.MessageType;
+import org.eclipse.kura.core.util.TopicTemplate;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
@@ -88,8 +87,8 @@ public class CloudPublisherImpl
 
     private static final Logger logger = LoggerFactory.getLogger(CloudPublisherImpl.class);
 
-    private static final String TOPIC_PATTERN_STRING = "\\$([^\\s/]+)";
-    private static final Pattern TOPIC_PATTERN = Pattern.compile(TOPIC_PATTERN_STRING);
+    // '$' followed by the name of a message property
+    private static final char TOPIC_VARIABLE_MARKER = '$';
 
     private final Set<CloudConnectionListener> cloudConnectionListeners = new CopyOnWriteArraySet<>();
     private final Set<CloudDeliveryListener> cloudDeliveryListeners = new CopyOnWriteArraySet<>();
@@ -98,6 +97,7 @@ public class CloudPublisherImpl
     private ServiceTracker<CloudConnectionManager, CloudConnectionManager> cloudConnectionManagerTracker;
 
     private CloudPublisherOptions cloudPublisherOptions;
+    private TopicTemplate appTopicTemplate;
     private CloudServiceImpl cloudServiceImpl;
     private BundleContext bundleContext;
 
@@ -108,6 +108,8 @@ public class CloudPublisherImpl
         this.bundleContext = componentContext.getBundleContext();
 
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
+        this.appTopicTemplate = TopicTemplate.compile(this.cloudPublisherOptions.getAppTopic(),
+                TOPIC_VARIABLE_MARKER);
 
         this.cloudConnectionManagerTrackerCustomizer = new CloudConnectionManagerTrackerCustomizer();
         initCloudConnectionManagerTracking();
@@ -119,6 +121,8 @@ public class CloudPublisherImpl
         logger.debug("Updating Cloud Publisher...");
 
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
+        this.appTopicTemplate = TopicTemplate.compile(this.cloudPublisherOptions.getAppTopic(),
+                TOPIC_VARIABLE_MARKER);
 
         if (nonNull(this.cloudConnectionManagerTracker)) {
             this.cloudConnectionManagerTracker.close();
@@ -151,7 +155,7 @@ public class CloudPublisherImpl
             throw new IllegalArgumentException();
         }
 
-        String appTopic = fillAppTopicPlaceholders(this.cloudPublisherOptions.getAppTopic(), message);
+        String appTopic = this.appTopicTemplate.expand(message.getProperties()::get);
 
         int qos = this.cloudPublisherOptions.getQos();
         boolean retain = this.cloudPublisherOptions.isRetain();
@@ -171,25 +175,6 @@ public class CloudPublisherImpl
         return this.cloudServiceImpl.publish(publishMessage);
     }
 
-    private String fillAppTopicPlaceholders(String appTopic, KuraMessage message) {
-        Matcher matcher = TOPIC_PATTERN.matcher(appTopic);
-        StringBuffer buffer = new StringBuffer();
-
-        while (matcher.find()) {
-            Map<String, Object> properties = message.getProperties();
-            if (properties.containsKey(matcher.group(1))) {
-                String replacement = matcher.group(0);
-
-                Object value = properties.get(matcher.group(1));
-                if (replacement != null) {
-                    matcher.appendReplacement(buffer, value.toString());
-                }
-            }
-        }
-        matcher.appendTail(buffer);
-        return buffer.toString();
-    }
-
     private void initCloudConnectionManagerTracking() {
         String selectedCloudServicePid = this.cloudPublisherOptions.getCloudServicePid();
         String filterString = String.format("(&(%s=%s)(kura.service.pid=%s))", Constants.OBJECTCLASS,
@@ -19,11 +19,13 @@ public class CloudSubscriptionRecord {
     private final String topic;
     private final int qos;
 
-    private String topicFilter;
+    private final String topicFilter;
 
     public CloudSubscriptionRecord(final String topic, final int qos) {
         this.topic = topic;
         this.qos = qos;
+        this.topicFilter = topic.replaceAll(CloudServiceOptions.getTopicAccountToken(), "+")
+                .replaceAll(CloudServiceOptions.getTopicClientIdToken(), "+");
     }
 
     public String getTopic() {
@@ -34,11 +36,14 @@ public class CloudSubscriptionRecord {
         return this.qos;
     }
 
+    /**
+     * Returns the topic with the account name and client ID tokens replaced by single level wildcards.
+     */
+    public String getTopicFilter() {
+        return this.topicFilter;
+    }
+
     public boolean matches(final String topic) {
-        if (topicFilter == null) {
-            topicFilter = this.topic.replaceAll(CloudServiceOptions.getTopicAccountToken(), "+")
-                    .replaceAll(CloudServiceOptions.getTopicClientIdToken(), "+");
-        }
         return MqttTopicUtil.isMatched(this.topicFilter, topic);
     }
 
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud.subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Indexes the {@link CloudSubscriptionRecord}s by topic level, so that the subscriptions matching a topic are
+ * found in a number of steps proportional to the number of levels of the topic, whatever the number of
+ * subscriptions.
+ * <p>
+ * The {@code +} and {@code #} wildcards, as well as the account name and client ID tokens, which match any single
+ * level, are supported. Since the tokens are indexed as {@code +}, a node can hold several subscriptions, like
+ * {@code #account-name/a} and {@code +/a}.
+ * Subscriptions are added and removed under the trie monitor, while topics can be matched concurrently without
+ * locking.
+ */
+public class SubscriptionTrie {
+
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final Set<CloudSubscriptionRecord> records = new CopyOnWriteArraySet<>();
+
+        private boolean isEmpty() {
+            return this.records.isEmpty() && this.children.isEmpty();
+        }
+    }
+
+    private final Node root = new Node();
+
+    public synchronized void add(final CloudSubscriptionRecord record) {
+        Node node = this.root;
+        for (final String level : split(record.getTopicFilter())) {
+            node = node.children.computeIfAbsent(level, l -> new Node());
+        }
+        // replace the subscription to the same topic, if any
+        node.records.remove(record);
+        node.records.add(record);
+    }
+
+    public synchronized void remove(final CloudSubscriptionRecord record) {
+        remove(this.root, split(record.getTopicFilter()), 0, record);
+    }
+
+    public synchronized void clear() {
+        this.root.children.clear();
+        this.root.records.clear();
+    }
+
+    /**
+     * Returns the subscriptions whose topic filter matches the topic.
+     */
+    public List<CloudSubscriptionRecord> match(final String topic) {
+        final List<CloudSubscriptionRecord> result = new ArrayList<>();
+        match(this.root, split(topic), 0, result);
+        return result;
+    }
+
+    private static void remove(final Node node, final String[] levels, final int index,
+            final CloudSubscriptionRecord record) {
+        if (index == levels.length) {
+            node.records.remove(record);
+            return;
+        }
+        final Node child = node.children.get(levels[index]);
+        if (child == null) {
+            return;
+        }
+        remove(child, levels, index + 1, record);
+        if (child.isEmpty()) {
+            node.children.remove(levels[index]);
+        }
+    }
+
+    private static void match(final Node node, final String[] levels, final int index,
+            final List<CloudSubscriptionRecord> result) {
+        // a multi level wildcard also matches the parent level
+        final Node multiLevel = node.children.get(MULTI_LEVEL_WILDCARD);
+        if (multiLevel != null) {
+            result.addAll(multiLevel.records);
+        }
+
+        if (index == levels.length) {
+            result.addAll(node.records);
+            return;
+        }
+
+        final String level = levels[index];
+        if (!SINGLE_LEVEL_WILDCARD.equals(level) && !MULTI_LEVEL_WILDCARD.equals(level)) {
+            final Node exact = node.children.get(level);
+            if (exact != null) {
+                match(exact, levels, index + 1, result);
+            }
+        }
+
+        final Node singleLevel = node.children.get(SINGLE_LEVEL_WILDCARD);
+        if (singleLevel != null) {
+            match(singleLevel, levels, index + 1, result);
+        }
+    }
+
+    private static String[] split(final String topic) {
+        return topic.split("/", -1);
+    }
+}
@@ -11,19 +11,26 @@
  *******************************************************************************/
 package org.eclipse.kura.core.data;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -37,8 +44,18 @@ import org.eclipse.kura.KuraTimeoutException;
 import org.eclipse.kura.KuraTooManyInflightMessagesException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
+import org.eclipse.kura.core.data.DataServiceOptions.StoreType;
 import org.eclipse.kura.core.data.store.DbDataStore;
-import org.eclipse.kura.core.internal.data.TokenBucket;
+import org.eclipse.kura.core.data.store.FileDataStore;
+import org.eclipse.kura.core.data.store.GroupCommitter;
+import org.eclipse.kura.core.data.DataServiceOptions.RateLimitBand;
+import org.eclipse.kura.core.internal.data.InFlightWindow;
+import org.eclipse.kura.core.internal.data.MetricsJsonWriter;
+import org.eclipse.kura.core.internal.data.PriorityLanes;
+import org.eclipse.kura.core.internal.data.PriorityRateLimiter;
+import org.eclipse.kura.core.internal.data.RateMeter;
+import org.eclipse.kura.core.internal.data.RateLimiter;
+import org.eclipse.kura.core.internal.data.RingBuffer;
 import org.eclipse.kura.data.DataService;
 import org.eclipse.kura.data.DataTransportService;
 import org.eclipse.kura.data.DataTransportToken;
@@ -48,6 +65,7 @@ import org.eclipse.kura.db.H2DbService;
 import org.eclipse.kura.status.CloudConnectionStatusComponent;
 import org.eclipse.kura.status.CloudConnectionStatusEnum;
 import org.eclipse.kura.status.CloudConnectionStatusService;
+import org.eclipse.kura.system.SystemService;
 import org.eclipse.kura.watchdog.CriticalComponent;
 import org.eclipse.kura.watchdog.WatchdogService;
 import org.eclipse.paho.client.mqttv3.MqttException;
@@ -62,8 +80,8 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DataServiceImpl implements DataService, DataTransportListener, ConfigurableComponent,
-        CloudConnectionStatusComponent, CriticalComponent {
+public class DataServiceImpl implements DataService, DataServiceMetrics, DataTransportListener,
+        ConfigurableComponent, CloudConnectionStatusComponent, CriticalComponent {
 
     private static final Logger logger = LoggerFactory.getLogger(DataServiceImpl.class);
 
@@ -81,17 +99,43 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     // A dedicated executor for the publishing task
     private ExecutorService publisherExecutor;
 
-    private DataStore store;
+    private volatile DataStore store;
+    // Combines the messages stored by concurrent publishers, if enabled
+    private volatile GroupCommitter groupCommitter;
+    private String storeName;
 
-    private Map<DataTransportToken, Integer> inFlightMsgIds;
+    // IDs of the stored messages waiting to be published, by priority
+    private final PriorityLanes lanes = new PriorityLanes();
+
+    // Unbounded until the service is activated
+    private final InFlightWindow inFlightWindow = new InFlightWindow(Integer.MAX_VALUE);
+
+    // Messages confirmed before the publisher could track them. Only accessed by the publisher thread.
+    private final List<Integer> earlyConfirmedMsgIds = new ArrayList<>();
+
+    // Messages handed to the transport whose published bookkeeping is not complete yet, mapped to true if
+    // they have been confirmed in the meantime. Entries are added by the publisher thread only.
+    private final Map<Integer, Boolean> unsettledMsgIds = new ConcurrentHashMap<>();
+
+    // QoS 0 messages published through the volatile fast path, bypassing the store.
+    // The publisher thread is the only consumer.
+    private volatile RingBuffer<DataMessage> volatileMessages;
+    private final AtomicInteger volatileMessageIds = new AtomicInteger();
 
     private ScheduledExecutorService congestionExecutor;
-    private ScheduledFuture<?> congestionFuture;
+    private Future<?> congestionFuture;
+
+    private final RateMeter storeMeter = new RateMeter();
+    private final RateMeter publishMeter = new RateMeter();
+    private final LongAdder throttledPublishes = new LongAdder();
+    private final LongAdder congestionEvents = new LongAdder();
+    private ScheduledExecutorService metricsExecutor;
+    private ScheduledFuture<?> metricsFuture;
 
     private CloudConnectionStatusService cloudConnectionStatusService;
     private CloudConnectionStatusEnum notificationStatus = CloudConnectionStatusEnum.OFF;
 
-    private TokenBucket throttle;
+    private volatile PriorityRateLimiter throttle;
 
     private final Lock lock = new ReentrantLock();
     private boolean notifyPending;
@@ -123,8 +167,11 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         this.connectionMonitorExecutor = Executors.newSingleThreadScheduledExecutor();
         this.publisherExecutor = Executors.newSingleThreadExecutor();
         this.congestionExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.metricsExecutor = Executors.newSingleThreadScheduledExecutor();
 
+        updateInFlightCapacity();
         createThrottle();
+        createVolatileMessages();
         submitPublishingWork();
 
         String[] parts = pid.split("-");
@@ -132,9 +179,9 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         if (parts.length > 1) {
             table += "_" + parts[1];
         }
-        this.store = new DbDataStore(table);
+        this.storeName = table;
 
-        restartDbServiceTracker(this.dataServiceOptions.getDbServiceInstancePid());
+        startStore();
 
         this.dataServiceListeners = new DataServiceListenerS(componentContext);
 
@@ -144,6 +191,8 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         this.dataTransportService.addDataTransportListener(this);
 
         startConnectionMonitorTask();
+
+        scheduleMetricsReport();
     }
 
     private void restartDbServiceTracker(String kuraServicePid) {
@@ -170,6 +219,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                                 DataServiceImpl.this.store.update(
                                         DataServiceImpl.this.dataServiceOptions.getStoreHousekeeperInterval(),
                                         DataServiceImpl.this.dataServiceOptions.getStorePurgeAge(),
+                                        DataServiceImpl.this.dataServiceOptions.getStorePurgeChunkSize(),
                                         DataServiceImpl.this.dataServiceOptions.getStoreCapacity());
                             }
                         }
@@ -194,23 +244,88 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         }
     }
 
+    private void startStore() {
+        this.lanes.clear();
+        if (this.dataServiceOptions.getStoreType() == StoreType.FILE) {
+            this.store = new FileDataStore(getStoreDirectory());
+            createGroupCommitter();
+            startDbStore();
+            signalPublisher();
+        } else {
+            this.store = new DbDataStore(this.storeName);
+            createGroupCommitter();
+            restartDbServiceTracker(this.dataServiceOptions.getDbServiceInstancePid());
+        }
+    }
+
+    private void stopStore() {
+        // Closing the tracker unsets the H2DbService, if any
+        stopDbServiceTracker();
+        this.store.stop();
+    }
+
+    private File getStoreDirectory() {
+        String directory = this.dataServiceOptions.getStoreFileDirectory();
+        if (directory.isEmpty()) {
+            directory = getKuraDataDirectory();
+        }
+        return new File(directory, this.storeName);
+    }
+
+    private String getKuraDataDirectory() {
+        ServiceReference<SystemService> reference = this.componentContext.getBundleContext()
+                .getServiceReference(SystemService.class);
+        SystemService systemService = reference == null ? null
+                : this.componentContext.getBundleContext().getService(reference);
+        if (systemService == null) {
+            String directory = System.getProperty("java.io.tmpdir");
+            logger.warn("SystemService not available, using {} as store directory", directory);
+            return directory;
+        }
+        try {
+            return systemService.getKuraDataDirectory();
+        } finally {
+            this.componentContext.getBundleContext().ungetService(reference);
+        }
+    }
+
+    private boolean isStoreAttached() {
+        return this.dataServiceOptions.getStoreType() == StoreType.FILE || this.dbService != null;
+    }
+
     private synchronized void startDbStore() {
         try {
+            this.store.setPayloadCompression(this.dataServiceOptions.isStorePayloadCompressionEnabled());
             this.store.start(this.dbService, this.dataServiceOptions.getStoreHousekeeperInterval(),
-                    this.dataServiceOptions.getStorePurgeAge(), this.dataServiceOptions.getStoreCapacity());
+                    this.dataServiceOptions.getStorePurgeAge(), this.dataServiceOptions.getStorePurgeChunkSize(),
+                    this.dataServiceOptions.getStoreCapacity());
+
+            this.lanes.reset(this.store.allUnpublishedMessagesNoPayload());
+            logger.info("Restored unpublished messages from store: {}", this.lanes);
 
             // The initial list of in-flight messages
             List<DataMessage> inFlightMsgs = this.store.allInFlightMessagesNoPayload();
 
-            // The map associating a DataTransportToken with a message ID
-            this.inFlightMsgIds = new ConcurrentHashMap<>();
+            this.inFlightWindow.clear();
 
             if (inFlightMsgs != null) {
+                // Only the messages of the latest session can still be confirmed
+                String sessionId = null;
+                int lastMsgId = Integer.MIN_VALUE;
+                for (DataMessage message : inFlightMsgs) {
+                    if (message.getId() > lastMsgId) {
+                        lastMsgId = message.getId();
+                        sessionId = message.getSessionId();
+                    }
+                }
+
                 for (DataMessage message : inFlightMsgs) {
+                    if (sessionId == null || !sessionId.equals(message.getSessionId())) {
+                        logger.debug("Skipped in-flight message of a previous session. ID: {}", message.getId());
+                        continue;
+                    }
 
-                    DataTransportToken token = new DataTransportToken(message.getPublishedMessageId(),
-                            message.getSessionId());
-                    this.inFlightMsgIds.put(token, message.getId());
+                    this.inFlightWindow.restore(message.getPublishedMessageId(), sessionId, message.getId());
 
                     logger.debug("Restored in-fligh messages from store. Topic: {}, ID: {}, MQTT message ID: {}",
                             new Object[] { message.getTopic(), message.getId(), message.getPublishedMessageId() });
@@ -226,26 +341,50 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
 
         stopConnectionMonitorTask();
 
-        final String oldDbServicePid = this.dataServiceOptions.getDbServiceInstancePid();
+        final DataServiceOptions oldDataServiceOptions = this.dataServiceOptions;
+        final String oldDbServicePid = oldDataServiceOptions.getDbServiceInstancePid();
 
         this.dataServiceOptions = new DataServiceOptions(properties);
 
+        updateInFlightCapacity();
         createThrottle();
+        createVolatileMessages();
 
         final String currentDbServicePid = this.dataServiceOptions.getDbServiceInstancePid();
 
-        if (oldDbServicePid.equals(currentDbServicePid)) {
-            if (this.dbService != null) {
+        if (oldDataServiceOptions.getStoreType() != this.dataServiceOptions.getStoreType()
+                || !oldDataServiceOptions.getStoreFileDirectory()
+                        .equals(this.dataServiceOptions.getStoreFileDirectory())) {
+            // Messages are not moved between stores
+            logger.info("Store configuration changed, switching to the {} store",
+                    this.dataServiceOptions.getStoreType());
+            stopStore();
+            startStore();
+        } else {
+            createGroupCommitter();
+            this.store.setPayloadCompression(this.dataServiceOptions.isStorePayloadCompressionEnabled());
+
+            if (this.dataServiceOptions.getStoreType() == StoreType.FILE) {
                 this.store.update(this.dataServiceOptions.getStoreHousekeeperInterval(),
-                        this.dataServiceOptions.getStorePurgeAge(), this.dataServiceOptions.getStoreCapacity());
+                        this.dataServiceOptions.getStorePurgeAge(), this.dataServiceOptions.getStorePurgeChunkSize(),
+                        this.dataServiceOptions.getStoreCapacity());
+            } else if (oldDbServicePid.equals(currentDbServicePid)) {
+                if (this.dbService != null) {
+                    this.store.update(this.dataServiceOptions.getStoreHousekeeperInterval(),
+                            this.dataServiceOptions.getStorePurgeAge(),
+                            this.dataServiceOptions.getStorePurgeChunkSize(),
+                            this.dataServiceOptions.getStoreCapacity());
+                }
+            } else {
+                restartDbServiceTracker(currentDbServicePid);
             }
-        } else {
-            restartDbServiceTracker(currentDbServicePid);
         }
 
         if (!this.dataTransportService.isConnected()) {
             startConnectionMonitorTask();
         }
+
+        scheduleMetricsReport();
     }
 
     protected void deactivate(ComponentContext componentContext) {
@@ -255,6 +394,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         this.connectionMonitorExecutor.shutdownNow();
 
         this.congestionExecutor.shutdownNow();
+        this.metricsExecutor.shutdownNow();
 
         disconnect();
 
@@ -265,6 +405,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
 
             // Clean publisher thread shutdown
             this.publisherEnabled.set(false);
+            this.inFlightWindow.wakeUp();
             signalPublisher();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -335,6 +476,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     public void onConnectionEstablished(boolean newSession) {
 
         logger.info("Notified connected");
+        updateInFlightCapacity();
         this.cloudConnectionStatusService.updateStatus(this, CloudConnectionStatusEnum.ON);
 
         // On a new session all messages the were in-flight in the previous session
@@ -365,7 +507,9 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                         "New session established. Unpublishing all in-flight messages. Disregarding the QoS level, this may cause duplicate messages.");
                 try {
                     this.store.unpublishAllInFlighMessages();
-                    this.inFlightMsgIds.clear();
+                    this.inFlightWindow.clear();
+                    // the unpublished messages go back to their lanes, in publish order
+                    this.lanes.reset(this.store.allUnpublishedMessagesNoPayload());
                 } catch (KuraStoreException e) {
                     logger.error("Failed to unpublish in-flight messages", e);
                 }
@@ -373,7 +517,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                 logger.info("New session established. Dropping all in-flight messages.");
                 try {
                     this.store.dropAllInFlightMessages();
-                    this.inFlightMsgIds.clear();
+                    this.inFlightWindow.clear();
                 } catch (KuraStoreException e) {
                     logger.error("Failed to drop in-flight messages", e);
                 }
@@ -383,6 +527,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         // Notify the listeners
         this.dataServiceListeners.onConnectionEstablished();
 
+        this.inFlightWindow.wakeUp();
         signalPublisher();
     }
 
@@ -401,6 +546,10 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
 
         // Notify the listeners
         this.dataServiceListeners.onDisconnected();
+
+        // Let the publisher move the volatile messages to the store
+        this.inFlightWindow.wakeUp();
+        signalPublisher();
     }
 
     @Override
@@ -432,6 +581,10 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
 
         // Notify the listeners
         this.dataServiceListeners.onConnectionLost(cause);
+
+        // Let the publisher move the volatile messages to the store
+        this.inFlightWindow.wakeUp();
+        signalPublisher();
     }
 
     @Override
@@ -446,48 +599,51 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     }
 
     @Override
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
-    public synchronized void onMessageConfirmed(DataTransportToken token) {
+    public void onMessageConfirmed(DataTransportToken token) {
 
         logger.debug("Confirmed message with MQTT message ID: {} on session ID: {}", token.getMessageId(),
                 token.getSessionId());
 
-        Integer messageId = this.inFlightMsgIds.remove(token);
-        if (messageId == null) {
+        int messageId = this.inFlightWindow.confirm(token.getMessageId(), token.getSessionId());
+        if (messageId == InFlightWindow.NOT_TRACKED) {
             logger.info(
                     "Confirmed message published with MQTT message ID: {} not tracked in the map of in-flight messages",
                     token.getMessageId());
+        } else if (messageId == InFlightWindow.CONFIRM_DEFERRED) {
+            logger.debug("Confirmed message with MQTT message ID: {} before being tracked", token.getMessageId());
+        } else if (this.unsettledMsgIds.replace(messageId, Boolean.FALSE, Boolean.TRUE)) {
+            // confirmed after being tracked, but before being marked as published: the publisher confirms it
+            logger.debug("Confirmed message ID: {} before being marked as published", messageId);
         } else {
+            confirmMessage(messageId);
+        }
 
-            DataMessage confirmedMessage = null;
-            try {
-                logger.info("Confirmed message ID: {} to store", messageId);
-                this.store.confirmed(messageId);
-                confirmedMessage = this.store.get(messageId);
-            } catch (KuraStoreException e) {
-                logger.error("Cannot confirm message to store", e);
-            }
+        signalPublisher();
+    }
 
-            // Notify the listeners
-            if (confirmedMessage != null) {
-                String topic = confirmedMessage.getTopic();
-                this.dataServiceListeners.onMessageConfirmed(messageId, topic);
-            } else {
-                logger.error("Confirmed Message with ID {} could not be loaded from the DataStore.", messageId);
-            }
+    private void confirmMessage(int messageId) {
+        DataMessage confirmedMessage = null;
+        try {
+            logger.debug("Confirmed message ID: {} to store", messageId);
+            this.store.confirmed(messageId);
+            confirmedMessage = this.store.get(messageId);
+        } catch (KuraStoreException e) {
+            logger.error("Cannot confirm message to store", e);
         }
 
-        if (this.inFlightMsgIds.size() < this.dataServiceOptions.getMaxInFlightMessages()) {
-            handleInFlightDecongestion();
+        // Notify the listeners
+        if (confirmedMessage != null) {
+            String topic = confirmedMessage.getTopic();
+            this.dataServiceListeners.onMessageConfirmed(messageId, topic);
+        } else {
+            logger.error("Confirmed Message with ID {} could not be loaded from the DataStore.", messageId);
         }
-
-        signalPublisher();
     }
 
     @Override
     public void connect() throws KuraConnectException {
         stopConnectionMonitorTask();
-        if (this.dbService == null) {
+        if (!isStoreAttached()) {
             throw new KuraConnectException("H2DbService instance not attached, not connecting");
         }
 
@@ -530,10 +686,31 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     @Override
     public int publish(String topic, byte[] payload, int qos, boolean retain, int priority) throws KuraStoreException {
 
-        logger.info("Storing message on topic :{}, priority: {}", topic, priority);
+        RingBuffer<DataMessage> ring = this.volatileMessages;
+        if (ring != null && isVolatileEligible(qos, priority)) {
+            DataMessage message = new DataMessage.Builder(nextVolatileMessageId()).withTopic(topic)
+                    .withPayload(payload).withQos(qos).withRetain(retain).withPriority(priority)
+                    .withCreatedOn(new Date()).build();
+            if (ring.offer(message)) {
+                logger.debug("Queued volatile message on topic :{}, priority: {}", topic, priority);
+                signalPublisher();
+                return message.getId();
+            }
+            logger.debug("Volatile messages ring full, storing message on topic :{}", topic);
+        }
+
+        logger.debug("Storing message on topic :{}, priority: {}", topic, priority);
 
-        DataMessage dataMsg = this.store.store(topic, payload, qos, retain, priority);
-        logger.info("Stored message on topic :{}, priority: {}", topic, priority);
+        GroupCommitter committer = this.groupCommitter;
+        DataMessage dataMsg;
+        if (committer != null && committer.getStore() == this.store) {
+            dataMsg = committer.store(topic, payload, qos, retain, priority);
+        } else {
+            dataMsg = this.store.store(topic, payload, qos, retain, priority);
+        }
+        this.lanes.add(dataMsg.getId(), priority);
+        this.storeMeter.mark();
+        logger.debug("Stored message on topic :{}, priority: {}", topic, priority);
 
         signalPublisher();
 
@@ -599,7 +776,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                     Thread.currentThread().setName("DataServiceImpl:ReconnectTask");
                     boolean connected = false;
                     try {
-                        if (DataServiceImpl.this.dbService == null) {
+                        if (!isStoreAttached()) {
                             logger.warn("H2DbService instance not attached, not connecting");
                             return;
                         }
@@ -662,16 +839,77 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     }
 
     private void createThrottle() {
-        if (this.dataServiceOptions.isRateLimitEnabled()) {
-            int publishRate = this.dataServiceOptions.getRateLimitAverageRate();
-            int burstLength = this.dataServiceOptions.getRateLimitBurstSize();
+        if (!this.dataServiceOptions.isRateLimitEnabled()) {
+            this.throttle = null;
+            return;
+        }
 
-            long publishPeriod = this.dataServiceOptions.getRateLimitTimeUnit() / publishRate;
+        long timeUnitNanos = TimeUnit.MILLISECONDS.toNanos(this.dataServiceOptions.getRateLimitTimeUnit());
+        PriorityRateLimiter.Builder builder = new PriorityRateLimiter.Builder();
 
-            logger.info("Get Throttle with burst length {} and send a message every {} millis", burstLength,
-                    publishPeriod);
-            this.throttle = new TokenBucket(burstLength, publishPeriod);
+        // The additional bands come first, so that they take precedence over the default one
+        for (RateLimitBand band : this.dataServiceOptions.getRateLimitBands()) {
+            builder.withBand(band.getMinPriority(), band.getMaxPriority(), createRateLimiter(band.getMinPriority(),
+                    band.getMaxPriority(), band.getAverageRate(), band.getBurstSize(), timeUnitNanos));
         }
+
+        int minPriority = this.dataServiceOptions.getRateLimitMinPriority();
+        builder.withBand(minPriority, Integer.MAX_VALUE,
+                createRateLimiter(minPriority, Integer.MAX_VALUE, this.dataServiceOptions.getRateLimitAverageRate(),
+                        this.dataServiceOptions.getRateLimitBurstSize(), timeUnitNanos));
+
+        this.throttle = builder.build();
+    }
+
+    private static RateLimiter createRateLimiter(int minPriority, int maxPriority, int publishRate, int burstLength,
+            long timeUnitNanos) {
+        long publishPeriod = Math.max(1, timeUnitNanos / publishRate);
+
+        logger.info("Get Throttle for priorities {} to {} with burst length {} and send a message every {} nanos",
+                minPriority, maxPriority, burstLength, publishPeriod);
+        return new RateLimiter(burstLength, publishPeriod, TimeUnit.NANOSECONDS);
+    }
+
+    private void createGroupCommitter() {
+        int window = this.dataServiceOptions.getStoreGroupCommitWindow();
+        if (window <= 0) {
+            this.groupCommitter = null;
+            return;
+        }
+
+        int maxSize = this.dataServiceOptions.getStoreGroupCommitMaxSize();
+        logger.info("Group commit enabled with a window of {} ms and up to {} messages", window, maxSize);
+        this.groupCommitter = new GroupCommitter(this.store, window, TimeUnit.MILLISECONDS, maxSize);
+    }
+
+    private void createVolatileMessages() {
+        if (!this.dataServiceOptions.isVolatileEnabled()) {
+            this.volatileMessages = null;
+            return;
+        }
+
+        int capacity = this.dataServiceOptions.getVolatileCapacity();
+        RingBuffer<DataMessage> current = this.volatileMessages;
+        if (current == null || current.capacity() != capacity) {
+            // The publisher will move the messages left in the previous ring to the store
+            logger.info("Volatile fast path enabled with capacity {}", capacity);
+            this.volatileMessages = new RingBuffer<>(capacity);
+        }
+    }
+
+    private boolean isVolatileEligible(int qos, int priority) {
+        // Priorities 0 and 1 are reserved to the framework and are always persisted
+        return qos == 0 && priority >= Math.max(2, this.dataServiceOptions.getVolatileMinPriority())
+                && this.dataTransportService.isConnected();
+    }
+
+    private int nextVolatileMessageId() {
+        // Volatile messages are identified by negative IDs, not to clash with the IDs assigned by the store
+        return this.volatileMessageIds.updateAndGet(id -> id <= Integer.MIN_VALUE + 1 ? -1 : id - 1);
+    }
+
+    private static boolean isVolatile(DataMessage message) {
+        return message.getId() < 0;
     }
 
     private void stopConnectionMonitorTask() {
@@ -699,34 +937,164 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
         this.publisherExecutor.execute(new PublishManager());
     }
 
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
     private synchronized void publishInternal(DataMessage message) throws KuraException {
 
+        int msgId = message.getId();
+
+        DataTransportToken token = publishToTransport(message);
+
+        if (!isVolatile(message)) {
+            this.lanes.remove(msgId);
+        }
+
+        if (token == null) {
+            if (!isVolatile(message)) {
+                this.store.published(msgId);
+            }
+            logger.debug("Published message with ID: {}", msgId);
+        } else {
+            this.store.published(msgId, token.getMessageId(), token.getSessionId());
+            logger.debug("Published message with ID: {} and MQTT message ID: {}", msgId, token.getMessageId());
+        }
+    }
+
+    private synchronized List<DataMessage> publishInternal(List<DataMessage> messages) throws KuraException {
+
+        PriorityRateLimiter limiter = this.throttle;
+        List<DataMessage> publishedMessages = new ArrayList<>(messages.size());
+        List<DataMessage> acks = new ArrayList<>(messages.size());
+        Throwable failure = null;
+
+        try {
+            for (DataMessage message : messages) {
+                if (message.getQos() > 0 && isInFlightWindowFull()) {
+                    if (publishedMessages.isEmpty()) {
+                        logger.warn("The configured maximum number of in-flight messages has been reached");
+                        throw new KuraTooManyInflightMessagesException("Too many in-flight messages");
+                    }
+                    break;
+                }
+
+                if (limiter != null && !limiter.tryAcquire(message.getPriority())) {
+                    logger.debug("Rate limit reached for priority {}", message.getPriority());
+                    this.throttledPublishes.increment();
+                    break;
+                }
+
+                DataTransportToken token = publishToTransport(message);
+                publishedMessages.add(message);
+
+                if (isVolatile(message)) {
+                    continue;
+                }
+
+                DataMessage.Builder ack = new DataMessage.Builder(message.getId()).withQos(message.getQos());
+                if (token != null) {
+                    ack.withPublishedMessageId(token.getMessageId()).withSessionId(token.getSessionId());
+                }
+                acks.add(ack.build());
+            }
+        } catch (KuraException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // Mark as published whatever reached the transport, even if the batch was interrupted
+            for (DataMessage ack : acks) {
+                this.lanes.remove(ack.getId());
+            }
+            try {
+                this.store.published(acks);
+            } catch (KuraException | RuntimeException e) {
+                // do not mask the failure that interrupted the batch
+                if (failure == null) {
+                    throw e;
+                }
+                failure.addSuppressed(e);
+            }
+        }
+
+        logger.debug("Published {} messages out of a batch of {}", publishedMessages.size(), messages.size());
+
+        return publishedMessages;
+    }
+
+    private DataTransportToken publishToTransport(DataMessage message) throws KuraException {
+
         String topic = message.getTopic();
         byte[] payload = message.getPayload();
         int qos = message.getQos();
         boolean retain = message.isRetain();
         int msgId = message.getId();
 
-        logger.debug("Publishing message with ID: {} on topic: {}, priority: {}",
-                new Object[] { msgId, topic, message.getPriority() });
+        if (logger.isDebugEnabled()) {
+            logger.debug("Publishing message with ID: {} on topic: {}, priority: {}", msgId, topic,
+                    message.getPriority());
+        }
 
-        DataTransportToken token = this.dataTransportService.publish(topic, payload, qos, retain);
+        if (qos == 0) {
+            return this.dataTransportService.publish(topic, payload, qos, retain);
+        }
 
-        if (token == null) {
-            this.store.published(msgId);
-            logger.debug("Published message with ID: {}", msgId);
-        } else {
+        if (!this.inFlightWindow.tryAcquire()) {
+            throw new KuraTooManyInflightMessagesException("Too many in-flight messages");
+        }
 
-            // Check if the token is already tracked in the map (in which case we are in trouble)
-            Integer trackedMsgId = this.inFlightMsgIds.get(token);
-            if (trackedMsgId != null) {
-                logger.error("Token already tracked: {} -", token.getSessionId(), token.getMessageId());
+        DataTransportToken token = null;
+        if (!isVolatile(message)) {
+            this.unsettledMsgIds.put(msgId, Boolean.FALSE);
+        }
+        this.inFlightWindow.beginPublish();
+        try {
+            long publishedNanos = System.nanoTime();
+            token = this.dataTransportService.publish(topic, payload, qos, retain);
+
+            // The confirmation may have been received already, in which case it is processed
+            // after the message is marked as published
+            if (token != null && !this.inFlightWindow.track(token.getMessageId(), token.getSessionId(), msgId,
+                    publishedNanos)) {
+                this.earlyConfirmedMsgIds.add(msgId);
             }
+        } finally {
+            this.inFlightWindow.endPublish();
+            if (token == null) {
+                this.inFlightWindow.release();
+            }
+        }
 
-            this.inFlightMsgIds.put(token, msgId);
-            this.store.published(msgId, token.getMessageId(), token.getSessionId());
-            logger.debug("Published message with ID: {} and MQTT message ID: {}", msgId, token.getMessageId());
+        return token;
+    }
+
+    /**
+     * Sets the capacity of the in-flight window to the configured maximum, unless the transport has a lower limit.
+     */
+    private void updateInFlightCapacity() {
+        int capacity = this.dataServiceOptions.getMaxInFlightMessages();
+        DataTransportService transport = this.dataTransportService;
+        if (transport instanceof DataTransportFlowControl) {
+            int transportMax = ((DataTransportFlowControl) transport).getMaxInFlightMessages();
+            if (transportMax > 0 && transportMax < capacity) {
+                logger.info("Limiting the in-flight messages to {}, the maximum of the transport", transportMax);
+                capacity = transportMax;
+            }
+        }
+        this.inFlightWindow.setCapacity(capacity);
+    }
+
+    private boolean isInFlightWindowFull() {
+        return this.inFlightWindow.isFull();
+    }
+
+    private void confirmEarlyConfirmedMessages() {
+        for (Integer msgId : this.earlyConfirmedMsgIds) {
+            confirmMessage(msgId);
+        }
+        this.earlyConfirmedMsgIds.clear();
+
+        // The published bookkeeping of the messages handed to the transport is complete
+        for (Integer msgId : this.unsettledMsgIds.keySet()) {
+            if (Boolean.TRUE.equals(this.unsettledMsgIds.remove(msgId))) {
+                confirmMessage(msgId);
+            }
         }
     }
 
@@ -747,12 +1115,10 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
     }
 
     private void handleInFlightCongestion() {
-        int timeout = this.dataServiceOptions.getInFlightMessagesCongestionTimeout();
-
-        // Do not schedule more that one task at a time
-        if (timeout != 0 && (this.congestionFuture == null || this.congestionFuture.isDone())) {
-            logger.warn("In-flight message congestion timeout started");
-            this.congestionFuture = this.congestionExecutor.schedule(new Runnable() {
+        // Do not submit more that one task at a time
+        this.congestionEvents.increment();
+        if (this.congestionFuture == null || this.congestionFuture.isDone()) {
+            this.congestionFuture = this.congestionExecutor.submit(new Runnable() {
 
                 @Override
                 public void run() {
@@ -761,14 +1127,109 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                     disconnect();
                     startConnectionMonitorTask();
                 }
-            }, timeout, TimeUnit.SECONDS);
+            });
         }
     }
 
-    private void handleInFlightDecongestion() {
-        if (this.congestionFuture != null && !this.congestionFuture.isDone()) {
-            this.congestionFuture.cancel(true);
+    private synchronized void scheduleMetricsReport() {
+        if (this.metricsFuture != null) {
+            this.metricsFuture.cancel(false);
+            this.metricsFuture = null;
+        }
+
+        int interval = this.dataServiceOptions.getMetricsPublishInterval();
+        if (interval <= 0) {
+            return;
         }
+        String topic = this.dataServiceOptions.getMetricsPublishTopic();
+        logger.info("Publishing the data service metrics every {} seconds on {}", interval, topic);
+        this.metricsFuture = this.metricsExecutor.scheduleWithFixedDelay(() -> publishMetrics(topic), interval,
+                interval, TimeUnit.SECONDS);
+    }
+
+    private void publishMetrics(String topic) {
+        Thread.currentThread().setName("DataServiceImpl:Metrics");
+        if (!this.dataTransportService.isConnected()) {
+            return;
+        }
+        String json = MetricsJsonWriter.toJson(this, System.currentTimeMillis());
+        try {
+            // straight to the transport, so that the metrics do not count their own messages
+            this.dataTransportService.publish(topic, json.getBytes(StandardCharsets.UTF_8), 0, false);
+        } catch (Exception e) {
+            logger.warn("Cannot publish the data service metrics", e);
+        }
+    }
+
+    // ----------------------------------------------------------------
+    //
+    // Metrics APIs
+    //
+    // ----------------------------------------------------------------
+
+    @Override
+    public long getStoredMessages() {
+        return this.storeMeter.getCount();
+    }
+
+    @Override
+    public double getStoreRate() {
+        return this.storeMeter.getRate();
+    }
+
+    @Override
+    public long getPublishedMessages() {
+        return this.publishMeter.getCount();
+    }
+
+    @Override
+    public double getPublishRate() {
+        return this.publishMeter.getRate();
+    }
+
+    @Override
+    public long getConfirmedMessages() {
+        return this.inFlightWindow.getConfirmedCount();
+    }
+
+    @Override
+    public long getAverageConfirmLatency(TimeUnit unit) {
+        return this.inFlightWindow.getAverageConfirmLatency(unit);
+    }
+
+    @Override
+    public long getMaxConfirmLatency(TimeUnit unit) {
+        return this.inFlightWindow.getMaxConfirmLatency(unit);
+    }
+
+    @Override
+    public long[] getConfirmLatencyHistogramBounds() {
+        return this.inFlightWindow.getConfirmLatencyHistogram().getBoundsMillis();
+    }
+
+    @Override
+    public long[] getConfirmLatencyHistogram() {
+        return this.inFlightWindow.getConfirmLatencyHistogram().getCounts();
+    }
+
+    @Override
+    public Map<Integer, Integer> getBacklogDepths() {
+        return this.lanes.getDepths();
+    }
+
+    @Override
+    public int getInFlightMessages() {
+        return this.inFlightWindow.getOccupancy();
+    }
+
+    @Override
+    public long getThrottledPublishes() {
+        return this.throttledPublishes.sum();
+    }
+
+    @Override
+    public long getCongestionEvents() {
+        return this.congestionEvents.sum();
     }
 
     @Override
@@ -788,51 +1249,198 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
 
     private final class PublishManager implements Runnable {
 
+        // Drains shorter than this are only logged at debug level
+        private static final long DRAIN_REPORT_THRESHOLD_MILLIS = 1000;
+
+        private long drainedMessages;
+        private long drainStartNanos;
+
+        // Volatile messages taken from the ring but not published yet
+        private final Deque<DataMessage> volatileBacklog = new ArrayDeque<>();
+        private RingBuffer<DataMessage> currentVolatileMessages;
+
         @Override
         public void run() {
             Thread.currentThread().setName("DataServiceImpl:Submit");
             while (DataServiceImpl.this.publisherEnabled.get()) {
                 long sleepingTime = -1;
                 boolean messagePublished = false;
+                boolean windowAwaited = false;
+                boolean connected = DataServiceImpl.this.dataTransportService.isConnected();
+
+                checkVolatileMessages(connected);
 
-                if (DataServiceImpl.this.dataTransportService.isConnected()) {
+                if (connected) {
                     try {
-                        DataMessage message = DataServiceImpl.this.store.getNextMessage();
+                        int batchSize = DataServiceImpl.this.dataServiceOptions.getPublishBatchSize();
 
-                        if (message != null) {
-                            checkInFlightMessages(message);
+                        if (batchSize > 1) {
+                            List<DataMessage> messages = getNextStoredMessages(batchSize);
+                            messages = mergeVolatileMessages(messages, batchSize);
 
-                            if (DataServiceImpl.this.dataServiceOptions.isRateLimitEnabled()
-                                    && message.getPriority() >= 5) {
-                                messagePublished = publishMessageTokenBucket(message);
-                                sleepingTime = DataServiceImpl.this.throttle.getTokenWaitTime();
+                            if (messages.isEmpty()) {
+                                onStoreDrained();
                             } else {
-                                publishMessageUnbound(message);
-                                messagePublished = true;
+                                int publishedCount = publishMessagesBatch(messages);
+                                messagePublished = publishedCount > 0;
+                                if (!messagePublished) {
+                                    sleepingTime = getThrottleWaitTime(messages.get(0));
+                                }
+                            }
+                        } else {
+                            List<DataMessage> next = getNextStoredMessages(1);
+                            DataMessage message = next.isEmpty() ? null : next.get(0);
+                            List<DataMessage> volatileHead = takeVolatileMessages(message, 1);
+                            if (!volatileHead.isEmpty()) {
+                                message = volatileHead.get(0);
+                            }
+
+                            if (message != null) {
+                                checkInFlightMessages(message);
+
+                                PriorityRateLimiter limiter = DataServiceImpl.this.throttle;
+                                RateLimiter rateLimiter = limiter != null
+                                        ? limiter.getRateLimiter(message.getPriority()) : null;
+                                if (rateLimiter != null) {
+                                    messagePublished = publishMessageRateLimited(message, rateLimiter);
+                                    sleepingTime = rateLimiter.getWaitTime(TimeUnit.NANOSECONDS);
+                                } else {
+                                    publishMessageUnbound(message);
+                                    messagePublished = true;
+                                }
+                                if (messagePublished) {
+                                    if (isVolatile(message)) {
+                                        this.volatileBacklog.pollFirst();
+                                    }
+                                    onMessagesPublished(1);
+                                }
+                            } else {
+                                onStoreDrained();
                             }
                         }
                     } catch (KuraNotConnectedException e) {
                         logger.info("DataPublisherService is not connected");
                     } catch (KuraTooManyInflightMessagesException e) {
-                        logger.info("Too many in-flight messages");
-                        handleInFlightCongestion();
+                        windowAwaited = awaitInFlightWindow();
                     } catch (Exception e) {
                         logger.error("Probably an unrecoverable exception", e);
+                    } finally {
+                        confirmEarlyConfirmedMessages();
                     }
                 } else {
                     logger.info("DataPublisherService not connected");
                 }
 
-                if (!messagePublished) {
-                    suspendPublisher(sleepingTime, TimeUnit.MILLISECONDS);
+                if (!messagePublished && !windowAwaited) {
+                    suspendPublisher(sleepingTime, TimeUnit.NANOSECONDS);
                 }
             }
+            spillVolatileMessages();
             logger.debug("Exited publisher loop.");
         }
 
+        private void checkVolatileMessages(boolean connected) {
+            RingBuffer<DataMessage> ring = DataServiceImpl.this.volatileMessages;
+            if (!connected || ring != this.currentVolatileMessages) {
+                // Disconnected or ring replaced by a configuration update
+                spillVolatileMessages();
+            }
+            this.currentVolatileMessages = ring;
+        }
+
+        private void spillVolatileMessages() {
+            RingBuffer<DataMessage> ring = this.currentVolatileMessages;
+            if (ring != null) {
+                DataMessage message;
+                while ((message = ring.poll()) != null) {
+                    this.volatileBacklog.add(message);
+                }
+            }
+            if (this.volatileBacklog.isEmpty()) {
+                return;
+            }
+
+            logger.info("Storing {} volatile messages", this.volatileBacklog.size());
+            int discarded = 0;
+            DataMessage message;
+            while ((message = this.volatileBacklog.pollFirst()) != null) {
+                try {
+                    DataMessage stored = DataServiceImpl.this.store.store(message.getTopic(), message.getPayload(),
+                            message.getQos(), message.isRetain(), message.getPriority());
+                    DataServiceImpl.this.lanes.add(stored.getId(), stored.getPriority());
+                } catch (KuraStoreException e) {
+                    logger.debug("Cannot store volatile message on topic: {}", message.getTopic(), e);
+                    discarded++;
+                }
+            }
+            if (discarded > 0) {
+                logger.warn("Discarded {} volatile messages that could not be stored", discarded);
+            }
+        }
+
+        private List<DataMessage> getNextStoredMessages(int max) throws KuraStoreException {
+            PriorityLanes lanes = DataServiceImpl.this.lanes;
+            List<DataMessage> messages = new ArrayList<>(max);
+            boolean stale;
+            do {
+                stale = false;
+                messages.clear();
+                List<Integer> ids = lanes.peek(max);
+                Map<Integer, DataMessage> loaded = new HashMap<>();
+                for (DataMessage message : DataServiceImpl.this.store.get(ids)) {
+                    loaded.put(message.getId(), message);
+                }
+                for (int id : ids) {
+                    DataMessage message = loaded.get(id);
+                    if (message == null || message.getPublishedOn() != null) {
+                        // deleted or published since it was queued
+                        logger.debug("Removing stale message ID {} from the priority lanes", id);
+                        lanes.remove(id);
+                        stale = true;
+                    } else {
+                        messages.add(message);
+                    }
+                }
+            } while (stale);
+            return messages;
+        }
+
+        private List<DataMessage> takeVolatileMessages(DataMessage nextStoredMessage, int max) {
+            RingBuffer<DataMessage> ring = this.currentVolatileMessages;
+            while (ring != null && this.volatileBacklog.size() < max) {
+                DataMessage message = ring.poll();
+                if (message == null) {
+                    break;
+                }
+                this.volatileBacklog.add(message);
+            }
+
+            // Stored messages win on equal priority, as they are older
+            List<DataMessage> messages = new ArrayList<>();
+            for (DataMessage message : this.volatileBacklog) {
+                if (messages.size() >= max || nextStoredMessage != null
+                        && message.getPriority() >= nextStoredMessage.getPriority()) {
+                    break;
+                }
+                messages.add(message);
+            }
+            return messages;
+        }
+
+        private List<DataMessage> mergeVolatileMessages(List<DataMessage> storedMessages, int max) {
+            List<DataMessage> messages = takeVolatileMessages(storedMessages.isEmpty() ? null : storedMessages.get(0),
+                    max);
+            if (messages.isEmpty()) {
+                return storedMessages;
+            }
+            for (int i = 0; messages.size() < max && i < storedMessages.size(); i++) {
+                messages.add(storedMessages.get(i));
+            }
+            return messages;
+        }
+
         private void checkInFlightMessages(DataMessage message) throws KuraTooManyInflightMessagesException {
-            if (message.getQos() > 0 && DataServiceImpl.this.inFlightMsgIds
-                    .size() >= DataServiceImpl.this.dataServiceOptions.getMaxInFlightMessages()) {
+            if (message.getQos() > 0 && isInFlightWindowFull()) {
                 logger.warn("The configured maximum number of in-flight messages has been reached");
                 throw new KuraTooManyInflightMessagesException("Too many in-flight messages");
             }
@@ -849,7 +1457,7 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
                         logger.debug("Suspending publishing thread indefinitely");
                         DataServiceImpl.this.lockCondition.await();
                     } else {
-                        logger.debug("Suspending publishing thread for {} milliseconds", timeout);
+                        logger.debug("Suspending publishing thread for {} {}", timeout, timeUnit);
                         DataServiceImpl.this.lockCondition.await(timeout, timeUnit);
                     }
                 }
@@ -861,21 +1469,85 @@ public class DataServiceImpl implements DataService, DataTransportListener, Conf
             }
         }
 
+        private boolean awaitInFlightWindow() {
+            InFlightWindow window = DataServiceImpl.this.inFlightWindow;
+            if (!window.isFull()) {
+                // Limited by the transport, wait for the next confirmation
+                logger.debug("Too many in-flight messages");
+                return false;
+            }
+
+            int timeout = DataServiceImpl.this.dataServiceOptions.getInFlightMessagesCongestionTimeout();
+
+            logger.debug("Too many in-flight messages, waiting for confirmations: {}", window);
+            if (!window.awaitRelease(TimeUnit.SECONDS.toNanos(timeout))
+                    && DataServiceImpl.this.publisherEnabled.get()) {
+                handleInFlightCongestion();
+            }
+            return true;
+        }
+
         private void publishMessageUnbound(DataMessage message) throws KuraException {
             publishInternal(message);
             // Notify the listeners
             DataServiceImpl.this.dataServiceListeners.onMessagePublished(message.getId(), message.getTopic());
         }
 
-        private boolean publishMessageTokenBucket(DataMessage message) throws KuraException, InterruptedException {
-            boolean tokenAvailable = DataServiceImpl.this.throttle.getToken();
-
-            if (tokenAvailable) {
+        private boolean publishMessageRateLimited(DataMessage message, RateLimiter rateLimiter)
+                throws KuraException {
+            if (rateLimiter.tryAcquire()) {
                 publishMessageUnbound(message);
                 return true;
             }
+            logger.debug("Rate limit reached for priority {}: {}", message.getPriority(), rateLimiter);
+            DataServiceImpl.this.throttledPublishes.increment();
             return false;
         }
+
+        private long getThrottleWaitTime(DataMessage message) {
+            PriorityRateLimiter limiter = DataServiceImpl.this.throttle;
+            return limiter != null ? limiter.getWaitTime(message.getPriority(), TimeUnit.NANOSECONDS) : -1;
+        }
+
+        private int publishMessagesBatch(List<DataMessage> messages) throws KuraException {
+            List<DataMessage> publishedMessages = publishInternal(messages);
+
+            for (DataMessage message : publishedMessages) {
+                if (isVolatile(message)) {
+                    this.volatileBacklog.pollFirst();
+                }
+                // Notify the listeners
+                DataServiceImpl.this.dataServiceListeners.onMessagePublished(message.getId(), message.getTopic());
+            }
+
+            onMessagesPublished(publishedMessages.size());
+            return publishedMessages.size();
+        }
+
+        private void onMessagesPublished(int count) {
+            DataServiceImpl.this.publishMeter.mark(count);
+            if (count > 0 && this.drainedMessages == 0) {
+                this.drainStartNanos = System.nanoTime();
+            }
+            this.drainedMessages += count;
+        }
+
+        private void onStoreDrained() {
+            if (this.drainedMessages == 0) {
+                return;
+            }
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.drainStartNanos);
+            long rate = this.drainedMessages * 1000L / Math.max(1L, elapsedMillis);
+            if (elapsedMillis >= DRAIN_REPORT_THRESHOLD_MILLIS) {
+                logger.info("Store drained: published {} messages in {} ms ({} messages/s)",
+                        new Object[] { this.drainedMessages, elapsedMillis, rate });
+            } else {
+                logger.debug("Store drained: published {} messages in {} ms ({} messages/s)",
+                        new Object[] { this.drainedMessages, elapsedMillis, rate });
+            }
+            this.drainedMessages = 0;
+        }
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency metrics of a DataService instance, from the time it was activated.
+ * Rates are measured over the last few seconds.
+ */
+public interface DataServiceMetrics {
+
+    /**
+     * Returns the number of messages stored for deferred publication.
+     */
+    public long getStoredMessages();
+
+    /**
+     * Returns the number of messages stored per second.
+     */
+    public double getStoreRate();
+
+    /**
+     * Returns the number of messages handed over to the transport.
+     */
+    public long getPublishedMessages();
+
+    /**
+     * Returns the number of messages handed over to the transport per second.
+     */
+    public double getPublishRate();
+
+    /**
+     * Returns the number of messages published with QoS &gt; 0 and confirmed.
+     */
+    public long getConfirmedMessages();
+
+    public long getAverageConfirmLatency(TimeUnit unit);
+
+    public long getMaxConfirmLatency(TimeUnit unit);
+
+    /**
+     * Returns the inclusive upper bounds, in milliseconds, of the buckets of the confirm latency histogram.
+     */
+    public long[] getConfirmLatencyHistogramBounds();
+
+    /**
+     * Returns the number of confirmations in each bucket of the confirm latency histogram.
+     * The last bucket counts the latencies above the last bound.
+     */
+    public long[] getConfirmLatencyHistogram();
+
+    /**
+     * Returns the number of messages waiting to be published, by priority.
+     */
+    public Map<Integer, Integer> getBacklogDepths();
+
+    /**
+     * Returns the number of messages published with QoS &gt; 0 and not confirmed yet.
+     */
+    public int getInFlightMessages();
+
+    /**
+     * Returns the number of times the publisher has been held back by the rate limit.
+     */
+    public long getThrottledPublishes();
+
+    /**
+     * Returns the number of times the in-flight window stayed full for the whole congestion timeout.
+     */
+    public long getCongestionEvents();
+}
@@ -13,7 +13,9 @@ package org.eclipse.kura.core.data;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -25,10 +27,16 @@ public class DataServiceOptions {
     private static final String AUTOCONNECT_PROP_NAME = "connect.auto-on-startup";
     private static final String CONNECT_DELAY_PROP_NAME = "connect.retry-interval";
     private static final String DISCONNECT_DELAY_PROP_NAME = "disconnect.quiesce-timeout";
+    private static final String STORE_TYPE_PROP_NAME = "store.type";
     private static final String STORE_DB_SERVICE_INSTANCE_PROP_NAME = "store.db.service.pid";
+    private static final String STORE_FILE_DIRECTORY_PROP_NAME = "store.file.directory";
     private static final String STORE_HOUSEKEEPER_INTERVAL_PROP_NAME = "store.housekeeper-interval";
     private static final String STORE_PURGE_AGE_PROP_NAME = "store.purge-age";
+    private static final String STORE_PURGE_CHUNK_SIZE_PROP_NAME = "store.purge-chunk-size";
     private static final String STORE_CAPACITY_PROP_NAME = "store.capacity";
+    private static final String STORE_PAYLOAD_COMPRESSION_PROP_NAME = "store.payload.compression";
+    private static final String STORE_GROUP_COMMIT_WINDOW_PROP_NAME = "store.group-commit.window";
+    private static final String STORE_GROUP_COMMIT_MAX_SIZE_PROP_NAME = "store.group-commit.max-size";
     private static final String REPUBLISH_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.republish-on-new-session";
     private static final String MAX_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.max-number";
     private static final String IN_FLIGHT_MSGS_CONGESTION_TIMEOUT_PROP_NAME = "in-flight-messages.congestion-timeout";
@@ -36,16 +44,30 @@ public class DataServiceOptions {
     private static final String RATE_LIMIT_AVERAGE_RATE_PROP_NAME = "rate.limit.average";
     private static final String RATE_LIMIT_TIME_UNIT_PROP_NAME = "rate.limit.time.unit";
     private static final String RATE_LIMIT_BURST_SIZE_PROP_NAME = "rate.limit.burst.size";
+    private static final String RATE_LIMIT_MIN_PRIORITY_PROP_NAME = "rate.limit.min.priority";
+    private static final String RATE_LIMIT_BANDS_PROP_NAME = "rate.limit.bands";
     private static final String RECOVERY_ENABLE_PROP_NAME = "enable.recovery.on.connection.failure";
     private static final String RECOVERY_MAX_FAILURES_PROP_NAME = "connection.recovery.max.failures";
+    private static final String PUBLISH_BATCH_SIZE_PROP_NAME = "publish.batch.size";
+    private static final String VOLATILE_ENABLE_PROP_NAME = "volatile.enable";
+    private static final String VOLATILE_MIN_PRIORITY_PROP_NAME = "volatile.min.priority";
+    private static final String VOLATILE_CAPACITY_PROP_NAME = "volatile.capacity";
+    private static final String METRICS_PUBLISH_INTERVAL_PROP_NAME = "metrics.publish.interval";
+    private static final String METRICS_PUBLISH_TOPIC_PROP_NAME = "metrics.publish.topic";
 
     private static final boolean AUTOCONNECT_PROP_DEFAULT = false;
     private static final int CONNECT_DELAY_DEFAULT = 60;
     private static final int DISCONNECT_DELAY_DEFAULT = 10;
+    private static final String STORE_TYPE_DEFAULT = StoreType.H2.name();
     private static final String DB_SERVICE_INSTANCE_DEFAULT = H2DbService.DEFAULT_INSTANCE_PID;
+    private static final String STORE_FILE_DIRECTORY_DEFAULT = "";
     private static final int STORE_HOUSEKEEPER_INTERVAL_DEFAULT = 900;
     private static final int STORE_PURGE_AGE_DEFAULT = 60;
+    private static final int STORE_PURGE_CHUNK_SIZE_DEFAULT = 0;
     private static final int STORE_CAPACITY_DEFAULT = 10000;
+    private static final boolean STORE_PAYLOAD_COMPRESSION_DEFAULT = false;
+    private static final int STORE_GROUP_COMMIT_WINDOW_DEFAULT = 0;
+    private static final int STORE_GROUP_COMMIT_MAX_SIZE_DEFAULT = 100;
     private static final boolean REPUBLISH_IN_FLIGHT_MSGS_DEFAULT = true;
     private static final int MAX_IN_FLIGHT_MSGS_DEFAULT = 9;
     private static final int IN_FLIGHT_MSGS_CONGESTION_TIMEOUT_DEFAULT = 0;
@@ -53,11 +75,55 @@ public class DataServiceOptions {
     private static final int RATE_LIMIT_AVERAGE_RATE_DEFAULT = 1;
     private static final String RATE_LIMIT_TIME_UNIT_DEFAULT = "SECONDS";
     private static final int RATE_LIMIT_BURST_SIZE_DEFAULT = 1;
+    private static final int RATE_LIMIT_MIN_PRIORITY_DEFAULT = 5;
+    private static final String RATE_LIMIT_BANDS_DEFAULT = "";
     private static final boolean RECOVERY_ENABLE_DEFAULT = true;
     private static final int RECOVERY_MAX_FAILURES_DEFAULT = 10;
+    private static final int PUBLISH_BATCH_SIZE_DEFAULT = 1;
+    private static final boolean VOLATILE_ENABLE_DEFAULT = false;
+    private static final int VOLATILE_MIN_PRIORITY_DEFAULT = 5;
+    private static final int VOLATILE_CAPACITY_DEFAULT = 1000;
+    private static final int METRICS_PUBLISH_INTERVAL_DEFAULT = 0;
+    private static final String METRICS_PUBLISH_TOPIC_DEFAULT = "$EDC/#account-name/#client-id/DATA-SERVICE/METRICS";
 
     private static final int CONNECT_CRITICAL_COMPONENT_TIMEOUT_MULTIPLIER = 5000;
 
+    enum StoreType {
+        H2,
+        FILE
+    }
+
+    static class RateLimitBand {
+
+        private final int minPriority;
+        private final int maxPriority;
+        private final int averageRate;
+        private final int burstSize;
+
+        RateLimitBand(int minPriority, int maxPriority, int averageRate, int burstSize) {
+            this.minPriority = minPriority;
+            this.maxPriority = maxPriority;
+            this.averageRate = averageRate;
+            this.burstSize = burstSize;
+        }
+
+        int getMinPriority() {
+            return this.minPriority;
+        }
+
+        int getMaxPriority() {
+            return this.maxPriority;
+        }
+
+        int getAverageRate() {
+            return this.averageRate;
+        }
+
+        int getBurstSize() {
+            return this.burstSize;
+        }
+    }
+
     private final Map<String, Object> properties;
 
     DataServiceOptions(Map<String, Object> properties) {
@@ -74,10 +140,29 @@ public class DataServiceOptions {
         return (int) this.properties.getOrDefault(STORE_PURGE_AGE_PROP_NAME, STORE_PURGE_AGE_DEFAULT);
     }
 
+    int getStorePurgeChunkSize() {
+        return (int) this.properties.getOrDefault(STORE_PURGE_CHUNK_SIZE_PROP_NAME, STORE_PURGE_CHUNK_SIZE_DEFAULT);
+    }
+
     int getStoreCapacity() {
         return (int) this.properties.getOrDefault(STORE_CAPACITY_PROP_NAME, STORE_CAPACITY_DEFAULT);
     }
 
+    boolean isStorePayloadCompressionEnabled() {
+        return (boolean) this.properties.getOrDefault(STORE_PAYLOAD_COMPRESSION_PROP_NAME,
+                STORE_PAYLOAD_COMPRESSION_DEFAULT);
+    }
+
+    int getStoreGroupCommitWindow() {
+        return (int) this.properties.getOrDefault(STORE_GROUP_COMMIT_WINDOW_PROP_NAME,
+                STORE_GROUP_COMMIT_WINDOW_DEFAULT);
+    }
+
+    int getStoreGroupCommitMaxSize() {
+        return (int) this.properties.getOrDefault(STORE_GROUP_COMMIT_MAX_SIZE_PROP_NAME,
+                STORE_GROUP_COMMIT_MAX_SIZE_DEFAULT);
+    }
+
     boolean isPublishInFlightMessages() {
         return (boolean) this.properties.getOrDefault(REPUBLISH_IN_FLIGHT_MSGS_PROP_NAME,
                 REPUBLISH_IN_FLIGHT_MSGS_DEFAULT);
@@ -116,6 +201,48 @@ public class DataServiceOptions {
         return (int) this.properties.getOrDefault(RATE_LIMIT_BURST_SIZE_PROP_NAME, RATE_LIMIT_BURST_SIZE_DEFAULT);
     }
 
+    int getRateLimitMinPriority() {
+        return (int) this.properties.getOrDefault(RATE_LIMIT_MIN_PRIORITY_PROP_NAME, RATE_LIMIT_MIN_PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Parses the additional rate limit bands, in the form {@code <min>[-<max>]=<average>/<burst>},
+     * separated by semicolons.
+     */
+    List<RateLimitBand> getRateLimitBands() {
+        String bands = (String) this.properties.getOrDefault(RATE_LIMIT_BANDS_PROP_NAME, RATE_LIMIT_BANDS_DEFAULT);
+        if (bands == null || bands.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<RateLimitBand> result = new ArrayList<>();
+        for (String band : bands.split(";")) {
+            if (band.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                String[] parts = band.split("=");
+                String[] priorities = parts[0].split("-");
+                String[] rate = parts[1].split("/");
+                if (parts.length != 2 || priorities.length > 2 || rate.length != 2) {
+                    throw new IllegalArgumentException();
+                }
+
+                int minPriority = Integer.parseInt(priorities[0].trim());
+                int maxPriority = priorities.length == 2 ? Integer.parseInt(priorities[1].trim()) : minPriority;
+                int averageRate = Integer.parseInt(rate[0].trim());
+                int burstSize = Integer.parseInt(rate[1].trim());
+                if (minPriority < 0 || maxPriority < minPriority || averageRate < 1 || burstSize < 1) {
+                    throw new IllegalArgumentException();
+                }
+                result.add(new RateLimitBand(minPriority, maxPriority, averageRate, burstSize));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Illegal rate limit band: " + band.trim(), e);
+            }
+        }
+        return result;
+    }
+
     long getRateLimitTimeUnit() {
         String timeUnitString = (String) properties.getOrDefault(RATE_LIMIT_TIME_UNIT_PROP_NAME,
                 RATE_LIMIT_TIME_UNIT_DEFAULT);
@@ -138,6 +265,21 @@ public class DataServiceOptions {
         return timeUnit.toMillis(1);
     }
 
+    StoreType getStoreType() {
+        String storeType = (String) this.properties.getOrDefault(STORE_TYPE_PROP_NAME, STORE_TYPE_DEFAULT);
+        try {
+            return StoreType.valueOf(storeType);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Illegal store type", e);
+        }
+    }
+
+    String getStoreFileDirectory() {
+        String directory = (String) this.properties.getOrDefault(STORE_FILE_DIRECTORY_PROP_NAME,
+                STORE_FILE_DIRECTORY_DEFAULT);
+        return directory == null ? STORE_FILE_DIRECTORY_DEFAULT : directory.trim();
+    }
+
     String getDbServiceInstancePid() {
         return (String) this.properties.getOrDefault(STORE_DB_SERVICE_INSTANCE_PROP_NAME, DB_SERVICE_INSTANCE_DEFAULT);
     }
@@ -154,6 +296,30 @@ public class DataServiceOptions {
         return (int) this.properties.getOrDefault(RECOVERY_MAX_FAILURES_PROP_NAME, RECOVERY_MAX_FAILURES_DEFAULT);
     }
 
+    int getPublishBatchSize() {
+        return (int) this.properties.getOrDefault(PUBLISH_BATCH_SIZE_PROP_NAME, PUBLISH_BATCH_SIZE_DEFAULT);
+    }
+
+    boolean isVolatileEnabled() {
+        return (boolean) this.properties.getOrDefault(VOLATILE_ENABLE_PROP_NAME, VOLATILE_ENABLE_DEFAULT);
+    }
+
+    int getVolatileMinPriority() {
+        return (int) this.properties.getOrDefault(VOLATILE_MIN_PRIORITY_PROP_NAME, VOLATILE_MIN_PRIORITY_DEFAULT);
+    }
+
+    int getVolatileCapacity() {
+        return (int) this.properties.getOrDefault(VOLATILE_CAPACITY_PROP_NAME, VOLATILE_CAPACITY_DEFAULT);
+    }
+
+    int getMetricsPublishInterval() {
+        return (int) this.properties.getOrDefault(METRICS_PUBLISH_INTERVAL_PROP_NAME, METRICS_PUBLISH_INTERVAL_DEFAULT);
+    }
+
+    String getMetricsPublishTopic() {
+        return (String) this.properties.getOrDefault(METRICS_PUBLISH_TOPIC_PROP_NAME, METRICS_PUBLISH_TOPIC_DEFAULT);
+    }
+
     int getCriticalComponentTimeout() {
         return getConnectDelay() * CONNECT_CRITICAL_COMPONENT_TIMEOUT_MULTIPLIER;
     }
@@ -25,13 +25,21 @@ import org.eclipse.kura.db.H2DbService;
  */
 public interface DataStore {
 
-    public void start(H2DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
+    public void start(H2DbService dbService, int houseKeeperInterval, int purgeAge, int purgeChunkSize, int capacity)
             throws KuraStoreException;
 
-    public void update(int houseKeeperInterval, int purgeAge, int capacity);
+    public void update(int houseKeeperInterval, int purgeAge, int purgeChunkSize, int capacity);
 
     public void stop();
 
+    /**
+     * Enables or disables the compression of the payloads of the messages stored from now on.
+     * Payloads stored compressed are decompressed when read, whatever the current setting.
+     * 
+     * @param enabled
+     */
+    public void setPayloadCompression(boolean enabled);
+
     /**
      * Stores an MQTT message for deferred publication. An identifier is always
      * generated and returned, even for messages published with QoS = 0. The
@@ -49,6 +57,18 @@ public interface DataStore {
     public DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
             throws KuraStoreException;
 
+    /**
+     * Stores several MQTT messages for deferred publication within a single transaction.
+     * Only the topic, payload, QoS, retain flag and priority of the given messages are considered.
+     * As in {@link #store(String, byte[], int, boolean, int)}, messages with priority other than 0 and 1 are
+     * rejected once the store capacity has been reached.
+     * 
+     * @param messages
+     * @return the stored messages, in the same order as the given messages, with null for the rejected ones
+     * @throws KuraStoreException
+     */
+    public List<DataMessage> storeAll(List<DataMessage> messages) throws KuraStoreException;
+
     /**
      * Acknowledges the publication of the DataMessage with the given ID
      * associating it to the protocol (e.g. MQTT) message ID (QoS > 0).
@@ -71,6 +91,18 @@ public interface DataStore {
      */
     public void published(int msgId) throws KuraStoreException;
 
+    /**
+     * Acknowledges the publication of several DataMessages with a single update.
+     * For each message, the protocol (e.g. MQTT) message ID and the session ID are taken
+     * from the provided DataMessage. Messages without a session ID are acknowledged as in
+     * {@link #published(int)}.
+     * 
+     * @param messages
+     *            the published messages
+     * @throws KuraStoreException
+     */
+    public void published(List<DataMessage> messages) throws KuraStoreException;
+
     /**
      * Acknowledges the delivery of the DataMessage published with the given
      * protocol (e.g. MQTT) message ID. This method is only called for messages
@@ -91,6 +123,17 @@ public interface DataStore {
      */
     public DataMessage getNextMessage() throws KuraStoreException;
 
+    /**
+     * Gets up to {@code count} unpublished messages with a single query, in the same order
+     * that subsequent calls to {@link #getNextMessage()} would return them.
+     * 
+     * @param count
+     *            the maximum number of messages to return
+     * @return the list of the next unpublished messages, possibly empty
+     * @throws KuraStoreException
+     */
+    public List<DataMessage> getNextMessages(int count) throws KuraStoreException;
+
     /**
      * Returns a message from the DataStore by its message id.
      * 
@@ -101,6 +144,16 @@ public interface DataStore {
      */
     public DataMessage get(int msgId) throws KuraStoreException;
 
+    /**
+     * Returns the messages with the given ids from the DataStore with a single query.
+     * 
+     * @param msgIds
+     *            IDs of the messages to be loaded
+     * @return the loaded messages, in the order of their IDs in {@code msgIds}, without the ones not found
+     * @throws KuraStoreException
+     */
+    public List<DataMessage> get(List<Integer> msgIds) throws KuraStoreException;
+
     /**
      * Finds the list of all unpublished messages and returns them WITHOUT loading the payload.
      * 
@@ -148,9 +201,23 @@ public interface DataStore {
      * argument.
      * 
      * @param purgeAge
+     * @return the number of deleted messages
+     * @throws KuraStoreException
+     */
+    public int deleteStaleMessages(int purgeAge) throws KuraStoreException;
+
+    /**
+     * Deletes the stale messages among the next chunk of at most chunkSize messages, in ID order, starting from the
+     * purge watermark, and moves the watermark past the chunk.
+     * Once all the messages have been scanned, the watermark is reset and -1 is returned, so that repeated invocations
+     * purge the whole store in bounded steps.
+     * 
+     * @param purgeAge
+     * @param chunkSize
+     * @return the number of deleted messages, or -1 if there are no more messages to scan
      * @throws KuraStoreException
      */
-    public void deleteStaleMessages(int purgeAge) throws KuraStoreException;
+    public int deleteStaleMessages(int purgeAge, int chunkSize) throws KuraStoreException;
 
     /**
      * Checks and attempts to repair the store.
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data;
+
+import org.eclipse.kura.data.DataTransportService;
+
+/**
+ * Implemented by the {@link DataTransportService}s limiting the number of messages published with QoS &gt; 0 and
+ * not confirmed yet, such as the in-flight window of an MQTT client or the receive maximum of an MQTT 5 server.
+ * The DataService never keeps more messages in flight than the limit of its transport.
+ */
+public interface DataTransportFlowControl {
+
+    /**
+     * Returns the maximum number of messages published with QoS &gt; 0 the transport can keep in flight, or 0 if
+     * not limited. The limit can change when the transport connects.
+     */
+    public int getMaxInFlightMessages();
+}
@@ -19,12 +19,12 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import org.eclipse.kura.KuraStoreCapacityReachedException;
 import org.eclipse.kura.KuraStoreException;
@@ -32,6 +32,7 @@ import org.eclipse.kura.core.data.DataMessage;
 import org.eclipse.kura.core.data.DataStore;
 import org.eclipse.kura.db.H2DbService;
 import org.eclipse.kura.system.SystemService;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
@@ -50,18 +51,25 @@ public class DbDataStore implements DataStore {
     private H2DbService dbService;
     private final Calendar utcCalendar;
     private ScheduledExecutorService houseKeeperExecutor;
-    private ScheduledFuture<?> houseKeeperTask;
+    private HouseKeeperTask houseKeeperTask;
     private int capacity;
+    private boolean payloadCompression;
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    // lowest message ID of the next chunk to be purged
+    private int purgeWatermark;
 
     private final String table;
 
     private final String sqlCreateTable;
     private final String sqlCreateIndex;
+    private final String sqlAddCompressedColumn;
     private final String sqlMessageCount;
     private final String sqlResetId;
     private final String sqlStore;
     private final String sqlGetMessage;
+    private final String sqlGetMessages;
     private final String sqlGetNextMessage;
+    private final String sqlGetNextMessages;
     private final String sqlSetPublished;
     private final String sqlSetPublished2;
     private final String sqlSetConfirmed;
@@ -73,6 +81,8 @@ public class DbDataStore implements DataStore {
     private final String sqlDeleteDroppedMessages;
     private final String sqlDeleteConfirmedMessages;
     private final String sqlDeletePublishedMessages;
+    private final String sqlPurgeChunkEnd;
+    private final String sqlDeleteStaleMessagesInRange;
     private final String sqlDuplicateCount;
     private final String sqlDropPrimaryKey;
     private final String sqlDeleteDuplicates;
@@ -89,15 +99,22 @@ public class DbDataStore implements DataStore {
                 + " (id INTEGER IDENTITY PRIMARY KEY, topic VARCHAR(32767 CHAR), qos INTEGER, retain BOOLEAN, createdOn TIMESTAMP, publishedOn TIMESTAMP, publishedMessageId INTEGER, confirmedOn TIMESTAMP, payload VARBINARY(16777216), priority INTEGER, sessionId VARCHAR(32767 CHAR), droppedOn TIMESTAMP);";
         this.sqlCreateIndex = "CREATE INDEX IF NOT EXISTS " + this.table + "_nextMsg ON " + this.table
                 + " (publishedOn ASC NULLS FIRST, priority ASC, createdOn ASC, qos);";
+        // added to the tables created by previous versions
+        this.sqlAddCompressedColumn = "ALTER TABLE " + this.table
+                + " ADD COLUMN IF NOT EXISTS compressed BOOLEAN DEFAULT FALSE;";
         this.sqlMessageCount = "SELECT COUNT(*) FROM " + this.table + ";";
         this.sqlResetId = "ALTER TABLE " + this.table + " ALTER COLUMN id RESTART WITH 1;";
         this.sqlStore = "INSERT INTO " + this.table
-                + " (topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
-        this.sqlGetMessage = "SELECT id, topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn FROM "
+                + " (topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn, compressed) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+        this.sqlGetMessage = "SELECT id, topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn, compressed FROM "
                 + this.table + " WHERE id = ?";
-        this.sqlGetNextMessage = "SELECT a.id, a.topic, a.qos, a.retain, a.createdOn, a.publishedOn, a.publishedMessageId, a.confirmedOn, a.payload, a.priority, a.sessionId, a.droppedOn FROM "
+        this.sqlGetMessages = "SELECT id, topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn, compressed FROM "
+                + this.table + " WHERE id IN (";
+        this.sqlGetNextMessage = "SELECT a.id, a.topic, a.qos, a.retain, a.createdOn, a.publishedOn, a.publishedMessageId, a.confirmedOn, a.payload, a.priority, a.sessionId, a.droppedOn, a.compressed FROM "
                 + this.table + " AS a JOIN (SELECT id, publishedOn FROM " + this.table
                 + " ORDER BY publishedOn ASC NULLS FIRST, priority ASC, createdOn ASC LIMIT 1) AS b WHERE a.id = b.id AND b.publishedOn IS NULL;";
+        this.sqlGetNextMessages = "SELECT id, topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, payload, priority, sessionId, droppedOn, compressed FROM "
+                + this.table + " WHERE publishedOn IS NULL ORDER BY priority ASC, createdOn ASC LIMIT ?;";
         this.sqlSetPublished = "UPDATE " + this.table
                 + " SET publishedOn = ?, publishedMessageId = ?, sessionId = ? WHERE id = ?;";
         this.sqlSetPublished2 = "UPDATE " + this.table + " SET publishedOn = ? WHERE id = ?;";
@@ -119,6 +136,11 @@ public class DbDataStore implements DataStore {
                 + " WHERE confirmedOn <= DATEADD('ss', -?, ?) AND confirmedOn IS NOT NULL;";
         this.sqlDeletePublishedMessages = "DELETE FROM " + this.table
                 + " WHERE qos = 0 AND publishedOn <= DATEADD('ss', -?, ?) AND publishedOn IS NOT NULL;";
+        this.sqlPurgeChunkEnd = "SELECT MAX(id) FROM (SELECT id FROM " + this.table
+                + " WHERE id >= ? ORDER BY id ASC LIMIT ?) AS chunk;";
+        this.sqlDeleteStaleMessagesInRange = "DELETE FROM " + this.table
+                + " WHERE id >= ? AND id <= ? AND (droppedOn <= DATEADD('ss', -?, ?) OR confirmedOn <= DATEADD('ss', -?, ?)"
+                + " OR (qos = 0 AND publishedOn <= DATEADD('ss', -?, ?)));";
         this.sqlDuplicateCount = "SELECT count(*) FROM (SELECT id, COUNT(id) FROM " + this.table
                 + " GROUP BY id HAVING (COUNT(id) > 1)) dups;";
         this.sqlDropPrimaryKey = "ALTER TABLE " + this.table + " DROP PRIMARY KEY;";
@@ -134,31 +156,44 @@ public class DbDataStore implements DataStore {
     // ----------------------------------------------------------
 
     @Override
-    public synchronized void start(H2DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
-            throws KuraStoreException {
+    public synchronized void start(H2DbService dbService, int houseKeeperInterval, int purgeAge, int purgeChunkSize,
+            int capacity) throws KuraStoreException {
         this.dbService = dbService;
 
         this.houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
 
         //
         // Set up the schema tables required by the DataStore
-        update(houseKeeperInterval, purgeAge, capacity);
+        update(houseKeeperInterval, purgeAge, purgeChunkSize, capacity);
+    }
+
+    @Override
+    public synchronized void setPayloadCompression(boolean enabled) {
+        this.payloadCompression = enabled;
     }
 
     @Override
     public synchronized void stop() {
         logger.info("Canceling the Housekeeper Task...");
         if (this.houseKeeperTask != null) {
-            this.houseKeeperTask.cancel(true);
+            this.houseKeeperTask.cancel();
             this.houseKeeperExecutor.shutdownNow();
             this.houseKeeperTask = null;
         }
         dbService = null;
+        this.compressor.end();
     }
 
     private boolean isRepairEnabled() {
-        final BundleContext context = FrameworkUtil.getBundle(DbDataStore.class).getBundleContext();
+        final Bundle bundle = FrameworkUtil.getBundle(DbDataStore.class);
+        final BundleContext context = bundle == null ? null : bundle.getBundleContext();
+        if (context == null) {
+            return false;
+        }
         ServiceReference<SystemService> reference = context.getServiceReference(SystemService.class);
+        if (reference == null) {
+            return false;
+        }
         SystemService systemService = context.getService(reference);
         if (systemService == null) {
             return false;
@@ -173,16 +208,18 @@ public class DbDataStore implements DataStore {
     }
 
     @Override
-    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity) {
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int purgeChunkSize, int capacity) {
         this.capacity = capacity;
 
         try {
             if (this.houseKeeperTask != null) {
-                this.houseKeeperTask.cancel(true);
+                this.houseKeeperTask.cancel();
             }
 
             execute(this.sqlCreateTable);
 
+            execute(this.sqlAddCompressedColumn);
+
             execute(this.sqlCreateIndex);
 
             createIndex(this.table + "_PUBLISHEDON", this.table, "(PUBLISHEDON DESC)");
@@ -190,10 +227,8 @@ public class DbDataStore implements DataStore {
             createIndex(this.table + "_DROPPEDON", this.table, "(DROPPEDON DESC)");
 
             // Start the Housekeeper task
-            this.houseKeeperTask = this.houseKeeperExecutor.scheduleWithFixedDelay(
-                    new HouseKeeperTask(this, purgeAge, isRepairEnabled()), 1,    // start in one second
-                    houseKeeperInterval,   // repeat every retryInterval until we stopped.
-                    TimeUnit.SECONDS);
+            this.houseKeeperTask = new HouseKeeperTask(this, purgeAge, isRepairEnabled(), purgeChunkSize);
+            this.houseKeeperTask.start(this.houseKeeperExecutor, houseKeeperInterval);
         } catch (KuraStoreException e) {
             logger.warn("got exception while creating tables", e);
         }
@@ -272,6 +307,92 @@ public class DbDataStore implements DataStore {
         return message;
     }
 
+    @Override
+    public synchronized List<DataMessage> storeAll(List<DataMessage> messages) throws KuraStoreException {
+        if (dbService == null) {
+            throw new KuraStoreException("DbService instance not attached");
+        }
+        for (DataMessage message : messages) {
+            if (message.getTopic() == null || message.getTopic().trim().length() == 0) {
+                throw new IllegalArgumentException("topic");
+            }
+        }
+
+        // see store(), priority 0 and 1 messages bypass the capacity check
+        int available = this.capacity - getMessageCount();
+        List<DataMessage> accepted = new ArrayList<>(messages.size());
+        for (DataMessage message : messages) {
+            int priority = message.getPriority();
+            if (priority == 0 || priority == 1 || available-- > 0) {
+                accepted.add(message);
+            } else {
+                logger.error("Store capacity exceeded");
+                accepted.add(null);
+            }
+        }
+
+        try {
+            return storeAllInternal(accepted);
+        } catch (KuraStoreException e) {
+            // see store(), the whole transaction has been rolled back
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException && ((SQLException) cause).getErrorCode() == 22003) {
+                logger.warn("Identity generator limit exceeded. Resetting it...");
+                resetIdentityGenerator();
+                return storeAllInternal(accepted);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized List<DataMessage> storeAllInternal(List<DataMessage> messages) throws KuraStoreException {
+        final Timestamp now = new Timestamp(new Date().getTime());
+
+        return withConnection(c -> {
+            List<DataMessage> stored = new ArrayList<>(messages.size());
+
+            // H2 does not return the generated keys of a batch, so each row is inserted on its own,
+            // but all of them are committed at once
+            try (PreparedStatement pstmt = c.prepareStatement(this.sqlStore);
+                    PreparedStatement cstmt = c.prepareStatement("CALL IDENTITY();")) {
+                for (DataMessage message : messages) {
+                    if (message == null) {
+                        stored.add(null);
+                        continue;
+                    }
+                    pstmt.setString(1, message.getTopic());              // topic
+                    pstmt.setInt(2, message.getQos());               // qos
+                    pstmt.setBoolean(3, message.isRetain());                // retain
+                    pstmt.setTimestamp(4, now, this.utcCalendar); // createdOn
+                    pstmt.setTimestamp(5, null);                // publishedOn
+                    pstmt.setInt(6, -1);                 // publishedMessageId
+                    pstmt.setTimestamp(7, null);                // confirmedOn
+                    setPayload(pstmt, message.getPayload()); // payload, compressed
+                    pstmt.setInt(9, message.getPriority());            // priority
+                    pstmt.setString(10, null);               // sessionId
+                    pstmt.setTimestamp(11, null);               // droppedOn
+                    pstmt.execute();
+
+                    int msgId = -1;
+                    try (ResultSet rs = cstmt.executeQuery()) {
+                        if (rs.next()) {
+                            msgId = rs.getInt(1);
+                        }
+                    }
+
+                    stored.add(new DataMessage.Builder(msgId).withTopic(message.getTopic())
+                            .withQos(message.getQos()).withRetain(message.isRetain()).withCreatedOn(now)
+                            .withPublishedMessageId(-1).withPayload(message.getPayload())
+                            .withPriority(message.getPriority()).build());
+                }
+            }
+
+            c.commit();
+
+            return stored;
+        }, "Cannot store messages");
+    }
+
     private synchronized DataMessage storeInternal(String topic, byte[] payload, int qos, boolean retain, int priority)
             throws KuraStoreException {
         if (topic == null || topic.trim().length() == 0) {
@@ -293,7 +414,7 @@ public class DbDataStore implements DataStore {
                 pstmt.setTimestamp(5, null);                // publishedOn
                 pstmt.setInt(6, -1);                 // publishedMessageId
                 pstmt.setTimestamp(7, null);                // confirmedOn
-                pstmt.setBytes(8, payload);         // payload
+                setPayload(pstmt, payload);         // payload, compressed
                 pstmt.setInt(9, priority);            // priority
                 pstmt.setString(10, null);               // sessionId
                 pstmt.setTimestamp(11, null);               // droppedOn
@@ -333,6 +454,42 @@ public class DbDataStore implements DataStore {
         }, "Cannot get message by ID: " + msgId);
     }
 
+    @Override
+    public synchronized List<DataMessage> get(List<Integer> msgIds) throws KuraStoreException {
+        if (msgIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringBuilder sql = new StringBuilder(this.sqlGetMessages).append('?');
+        for (int i = 1; i < msgIds.size(); i++) {
+            sql.append(", ?");
+        }
+        sql.append(");");
+
+        return withConnection(c -> {
+            try (PreparedStatement stmt = c.prepareStatement(sql.toString())) {
+                for (int i = 0; i < msgIds.size(); i++) {
+                    stmt.setInt(i + 1, msgIds.get(i));
+                }
+                Map<Integer, DataMessage> found = new HashMap<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        DataMessage message = buildDataMessage(rs);
+                        found.put(message.getId(), message);
+                    }
+                }
+                List<DataMessage> messages = new ArrayList<>(found.size());
+                for (Integer msgId : msgIds) {
+                    DataMessage message = found.get(msgId);
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                }
+                return messages;
+            }
+        }, "Cannot get messages by ID");
+    }
+
     @Override
     public synchronized DataMessage getNextMessage() throws KuraStoreException {
 
@@ -348,6 +505,23 @@ public class DbDataStore implements DataStore {
         }, "Cannot get message next message");
     }
 
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int count) throws KuraStoreException {
+
+        return withConnection(c -> {
+            try (PreparedStatement stmt = c.prepareStatement(this.sqlGetNextMessages)) {
+                stmt.setInt(1, count);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    List<DataMessage> messages = new ArrayList<>();
+                    while (rs.next()) {
+                        messages.add(buildDataMessage(rs));
+                    }
+                    return messages;
+                }
+            }
+        }, "Cannot get next messages");
+    }
+
     @Override
     public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
         final Timestamp now = new Timestamp(new Date().getTime());
@@ -372,6 +546,48 @@ public class DbDataStore implements DataStore {
         updateTimestamp(this.sqlSetPublished2, msgId);
     }
 
+    @Override
+    public synchronized void published(List<DataMessage> messages) throws KuraStoreException {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        final Timestamp now = new Timestamp(new Date().getTime());
+
+        withConnection(c -> {
+            try (final PreparedStatement stmt = c.prepareStatement(this.sqlSetPublished);
+                    final PreparedStatement stmt2 = c.prepareStatement(this.sqlSetPublished2)) {
+                boolean hasTokens = false;
+                boolean hasNoTokens = false;
+
+                for (DataMessage message : messages) {
+                    if (message.getSessionId() != null) {
+                        stmt.setTimestamp(1, now, this.utcCalendar);
+                        stmt.setInt(2, message.getPublishedMessageId());
+                        stmt.setString(3, message.getSessionId());
+                        stmt.setInt(4, message.getId());
+                        stmt.addBatch();
+                        hasTokens = true;
+                    } else {
+                        stmt2.setTimestamp(1, now, this.utcCalendar);
+                        stmt2.setInt(2, message.getId());
+                        stmt2.addBatch();
+                        hasNoTokens = true;
+                    }
+                }
+
+                if (hasTokens) {
+                    stmt.executeBatch();
+                }
+                if (hasNoTokens) {
+                    stmt2.executeBatch();
+                }
+                c.commit();
+                return (Void) null;
+            }
+        }, "Cannot update timestamps");
+    }
+
     @Override
     public synchronized void confirmed(int msgId) throws KuraStoreException {
         updateTimestamp(this.sqlSetConfirmed, msgId);
@@ -406,16 +622,60 @@ public class DbDataStore implements DataStore {
     }
 
     @Override
-    public synchronized void deleteStaleMessages(int purgeAge) throws KuraStoreException {
+    public synchronized int deleteStaleMessages(int purgeAge) throws KuraStoreException {
         final Timestamp now = new Timestamp(System.currentTimeMillis());
         // Delete dropped messages (published with QoS > 0)
-        executeDeleteMessagesQuery(this.sqlDeleteDroppedMessages, now, purgeAge);
+        int deleted = executeDeleteMessagesQuery(this.sqlDeleteDroppedMessages, now, purgeAge);
 
         // Delete stale confirmed messages (published with QoS > 0)
-        executeDeleteMessagesQuery(this.sqlDeleteConfirmedMessages, now, purgeAge);
+        deleted += executeDeleteMessagesQuery(this.sqlDeleteConfirmedMessages, now, purgeAge);
 
         // Delete stale published messages with QoS == 0
-        executeDeleteMessagesQuery(this.sqlDeletePublishedMessages, now, purgeAge);
+        deleted += executeDeleteMessagesQuery(this.sqlDeletePublishedMessages, now, purgeAge);
+
+        return deleted;
+    }
+
+    @Override
+    public synchronized int deleteStaleMessages(int purgeAge, int chunkSize) throws KuraStoreException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        return withConnection(c -> {
+            // the chunk is bounded by the primary key, so that the delete does not scan the whole table
+            int chunkEnd = 0;
+            try (PreparedStatement stmt = c.prepareStatement(this.sqlPurgeChunkEnd)) {
+                stmt.setInt(1, this.purgeWatermark);
+                stmt.setInt(2, chunkSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        chunkEnd = rs.getInt(1);
+                    }
+                }
+            }
+
+            if (chunkEnd == 0) {
+                // end of the pass, or the IDs have been restarted
+                this.purgeWatermark = 0;
+                c.commit();
+                return -1;
+            }
+
+            try (PreparedStatement stmt = c.prepareStatement(this.sqlDeleteStaleMessagesInRange)) {
+                stmt.setInt(1, this.purgeWatermark);
+                stmt.setInt(2, chunkEnd);
+                for (int i = 3; i <= 7; i += 2) {
+                    stmt.setInt(i, purgeAge);
+                    stmt.setTimestamp(i + 1, now, this.utcCalendar);
+                }
+                int deleted = stmt.executeUpdate();
+                c.commit();
+                this.purgeWatermark = chunkEnd + 1;
+                return deleted;
+            }
+        }, "Cannot delete stale messages");
     }
 
     @Override
@@ -518,16 +778,16 @@ public class DbDataStore implements DataStore {
         }, "Cannot execute query");
     }
 
-    private synchronized void executeDeleteMessagesQuery(String sql, Timestamp timestamp, int purgeAge)
+    private synchronized int executeDeleteMessagesQuery(String sql, Timestamp timestamp, int purgeAge)
             throws KuraStoreException {
-        withConnection(c -> {
+        return withConnection(c -> {
             try (final PreparedStatement stmt = c.prepareStatement(sql)) {
                 stmt.setInt(1, purgeAge);
                 stmt.setTimestamp(2, timestamp, this.utcCalendar);
 
-                stmt.execute();
+                int deleted = stmt.executeUpdate();
                 c.commit();
-                return (Void) null;
+                return deleted;
             }
         }, "Cannot execute query");
     }
@@ -558,10 +818,24 @@ public class DbDataStore implements DataStore {
 
     private DataMessage buildDataMessage(ResultSet rs) throws SQLException {
         DataMessage.Builder builder = buildDataMessageBuilder(rs);
-        builder = builder.withPayload(rs.getBytes("payload"));
+        byte[] payload = rs.getBytes("payload");
+        if (payload != null && rs.getBoolean("compressed")) {
+            try {
+                payload = this.compressor.decompress(payload);
+            } catch (KuraStoreException e) {
+                throw new SQLException("Cannot decompress the payload of message " + rs.getInt("id"), e);
+            }
+        }
+        builder = builder.withPayload(payload);
         return builder.build();
     }
 
+    private void setPayload(PreparedStatement pstmt, byte[] payload) throws SQLException {
+        byte[] compressed = this.payloadCompression ? this.compressor.compress(payload) : null;
+        pstmt.setBytes(8, compressed != null ? compressed : payload);
+        pstmt.setBoolean(12, compressed != null);
+    }
+
     private DataMessage.Builder buildDataMessageBuilder(ResultSet rs) throws SQLException {
         DataMessage.Builder builder;
         builder = new DataMessage.Builder(rs.getInt("id")).withTopic(rs.getString("topic")).withQos(rs.getInt("qos"))
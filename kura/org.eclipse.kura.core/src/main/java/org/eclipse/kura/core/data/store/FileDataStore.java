@@ -0,0 +1,918 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.eclipse.kura.db.H2DbService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the DataStore which keeps messages in append-only, memory-mapped segment files.
+ * <p>
+ * Stored messages and their state transitions (published, confirmed, dropped) are appended as checksummed records
+ * to the active segment. The state of the messages is kept in an in-memory index, which is rebuilt by replaying the
+ * segments on start. Records are not forced to disk on each operation: the operating system writes them back, and
+ * the segments are forced on rollover, on housekeeping and on stop. This is a weaker durability than the one of the
+ * H2 store: the last operations before a power loss can be lost.
+ * <p>
+ * The housekeeper purges completed messages by appending a purge record for each of them, and deletes whole
+ * segments, oldest first, once none of their messages is alive anymore. The few messages still alive in an
+ * otherwise stale segment are copied to the active segment so that the segment can be deleted.
+ */
+public class FileDataStore implements DataStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileDataStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    // record length and CRC32 of the record body
+    private static final int RECORD_HEADER_SIZE = 8;
+    // record type, message ID and timestamp
+    private static final int RECORD_BODY_HEADER_SIZE = 13;
+
+    private static final byte RECORD_MESSAGE = 1;
+    private static final byte RECORD_PUBLISHED = 2;
+    private static final byte RECORD_CONFIRMED = 3;
+    private static final byte RECORD_DROPPED = 4;
+    private static final byte RECORD_UNPUBLISHED = 5;
+    private static final byte RECORD_PURGED = 6;
+
+    private static final byte FLAG_RETAIN = 0x01;
+    private static final byte FLAG_COMPRESSED = 0x02;
+
+    // a segment whose alive messages are less than 1/4 of its messages is compacted
+    private static final int COMPACTION_RATIO = 4;
+
+    private static final Comparator<Entry> PUBLISH_ORDER = Comparator.<Entry> comparingInt(e -> e.priority)
+            .thenComparingLong(e -> e.createdOn).thenComparingInt(e -> e.id);
+
+    private final File directory;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment activeSegment;
+    private long nextSegmentSequence;
+
+    private final Map<Integer, Entry> index = new HashMap<>();
+    private final NavigableSet<Entry> unpublished = new TreeSet<>(PUBLISH_ORDER);
+    private int nextId = 1;
+
+    // IDs of the messages to be scanned by the current chunked purge pass
+    private int[] purgeIds;
+    private int purgePosition;
+
+    private ScheduledExecutorService houseKeeperExecutor;
+    private HouseKeeperTask houseKeeperTask;
+    private int capacity;
+    private boolean started;
+    private boolean payloadCompression;
+    private final PayloadCompressor compressor = new PayloadCompressor();
+
+    private final CRC32 crc = new CRC32();
+
+    public FileDataStore(File directory) {
+        this.directory = directory;
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Start/Stop
+    //
+    // ----------------------------------------------------------
+
+    @Override
+    public synchronized void start(H2DbService dbService, int houseKeeperInterval, int purgeAge, int purgeChunkSize,
+            int capacity) throws KuraStoreException {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new KuraStoreException("Cannot create store directory " + this.directory);
+        }
+
+        load();
+        this.started = true;
+
+        this.houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
+        update(houseKeeperInterval, purgeAge, purgeChunkSize, capacity);
+    }
+
+    @Override
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int purgeChunkSize, int capacity) {
+        this.capacity = capacity;
+
+        if (this.houseKeeperTask != null) {
+            this.houseKeeperTask.cancel();
+        }
+
+        // Start the Housekeeper task
+        this.houseKeeperTask = new HouseKeeperTask(this, purgeAge, false, purgeChunkSize);
+        this.houseKeeperTask.start(this.houseKeeperExecutor, houseKeeperInterval);
+    }
+
+    @Override
+    public synchronized void setPayloadCompression(boolean enabled) {
+        this.payloadCompression = enabled;
+    }
+
+    @Override
+    public synchronized void stop() {
+        logger.info("Canceling the Housekeeper Task...");
+        if (this.houseKeeperTask != null) {
+            this.houseKeeperTask.cancel();
+            this.houseKeeperExecutor.shutdownNow();
+            this.houseKeeperTask = null;
+        }
+
+        for (Segment segment : this.segments) {
+            segment.close();
+        }
+        this.segments.clear();
+        this.activeSegment = null;
+        this.index.clear();
+        this.unpublished.clear();
+        this.purgeIds = null;
+        this.started = false;
+        this.compressor.end();
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Message APIs
+    //
+    // ----------------------------------------------------------
+
+    @Override
+    public synchronized DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
+            throws KuraStoreException {
+        checkStarted();
+        if (topic == null || topic.trim().length() == 0) {
+            throw new IllegalArgumentException("topic");
+        }
+
+        // Priority 0 and 1 messages bypass the capacity check, see DbDataStore
+        if (priority != 0 && priority != 1 && this.index.size() >= this.capacity) {
+            logger.error("Store capacity exceeded");
+            throw new KuraStoreCapacityReachedException("Store capacity exceeded");
+        }
+
+        Entry entry = appendMessage(nextId(), System.currentTimeMillis(), topic, payload, qos, retain, priority);
+        return buildDataMessage(entry, true);
+    }
+
+    @Override
+    public synchronized List<DataMessage> storeAll(List<DataMessage> messages) throws KuraStoreException {
+        checkStarted();
+        for (DataMessage message : messages) {
+            if (message.getTopic() == null || message.getTopic().trim().length() == 0) {
+                throw new IllegalArgumentException("topic");
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        List<DataMessage> stored = new ArrayList<>(messages.size());
+        for (DataMessage message : messages) {
+            int priority = message.getPriority();
+            if (priority != 0 && priority != 1 && this.index.size() >= this.capacity) {
+                logger.error("Store capacity exceeded");
+                stored.add(null);
+                continue;
+            }
+            Entry entry = appendMessage(nextId(), now, message.getTopic(), message.getPayload(), message.getQos(),
+                    message.isRetain(), priority);
+            stored.add(buildDataMessage(entry, true));
+        }
+        return stored;
+    }
+
+    @Override
+    public synchronized DataMessage get(int msgId) throws KuraStoreException {
+        checkStarted();
+        Entry entry = this.index.get(msgId);
+        return entry == null ? null : buildDataMessage(entry, true);
+    }
+
+    @Override
+    public synchronized List<DataMessage> get(List<Integer> msgIds) throws KuraStoreException {
+        checkStarted();
+        List<DataMessage> messages = new ArrayList<>(msgIds.size());
+        for (Integer msgId : msgIds) {
+            Entry entry = this.index.get(msgId);
+            if (entry != null) {
+                messages.add(buildDataMessage(entry, true));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized DataMessage getNextMessage() throws KuraStoreException {
+        checkStarted();
+        Entry entry = this.unpublished.isEmpty() ? null : this.unpublished.first();
+        return entry == null ? null : buildDataMessage(entry, true);
+    }
+
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int count) throws KuraStoreException {
+        checkStarted();
+        List<DataMessage> messages = new ArrayList<>(Math.min(count, this.unpublished.size()));
+        for (Entry entry : this.unpublished) {
+            if (messages.size() >= count) {
+                break;
+            }
+            messages.add(buildDataMessage(entry, true));
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
+        checkStarted();
+        appendPublished(msgId, System.currentTimeMillis(), publishedMsgId, sessionId);
+    }
+
+    @Override
+    public synchronized void published(int msgId) throws KuraStoreException {
+        checkStarted();
+        Entry entry = this.index.get(msgId);
+        if (entry != null) {
+            appendPublished(msgId, System.currentTimeMillis(), entry.publishedMessageId, entry.sessionId);
+        }
+    }
+
+    @Override
+    public synchronized void published(List<DataMessage> messages) throws KuraStoreException {
+        checkStarted();
+        long now = System.currentTimeMillis();
+        for (DataMessage message : messages) {
+            Entry entry = this.index.get(message.getId());
+            if (entry == null) {
+                continue;
+            }
+            if (message.getSessionId() != null) {
+                appendPublished(entry.id, now, message.getPublishedMessageId(), message.getSessionId());
+            } else {
+                appendPublished(entry.id, now, entry.publishedMessageId, entry.sessionId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void confirmed(int msgId) throws KuraStoreException {
+        checkStarted();
+        if (this.index.containsKey(msgId)) {
+            appendState(RECORD_CONFIRMED, msgId, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() throws KuraStoreException {
+        checkStarted();
+        List<DataMessage> messages = new ArrayList<>(this.unpublished.size());
+        for (Entry entry : this.unpublished) {
+            messages.add(buildDataMessage(entry, false));
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized List<DataMessage> allInFlightMessagesNoPayload() throws KuraStoreException {
+        checkStarted();
+        return listMessages(e -> e.publishedOn != 0 && e.qos > 0 && e.confirmedOn == 0 && e.droppedOn == 0);
+    }
+
+    @Override
+    public synchronized List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException {
+        checkStarted();
+        return listMessages(e -> e.droppedOn != 0);
+    }
+
+    @Override
+    public synchronized void unpublishAllInFlighMessages() throws KuraStoreException {
+        checkStarted();
+        for (Entry entry : findEntries(this::isInFlight)) {
+            appendState(RECORD_UNPUBLISHED, entry.id, 0);
+        }
+    }
+
+    @Override
+    public synchronized void dropAllInFlightMessages() throws KuraStoreException {
+        checkStarted();
+        long now = System.currentTimeMillis();
+        for (Entry entry : findEntries(this::isInFlight)) {
+            appendState(RECORD_DROPPED, entry.id, now);
+        }
+    }
+
+    @Override
+    public synchronized int deleteStaleMessages(int purgeAge) throws KuraStoreException {
+        checkStarted();
+        long now = System.currentTimeMillis();
+        long threshold = now - purgeAge * 1000L;
+
+        List<Entry> stale = new ArrayList<>();
+        for (Entry entry : this.index.values()) {
+            if (isStale(entry, threshold)) {
+                stale.add(entry);
+            }
+        }
+        for (Entry entry : stale) {
+            appendState(RECORD_PURGED, entry.id, now);
+        }
+        int deleted = stale.size();
+        logger.debug("Purged {} messages", deleted);
+
+        deleteSegments();
+        force();
+        return deleted;
+    }
+
+    @Override
+    public synchronized int deleteStaleMessages(int purgeAge, int chunkSize) throws KuraStoreException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        checkStarted();
+
+        if (this.purgeIds == null) {
+            // IDs wrap around, so the pass scans a snapshot of the index rather than an ID range
+            this.purgeIds = this.index.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            this.purgePosition = 0;
+        }
+        if (this.purgePosition >= this.purgeIds.length) {
+            this.purgeIds = null;
+            deleteSegments();
+            force();
+            return -1;
+        }
+
+        long now = System.currentTimeMillis();
+        long threshold = now - purgeAge * 1000L;
+        int end = Math.min(this.purgePosition + chunkSize, this.purgeIds.length);
+
+        int deleted = 0;
+        for (; this.purgePosition < end; this.purgePosition++) {
+            Entry entry = this.index.get(this.purgeIds[this.purgePosition]);
+            if (entry != null && isStale(entry, threshold)) {
+                appendState(RECORD_PURGED, entry.id, now);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Validates the records of all the segments, discarding the corrupted tails, and rebuilds the index from the
+     * valid records, as it is done on start.
+     */
+    @Override
+    public synchronized void repair() throws KuraStoreException {
+        checkStarted();
+
+        this.index.clear();
+        this.unpublished.clear();
+        this.purgeIds = null;
+
+        int repaired = 0;
+        for (Segment segment : this.segments) {
+            segment.messageCount = 0;
+            segment.aliveCount = 0;
+            if (!replay(segment)) {
+                segment.force();
+                repaired++;
+            }
+        }
+        logger.info("Checked {} segments, discarded the corrupted records of {} segments", this.segments.size(),
+                repaired);
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: Index
+    //
+    // ------------------------------------------------------------------
+
+    private void checkStarted() throws KuraStoreException {
+        if (!this.started) {
+            throw new KuraStoreException("Store not started");
+        }
+    }
+
+    private static boolean isStale(Entry entry, long threshold) {
+        return entry.droppedOn != 0 && entry.droppedOn <= threshold
+                || entry.confirmedOn != 0 && entry.confirmedOn <= threshold
+                || entry.qos == 0 && entry.publishedOn != 0 && entry.publishedOn <= threshold;
+    }
+
+    private void unindex(Entry entry) {
+        this.unpublished.remove(entry);
+        entry.segment.aliveCount--;
+    }
+
+    private int nextId() {
+        int id;
+        do {
+            id = this.nextId;
+            this.nextId = id == Integer.MAX_VALUE ? 1 : id + 1;
+        } while (this.index.containsKey(id));
+        return id;
+    }
+
+    private boolean isInFlight(Entry entry) {
+        return entry.publishedOn != 0 && entry.qos > 0 && entry.confirmedOn == 0;
+    }
+
+    private List<Entry> findEntries(Predicate<Entry> filter) {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : this.index.values()) {
+            if (filter.test(entry)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(PUBLISH_ORDER);
+        return entries;
+    }
+
+    private List<DataMessage> listMessages(Predicate<Entry> filter) throws KuraStoreException {
+        List<DataMessage> messages = new ArrayList<>();
+        for (Entry entry : findEntries(filter)) {
+            messages.add(buildDataMessage(entry, false));
+        }
+        return messages;
+    }
+
+    private void apply(Segment segment, int offset, ByteBuffer body) {
+        byte type = body.get();
+        int id = body.getInt();
+        long timestamp = body.getLong();
+
+        if (type == RECORD_MESSAGE) {
+            Entry previous = this.index.get(id);
+            if (previous != null) {
+                // the message has been copied by the compaction
+                previous.segment.aliveCount--;
+                this.unpublished.remove(previous);
+            }
+
+            byte qos = body.get();
+            body.get(); // flags
+            Entry entry = new Entry(id, segment, offset, timestamp, qos, body.getInt());
+            this.index.put(id, entry);
+            this.unpublished.add(entry);
+            segment.messageCount++;
+            segment.aliveCount++;
+            if (id >= this.nextId && id < Integer.MAX_VALUE) {
+                this.nextId = id + 1;
+            }
+            return;
+        }
+
+        Entry entry = this.index.get(id);
+        if (entry == null) {
+            // the message has already been purged
+            return;
+        }
+
+        switch (type) {
+        case RECORD_PUBLISHED:
+            this.unpublished.remove(entry);
+            entry.publishedOn = timestamp;
+            entry.publishedMessageId = body.getInt();
+            entry.sessionId = readString(body);
+            break;
+        case RECORD_CONFIRMED:
+            entry.confirmedOn = timestamp;
+            break;
+        case RECORD_DROPPED:
+            entry.droppedOn = timestamp;
+            break;
+        case RECORD_UNPUBLISHED:
+            entry.publishedOn = 0;
+            this.unpublished.add(entry);
+            break;
+        case RECORD_PURGED:
+            this.index.remove(id);
+            unindex(entry);
+            break;
+        default:
+            logger.warn("Unknown record type {} for message ID {}", type, id);
+        }
+    }
+
+    private DataMessage buildDataMessage(Entry entry, boolean withPayload) throws KuraStoreException {
+        ByteBuffer record = entry.segment.buffer.duplicate();
+        // skip the record type, the ID, the timestamp and the QoS
+        record.position(entry.offset + RECORD_HEADER_SIZE + RECORD_BODY_HEADER_SIZE + 1);
+        byte flags = record.get();
+        record.getInt(); // priority
+        String topic = readString(record);
+
+        DataMessage.Builder builder = new DataMessage.Builder(entry.id).withTopic(topic).withQos(entry.qos)
+                .withRetain((flags & FLAG_RETAIN) != 0).withCreatedOn(toDate(entry.createdOn))
+                .withPublishedOn(toDate(entry.publishedOn)).withPublishedMessageId(entry.publishedMessageId)
+                .withConfirmedOn(toDate(entry.confirmedOn)).withPriority(entry.priority)
+                .withSessionId(entry.sessionId).withDroppedOn(toDate(entry.droppedOn));
+        if (withPayload) {
+            byte[] payload = readBytes(record);
+            if (payload != null && (flags & FLAG_COMPRESSED) != 0) {
+                payload = this.compressor.decompress(payload);
+            }
+            builder.withPayload(payload);
+        }
+        return builder.build();
+    }
+
+    private static Date toDate(long timestamp) {
+        return timestamp == 0 ? null : new Date(timestamp);
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: Records
+    //
+    // ------------------------------------------------------------------
+
+    private Entry appendMessage(int id, long createdOn, String topic, byte[] payload, int qos, boolean retain,
+            int priority) throws KuraStoreException {
+        byte[] topicBytes = topic.getBytes(UTF_8);
+        byte flags = retain ? FLAG_RETAIN : 0;
+        byte[] compressed = this.payloadCompression ? this.compressor.compress(payload) : null;
+        if (compressed != null) {
+            flags |= FLAG_COMPRESSED;
+            payload = compressed;
+        }
+        int payloadLength = payload == null ? 0 : payload.length;
+
+        ByteBuffer body = reserve(
+                RECORD_BODY_HEADER_SIZE + 1 + 1 + 4 + 4 + topicBytes.length + 4 + payloadLength);
+        body.put(RECORD_MESSAGE).putInt(id).putLong(createdOn);
+        body.put((byte) qos).put(flags).putInt(priority);
+        body.putInt(topicBytes.length).put(topicBytes);
+        if (payload == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(payload.length).put(payload);
+        }
+        commit(body);
+
+        return this.index.get(id);
+    }
+
+    private void appendPublished(int id, long publishedOn, int publishedMsgId, String sessionId)
+            throws KuraStoreException {
+        byte[] sessionBytes = sessionId == null ? null : sessionId.getBytes(UTF_8);
+
+        ByteBuffer body = reserve(
+                RECORD_BODY_HEADER_SIZE + 4 + 4 + (sessionBytes == null ? 0 : sessionBytes.length));
+        body.put(RECORD_PUBLISHED).putInt(id).putLong(publishedOn).putInt(publishedMsgId);
+        if (sessionBytes == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(sessionBytes.length).put(sessionBytes);
+        }
+        commit(body);
+    }
+
+    private void appendState(byte type, int id, long timestamp) throws KuraStoreException {
+        ByteBuffer body = reserve(RECORD_BODY_HEADER_SIZE);
+        body.put(type).putInt(id).putLong(timestamp);
+        commit(body);
+    }
+
+    /**
+     * Returns a buffer over the body of a new record in the active segment.
+     */
+    private ByteBuffer reserve(int bodySize) throws KuraStoreException {
+        // keep room for the zero length that marks the end of the records
+        int recordSize = RECORD_HEADER_SIZE + bodySize;
+        if (this.activeSegment == null || this.activeSegment.remaining() < recordSize + 4) {
+            rollSegment(recordSize + 4);
+        }
+
+        ByteBuffer body = this.activeSegment.buffer.duplicate();
+        body.position(this.activeSegment.writePosition + RECORD_HEADER_SIZE);
+        body.limit(this.activeSegment.writePosition + recordSize);
+        return body.slice();
+    }
+
+    /**
+     * Completes the record reserved in the active segment and applies it to the index.
+     */
+    private void commit(ByteBuffer body) {
+        Segment segment = this.activeSegment;
+        int offset = segment.writePosition;
+
+        body.flip();
+        this.crc.reset();
+        this.crc.update(body.duplicate());
+
+        // the length is written last, a record is not visible until it is complete
+        segment.buffer.putInt(offset + 4, (int) this.crc.getValue());
+        segment.buffer.putInt(offset, body.limit());
+        segment.writePosition = offset + RECORD_HEADER_SIZE + body.limit();
+
+        apply(segment, offset, body);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: Segments
+    //
+    // ------------------------------------------------------------------
+
+    private void load() throws KuraStoreException {
+        File[] files = this.directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Segment> loaded = new ArrayList<>();
+
+        try {
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    long sequence;
+                    try {
+                        sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring unexpected file {}", file);
+                        continue;
+                    }
+                    loaded.add(new Segment(file, sequence, file.length()));
+                }
+            }
+            loaded.sort(Comparator.comparingLong(s -> s.sequence));
+            for (Segment segment : loaded) {
+                replay(segment);
+                this.segments.add(segment);
+                this.nextSegmentSequence = segment.sequence + 1;
+            }
+        } catch (IOException e) {
+            for (Segment segment : loaded) {
+                segment.close();
+            }
+            this.segments.clear();
+            this.index.clear();
+            this.unpublished.clear();
+            throw new KuraStoreException(e, "Cannot load store segments");
+        }
+
+        this.activeSegment = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+        logger.info("Loaded {} messages from {} segments in {}",
+                new Object[] { this.index.size(), this.segments.size(), this.directory });
+    }
+
+    /**
+     * Applies the valid records of a segment to the index, and clears the rest of the segment from the first
+     * invalid record.
+     *
+     * @return false if invalid records have been discarded
+     */
+    private boolean replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int limit = buffer.capacity();
+        int position = 0;
+
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < RECORD_BODY_HEADER_SIZE || length > limit - position - RECORD_HEADER_SIZE) {
+                logger.warn("Invalid record in {} at offset {}, discarding the rest of the segment", segment.file,
+                        position);
+                clear(segment, position, limit);
+                segment.writePosition = position;
+                return false;
+            }
+
+            ByteBuffer body = buffer.duplicate();
+            body.position(position + RECORD_HEADER_SIZE);
+            body.limit(position + RECORD_HEADER_SIZE + length);
+            body = body.slice();
+
+            this.crc.reset();
+            this.crc.update(body.duplicate());
+            if ((int) this.crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warn("Corrupted record in {} at offset {}, discarding the rest of the segment",
+                        segment.file, position);
+                clear(segment, position, limit);
+                segment.writePosition = position;
+                return false;
+            }
+
+            apply(segment, position, body);
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        segment.writePosition = position;
+        return true;
+    }
+
+    private static void clear(Segment segment, int from, int to) {
+        for (int i = from; i < to; i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+    }
+
+    private void rollSegment(int minSize) throws KuraStoreException {
+        if (this.activeSegment != null) {
+            this.activeSegment.force();
+        }
+
+        File file = new File(this.directory, String.format("%020d%s", this.nextSegmentSequence, SEGMENT_SUFFIX));
+        try {
+            Segment segment = new Segment(file, this.nextSegmentSequence, Math.max(SEGMENT_SIZE, minSize));
+            this.nextSegmentSequence++;
+            this.segments.add(segment);
+            this.activeSegment = segment;
+            logger.debug("Created segment {}", file);
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot create store segment " + file);
+        }
+    }
+
+    private void deleteSegments() throws KuraStoreException {
+        // Segments are deleted oldest first: a segment may hold the state records of messages of the previous ones
+        while (this.segments.size() > 1) {
+            Segment segment = this.segments.get(0);
+
+            if (segment.aliveCount > 0) {
+                if (segment.aliveCount * COMPACTION_RATIO > segment.messageCount) {
+                    break;
+                }
+                compact(segment);
+            }
+
+            this.segments.remove(0);
+            segment.close();
+            if (!segment.file.delete()) {
+                logger.warn("Cannot delete segment {}", segment.file);
+            }
+            logger.debug("Deleted segment {}", segment.file);
+        }
+    }
+
+    private void compact(Segment segment) throws KuraStoreException {
+        for (Entry entry : findEntries(e -> e.segment == segment)) {
+            DataMessage message = buildDataMessage(entry, true);
+
+            appendMessage(entry.id, entry.createdOn, message.getTopic(), message.getPayload(), entry.qos,
+                    message.isRetain(), entry.priority);
+            if (entry.publishedOn != 0) {
+                appendPublished(entry.id, entry.publishedOn, entry.publishedMessageId, entry.sessionId);
+            }
+            if (entry.confirmedOn != 0) {
+                appendState(RECORD_CONFIRMED, entry.id, entry.confirmedOn);
+            }
+            if (entry.droppedOn != 0) {
+                appendState(RECORD_DROPPED, entry.id, entry.droppedOn);
+            }
+        }
+        logger.debug("Compacted segment {}", segment.file);
+    }
+
+    private void force() {
+        if (this.activeSegment != null) {
+            this.activeSegment.force();
+        }
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+        private int messageCount;
+        private int aliveCount;
+
+        Segment(File file, long sequence, long size) throws IOException {
+            this.file = file;
+            this.sequence = sequence;
+            // the mapping stays valid after the file is closed
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        int remaining() {
+            return this.buffer.capacity() - this.writePosition;
+        }
+
+        void force() {
+            this.buffer.force();
+        }
+
+        /**
+         * Forces the segment and releases its mapping. The segment must not be accessed anymore.
+         */
+        void close() {
+            force();
+            unmap(this.buffer);
+        }
+
+        /**
+         * Releases a mapping right away instead of when the buffer is garbage collected, so that the deleted segments
+         * do not keep their disk space and address space. There is no public API for this, if the cleaner of the
+         * buffer cannot be reached the mapping is left to the garbage collector.
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                Class<?> unsafeClass = ClassLoader.getSystemClassLoader().loadClass("sun.misc.Unsafe");
+                Method invokeCleaner;
+                try {
+                    invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                } catch (NoSuchMethodException e) {
+                    // Java 8
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                    return;
+                }
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (Exception e) {
+                logger.debug("Cannot release the mapping of a segment", e);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final int id;
+        private final Segment segment;
+        private final int offset;
+        private final long createdOn;
+        private final int qos;
+        private final int priority;
+
+        private long publishedOn;
+        private int publishedMessageId = -1;
+        private String sessionId;
+        private long confirmedOn;
+        private long droppedOn;
+
+        Entry(int id, Segment segment, int offset, long createdOn, int qos, int priority) {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.createdOn = createdOn;
+            this.qos = qos;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Combines the messages stored concurrently into groups, each stored with a single
+ * {@link DataStore#storeAll(List)} call and therefore a single commit.
+ * <p>
+ * The first caller finding no group open becomes the leader of a new group. If no other group is being committed, the
+ * leader commits right away, so a lone caller does not wait for the commit window. Otherwise the callers arriving
+ * in the meantime join the group until the previous commit ends, the group is full or the commit window elapses,
+ * and the leader stores the whole group on behalf of the other callers.
+ * A caller returns only after its group has been committed, so durability is the same as
+ * {@link DataStore#store(String, byte[], int, boolean, int)}.
+ * A new group can be filled while the previous one is being committed.
+ */
+public class GroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final DataStore store;
+    private final long windowNanos;
+    private final int maxGroupSize;
+
+    private final Object lock = new Object();
+    private List<Request> group;
+    private int commitsInProgress;
+
+    private final LongAdder groupCount = new LongAdder();
+    private final LongAdder messageCount = new LongAdder();
+
+    public GroupCommitter(DataStore store, long window, TimeUnit unit, int maxGroupSize) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("Invalid group size: " + maxGroupSize);
+        }
+        this.store = store;
+        this.windowNanos = unit.toNanos(window);
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    public DataStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Stores the message as part of a group.
+     *
+     * @see DataStore#store(String, byte[], int, boolean, int)
+     */
+    public DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
+            throws KuraStoreException {
+        if (topic == null || topic.trim().length() == 0) {
+            throw new IllegalArgumentException("topic");
+        }
+
+        Request request = new Request(new DataMessage.Builder(0).withTopic(topic).withPayload(payload).withQos(qos)
+                .withRetain(retain).withPriority(priority).build());
+
+        List<Request> leaderGroup = null;
+        synchronized (this.lock) {
+            if (this.group == null || this.group.size() >= this.maxGroupSize) {
+                // the leader of a full group may not have closed it yet
+                this.group = new ArrayList<>();
+                leaderGroup = this.group;
+            }
+            this.group.add(request);
+            if (this.group.size() >= this.maxGroupSize) {
+                this.lock.notifyAll();
+            }
+        }
+
+        if (leaderGroup != null) {
+            awaitGroup(leaderGroup);
+            try {
+                commit(leaderGroup);
+            } finally {
+                synchronized (this.lock) {
+                    this.commitsInProgress--;
+                    this.lock.notifyAll();
+                }
+            }
+        }
+
+        return request.await();
+    }
+
+    public long getGroupCount() {
+        return this.groupCount.sum();
+    }
+
+    /**
+     * Returns the average number of messages per committed group.
+     */
+    public double getAverageGroupSize() {
+        long groups = this.groupCount.sum();
+        return groups == 0 ? 0 : (double) this.messageCount.sum() / groups;
+    }
+
+    private void awaitGroup(List<Request> leaderGroup) {
+        boolean interrupted = false;
+        synchronized (this.lock) {
+            long deadline = System.nanoTime() + this.windowNanos;
+            // the group is idle once the previous commit has ended, no more callers are expected to queue up
+            while (leaderGroup.size() < this.maxGroupSize && this.commitsInProgress > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this.lock, remaining);
+                } catch (InterruptedException e) {
+                    // commit anyway, the other callers are waiting for the group
+                    interrupted = true;
+                    break;
+                }
+            }
+            if (this.group == leaderGroup) {
+                this.group = null;
+            }
+            this.commitsInProgress++;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Request> leaderGroup) {
+        List<DataMessage> messages = new ArrayList<>(leaderGroup.size());
+        for (Request request : leaderGroup) {
+            messages.add(request.message);
+        }
+
+        try {
+            List<DataMessage> stored = this.store.storeAll(messages);
+            for (int i = 0; i < leaderGroup.size(); i++) {
+                DataMessage message = stored.get(i);
+                if (message == null) {
+                    leaderGroup.get(i).result
+                            .completeExceptionally(new KuraStoreCapacityReachedException("Store capacity exceeded"));
+                } else {
+                    leaderGroup.get(i).result.complete(message);
+                }
+            }
+            this.groupCount.increment();
+            this.messageCount.add(leaderGroup.size());
+            logger.debug("Stored a group of {} messages", leaderGroup.size());
+        } catch (Exception e) {
+            for (Request request : leaderGroup) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Request {
+
+        private final DataMessage message;
+        private final CompletableFuture<DataMessage> result = new CompletableFuture<>();
+
+        Request(DataMessage message) {
+            this.message = message;
+        }
+
+        DataMessage await() throws KuraStoreException {
+            try {
+                return this.result.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof KuraStoreException) {
+                    throw (KuraStoreException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new KuraStoreException(cause, "Cannot store message");
+            }
+        }
+    }
+}
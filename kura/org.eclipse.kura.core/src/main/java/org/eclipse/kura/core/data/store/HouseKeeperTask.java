@@ -11,7 +11,10 @@
  *******************************************************************************/
 package org.eclipse.kura.core.data.store;
 
-import org.eclipse.kura.KuraStoreException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.kura.core.data.DataStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,25 +22,73 @@ import org.slf4j.LoggerFactory;
 /**
  * Housekeeper Task which periodically purges confirmed messages from the local database.
  * It also contains the total number of messages in the system to a given cap.
+ * <p>
+ * If a purge chunk size is set, the stale messages are deleted in chunks of at most that many messages. Each chunk
+ * runs as a separate execution of the housekeeper executor, scheduled shortly after the previous one, so that the
+ * publishers are not locked out of the store for the whole purge and the executor is not held between chunks.
+ * The ticks occurring while a purge is in progress are skipped.
+ * <p>
+ * The store is checked and repaired, if requested, only on the first tick: the check scans the whole store, and
+ * the duplicated messages it repairs can only be left by a previous run.
  */
 public class HouseKeeperTask implements Runnable {
 
     private static final Logger s_logger = LoggerFactory.getLogger(HouseKeeperTask.class);
 
+    private static final long CHUNK_PAUSE_MILLIS = 5;
+
     private final int m_purgeAge;
     private boolean doRepair;
     private final DataStore m_store;
+    private final int purgeChunkSize;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> tick;
+    private ScheduledFuture<?> nextChunk;
+    private boolean cancelled;
+
+    // state of the chunked purge in progress, only accessed by the executor thread
+    private boolean purging;
+    private long purgeStart;
+    private int purgeDeleted;
+    private int purgeChunks;
 
-    public HouseKeeperTask(DataStore store, int purgeAge, boolean doRepair) {
+    public HouseKeeperTask(DataStore store, int purgeAge, boolean doRepair, int purgeChunkSize) {
         this.m_purgeAge = purgeAge;
         this.m_store = store;
         this.doRepair = doRepair;
+        this.purgeChunkSize = purgeChunkSize;
+    }
+
+    /**
+     * Schedules the task on a single threaded executor, starting in one second.
+     */
+    public synchronized void start(ScheduledExecutorService executor, int houseKeeperInterval) {
+        this.executor = executor;
+        this.tick = executor.scheduleWithFixedDelay(this, 1, houseKeeperInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Cancels the task, and the chunk of the purge in progress if any.
+     */
+    public synchronized void cancel() {
+        this.cancelled = true;
+        if (this.tick != null) {
+            this.tick.cancel(true);
+        }
+        if (this.nextChunk != null) {
+            this.nextChunk.cancel(true);
+        }
     }
 
     @Override
     public void run() {
         try {
             Thread.currentThread().setName(getClass().getSimpleName());
+            if (this.purging) {
+                s_logger.info("HouseKeeperTask: purge still in progress, skipping");
+                return;
+            }
             s_logger.info("HouseKeeperTask started.");
 
             //
@@ -45,12 +96,23 @@ public class HouseKeeperTask implements Runnable {
             if (doRepair) {
                 s_logger.info("HouseKeeperTask: Check store...");
                 this.m_store.repair();
+                doRepair = false;
             }
 
             //
             // delete all confirmed messages
             s_logger.info("HouseKeeperTask: Delete confirmed messages...");
-            this.m_store.deleteStaleMessages(this.m_purgeAge);
+            if (this.purgeChunkSize > 0) {
+                this.purging = true;
+                this.purgeStart = System.nanoTime();
+                this.purgeDeleted = 0;
+                this.purgeChunks = 0;
+                purgeChunk();
+                return;
+            }
+
+            long start = System.nanoTime();
+            int deleted = this.m_store.deleteStaleMessages(this.m_purgeAge);
 
             // delete overflowing messages
             // s_logger.info("HouseKeeperTask: Delete overflow messages...");
@@ -58,18 +120,67 @@ public class HouseKeeperTask implements Runnable {
             // int maxNumMsgs = Integer.parseInt(maxNumMsgsStr);
             // m_store.deleteOverflowMessages(maxNumMsgs);
 
-            s_logger.info("HouseKeeperTask ended.");
+            logEnded(deleted, 1, start);
         }
         //
         // do not throw the exception as that will stop future executions
-        catch (KuraStoreException me) {
-            s_logger.warn("HouseCleaningTask exception", me);
+        catch (Throwable t) {
+            logException(t);
+        }
+    }
+
+    private void purgeChunk() {
+        try {
+            int count = this.m_store.deleteStaleMessages(this.m_purgeAge, this.purgeChunkSize);
+            if (count >= 0) {
+                this.purgeDeleted += count;
+                this.purgeChunks++;
+                // let the publishers in between chunks
+                if (scheduleNextChunk()) {
+                    return;
+                }
+            }
+            this.purging = false;
+            logEnded(this.purgeDeleted, this.purgeChunks, this.purgeStart);
         } catch (Throwable t) {
-            if (t instanceof InterruptedException) {
-                s_logger.info("HouseCleaningTask stopped");
-            } else {
-                s_logger.warn("HouseCleaningTask exception", t);
+            this.purging = false;
+            logException(t);
+        }
+    }
+
+    private synchronized boolean scheduleNextChunk() {
+        if (this.cancelled) {
+            return false;
+        }
+        this.nextChunk = this.executor.schedule(this::purgeChunk, CHUNK_PAUSE_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private static void logEnded(int deleted, int chunks, long start) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        s_logger.info("HouseKeeperTask ended. Deleted {} messages in {} chunk(s) in {} ms", deleted, chunks, elapsed);
+    }
+
+    private static void logException(Throwable t) {
+        if (isInterruption(t)) {
+            // the task is cancelled by interrupting the executor thread, keep the interrupt flag for the executor
+            Thread.currentThread().interrupt();
+            s_logger.info("HouseCleaningTask stopped");
+        } else {
+            s_logger.warn("HouseCleaningTask exception", t);
+        }
+    }
+
+    private static boolean isInterruption(Throwable t) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        // the store may report the interruption of a blocking operation wrapped in its own exceptions
+        for (Throwable cause = t; cause != null && cause.getCause() != cause; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
             }
         }
+        return false;
     }
 }
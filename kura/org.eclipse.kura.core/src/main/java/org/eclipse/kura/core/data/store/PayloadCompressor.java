@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.kura.KuraStoreException;
+
+/**
+ * Compresses the payloads of the stored messages with the fastest deflate level.
+ * <p>
+ * A compressed payload is prefixed by the length of the original payload, so that it can be inflated
+ * into a buffer of the right size. Payloads too small to be worth compressing, or that would not shrink,
+ * are not compressed and the stores keep them as they are.
+ * Instances are not thread safe, each store uses its own while holding its monitor. The deflater and the inflater
+ * are created on first use and released by {@link #end()} when the store is stopped.
+ */
+final class PayloadCompressor {
+
+    // Smaller payloads hardly shrink, given the deflate and length overhead
+    static final int MIN_COMPRESSED_SIZE = 64;
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /**
+     * Returns the compressed payload, or null if the payload should be stored uncompressed.
+     */
+    byte[] compress(byte[] payload) {
+        if (payload == null || payload.length < MIN_COMPRESSED_SIZE) {
+            return null;
+        }
+
+        // not worth it if the output is not smaller than the payload
+        byte[] output = new byte[payload.length];
+        ByteBuffer.wrap(output).putInt(payload.length);
+
+        if (this.deflater == null) {
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        this.deflater.reset();
+        this.deflater.setInput(payload);
+        this.deflater.finish();
+        int length = 4;
+        while (!this.deflater.finished() && length < output.length) {
+            length += this.deflater.deflate(output, length, output.length - length);
+        }
+        if (!this.deflater.finished()) {
+            return null;
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    byte[] decompress(byte[] compressed) throws KuraStoreException {
+        try {
+            int length = ByteBuffer.wrap(compressed).getInt();
+            byte[] payload = new byte[length];
+
+            if (this.inflater == null) {
+                this.inflater = new Inflater();
+            }
+            this.inflater.reset();
+            this.inflater.setInput(compressed, 4, compressed.length - 4);
+            int inflated = 0;
+            while (inflated < length && !this.inflater.finished()) {
+                int count = this.inflater.inflate(payload, inflated, length - inflated);
+                if (count == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new KuraStoreException("Truncated compressed payload");
+            }
+            return payload;
+        } catch (DataFormatException | RuntimeException e) {
+            throw new KuraStoreException(e, "Cannot decompress payload");
+        }
+    }
+
+    /**
+     * Releases the native resources of the deflater and the inflater.
+     */
+    void end() {
+        if (this.deflater != null) {
+            this.deflater.end();
+            this.deflater = null;
+        }
+        if (this.inflater != null) {
+            this.inflater.end();
+            this.inflater = null;
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class MqttClientConfiguration {
     private final String clientId;
     private final PersistenceType persistenceType;
     private final MqttConnectOptions connectOptions;
+    private final int stripes;
 
     public enum PersistenceType {
         FILE, MEMORY
@@ -26,11 +27,17 @@ public class MqttClientConfiguration {
 
     public MqttClientConfiguration(String brokerUrl, String clientId, PersistenceType persistenceType,
             MqttConnectOptions connectOptions) {
+        this(brokerUrl, clientId, persistenceType, connectOptions, 1);
+    }
+
+    public MqttClientConfiguration(String brokerUrl, String clientId, PersistenceType persistenceType,
+            MqttConnectOptions connectOptions, int stripes) {
         super();
         this.brokerUrl = brokerUrl;
         this.clientId = clientId;
         this.persistenceType = persistenceType;
         this.connectOptions = connectOptions;
+        this.stripes = stripes;
     }
 
     public String getBrokerUrl() {
@@ -48,4 +55,11 @@ public class MqttClientConfiguration {
     public MqttConnectOptions getConnectOptions() {
         return this.connectOptions;
     }
+
+    /**
+     * Returns the number of MQTT connections the messages are published on.
+     */
+    public int getStripes() {
+        return this.stripes;
+    }
 }
@@ -13,10 +13,13 @@
 package org.eclipse.kura.core.data.transport.mqtt;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLSocketFactory;
 
@@ -28,8 +31,11 @@ import org.eclipse.kura.KuraTooManyInflightMessagesException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.configuration.Password;
+import org.eclipse.kura.core.data.DataTransportFlowControl;
 import org.eclipse.kura.core.data.transport.mqtt.MqttClientConfiguration.PersistenceType;
 import org.eclipse.kura.core.ssl.SslManagerServiceOptions;
+import org.eclipse.kura.core.util.TopicActivityLog;
+import org.eclipse.kura.core.util.TopicTemplate;
 import org.eclipse.kura.core.util.ValidationUtil;
 import org.eclipse.kura.crypto.CryptoService;
 import org.eclipse.kura.data.DataTransportService;
@@ -56,8 +62,8 @@ import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MqttDataTransport implements DataTransportService, MqttCallback, ConfigurableComponent, SslServiceListener,
-        CloudConnectionStatusComponent {
+public class MqttDataTransport implements DataTransportService, DataTransportFlowControl, MqttCallback,
+        ConfigurableComponent, SslServiceListener, CloudConnectionStatusComponent {
 
     private static final Logger logger = LoggerFactory.getLogger(MqttDataTransport.class);
 
@@ -66,9 +72,10 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
     // TODO: add mqtt+ssl for secure mqtt
 
     // '#' followed by one or more non-whitespace but not the '/'
-    private static final String TOPIC_PATTERN_STRING = "#([^\\s/]+)";
+    private static final char TOPIC_VARIABLE_MARKER = '#';
+    private static final int TOPIC_CACHE_SIZE = 1024;
 
-    private static final Pattern TOPIC_PATTERN = Pattern.compile(TOPIC_PATTERN_STRING);
+    private static final long ACTIVITY_LOG_INTERVAL_SECONDS = 300;
 
     private static final String MQTT_BROKER_URL_PROP_NAME = "broker-url";
     private static final String MQTT_USERNAME_PROP_NAME = "username";
@@ -90,6 +97,12 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
     private static final String CLOUD_ACCOUNT_NAME_PROP_NAME = "topic.context.account-name";
 
     private static final String PERSISTENCE_TYPE_PROP_NAME = "in-flight.persistence";
+    private static final String MAX_IN_FLIGHT_PROP_NAME = "in-flight.max";
+
+    private static final String MQTT_STRIPES_PROP_NAME = "connection.stripes";
+    // the topics of the control messages, such as the lifecycle messages
+    private static final String CONTROL_TOPIC_PREFIX = "$";
+    private static final int MAX_STRIPES = 16;
 
     private static final String TOPIC_ACCOUNT_NAME_CTX_NAME = "account-name";
     private static final String TOPIC_DEVICE_ID_CTX_NAME = "client-id";
@@ -108,6 +121,13 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
     private MqttAsyncClient mqttClient;
 
+    // The additional connections the messages are published on when striping is enabled, the primary client
+    // being the first stripe. Subscriptions and the LWT only use the primary client.
+    private MqttAsyncClient[] stripeClients = new MqttAsyncClient[0];
+    private volatile StripedMessageIds stripedIds;
+    private String stripedSessionSuffix;
+    private final AtomicBoolean connectionLostNotified = new AtomicBoolean();
+
     private DataTransportListenerS dataTransportListeners;
 
     private MqttClientConfiguration clientConf;
@@ -117,7 +137,12 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
     private PersistenceType persistenceType;
     private MqttClientPersistence persistence;
 
-    private final Map<String, String> topicContext = new HashMap<String, String>();
+    // replaced as a whole on configuration change
+    private volatile Map<String, String> topicContext = Collections.emptyMap();
+    private final TopicTemplate.Cache topicTemplates = new TopicTemplate.Cache(TOPIC_VARIABLE_MARKER,
+            TOPIC_CACHE_SIZE);
+    private final TopicActivityLog publishedLog = new TopicActivityLog(logger, "Published",
+            ACTIVITY_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
     private final Map<String, Object> properties = new HashMap<String, Object>();
 
     private CryptoService cryptoService;
@@ -304,6 +329,7 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
                 "#  MQTT version    = " + getMqttVersionLabel(this.clientConf.getConnectOptions().getMqttVersion()));
         logger.info("#  willDestination = " + this.clientConf.getConnectOptions().getWillDestination());
         logger.info("#  willMessage     = " + this.clientConf.getConnectOptions().getWillMessage());
+        logger.info("#  stripes   = " + this.clientConf.getStripes());
         logger.info("#");
         logger.info("#  Connecting...");
 
@@ -317,6 +343,7 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
         try {
             IMqttToken connectToken = this.mqttClient.connect(this.clientConf.getConnectOptions());
             connectToken.waitForCompletion(getTimeToWaitMillis() * 3);
+            connectStripes();
             logger.info("#  Connected!");
             logger.info("# ------------------------------------------------------------");
 
@@ -325,6 +352,7 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
         } catch (MqttException e) {
             logger.warn("xxxxx  Connect failed. Forcing disconnect. xxxxx {}", e);
+            disconnectForcibly();
             closeMqttClient();
 
             // Update status notification service
@@ -336,16 +364,36 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
             this.cloudConnectionStatusService.unregister(this);
         }
 
+        this.connectionLostNotified.set(false);
+
         // notify the listeners
         this.dataTransportListeners.onConnectionEstablished(this.newSession);
     }
 
     @Override
     public boolean isConnected() {
-        if (this.mqttClient != null) {
-            return this.mqttClient.isConnected();
+        if (this.mqttClient == null || !this.mqttClient.isConnected()) {
+            return false;
+        }
+        for (MqttAsyncClient stripeClient : this.stripeClients) {
+            if (!stripeClient.isConnected()) {
+                return false;
+            }
         }
-        return false;
+        return true;
+    }
+
+    /**
+     * Returns the in-flight window of the MQTT client. With striping, the window of a single client still bounds
+     * all the stripes together, as the messages of a busy topic may all go through the same client.
+     */
+    @Override
+    public int getMaxInFlightMessages() {
+        MqttClientConfiguration configuration = this.clientConf;
+        if (configuration == null) {
+            return 0;
+        }
+        return configuration.getConnectOptions().getMaxInflight();
     }
 
     @Override
@@ -428,6 +476,13 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
             } catch (MqttException e) {
                 logger.error("Disconnect failed", e);
             }
+            for (MqttAsyncClient stripeClient : this.stripeClients) {
+                try {
+                    stripeClient.disconnect(quiesceTimeout).waitForCompletion(getTimeToWaitMillis());
+                } catch (MqttException e) {
+                    logger.error("Disconnect of {} failed", stripeClient.getClientId(), e);
+                }
+            }
 
             //
             // notify the listeners
@@ -514,16 +569,47 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
         topic = replaceTopicVariables(topic);
 
-        logger.info("Publishing message on topic: {} with QoS: {}", topic, qos);
+        logger.debug("Publishing message on topic: {} with QoS: {}", topic, qos);
+        this.publishedLog.record(topic);
 
         MqttMessage message = new MqttMessage();
         message.setPayload(payload);
         message.setQos(qos);
         message.setRetained(retain);
 
+        // with striping, the messages are distributed by topic so that the messages of a topic are kept in order,
+        // the control topics all go through the primary connection so that they are kept in order with each other
+        StripedMessageIds ids = this.stripedIds;
+        int stripe = 0;
+        MqttAsyncClient client = this.mqttClient;
+        if (ids != null) {
+            if (!topic.startsWith(CONTROL_TOPIC_PREFIX)) {
+                stripe = Math.floorMod(topic.hashCode(), ids.getStripes());
+            }
+            if (stripe > 0) {
+                client = this.stripeClients[stripe - 1];
+            }
+            if (!client.isConnected()) {
+                throw new KuraNotConnectedException("Not connected");
+            }
+        }
+
         Integer messageId = null;
         try {
-            IMqttDeliveryToken token = this.mqttClient.publish(topic, message);
+            IMqttDeliveryToken token;
+            int transportMessageId = 0;
+            if (ids == null || qos == 0) {
+                token = client.publish(topic, message);
+            } else {
+                // the ID is assigned before publishing, as the message can be confirmed right away
+                transportMessageId = ids.assign();
+                try {
+                    token = client.publish(topic, message, transportMessageId, null);
+                } catch (MqttException | RuntimeException e) {
+                    ids.release(transportMessageId);
+                    throw e;
+                }
+            }
             // At present Paho ALWAYS allocates (gets and increments) internally
             // a message ID,
             // even for messages published with QoS == 0.
@@ -538,7 +624,11 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
             // of messages published with QoS > 0.
             logger.debug("Published message with ID: {}", token.getMessageId());
             if (qos > 0) {
-                messageId = Integer.valueOf(token.getMessageId());
+                if (ids == null) {
+                    messageId = Integer.valueOf(token.getMessageId());
+                } else {
+                    messageId = Integer.valueOf(transportMessageId);
+                }
             }
         } catch (MqttPersistenceException e) {
             // This is probably an unrecoverable internal error
@@ -579,6 +669,14 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
     // ---------------------------------------------------------
     @Override
     public void connectionLost(final Throwable cause) {
+        if (this.stripeClients.length > 0) {
+            // the striped connections are lost as a whole, so that the upper layer reconnects all of them
+            if (!this.connectionLostNotified.compareAndSet(false, true)) {
+                return;
+            }
+            disconnectForcibly();
+        }
+
         logger.warn("Connection Lost", cause);
 
         // notify the listeners
@@ -587,6 +685,10 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
     @Override
     public void deliveryComplete(IMqttDeliveryToken token) {
+        deliveryComplete(0, token);
+    }
+
+    private void deliveryComplete(int stripe, IMqttDeliveryToken token) {
 
         if (token == null) {
             logger.error("null token");
@@ -619,6 +721,17 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
         int id = token.getMessageId();
 
+        StripedMessageIds ids = this.stripedIds;
+        if (ids != null) {
+            if (!(token.getUserContext() instanceof Integer)) {
+                logger.debug("Ignoring deliveryComplete for untracked message with ID: {} on stripe {}",
+                        token.getMessageId(), stripe);
+                return;
+            }
+            id = (Integer) token.getUserContext();
+            ids.release(id);
+        }
+
         logger.debug("Delivery complete for message with ID: {}", id);
 
         // FIXME: We should be more selective here and only call the listener
@@ -766,14 +879,17 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
             conOpt.setMqttVersion((Integer) properties.get(MQTT_DEFAULT_VERSION_PROP_NAME));
 
-            synchronized (this.topicContext) {
-                this.topicContext.clear();
-                if (properties.get(CLOUD_ACCOUNT_NAME_PROP_NAME) != null) {
-                    this.topicContext.put(TOPIC_ACCOUNT_NAME_CTX_NAME,
-                            (String) properties.get(CLOUD_ACCOUNT_NAME_PROP_NAME));
-                }
-                this.topicContext.put(TOPIC_DEVICE_ID_CTX_NAME, clientId);
+            if (properties.get(MAX_IN_FLIGHT_PROP_NAME) != null) {
+                conOpt.setMaxInflight((Integer) properties.get(MAX_IN_FLIGHT_PROP_NAME));
+            }
+
+            Map<String, String> context = new HashMap<>();
+            if (properties.get(CLOUD_ACCOUNT_NAME_PROP_NAME) != null) {
+                context.put(TOPIC_ACCOUNT_NAME_CTX_NAME, (String) properties.get(CLOUD_ACCOUNT_NAME_PROP_NAME));
             }
+            context.put(TOPIC_DEVICE_ID_CTX_NAME, clientId);
+            this.topicContext = Collections.unmodifiableMap(context);
+            this.topicTemplates.clear();
 
             String willTopic = (String) properties.get(MQTT_LWT_TOPIC_PROP_NAME);
             if (!(willTopic == null || willTopic.isEmpty())) {
@@ -844,39 +960,18 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
             throw new IllegalStateException("Invalid MQTT client configuration: persistenceType: " + persistenceType);
         }
 
-        clientConfiguration = new MqttClientConfiguration(brokerUrl, clientId, persistenceType, conOpt);
+        int stripes = 1;
+        if (properties.get(MQTT_STRIPES_PROP_NAME) instanceof Integer) {
+            stripes = Math.max(1, Math.min(MAX_STRIPES, (Integer) properties.get(MQTT_STRIPES_PROP_NAME)));
+        }
+
+        clientConfiguration = new MqttClientConfiguration(brokerUrl, clientId, persistenceType, conOpt, stripes);
 
         return clientConfiguration;
     }
 
     private String replaceTopicVariables(String topic) {
-        boolean found;
-        Matcher topicMatcher = TOPIC_PATTERN.matcher(topic);
-        StringBuffer sb = new StringBuffer();
-        do {
-
-            found = topicMatcher.find();
-            if (found) {
-                // By default replace #variable-name (group 0) with itself
-                String replacement = topicMatcher.group(0);
-
-                // TODO: Try to get variable-name (group 1) from the context
-                String variableName = topicMatcher.group(1);
-                synchronized (this.topicContext) {
-                    String value = this.topicContext.get(variableName);
-                    if (value != null) {
-                        replacement = value;
-                    }
-                }
-
-                // Replace #variable-name with the value of the variable
-                topicMatcher.appendReplacement(sb, replacement);
-            }
-        } while (found);
-
-        topicMatcher.appendTail(sb);
-
-        String replacedTopic = sb.toString();
+        String replacedTopic = this.topicTemplates.get(topic).expand(this.topicContext::get);
 
         logger.debug("Replaced tokens in topic {} with: {}", topic, replacedTopic);
 
@@ -1025,8 +1120,141 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
             }
         }
 
+        if (setupStripes()) {
+            // the messages in-flight on the previous stripes cannot be confirmed anymore
+            newSession = true;
+        }
+
         this.newSession = newSession;
         this.sessionId = generateSessionId();
+        if (this.stripedIds != null) {
+            this.sessionId += this.stripedSessionSuffix;
+        }
+    }
+
+    /**
+     * Creates the additional clients of the striped connections, unless the current ones can be reused.
+     * The additional clients use derived client IDs and memory persistence.
+     *
+     * @return true if the stripes have been created
+     */
+    private boolean setupStripes() {
+        int count = this.clientConf.getStripes() - 1;
+        boolean reusable = this.stripeClients.length == count && (count == 0 || this.stripedIds != null);
+        for (int i = 0; reusable && i < count; i++) {
+            reusable = this.stripeClients[i].getServerURI().equals(this.clientConf.getBrokerUrl())
+                    && this.stripeClients[i].getClientId().equals(getStripeClientId(i + 1));
+        }
+        if (reusable) {
+            return false;
+        }
+
+        closeStripeClients();
+        if (count == 0) {
+            return false;
+        }
+
+        logger.info("Creating {} additional client instances for connection striping", count);
+        MqttAsyncClient[] clients = new MqttAsyncClient[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                clients[i] = new MqttAsyncClient(this.clientConf.getBrokerUrl(), getStripeClientId(i + 1),
+                        new MemoryPersistence());
+                clients[i].setCallback(new StripeCallback(i + 1));
+            }
+        } catch (MqttException e) {
+            logger.error("Client instantiation failed", e);
+            throw new IllegalStateException("Client instantiation failed", e);
+        }
+
+        this.stripeClients = clients;
+        this.stripedIds = new StripedMessageIds(count + 1);
+        this.stripedSessionSuffix = "-striped-" + System.currentTimeMillis();
+        return true;
+    }
+
+    private String getStripeClientId(int stripe) {
+        return this.clientConf.getClientId() + "-" + stripe;
+    }
+
+    private void connectStripes() throws MqttException {
+        if (this.stripeClients.length == 0) {
+            return;
+        }
+
+        // the LWT is only set on the primary connection
+        MqttConnectOptions primaryOptions = this.clientConf.getConnectOptions();
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setUserName(primaryOptions.getUserName());
+        if (primaryOptions.getPassword() != null) {
+            options.setPassword(primaryOptions.getPassword());
+        }
+        options.setKeepAliveInterval(primaryOptions.getKeepAliveInterval());
+        options.setConnectionTimeout(primaryOptions.getConnectionTimeout());
+        options.setCleanSession(primaryOptions.isCleanSession());
+        options.setMqttVersion(primaryOptions.getMqttVersion());
+        options.setMaxInflight(primaryOptions.getMaxInflight());
+        options.setSocketFactory(primaryOptions.getSocketFactory());
+
+        IMqttToken[] tokens = new IMqttToken[this.stripeClients.length];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = this.stripeClients[i].connect(options);
+        }
+        for (IMqttToken token : tokens) {
+            token.waitForCompletion(getTimeToWaitMillis() * 3);
+        }
+
+        // the IDs of the messages dropped with the previous session are released
+        List<Integer> pending = new ArrayList<>();
+        addPendingMessageIds(this.mqttClient, pending);
+        for (MqttAsyncClient stripeClient : this.stripeClients) {
+            addPendingMessageIds(stripeClient, pending);
+        }
+        this.stripedIds.retain(pending);
+    }
+
+    private static void addPendingMessageIds(MqttAsyncClient client, List<Integer> ids) {
+        IMqttDeliveryToken[] tokens = client.getPendingDeliveryTokens();
+        if (tokens == null) {
+            return;
+        }
+        for (IMqttDeliveryToken token : tokens) {
+            if (token.getUserContext() instanceof Integer) {
+                ids.add((Integer) token.getUserContext());
+            }
+        }
+    }
+
+    private void disconnectForcibly() {
+        if (this.mqttClient != null && this.mqttClient.isConnected()) {
+            disconnectForcibly(this.mqttClient);
+        }
+        for (MqttAsyncClient stripeClient : this.stripeClients) {
+            if (stripeClient.isConnected()) {
+                disconnectForcibly(stripeClient);
+            }
+        }
+    }
+
+    private void disconnectForcibly(MqttAsyncClient client) {
+        try {
+            client.disconnectForcibly(0, getTimeToWaitMillis());
+        } catch (MqttException e) {
+            logger.warn("Cannot disconnect client {}", client.getClientId(), e);
+        }
+    }
+
+    private void closeStripeClients() {
+        for (MqttAsyncClient stripeClient : this.stripeClients) {
+            try {
+                stripeClient.setCallback(null);
+                stripeClient.close();
+            } catch (MqttException e) {
+                logger.warn("Cannot close client {}", stripeClient.getClientId(), e);
+            }
+        }
+        this.stripeClients = new MqttAsyncClient[0];
+        this.stripedIds = null;
     }
 
     private void closeMqttClient() {
@@ -1041,6 +1269,31 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
         } finally {
             this.mqttClient = null;
         }
+        closeStripeClients();
+    }
+
+    private final class StripeCallback implements MqttCallback {
+
+        private final int stripe;
+
+        private StripeCallback(int stripe) {
+            this.stripe = stripe;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            MqttDataTransport.this.connectionLost(cause);
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            MqttDataTransport.this.deliveryComplete(this.stripe, token);
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) throws Exception {
+            MqttDataTransport.this.messageArrived(topic, message);
+        }
     }
 
     private static String getMqttVersionLabel(int mqttVersion) {
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.transport.mqtt;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.eclipse.kura.KuraTooManyInflightMessagesException;
+
+/**
+ * Allocates the message IDs of the messages published on the striped connections, unique across the transport.
+ * <p>
+ * Each connection allocates its own MQTT message IDs, so the same ID is in use on several connections at the same
+ * time. The transport assigns its own ID, in the same 16 bit range, to each message published with QoS &gt; 0
+ * before publishing it, and attaches it to the delivery token as its user context, so that it is known when the
+ * message is confirmed by its connection.
+ */
+final class StripedMessageIds {
+
+    static final int MAX_ID = 65535;
+
+    private final int stripes;
+    // transport message ID -> in use
+    private final BitSet used = new BitSet(MAX_ID + 1);
+    private int next;
+
+    StripedMessageIds(int stripes) {
+        this.stripes = stripes;
+    }
+
+    int getStripes() {
+        return this.stripes;
+    }
+
+    /**
+     * Assigns a transport message ID to a message about to be published.
+     *
+     * @return the transport message ID
+     * @throws KuraTooManyInflightMessagesException
+     *             if all the IDs are in use, as the message could not be tracked until its confirmation
+     */
+    synchronized int assign() throws KuraTooManyInflightMessagesException {
+        int id = this.used.nextClearBit(this.next + 1);
+        if (id > MAX_ID) {
+            id = this.used.nextClearBit(1);
+            if (id > MAX_ID) {
+                throw new KuraTooManyInflightMessagesException("Too many in-flight messages");
+            }
+        }
+        this.used.set(id);
+        this.next = id;
+        return id;
+    }
+
+    /**
+     * Releases the transport message ID of a message confirmed, or not published.
+     */
+    synchronized void release(int id) {
+        this.used.clear(id);
+    }
+
+    /**
+     * Releases all the IDs but the ones of the messages still pending, the other messages will never be confirmed.
+     */
+    synchronized void retain(Collection<Integer> pending) {
+        this.used.clear();
+        for (Integer id : pending) {
+            this.used.set(id);
+        }
+    }
+}
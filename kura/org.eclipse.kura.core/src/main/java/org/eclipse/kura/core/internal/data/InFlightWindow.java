@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The sliding window of the messages published with QoS &gt; 0 and not confirmed yet.
+ * <p>
+ * The window has a slot for each MQTT message ID, holding the ID of the stored message published with it.
+ * The publisher {@link #tryAcquire() reserves} room in the window before publishing a message and
+ * {@link #track(int, String, int, long) tracks} it as soon as the transport returns the MQTT message ID,
+ * while confirmations are {@link #confirm(int, String) processed} concurrently by the transport callbacks.
+ * Slots are only updated with CAS operations, so neither side takes a lock.
+ * <p>
+ * A confirmation can overtake the tracking of its message. If the publisher is publishing, the confirmation
+ * is recorded in the slot and handed over to the publisher by {@link #track(int, String, int, long)}.
+ * <p>
+ * There is a single publisher, which {@link #awaitRelease(long) parks} on the window while it is full.
+ */
+public class InFlightWindow {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightWindow.class);
+
+    /**
+     * Returned by {@link #confirm(int, String)} if the confirmation will be processed by the publisher.
+     */
+    public static final int CONFIRM_DEFERRED = 0;
+
+    /**
+     * Returned by {@link #confirm(int, String)} if no message is tracked for the confirmation.
+     */
+    public static final int NOT_TRACKED = -1;
+
+    // MQTT message IDs are 16 bit integers
+    private static final int SLOTS = 1 << 16;
+
+    private static final long EMPTY = 0;
+
+    // A slot holds EMPTY, the positive ID of the tracked message or, for a confirmation
+    // received before the message was tracked, the negated publish section number.
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS);
+    private final long[] publishedNanos = new long[SLOTS];
+
+    private final AtomicInteger occupancy = new AtomicInteger();
+    private volatile int capacity;
+    private volatile String sessionId;
+
+    // Odd while the publisher is publishing
+    private final AtomicLong publishSection = new AtomicLong();
+
+    private final AtomicLong releaseCount = new AtomicLong();
+    private final AtomicLong wakeUpCount = new AtomicLong();
+    private volatile Thread waiter;
+
+    private final LongAdder confirmedCount = new LongAdder();
+    private final LongAdder confirmLatencyNanos = new LongAdder();
+    private final AtomicLong maxConfirmLatencyNanos = new AtomicLong();
+    private final LatencyHistogram confirmLatencies = new LatencyHistogram();
+
+    public InFlightWindow(int capacity) {
+        setCapacity(capacity);
+    }
+
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        wakeUp();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of messages in-flight or being published.
+     */
+    public int getOccupancy() {
+        return this.occupancy.get();
+    }
+
+    public boolean isFull() {
+        return this.occupancy.get() >= this.capacity;
+    }
+
+    /**
+     * Reserves room in the window for a message about to be published.
+     *
+     * @return false if the window is full
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = this.occupancy.get();
+            if (current >= this.capacity) {
+                return false;
+            }
+            if (this.occupancy.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases room in the window, reserved by {@link #tryAcquire()} for a message that has not been tracked.
+     */
+    public void release() {
+        this.occupancy.decrementAndGet();
+        this.releaseCount.incrementAndGet();
+        unparkWaiter();
+    }
+
+    /**
+     * Marks the beginning of a publish section. Confirmations received while publishing are kept for the
+     * messages not tracked yet.
+     */
+    public void beginPublish() {
+        this.publishSection.incrementAndGet();
+    }
+
+    public void endPublish() {
+        this.publishSection.incrementAndGet();
+    }
+
+    /**
+     * Tracks a message published in the current publish section, using room reserved by {@link #tryAcquire()}.
+     * Tracking a message with a different session ID releases all the messages of the previous session.
+     *
+     * @return false if the message has already been confirmed, in which case the room in the window is released
+     */
+    public boolean track(int mqttMessageId, String sessionId, int messageId, long publishedNanos) {
+        if (messageId <= 0) {
+            throw new IllegalArgumentException("Invalid message ID: " + messageId);
+        }
+        int slot = mqttMessageId & SLOTS - 1;
+        if (!sessionId.equals(this.sessionId)) {
+            clear();
+            this.sessionId = sessionId;
+        }
+
+        long earlyConfirmation = getEarlyConfirmation();
+        this.publishedNanos[slot] = publishedNanos;
+        for (;;) {
+            long current = this.slots.get(slot);
+            if (current == earlyConfirmation) {
+                if (this.slots.compareAndSet(slot, current, EMPTY)) {
+                    onConfirmed(slot);
+                    return false;
+                }
+            } else if (this.slots.compareAndSet(slot, current, messageId)) {
+                if (current > 0) {
+                    logger.error("MQTT message ID {} already tracked for message ID {}", mqttMessageId, current);
+                    release();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tracks a message restored from the store, disregarding the capacity of the window.
+     */
+    public void restore(int mqttMessageId, String sessionId, int messageId) {
+        this.occupancy.incrementAndGet();
+        this.sessionId = sessionId;
+        if (!track(mqttMessageId, sessionId, messageId, System.nanoTime())) {
+            logger.warn("Restored MQTT message ID {} already confirmed", mqttMessageId);
+        }
+    }
+
+    /**
+     * Confirms the message tracked for the MQTT message ID.
+     *
+     * @return the ID of the confirmed message, {@link #CONFIRM_DEFERRED} if the confirmation has been recorded for
+     *         a message being published, or {@link #NOT_TRACKED}
+     */
+    public int confirm(int mqttMessageId, String sessionId) {
+        int slot = mqttMessageId & SLOTS - 1;
+        for (;;) {
+            long current = this.slots.get(slot);
+            if (current > 0 && sessionId.equals(this.sessionId)) {
+                if (this.slots.compareAndSet(slot, current, EMPTY)) {
+                    onConfirmed(slot);
+                    return (int) current;
+                }
+                continue;
+            }
+
+            long section = this.publishSection.get();
+            if ((section & 1) == 0) {
+                return NOT_TRACKED;
+            }
+            if (this.slots.compareAndSet(slot, current, -section)) {
+                if (current > 0) {
+                    // stale message of a previous session
+                    release();
+                }
+                return CONFIRM_DEFERRED;
+            }
+        }
+    }
+
+    /**
+     * Releases all the tracked messages, keeping the confirmations received in the current publish section.
+     */
+    public void clear() {
+        long earlyConfirmation = getEarlyConfirmation();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            long current = this.slots.get(slot);
+            while (current != EMPTY && current != earlyConfirmation) {
+                if (this.slots.compareAndSet(slot, current, EMPTY)) {
+                    if (current > 0) {
+                        release();
+                    }
+                    break;
+                }
+                current = this.slots.get(slot);
+            }
+        }
+    }
+
+    /**
+     * Parks the caller while the window is full, until room is released, {@link #wakeUp()} is called or the
+     * timeout elapses. Only the publisher can wait on the window.
+     *
+     * @param timeoutNanos
+     *            the timeout, 0 to wait without a timeout
+     * @return false if the timeout elapsed
+     */
+    public boolean awaitRelease(long timeoutNanos) {
+        long releases = this.releaseCount.get();
+        long wakeUps = this.wakeUpCount.get();
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        this.waiter = Thread.currentThread();
+        try {
+            while (isFull() && this.releaseCount.get() == releases && this.wakeUpCount.get() == wakeUps) {
+                if (timeoutNanos == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            this.waiter = null;
+        }
+    }
+
+    /**
+     * Wakes up the publisher waiting on the window.
+     */
+    public void wakeUp() {
+        this.wakeUpCount.incrementAndGet();
+        unparkWaiter();
+    }
+
+    public long getConfirmedCount() {
+        return this.confirmedCount.sum();
+    }
+
+    /**
+     * Returns the average time elapsed between the publication of a message and its confirmation.
+     */
+    public long getAverageConfirmLatency(TimeUnit unit) {
+        long count = this.confirmedCount.sum();
+        return count == 0 ? 0 : unit.convert(this.confirmLatencyNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxConfirmLatency(TimeUnit unit) {
+        return unit.convert(this.maxConfirmLatencyNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public LatencyHistogram getConfirmLatencyHistogram() {
+        return this.confirmLatencies;
+    }
+
+    @Override
+    public String toString() {
+        return "InFlightWindow [occupancy=" + getOccupancy() + ", capacity=" + this.capacity + ", confirmed="
+                + getConfirmedCount() + ", averageConfirmLatencyMicros="
+                + getAverageConfirmLatency(TimeUnit.MICROSECONDS) + ", maxConfirmLatencyMicros="
+                + getMaxConfirmLatency(TimeUnit.MICROSECONDS) + "]";
+    }
+
+    private long getEarlyConfirmation() {
+        long section = this.publishSection.get();
+        // no confirmation can be recorded outside of a publish section
+        return (section & 1) == 0 ? Long.MIN_VALUE : -section;
+    }
+
+    private void onConfirmed(int slot) {
+        long latency = System.nanoTime() - this.publishedNanos[slot];
+        this.confirmedCount.increment();
+        this.confirmLatencyNanos.add(latency);
+        this.maxConfirmLatencyNanos.accumulateAndGet(latency, Math::max);
+        this.confirmLatencies.record(latency, TimeUnit.NANOSECONDS);
+        release();
+    }
+
+    private void unparkWaiter() {
+        Thread thread = this.waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies over fixed buckets, from 1 ms to 10 s in 1-2-5 steps, plus an overflow bucket.
+ * Recording is lock-free.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private final long[] boundsNanos = new long[BOUNDS_MILLIS.length];
+    private final LongAdder[] counts = new LongAdder[BOUNDS_MILLIS.length + 1];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            this.boundsNanos[i] = TimeUnit.MILLISECONDS.toNanos(BOUNDS_MILLIS[i]);
+        }
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long latency, TimeUnit unit) {
+        long nanos = unit.toNanos(latency);
+        int bucket = 0;
+        while (bucket < this.boundsNanos.length && nanos > this.boundsNanos[bucket]) {
+            bucket++;
+        }
+        this.counts[bucket].increment();
+    }
+
+    /**
+     * Returns the inclusive upper bounds of the buckets in milliseconds, the overflow bucket excluded.
+     */
+    public long[] getBoundsMillis() {
+        return BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Returns the number of latencies recorded in each bucket, the last one being the overflow bucket.
+     */
+    public long[] getCounts() {
+        long[] result = new long[this.counts.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = this.counts[i].sum();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.core.data.DataServiceMetrics;
+
+/**
+ * Renders the {@link DataServiceMetrics} as a flat JSON document.
+ */
+public final class MetricsJsonWriter {
+
+    private MetricsJsonWriter() {
+    }
+
+    public static String toJson(DataServiceMetrics metrics, long timestamp) {
+        StringBuilder json = new StringBuilder(512);
+        json.append('{');
+        json.append("\"timestamp\":").append(timestamp);
+
+        json.append(",\"stored\":{\"count\":").append(metrics.getStoredMessages());
+        json.append(",\"rate\":").append(formatRate(metrics.getStoreRate())).append('}');
+
+        json.append(",\"published\":{\"count\":").append(metrics.getPublishedMessages());
+        json.append(",\"rate\":").append(formatRate(metrics.getPublishRate())).append('}');
+
+        json.append(",\"confirmed\":{\"count\":").append(metrics.getConfirmedMessages());
+        json.append(",\"averageLatencyMs\":").append(metrics.getAverageConfirmLatency(TimeUnit.MILLISECONDS));
+        json.append(",\"maxLatencyMs\":").append(metrics.getMaxConfirmLatency(TimeUnit.MILLISECONDS));
+        json.append(",\"latencyHistogramMs\":{");
+        long[] bounds = metrics.getConfirmLatencyHistogramBounds();
+        long[] counts = metrics.getConfirmLatencyHistogram();
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(i < bounds.length ? Long.toString(bounds[i]) : "+Inf").append("\":")
+                    .append(counts[i]);
+        }
+        json.append("}}");
+
+        json.append(",\"backlog\":{");
+        boolean first = true;
+        for (Map.Entry<Integer, Integer> depth : metrics.getBacklogDepths().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(depth.getKey()).append("\":").append(depth.getValue());
+        }
+        json.append('}');
+
+        json.append(",\"inFlight\":").append(metrics.getInFlightMessages());
+        json.append(",\"throttled\":").append(metrics.getThrottledPublishes());
+        json.append(",\"congestionEvents\":").append(metrics.getCongestionEvents());
+        json.append('}');
+        return json.toString();
+    }
+
+    private static String formatRate(double rate) {
+        return String.format(Locale.ROOT, "%.2f", rate);
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.eclipse.kura.core.data.DataMessage;
+
+/**
+ * The IDs of the stored messages waiting to be published, in a FIFO lane per priority.
+ * <p>
+ * The next messages to be published are taken from the head of the lane with the highest priority,
+ * 0 being the highest, so that picking them does not depend on the number of messages waiting.
+ * The lanes only hold the message IDs and are rebuilt from the store whenever the store state is changed
+ * outside of the publishing flow.
+ */
+public class PriorityLanes {
+
+    private final TreeMap<Integer, ArrayDeque<Integer>> lanes = new TreeMap<>();
+    // priority of each queued message
+    private final Map<Integer, Integer> priorities = new HashMap<>();
+
+    /**
+     * Appends the message to the tail of the lane for its priority, unless it is queued already.
+     */
+    public synchronized void add(int messageId, int priority) {
+        if (this.priorities.putIfAbsent(messageId, priority) != null) {
+            return;
+        }
+        this.lanes.computeIfAbsent(priority, p -> new ArrayDeque<>()).addLast(messageId);
+    }
+
+    /**
+     * Replaces the content of the lanes with the given unpublished messages, which must be sorted in publish order.
+     */
+    public synchronized void reset(List<DataMessage> unpublished) {
+        clear();
+        if (unpublished != null) {
+            for (DataMessage message : unpublished) {
+                add(message.getId(), message.getPriority());
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the next messages to be published, without removing them.
+     */
+    public synchronized List<Integer> peek(int max) {
+        List<Integer> ids = new ArrayList<>(Math.min(max, this.priorities.size()));
+        for (ArrayDeque<Integer> lane : this.lanes.values()) {
+            Iterator<Integer> iterator = lane.iterator();
+            while (ids.size() < max && iterator.hasNext()) {
+                ids.add(iterator.next());
+            }
+            if (ids.size() >= max) {
+                break;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Removes the message from its lane. Removing the head of a lane, as done when publishing, is O(1).
+     *
+     * @return false if the message was not queued
+     */
+    public synchronized boolean remove(int messageId) {
+        Integer priority = this.priorities.remove(messageId);
+        if (priority == null) {
+            return false;
+        }
+        ArrayDeque<Integer> lane = this.lanes.get(priority);
+        if (lane.peekFirst() == messageId) {
+            lane.pollFirst();
+        } else {
+            lane.removeFirstOccurrence(messageId);
+        }
+        if (lane.isEmpty()) {
+            this.lanes.remove(priority);
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        this.lanes.clear();
+        this.priorities.clear();
+    }
+
+    public synchronized int size() {
+        return this.priorities.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.priorities.isEmpty();
+    }
+
+    /**
+     * Returns the number of messages queued with the given priority.
+     */
+    public synchronized int getDepth(int priority) {
+        ArrayDeque<Integer> lane = this.lanes.get(priority);
+        return lane == null ? 0 : lane.size();
+    }
+
+    /**
+     * Returns the number of messages queued in each non-empty lane, by priority.
+     */
+    public synchronized Map<Integer, Integer> getDepths() {
+        Map<Integer, Integer> depths = new LinkedHashMap<>();
+        for (Entry<Integer, ArrayDeque<Integer>> entry : this.lanes.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().size());
+        }
+        return Collections.unmodifiableMap(depths);
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityLanes " + getDepths();
+    }
+}
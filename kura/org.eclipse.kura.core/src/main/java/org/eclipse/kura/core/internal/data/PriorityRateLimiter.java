@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a separate {@link RateLimiter} to each band of message priorities.
+ * <p>
+ * Bands are matched in the order they were added, so that a band added first takes precedence over an
+ * overlapping one added later. Priorities not covered by any band are not limited.
+ */
+public class PriorityRateLimiter {
+
+    private final int[] minPriorities;
+    private final int[] maxPriorities;
+    private final RateLimiter[] limiters;
+
+    private PriorityRateLimiter(List<Band> bands) {
+        int size = bands.size();
+        this.minPriorities = new int[size];
+        this.maxPriorities = new int[size];
+        this.limiters = new RateLimiter[size];
+        for (int i = 0; i < size; i++) {
+            Band band = bands.get(i);
+            this.minPriorities[i] = band.minPriority;
+            this.maxPriorities[i] = band.maxPriority;
+            this.limiters[i] = band.limiter;
+        }
+    }
+
+    /**
+     * Returns the limiter applied to the given priority.
+     *
+     * @return the limiter or null if the priority is not limited
+     */
+    public RateLimiter getRateLimiter(int priority) {
+        for (int i = 0; i < this.limiters.length; i++) {
+            if (priority >= this.minPriorities[i] && priority <= this.maxPriorities[i]) {
+                return this.limiters[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Acquires a token from the band of the given priority.
+     *
+     * @return true if the token has been acquired or the priority is not limited
+     */
+    public boolean tryAcquire(int priority) {
+        RateLimiter limiter = getRateLimiter(priority);
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    /**
+     * Returns the time to wait before a token is available in the band of the given priority.
+     */
+    public long getWaitTime(int priority, TimeUnit unit) {
+        RateLimiter limiter = getRateLimiter(priority);
+        return limiter == null ? 0 : limiter.getWaitTime(unit);
+    }
+
+    public List<Band> getBands() {
+        List<Band> bands = new ArrayList<>(this.limiters.length);
+        for (int i = 0; i < this.limiters.length; i++) {
+            bands.add(new Band(this.minPriorities[i], this.maxPriorities[i], this.limiters[i]));
+        }
+        return Collections.unmodifiableList(bands);
+    }
+
+    /**
+     * Returns the number of acquisitions refused by all the bands.
+     */
+    public long getThrottledCount() {
+        long count = 0;
+        for (RateLimiter limiter : this.limiters) {
+            count += limiter.getThrottledCount();
+        }
+        return count;
+    }
+
+    public static final class Band {
+
+        private final int minPriority;
+        private final int maxPriority;
+        private final RateLimiter limiter;
+
+        private Band(int minPriority, int maxPriority, RateLimiter limiter) {
+            this.minPriority = minPriority;
+            this.maxPriority = maxPriority;
+            this.limiter = limiter;
+        }
+
+        public int getMinPriority() {
+            return this.minPriority;
+        }
+
+        public int getMaxPriority() {
+            return this.maxPriority;
+        }
+
+        public RateLimiter getRateLimiter() {
+            return this.limiter;
+        }
+
+        @Override
+        public String toString() {
+            return "Band [" + this.minPriority + "-" + this.maxPriority + ", " + this.limiter + "]";
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Band> bands = new ArrayList<>();
+
+        public Builder withBand(int minPriority, int maxPriority, RateLimiter limiter) {
+            if (minPriority > maxPriority) {
+                throw new IllegalArgumentException("Invalid priority band: " + minPriority + "-" + maxPriority);
+            }
+            this.bands.add(new Band(minPriority, maxPriority, limiter));
+            return this;
+        }
+
+        public PriorityRateLimiter build() {
+            return new PriorityRateLimiter(this.bands);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A thread safe, non-blocking rate limiter with nanosecond precision.
+ * <p>
+ * The limiter implements the generic cell rate algorithm: instead of a token count it keeps the
+ * theoretical arrival time of the next request, which is advanced by one emission interval for each
+ * acquired token. A request is allowed if it does not arrive earlier than the theoretical arrival time
+ * minus the burst tolerance. The state is a single {@link AtomicLong} updated with a CAS, so acquiring
+ * a token neither locks nor allocates.
+ */
+public class RateLimiter {
+
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final int burstSize;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong theoreticalArrivalTime;
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+
+    /**
+     * Creates a rate limiter that allows bursts of up to {@code burstSize} tokens and refills a token every
+     * {@code period} {@code unit}.
+     */
+    public RateLimiter(int burstSize, long period, TimeUnit unit) {
+        this(burstSize, unit.toNanos(period), System::nanoTime);
+    }
+
+    RateLimiter(int burstSize, long periodNanos, LongSupplier nanoClock) {
+        if (burstSize < 1) {
+            throw new IllegalArgumentException("Invalid burst size: " + burstSize);
+        }
+        if (periodNanos < 1) {
+            throw new IllegalArgumentException("Invalid period: " + periodNanos);
+        }
+        this.emissionInterval = periodNanos;
+        this.burstTolerance = (burstSize - 1) * periodNanos;
+        this.burstSize = burstSize;
+        this.nanoClock = nanoClock;
+        this.theoreticalArrivalTime = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Acquires a token if one is available.
+     *
+     * @return true if the token has been acquired, false if the caller is throttled
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            long now = this.nanoClock.getAsLong();
+            long tat = this.theoreticalArrivalTime.get();
+            long start = tat - now > 0 ? tat : now;
+            if (start - now > this.burstTolerance) {
+                this.throttledCount.increment();
+                return false;
+            }
+            if (this.theoreticalArrivalTime.compareAndSet(tat, start + this.emissionInterval)) {
+                this.acquiredCount.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the time to wait before the next token is available, rounded up to the given unit.
+     *
+     * @return the wait time, 0 if a token is available
+     */
+    public long getWaitTime(TimeUnit unit) {
+        long wait = this.theoreticalArrivalTime.get() - this.nanoClock.getAsLong() - this.burstTolerance;
+        if (wait <= 0) {
+            return 0;
+        }
+        long unitNanos = unit.toNanos(1);
+        return (wait + unitNanos - 1) / unitNanos;
+    }
+
+    /**
+     * Returns the number of tokens that can be acquired right now.
+     */
+    public int getAvailableTokens() {
+        long backlog = this.theoreticalArrivalTime.get() - this.nanoClock.getAsLong();
+        if (backlog <= 0) {
+            return this.burstSize;
+        }
+        long available = (this.burstTolerance + this.emissionInterval - backlog) / this.emissionInterval;
+        return (int) Math.max(0, Math.min(this.burstSize, available));
+    }
+
+    public int getBurstSize() {
+        return this.burstSize;
+    }
+
+    public long getPeriod(TimeUnit unit) {
+        return unit.convert(this.emissionInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of tokens acquired since the creation of the limiter.
+     */
+    public long getAcquiredCount() {
+        return this.acquiredCount.sum();
+    }
+
+    /**
+     * Returns the number of acquisitions refused since the creation of the limiter.
+     */
+    public long getThrottledCount() {
+        return this.throttledCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter [burstSize=" + this.burstSize + ", periodNanos=" + this.emissionInterval
+                + ", availableTokens=" + getAvailableTokens() + ", acquired=" + getAcquiredCount() + ", throttled="
+                + getThrottledCount() + "]";
+    }
+}
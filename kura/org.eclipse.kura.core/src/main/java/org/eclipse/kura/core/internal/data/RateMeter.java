@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts events and measures their rate over the last complete sampling period.
+ * Marking events is lock-free, the rate is sampled lazily when read.
+ */
+public class RateMeter {
+
+    private static final long DEFAULT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final LongAdder count = new LongAdder();
+    private final long periodNanos;
+    private final LongSupplier clock;
+
+    private long sampleNanos;
+    private long sampleCount;
+    private double rate;
+
+    public RateMeter() {
+        this(DEFAULT_PERIOD_NANOS, System::nanoTime);
+    }
+
+    RateMeter(long periodNanos, LongSupplier clock) {
+        this.periodNanos = periodNanos;
+        this.clock = clock;
+        this.sampleNanos = clock.getAsLong();
+    }
+
+    public void mark() {
+        this.count.increment();
+    }
+
+    public void mark(long events) {
+        this.count.add(events);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the number of events per second over the last complete sampling period.
+     */
+    public synchronized double getRate() {
+        long now = this.clock.getAsLong();
+        long elapsed = now - this.sampleNanos;
+        if (elapsed >= this.periodNanos) {
+            long current = this.count.sum();
+            this.rate = (current - this.sampleCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            this.sampleCount = current;
+            this.sampleNanos = now;
+        }
+        return this.rate;
+    }
+}
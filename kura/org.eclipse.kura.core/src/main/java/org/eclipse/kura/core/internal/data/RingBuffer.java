@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer FIFO ring.
+ * <p>
+ * Each slot carries a sequence number that tells producers and consumers whether the slot
+ * is free or holds an element for the current lap, so that {@link #offer(Object)} and {@link #poll()}
+ * only need a single CAS on the tail or head position respectively.
+ * The slots are allocated for the next power of two, but no more elements than the given capacity are held.
+ */
+public class RingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        // a single slot could not tell a full ring from an empty one
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = capacity;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Inserts the element at the tail of the ring.
+     *
+     * @return false if the ring is full
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = this.tail.get();
+        for (;;) {
+            int index = (int) position & this.mask;
+            long delta = this.sequences.get(index) - position;
+            if (delta == 0) {
+                // the head only moves forward, the ring cannot be filled beyond the capacity once this is checked
+                if (position - this.head.get() >= this.capacity) {
+                    return false;
+                }
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.elements.set(index, element);
+                    this.sequences.set(index, position + 1);
+                    return true;
+                }
+                position = this.tail.get();
+            } else if (delta < 0) {
+                return false;
+            } else {
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the head of the ring.
+     *
+     * @return the element or null if the ring is empty
+     */
+    public T poll() {
+        long position = this.head.get();
+        for (;;) {
+            int index = (int) position & this.mask;
+            long delta = this.sequences.get(index) - (position + 1);
+            if (delta == 0) {
+                if (this.head.compareAndSet(position, position + 1)) {
+                    T element = this.elements.getAndSet(index, null);
+                    this.sequences.set(index, position + this.mask + 1);
+                    return element;
+                }
+                position = this.head.get();
+            } else if (delta < 0) {
+                return null;
+            } else {
+                position = this.head.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the element at the head of the ring without removing it.
+     * The result is only stable if there is a single consumer.
+     *
+     * @return the element or null if the ring is empty
+     */
+    public T peek() {
+        long position = this.head.get();
+        int index = (int) position & this.mask;
+        if (this.sequences.get(index) == position + 1) {
+            return this.elements.get(index);
+        }
+        return null;
+    }
+
+    public int size() {
+        long size = this.tail.get() - this.head.get();
+        return (int) Math.max(0, Math.min(size, this.capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.internal.util;
+
+import org.eclipse.kura.core.util.GZipUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ties the lifetime of the codecs pooled by {@link GZipUtil} to the one of the core bundle: the component is
+ * deactivated when the bundle is stopped, and the native zlib state of the pooled codecs is released then.
+ * The codecs are shared by all the users of {@link GZipUtil}, so they cannot be released by any one of them.
+ */
+public class GZipCodecLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(GZipCodecLifecycle.class);
+
+    protected void deactivate() {
+        logger.debug("Ending the pooled gzip codecs");
+        GZipUtil.endPooledCodecs();
+    }
+}
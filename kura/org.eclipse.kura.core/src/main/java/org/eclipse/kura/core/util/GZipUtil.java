@@ -14,11 +14,101 @@ package org.eclipse.kura.core.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
+/**
+ * Compresses and decompresses data in the gzip format.
+ * <p>
+ * The {@link Deflater}, {@link Inflater} and the working buffers are kept in a bounded pool and reused, so that no
+ * native zlib state is left behind for the garbage collector to finalize. The codecs that do not fit in the pool
+ * are ended right away, the pooled ones by {@link #endPooledCodecs()}.
+ */
 public class GZipUtil {
 
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // Buffers grown above this size are not kept for the next call
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+
+    private static final byte[] HEADER = { (byte) GZIPInputStream.GZIP_MAGIC,
+            (byte) (GZIPInputStream.GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private static final int MAX_POOLED_CODECS = Runtime.getRuntime().availableProcessors();
+
+    private static final Deque<Codec> POOL = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private static final class Codec {
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        private byte[] grow(int length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, length));
+            return this.buffer;
+        }
+
+        private byte[] result(int length) {
+            byte[] result = Arrays.copyOf(this.buffer, length);
+            if (this.buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                this.buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+            return result;
+        }
+
+        private void end() {
+            this.deflater.end();
+            this.inflater.end();
+        }
+    }
+
+    private static Codec acquire() {
+        Codec codec = POOL.pollFirst();
+        if (codec == null) {
+            return new Codec();
+        }
+        POOL_SIZE.decrementAndGet();
+        return codec;
+    }
+
+    private static void release(Codec codec) {
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_CODECS) {
+            POOL.offerFirst(codec);
+        } else {
+            POOL_SIZE.decrementAndGet();
+            codec.end();
+        }
+    }
+
+    /**
+     * Releases the native resources of the pooled codecs, the pool is filled again by the next calls.
+     * <p>
+     * The pool is shared by all the users of this class: it is only ended when the core bundle is stopped.
+     */
+    public static void endPooledCodecs() {
+        Codec codec;
+        while ((codec = POOL.pollFirst()) != null) {
+            POOL_SIZE.decrementAndGet();
+            codec.end();
+        }
+    }
+
     public static boolean isCompressed(byte[] bytes) throws IOException {
         if (bytes == null || bytes.length < 2) {
             return false;
@@ -29,27 +119,141 @@ public class GZipUtil {
     }
 
     public static byte[] compress(byte[] source) throws IOException {
+        Codec codec = acquire();
+        try {
+            return compress(codec, source);
+        } finally {
+            release(codec);
+        }
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPOutputStream gzipos = null;
+    private static byte[] compress(Codec codec, byte[] source) {
+        Deflater deflater = codec.deflater;
+        byte[] buffer = codec.buffer;
+
+        System.arraycopy(HEADER, 0, buffer, 0, HEADER_SIZE);
+        int length = HEADER_SIZE;
+
+        deflater.reset();
+        deflater.setInput(source);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = codec.grow(buffer.length + source.length / 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+
+        if (buffer.length - length < TRAILER_SIZE) {
+            buffer = codec.grow(length + TRAILER_SIZE);
+        }
+        codec.crc.reset();
+        codec.crc.update(source, 0, source.length);
+        writeInt(buffer, length, (int) codec.crc.getValue());
+        writeInt(buffer, length + 4, source.length);
+
+        return codec.result(length + TRAILER_SIZE);
+    }
+
+    public static byte[] decompress(byte[] source) throws IOException {
+        int offset = skipHeader(source);
+        if (offset < 0) {
+            // let the stream implementation deal with the unusual inputs and report the errors
+            return decompressStream(source);
+        }
+
+        Codec codec = acquire();
         try {
-            gzipos = new GZIPOutputStream(baos);
-            gzipos.write(source);
-        } catch (IOException e) {
-            throw e;
+            return decompress(codec, source, offset);
         } finally {
-            if (gzipos != null) {
-                try {
-                    gzipos.close();
-                } catch (IOException e) {
-                    // Ignore
+            release(codec);
+        }
+    }
+
+    private static byte[] decompress(Codec codec, byte[] source, int offset) throws IOException {
+        Inflater inflater = codec.inflater;
+        byte[] buffer = codec.buffer;
+        int length = 0;
+
+        inflater.reset();
+        inflater.setInput(source, offset, source.length - offset);
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = codec.grow(buffer.length * 2);
+                }
+                int count = inflater.inflate(buffer, length, buffer.length - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Unexpected end of gzip data");
                 }
+                length += count;
             }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
         }
-        return baos.toByteArray();
+
+        int trailer = source.length - inflater.getRemaining();
+        if (source.length - trailer != TRAILER_SIZE) {
+            // missing trailer or concatenated members
+            return decompressStream(source);
+        }
+        codec.crc.reset();
+        codec.crc.update(buffer, 0, length);
+        if (readInt(source, trailer) != (int) codec.crc.getValue() || readInt(source, trailer + 4) != length) {
+            throw new IOException("Corrupt gzip trailer");
+        }
+
+        return codec.result(length);
     }
 
-    public static byte[] decompress(byte[] source) throws IOException {
+    private static int skipHeader(byte[] source) {
+        if (source.length < HEADER_SIZE + TRAILER_SIZE || !isCompressedUnchecked(source)
+                || source[2] != Deflater.DEFLATED) {
+            return -1;
+        }
+        int flags = source[3] & 0xff;
+        int offset = HEADER_SIZE;
+        if ((flags & FLAG_EXTRA) != 0) {
+            offset += 2 + ((source[offset] & 0xff) | (source[offset + 1] & 0xff) << 8);
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            offset = skipZeroTerminated(source, offset);
+        }
+        if ((flags & FLAG_COMMENT) != 0 && offset >= 0) {
+            offset = skipZeroTerminated(source, offset);
+        }
+        if ((flags & FLAG_HCRC) != 0 && offset >= 0) {
+            offset += 2;
+        }
+        return offset >= 0 && offset <= source.length - TRAILER_SIZE ? offset : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] source, int offset) {
+        for (int i = offset; i < source.length; i++) {
+            if (source[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isCompressedUnchecked(byte[] bytes) {
+        return bytes[0] == (byte) GZIPInputStream.GZIP_MAGIC && bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8 | (buffer[offset + 2] & 0xff) << 16
+                | (buffer[offset + 3] & 0xff) << 24;
+    }
+
+    private static byte[] decompressStream(byte[] source) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ByteArrayInputStream bais = new ByteArrayInputStream(source);
         GZIPInputStream gzipis = null;
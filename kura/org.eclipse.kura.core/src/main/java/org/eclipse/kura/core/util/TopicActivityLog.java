@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+
+/**
+ * Counts the messages handled on each topic and logs a summary of the counts at most once per interval, instead of
+ * logging every message.
+ * <p>
+ * The counting is cheap enough for the publish and receive paths: no string is built unless a summary is due. The
+ * per-message log lines are still available at debug level at the call sites.
+ * <p>
+ * The counters of the topics without messages in the last interval are dropped after each summary, so that the
+ * topics seen once do not hold a counter forever. The topics beyond the maximum number of counters are counted
+ * together until some counters are dropped.
+ */
+public final class TopicActivityLog {
+
+    static final String OTHER_TOPICS = "<other>";
+
+    static final int MAX_TOPICS = 256;
+    private static final int MAX_LOGGED_TOPICS = 10;
+
+    private final Logger logger;
+    private final String activity;
+    private final long intervalNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicLong nextDump;
+    private final AtomicLong lastDump;
+
+    public TopicActivityLog(Logger logger, String activity, long interval, TimeUnit unit) {
+        this(logger, activity, unit.toNanos(interval), System::nanoTime);
+    }
+
+    TopicActivityLog(Logger logger, String activity, long intervalNanos, LongSupplier clock) {
+        this.logger = logger;
+        this.activity = activity;
+        this.intervalNanos = intervalNanos;
+        this.clock = clock;
+
+        long now = clock.getAsLong();
+        this.lastDump = new AtomicLong(now);
+        this.nextDump = new AtomicLong(now + intervalNanos);
+    }
+
+    /**
+     * Counts a message on a topic and logs the summary if it is due.
+     */
+    public void record(String topic) {
+        LongAdder count = this.counts.get(topic);
+        if (count == null) {
+            count = this.counts.size() < MAX_TOPICS ? this.counts.computeIfAbsent(topic, t -> new LongAdder())
+                    : this.counts.computeIfAbsent(OTHER_TOPICS, t -> new LongAdder());
+        }
+        count.increment();
+
+        long now = this.clock.getAsLong();
+        long due = this.nextDump.get();
+        if (now - due >= 0 && this.nextDump.compareAndSet(due, now + this.intervalNanos)) {
+            dump(now);
+        }
+    }
+
+    private void dump(long now) {
+        long elapsed = now - this.lastDump.getAndSet(now);
+
+        List<Map.Entry<String, Long>> snapshot = new ArrayList<>(this.counts.size());
+        long total = 0;
+        for (Map.Entry<String, LongAdder> entry : this.counts.entrySet()) {
+            long count = entry.getValue().sumThenReset();
+            if (count > 0) {
+                snapshot.add(new SimpleImmutableEntry<>(entry.getKey(), count));
+                total += count;
+            } else {
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!this.logger.isInfoEnabled()) {
+            return;
+        }
+        snapshot.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        StringBuilder topics = new StringBuilder();
+        for (int i = 0; i < snapshot.size() && i < MAX_LOGGED_TOPICS; i++) {
+            if (i > 0) {
+                topics.append(", ");
+            }
+            topics.append(snapshot.get(i).getKey()).append('=').append(snapshot.get(i).getValue());
+        }
+        if (snapshot.size() > MAX_LOGGED_TOPICS) {
+            topics.append(", ...");
+        }
+
+        this.logger.info("{} {} messages on {} topics in the last {} s: {}", this.activity, total, snapshot.size(),
+                TimeUnit.NANOSECONDS.toSeconds(elapsed), topics);
+    }
+
+    private void evict(String topic, LongAdder count) {
+        if (!this.counts.remove(topic, count)) {
+            return;
+        }
+        // carry over the messages counted while the counter was being dropped to the next summary
+        long late = count.sumThenReset();
+        if (late > 0) {
+            this.counts.computeIfAbsent(topic, t -> new LongAdder()).add(late);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A topic containing variables, split once into its literal and variable segments so that it can be expanded
+ * without matching a regular expression every time.
+ * <p>
+ * A variable is a marker character, such as {@code #} or {@code $}, followed by one or more characters that are
+ * neither whitespace nor {@code /}: the variable name. A marker not followed by a name, as in the {@code a/#} MQTT
+ * wildcard, is a literal.
+ */
+public final class TopicTemplate {
+
+    private final String template;
+    private final char marker;
+    // one more literal than variables: literal, variable, literal, ..., literal
+    private final String[] literals;
+    private final String[] variables;
+
+    private TopicTemplate(String template, char marker, String[] literals, String[] variables) {
+        this.template = template;
+        this.marker = marker;
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    public static TopicTemplate compile(String template, char marker) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+
+        int literalStart = 0;
+        int i = 0;
+        while (i < template.length()) {
+            if (template.charAt(i) != marker) {
+                i++;
+                continue;
+            }
+            int nameEnd = i + 1;
+            while (nameEnd < template.length() && isNameChar(template.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd > i + 1) {
+                literals.add(template.substring(literalStart, i));
+                variables.add(template.substring(i + 1, nameEnd));
+                literalStart = nameEnd;
+            }
+            i = nameEnd;
+        }
+        literals.add(template.substring(literalStart));
+
+        return new TopicTemplate(template, marker, literals.toArray(new String[literals.size()]),
+                variables.toArray(new String[variables.size()]));
+    }
+
+    private static boolean isNameChar(char c) {
+        return c != '/' && !Character.isWhitespace(c);
+    }
+
+    public String getTemplate() {
+        return this.template;
+    }
+
+    public boolean hasVariables() {
+        return this.variables.length > 0;
+    }
+
+    /**
+     * Expands the variables with the values returned by the resolver. The variables the resolver returns null for
+     * are left as they are.
+     */
+    public String expand(Function<String, ?> resolver) {
+        if (this.variables.length == 0) {
+            return this.template;
+        }
+
+        StringBuilder sb = new StringBuilder(this.template.length() + 16 * this.variables.length);
+        for (int i = 0; i < this.variables.length; i++) {
+            sb.append(this.literals[i]);
+            Object value = resolver.apply(this.variables[i]);
+            if (value != null) {
+                sb.append(value);
+            } else {
+                sb.append(this.marker).append(this.variables[i]);
+            }
+        }
+        sb.append(this.literals[this.variables.length]);
+        return sb.toString();
+    }
+
+    /**
+     * Caches the compiled templates by template. When the cache is full it is cleared, so that topics built from
+     * unbounded values do not make it grow forever.
+     */
+    public static final class Cache {
+
+        private final char marker;
+        private final int maxSize;
+        private final Map<String, TopicTemplate> templates = new ConcurrentHashMap<>();
+
+        public Cache(char marker, int maxSize) {
+            this.marker = marker;
+            this.maxSize = maxSize;
+        }
+
+        public TopicTemplate get(String template) {
+            TopicTemplate compiled = this.templates.get(template);
+            if (compiled == null) {
+                compiled = compile(template, this.marker);
+                if (this.templates.size() >= this.maxSize) {
+                    this.templates.clear();
+                }
+                this.templates.put(template, compiled);
+            }
+            return compiled;
+        }
+
+        public void clear() {
+            this.templates.clear();
+        }
+    }
+}
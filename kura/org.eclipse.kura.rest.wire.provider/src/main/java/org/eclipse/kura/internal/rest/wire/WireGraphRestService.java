@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.rest.wire;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireGraphService;
+import org.eclipse.kura.wire.graph.WireStatistics;
+
+/**
+ * Exposes the runtime statistics of the Wire Graph through the Kura REST APIs. The requests must be performed by a
+ * user having the {@code wires} role.
+ */
+@Path("/wires")
+public class WireGraphRestService {
+
+    private WireGraphService wireGraphService;
+
+    protected void setWireGraphService(WireGraphService wireGraphService) {
+        this.wireGraphService = wireGraphService;
+    }
+
+    @GET
+    @RolesAllowed("wires")
+    @Path("/statistics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public GraphStats getStatistics() {
+        return new GraphStats(
+                this.wireGraphService.getComponentStatistics().stream().map(ComponentStats::new)
+                        .collect(Collectors.toList()),
+                this.wireGraphService.getWireStatistics().stream().map(WireStats::new).collect(Collectors.toList()));
+    }
+
+    public static class GraphStats {
+
+        private final List<ComponentStats> components;
+        private final List<WireStats> wires;
+
+        GraphStats(List<ComponentStats> components, List<WireStats> wires) {
+            this.components = components;
+            this.wires = wires;
+        }
+
+        public List<ComponentStats> getComponents() {
+            return this.components;
+        }
+
+        public List<WireStats> getWires() {
+            return this.wires;
+        }
+    }
+
+    public static class ComponentStats {
+
+        private final String pid;
+        private final long invocations;
+        private final long totalReceiveTimeMicros;
+        private final long p50ReceiveTimeMicros;
+        private final long p90ReceiveTimeMicros;
+        private final long p99ReceiveTimeMicros;
+        private final long maxReceiveTimeMicros;
+        private final long recordsIn;
+        private final long recordsOut;
+        private final long envelopesDropped;
+
+        ComponentStats(WireComponentStatistics stats) {
+            this.pid = stats.getPid();
+            this.invocations = stats.getInvocations();
+            this.totalReceiveTimeMicros = stats.getTotalReceiveTime(TimeUnit.MICROSECONDS);
+            this.p50ReceiveTimeMicros = stats.getReceiveTimePercentile(50, TimeUnit.MICROSECONDS);
+            this.p90ReceiveTimeMicros = stats.getReceiveTimePercentile(90, TimeUnit.MICROSECONDS);
+            this.p99ReceiveTimeMicros = stats.getReceiveTimePercentile(99, TimeUnit.MICROSECONDS);
+            this.maxReceiveTimeMicros = stats.getMaxReceiveTime(TimeUnit.MICROSECONDS);
+            this.recordsIn = stats.getRecordsIn();
+            this.recordsOut = stats.getRecordsOut();
+            this.envelopesDropped = stats.getEnvelopesDropped();
+        }
+
+        public String getPid() {
+            return this.pid;
+        }
+
+        public long getInvocations() {
+            return this.invocations;
+        }
+
+        public long getTotalReceiveTimeMicros() {
+            return this.totalReceiveTimeMicros;
+        }
+
+        public long getP50ReceiveTimeMicros() {
+            return this.p50ReceiveTimeMicros;
+        }
+
+        public long getP90ReceiveTimeMicros() {
+            return this.p90ReceiveTimeMicros;
+        }
+
+        public long getP99ReceiveTimeMicros() {
+            return this.p99ReceiveTimeMicros;
+        }
+
+        public long getMaxReceiveTimeMicros() {
+            return this.maxReceiveTimeMicros;
+        }
+
+        public long getRecordsIn() {
+            return this.recordsIn;
+        }
+
+        public long getRecordsOut() {
+            return this.recordsOut;
+        }
+
+        public long getEnvelopesDropped() {
+            return this.envelopesDropped;
+        }
+    }
+
+    public static class WireStats {
+
+        private final String emitterPid;
+        private final int emitterPort;
+        private final String receiverPid;
+        private final int receiverPort;
+        private final long envelopes;
+        private final long records;
+        private final long envelopesDropped;
+
+        WireStats(WireStatistics stats) {
+            this.emitterPid = stats.getEmitterPid();
+            this.emitterPort = stats.getEmitterPort();
+            this.receiverPid = stats.getReceiverPid();
+            this.receiverPort = stats.getReceiverPort();
+            this.envelopes = stats.getEnvelopes();
+            this.records = stats.getRecords();
+            this.envelopesDropped = stats.getEnvelopesDropped();
+        }
+
+        public String getEmitterPid() {
+            return this.emitterPid;
+        }
+
+        public int getEmitterPort() {
+            return this.emitterPort;
+        }
+
+        public String getReceiverPid() {
+            return this.receiverPid;
+        }
+
+        public int getReceiverPort() {
+            return this.receiverPort;
+        }
+
+        public long getEnvelopes() {
+            return this.envelopes;
+        }
+
+        public long getRecords() {
+            return this.records;
+        }
+
+        public long getEnvelopesDropped() {
+            return this.envelopesDropped;
+        }
+    }
+}
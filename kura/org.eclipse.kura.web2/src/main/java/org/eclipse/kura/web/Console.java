@@ -40,6 +40,7 @@ import org.eclipse.kura.web.server.servlet.WiresBlinkServlet;
 import org.eclipse.kura.web.server.servlet.FileServlet;
 import org.eclipse.kura.web.server.servlet.SkinServlet;
 import org.eclipse.kura.web.server.servlet.WiresSnapshotServlet;
+import org.eclipse.kura.web.server.servlet.WiresStatsServlet;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.Event;
@@ -247,6 +248,7 @@ public class Console implements ConfigurableComponent {
         this.m_httpService.unregister(servletRoot + "/skin");
         this.m_httpService.unregister(servletRoot + "/wires");
         this.m_httpService.unregister("/sse");
+        this.m_httpService.unregister("/wiresStats");
         this.eventService.stop();
         this.m_httpService.unregister(servletRoot + "/event");
     }
@@ -295,6 +297,7 @@ public class Console implements ConfigurableComponent {
         this.m_httpService.registerServlet(servletRoot + "/wiresSnapshot", new WiresSnapshotServlet(), null, httpCtx);
         this.m_httpService.registerServlet(servletRoot + "/assetservices", new GwtAssetServiceImpl(), null, httpCtx);
         this.m_httpService.registerServlet("/sse", new WiresBlinkServlet(), null, httpCtx);
+        this.m_httpService.registerServlet("/wiresStats", new WiresStatsServlet(), null, httpCtx);
         this.m_httpService.registerServlet(servletRoot + "/event", this.eventService, null, httpCtx);
         this.eventService.start();
     }
@@ -27,6 +27,7 @@ import org.eclipse.kura.web.client.ui.AlertDialog;
 import org.eclipse.kura.web.client.ui.wires.composer.BlinkEffect;
 import org.eclipse.kura.web.client.ui.wires.composer.DropEvent;
 import org.eclipse.kura.web.client.ui.wires.composer.PortNames;
+import org.eclipse.kura.web.client.ui.wires.composer.StatsOverlay;
 import org.eclipse.kura.web.client.ui.wires.composer.Wire;
 import org.eclipse.kura.web.client.ui.wires.composer.WireComponent;
 import org.eclipse.kura.web.client.ui.wires.composer.WireComposer;
@@ -110,6 +111,7 @@ public class WiresPanelUi extends Composite
 
     private WireComposer wireComposer;
     private BlinkEffect blinkEffect;
+    private StatsOverlay statsOverlay;
 
     private WireComponentDescriptors descriptors = new WireComponentDescriptors();
     private Configurations configurations = new Configurations();
@@ -121,6 +123,7 @@ public class WiresPanelUi extends Composite
         this.wireComposer.setListener(this);
 
         this.blinkEffect = BlinkEffect.create(wireComposer);
+        this.statsOverlay = StatsOverlay.create(wireComposer);
 
         this.dialogs.setListener(this);
         initButtons();
@@ -177,6 +180,7 @@ public class WiresPanelUi extends Composite
                 dialogs.setAssetPids(getAssetsNotInComposer());
                 configurations.setAllActivePids(result1.getAllActivePids());
                 blinkEffect.setEnabled(true);
+                statsOverlay.setEnabled(true);
                 clearDirtyState();
             });
         });
@@ -375,6 +379,7 @@ public class WiresPanelUi extends Composite
 
     public void unload() {
         blinkEffect.setEnabled(false);
+        statsOverlay.setEnabled(false);
     }
 
     private List<String> getAssetsNotInComposer() {
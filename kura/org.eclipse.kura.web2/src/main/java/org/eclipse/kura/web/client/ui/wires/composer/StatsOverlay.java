@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+
+package org.eclipse.kura.web.client.ui.wires.composer;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+public final class StatsOverlay extends JavaScriptObject {
+
+    protected StatsOverlay() {
+    }
+
+    public static native StatsOverlay create(WireComposer composer)
+    /*-{
+        return new parent.window.StatsOverlay(composer)
+    }-*/;
+
+    public native void setEnabled(boolean enabled)
+    /*-{
+        this.setEnabled(enabled)
+    }-*/;
+}
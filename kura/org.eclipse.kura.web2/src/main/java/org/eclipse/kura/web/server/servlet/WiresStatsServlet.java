@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.kura.web.server.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.kura.web.server.util.ServiceLocator;
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireGraphService;
+import org.eclipse.kura.wire.graph.WireStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonObject;
+
+/**
+ * Provides the runtime statistics of the Wire Graph as JSON, polled by the statistics overlay of the Wire Composer.
+ */
+public final class WiresStatsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 2960262377226707406L;
+    private static final Logger logger = LoggerFactory.getLogger(WiresStatsServlet.class);
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        final JsonArray components = Json.array();
+        final JsonArray wires = Json.array();
+
+        try {
+            ServiceLocator.applyToServiceOptionally(WireGraphService.class, wireGraphService -> {
+                if (wireGraphService == null) {
+                    return null;
+                }
+                for (final WireComponentStatistics stats : wireGraphService.getComponentStatistics()) {
+                    components.add(toJson(stats));
+                }
+                for (final WireStatistics stats : wireGraphService.getWireStatistics()) {
+                    wires.add(toJson(stats));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to retrieve wire graph statistics", e);
+            throw new ServletException("Failed to retrieve wire graph statistics");
+        }
+
+        final JsonObject result = Json.object();
+        result.add("components", components);
+        result.add("wires", wires);
+
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "no-cache");
+
+        try (PrintWriter writer = response.getWriter()) {
+            writer.write(result.toString());
+        }
+    }
+
+    private static JsonObject toJson(final WireComponentStatistics stats) {
+        final JsonObject result = Json.object();
+        result.add("pid", stats.getPid());
+        result.add("invocations", stats.getInvocations());
+        result.add("totalReceiveTimeMicros", stats.getTotalReceiveTime(TimeUnit.MICROSECONDS));
+        result.add("p50ReceiveTimeMicros", stats.getReceiveTimePercentile(50, TimeUnit.MICROSECONDS));
+        result.add("p99ReceiveTimeMicros", stats.getReceiveTimePercentile(99, TimeUnit.MICROSECONDS));
+        result.add("maxReceiveTimeMicros", stats.getMaxReceiveTime(TimeUnit.MICROSECONDS));
+        result.add("recordsIn", stats.getRecordsIn());
+        result.add("recordsOut", stats.getRecordsOut());
+        result.add("envelopesDropped", stats.getEnvelopesDropped());
+        return result;
+    }
+
+    private static JsonObject toJson(final WireStatistics stats) {
+        final JsonObject result = Json.object();
+        result.add("emitterPid", stats.getEmitterPid());
+        result.add("emitterPort", stats.getEmitterPort());
+        result.add("receiverPid", stats.getReceiverPid());
+        result.add("receiverPort", stats.getReceiverPort());
+        result.add("envelopes", stats.getEnvelopes());
+        result.add("records", stats.getRecords());
+        result.add("envelopesDropped", stats.getEnvelopesDropped());
+        return result;
+    }
+}
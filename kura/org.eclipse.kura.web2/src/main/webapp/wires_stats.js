@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ ******************************************************************************/
+
+var StatsOverlay = function (composer) {
+	this.composer = composer
+	this.pollInterval = 2000
+}
+
+StatsOverlay.prototype.setEnabled = function (enabled) {
+	if (enabled) {
+		if (this.timer) {
+			return
+		}
+		var self = this
+		this.timer = setInterval(function () {
+			self.poll()
+		}, this.pollInterval)
+		this.poll()
+	} else if (this.timer) {
+		clearInterval(this.timer)
+		this.timer = null
+		this.clear()
+	}
+}
+
+StatsOverlay.prototype.poll = function () {
+	var self = this
+	var xmlHttp = new XMLHttpRequest();
+	xmlHttp.onreadystatechange = function () {
+		if (xmlHttp.readyState !== 4 || xmlHttp.status !== 200 || !self.timer) {
+			return
+		}
+		try {
+			self.update(JSON.parse(xmlHttp.responseText))
+		} catch (e) {
+			// ignore malformed responses, the next poll will retry
+		}
+	}
+	xmlHttp.open("GET", "/wiresStats", true);
+	xmlHttp.send(null);
+}
+
+StatsOverlay.prototype.update = function (stats) {
+	var self = this
+	var graph = this.composer.graph
+
+	var componentStats = {}
+	_.each(stats.components, function (s) {
+		componentStats[s.pid] = s
+	})
+
+	_.each(graph.getElements(), function (c) {
+		var wireComponent = c.attributes.wireComponent
+		var s = wireComponent ? componentStats[wireComponent.pid] : null
+		self.setTooltip(c, s ? self.formatComponent(s) : null)
+	})
+
+	_.each(graph.getLinks(), function (link) {
+		var s = self.findWireStats(link, stats.wires)
+		self.setLabel(link, s ? self.formatWire(s) : null)
+	})
+}
+
+StatsOverlay.prototype.findWireStats = function (link, wires) {
+	var wire = link.attributes.wire
+	if (!wire) {
+		return null
+	}
+	return _.find(wires, function (s) {
+		return s.emitterPid === wire.emitterPid && s.receiverPid === wire.receiverPid
+				&& s.emitterPort === wire.emitterPort && s.receiverPort === wire.receiverPort
+	})
+}
+
+StatsOverlay.prototype.formatComponent = function (s) {
+	return "invocations: " + s.invocations
+			+ "\nrecords in/out: " + s.recordsIn + "/" + s.recordsOut
+			+ "\nreceive time p50/p99/max: " + s.p50ReceiveTimeMicros + "/" + s.p99ReceiveTimeMicros
+			+ "/" + s.maxReceiveTimeMicros + " us"
+			+ "\ndropped: " + s.envelopesDropped
+}
+
+StatsOverlay.prototype.formatWire = function (s) {
+	var text = s.records + " rec"
+	if (s.envelopesDropped > 0) {
+		text += " (" + s.envelopesDropped + " dropped)"
+	}
+	return text
+}
+
+StatsOverlay.prototype.setTooltip = function (c, text) {
+	var view = this.composer.paper.findViewByModel(c)
+	if (!view) {
+		return
+	}
+	var title = view.vel.findOne('title')
+	if (!text) {
+		if (title) {
+			title.remove()
+		}
+		return
+	}
+	if (!title) {
+		title = V('title')
+		view.vel.append(title)
+	}
+	title.node.textContent = text
+}
+
+StatsOverlay.prototype.setLabel = function (link, text) {
+	var hasLabel = link.get('labels') && link.get('labels').length
+	if (!text) {
+		if (hasLabel) {
+			link.unset('labels')
+		}
+		return
+	}
+	link.label(0, {
+		position : 0.5,
+		attrs : {
+			text : {
+				text : text,
+				'font-size' : 11
+			}
+		}
+	})
+}
+
+StatsOverlay.prototype.clear = function () {
+	var self = this
+	var graph = this.composer.graph
+	_.each(graph.getElements(), function (c) {
+		self.setTooltip(c, null)
+	})
+	_.each(graph.getLinks(), function (link) {
+		self.setLabel(link, null)
+	})
+}
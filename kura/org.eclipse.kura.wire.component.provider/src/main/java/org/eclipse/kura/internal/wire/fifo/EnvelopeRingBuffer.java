@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.fifo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+import org.eclipse.kura.wire.WireEnvelope;
+
+/**
+ * A bounded FIFO queue of envelopes backed by a circular array, that can optionally conflate the queued envelopes
+ * by key: an envelope offered with the key of an envelope that is still queued is merged into it, keeping its
+ * position in the queue.
+ * <p>
+ * Every envelope is identified by the absolute sequence number it has been enqueued with, the slot holding it is the
+ * sequence number modulo the capacity. The index of the conflation keys maps each key to the sequence number of its
+ * queued envelope, so both enqueuing and conflating take constant time.
+ * <p>
+ * This class is not thread safe, the {@link Fifo} accesses it holding its lock.
+ */
+final class EnvelopeRingBuffer {
+
+    private final WireEnvelope[] envelopes;
+    private final Object[] keys;
+    private final Map<Object, Long> sequenceByKey = new HashMap<>();
+
+    private long head;
+    private long tail;
+
+    EnvelopeRingBuffer(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        this.envelopes = new WireEnvelope[capacity];
+        this.keys = new Object[capacity];
+    }
+
+    int capacity() {
+        return this.envelopes.length;
+    }
+
+    int size() {
+        return (int) (this.tail - this.head);
+    }
+
+    boolean isEmpty() {
+        return this.head == this.tail;
+    }
+
+    boolean isFull() {
+        return size() == this.envelopes.length;
+    }
+
+    /**
+     * Appends an envelope at the tail of the queue.
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(final WireEnvelope envelope) {
+        return offer(null, envelope);
+    }
+
+    private boolean offer(final Object key, final WireEnvelope envelope) {
+        if (isFull()) {
+            return false;
+        }
+        final int slot = slot(this.tail);
+        this.envelopes[slot] = envelope;
+        this.keys[slot] = key;
+        if (key != null) {
+            this.sequenceByKey.put(key, this.tail);
+        }
+        this.tail++;
+        return true;
+    }
+
+    /**
+     * Merges an envelope into the queued envelope with the same key, or appends it at the tail of the queue if
+     * there is none.
+     *
+     * @param merger
+     *            computes the merged envelope from the queued one and the offered one
+     * @return the outcome of the operation
+     */
+    Result offer(final Object key, final WireEnvelope envelope, final BinaryOperator<WireEnvelope> merger) {
+        final Long sequence = this.sequenceByKey.get(key);
+        if (sequence != null) {
+            final int slot = slot(sequence);
+            this.envelopes[slot] = merger.apply(this.envelopes[slot], envelope);
+            return Result.CONFLATED;
+        }
+        return offer(key, envelope) ? Result.ENQUEUED : Result.FULL;
+    }
+
+    /**
+     * Removes the envelope at the head of the queue.
+     *
+     * @return the envelope, or null if the queue is empty
+     */
+    WireEnvelope poll() {
+        if (isEmpty()) {
+            return null;
+        }
+        final int slot = slot(this.head);
+        final WireEnvelope envelope = this.envelopes[slot];
+        final Object key = this.keys[slot];
+        if (key != null) {
+            this.sequenceByKey.remove(key, this.head);
+        }
+        this.envelopes[slot] = null;
+        this.keys[slot] = null;
+        this.head++;
+        return envelope;
+    }
+
+    private int slot(final long sequence) {
+        return (int) (sequence % this.envelopes.length);
+    }
+
+    enum Result {
+        ENQUEUED,
+        CONFLATED,
+        FULL
+    }
+}
@@ -15,8 +15,11 @@ package org.eclipse.kura.internal.wire.fifo;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -24,11 +27,15 @@ import java.util.function.Consumer;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
+import org.eclipse.kura.internal.wire.asset.WireAssetConstants;
+import org.eclipse.kura.internal.wire.fifo.EnvelopeRingBuffer.Result;
+import org.eclipse.kura.type.TypedValue;
 import org.eclipse.kura.wire.WireComponent;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.ComponentContext;
@@ -40,6 +47,13 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
 
     private static final String DISCARD_ENVELOPES_PROP_NAME = "discard.envelopes";
     private static final String QUEUE_CAPACITY_PROP_NAME = "queue.capacity";
+    private static final String CONFLATE_ENVELOPES_PROP_NAME = "conflate.envelopes";
+    private static final String CONFLATION_KEY_PROP_NAME = "conflation.key";
+
+    private static final String TIMESTAMP_SUFFIX = WireAssetConstants.PROP_SUFFIX_TIMESTAMP.value();
+    private static final String ERROR_SUFFIX = WireAssetConstants.PROP_SUFFIX_ERROR.value();
+
+    private static final long STATISTICS_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
 
     private static final Logger logger = LogManager.getLogger();
 
@@ -81,8 +95,10 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
                 + "-EmitterThread";
         int queueCapacity = (Integer) properties.getOrDefault(QUEUE_CAPACITY_PROP_NAME, 50);
         boolean discardEnvelopes = (Boolean) properties.getOrDefault(DISCARD_ENVELOPES_PROP_NAME, false);
+        boolean conflateEnvelopes = (Boolean) properties.getOrDefault(CONFLATE_ENVELOPES_PROP_NAME, false);
+        String conflationKey = (String) properties.getOrDefault(CONFLATION_KEY_PROP_NAME, "assetName");
 
-        restartEmitterThread(threadName, queueCapacity, discardEnvelopes);
+        restartEmitterThread(threadName, queueCapacity, discardEnvelopes, conflateEnvelopes ? conflationKey : null);
 
         logger.info("Updating Fifo... Done");
     }
@@ -94,12 +110,13 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         }
     }
 
-    private synchronized void restartEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes) {
+    private synchronized void restartEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes,
+            String conflationKey) {
         stopEmitterThread();
 
-        logger.debug("Creating new emitter thread: {}, queue capacity: {}, discard envelopes: {}", threadName,
-                queueCapacity, discardEnvelopes);
-        emitterThread = new FifoEmitterThread(threadName, queueCapacity, discardEnvelopes);
+        logger.debug("Creating new emitter thread: {}, queue capacity: {}, discard envelopes: {}, conflation key: {}",
+                threadName, queueCapacity, discardEnvelopes, conflationKey);
+        emitterThread = new FifoEmitterThread(threadName, queueCapacity, discardEnvelopes, conflationKey);
         emitterThread.start();
     }
 
@@ -131,6 +148,57 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         this.wireSupport.producersConnected(wires);
     }
 
+    /**
+     * Returns the key used to conflate an envelope: the value of the configured property in its first record, or the
+     * PID of the emitter if the property is missing.
+     */
+    static Object getConflationKey(final WireEnvelope envelope, final String keyProperty) {
+        final List<WireRecord> records = envelope.getRecords();
+        if (!records.isEmpty()) {
+            final TypedValue<?> value = records.get(0).getProperties().get(keyProperty);
+            if (value != null && value.getValue() != null) {
+                return value.getValue();
+            }
+        }
+        return envelope.getEmitterPid();
+    }
+
+    /**
+     * Merges an envelope into a queued one with the same conflation key. Single record envelopes are merged channel
+     * by channel, so that a channel missing from the newer envelope keeps its latest queued value; otherwise the
+     * newer envelope replaces the queued one.
+     * <p>
+     * A channel is the group of the {@code <channel>}, {@code <channel>_timestamp} and {@code <channel>_error}
+     * properties: the whole group of the queued record is replaced by the properties of the newer record, since a
+     * failed read reports the error without the value.
+     */
+    static WireEnvelope conflate(final WireEnvelope queued, final WireEnvelope received) {
+        final List<WireRecord> queuedRecords = queued.getRecords();
+        final List<WireRecord> receivedRecords = received.getRecords();
+        if (queuedRecords.size() != 1 || receivedRecords.size() != 1) {
+            return received;
+        }
+        final Map<String, TypedValue<?>> receivedProperties = receivedRecords.get(0).getProperties();
+        final Map<String, TypedValue<?>> properties = new HashMap<>(queuedRecords.get(0).getProperties());
+        for (final String key : receivedProperties.keySet()) {
+            final String channel = getChannelName(key);
+            properties.remove(channel);
+            properties.remove(channel + TIMESTAMP_SUFFIX);
+            properties.remove(channel + ERROR_SUFFIX);
+        }
+        properties.putAll(receivedProperties);
+        return new WireEnvelope(received.getEmitterPid(), Collections.singletonList(new WireRecord(properties)));
+    }
+
+    private static String getChannelName(final String key) {
+        if (key.endsWith(TIMESTAMP_SUFFIX)) {
+            return key.substring(0, key.length() - TIMESTAMP_SUFFIX.length());
+        } else if (key.endsWith(ERROR_SUFFIX)) {
+            return key.substring(0, key.length() - ERROR_SUFFIX.length());
+        }
+        return key;
+    }
+
     private class FifoEmitterThread extends Thread {
 
         private Lock lock = new ReentrantLock();
@@ -139,32 +207,53 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         private Condition consumer = lock.newCondition();
 
         private boolean run = true;
-        private ArrayList<WireEnvelope> queue;
-        private int queueCapacity;
+        private EnvelopeRingBuffer queue;
 
         private Consumer<WireEnvelope> submitter;
 
-        public FifoEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes) {
-            this.queue = new ArrayList<>();
-            this.queueCapacity = queueCapacity;
+        // guarded by lock
+        private long submitted;
+        private long conflated;
+        private long dropped;
+        private int peakOccupancy;
+        private long lastReportedDropped;
+        private long lastReportedConflated;
+
+        private long nextReport = System.nanoTime() + STATISTICS_INTERVAL_NANOS;
+
+        public FifoEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes,
+                String conflationKey) {
+            this.queue = new EnvelopeRingBuffer(queueCapacity);
             setName(threadName);
-            if (discardEnvelopes) {
+            if (conflationKey != null) {
+                submitter = getConflatingSubmitter(conflationKey);
+            } else if (discardEnvelopes) {
                 submitter = getEnvelopeDiscardingSubmitter();
             } else {
                 submitter = getEmitterBlockingSubmitter();
             }
         }
 
-        private Consumer<WireEnvelope> getEnvelopeDiscardingSubmitter() {
+        private Consumer<WireEnvelope> getConflatingSubmitter(String conflationKey) {
             return (envelope) -> {
+                final Object key = getConflationKey(envelope, conflationKey);
                 try {
                     lock.lock();
-                    if (!run || queue.size() >= queueCapacity) {
+                    if (!run) {
+                        return;
+                    }
+                    final Result result = queue.offer(key, envelope, Fifo::conflate);
+                    if (result == Result.FULL) {
+                        dropped++;
                         logger.debug("envelope discarded");
                         return;
+                    }
+                    submitted++;
+                    if (result == Result.CONFLATED) {
+                        conflated++;
+                        logger.debug("envelope conflated");
                     } else {
-                        queue.add(envelope);
-                        producer.signal();
+                        enqueued();
                         logger.debug("envelope submitted");
                     }
                 } finally {
@@ -173,18 +262,40 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
             };
         }
 
+        private Consumer<WireEnvelope> getEnvelopeDiscardingSubmitter() {
+            return (envelope) -> {
+                try {
+                    lock.lock();
+                    if (!run) {
+                        return;
+                    }
+                    if (!queue.offer(envelope)) {
+                        dropped++;
+                        logger.debug("envelope discarded");
+                        return;
+                    }
+                    submitted++;
+                    enqueued();
+                    logger.debug("envelope submitted");
+                } finally {
+                    lock.unlock();
+                }
+            };
+        }
+
         private Consumer<WireEnvelope> getEmitterBlockingSubmitter() {
             return (envelope) -> {
                 try {
                     lock.lock();
-                    while (run && queue.size() >= queueCapacity) {
+                    while (run && queue.isFull()) {
                         consumer.await();
                     }
                     if (!run) {
                         return;
                     }
-                    queue.add(envelope);
-                    producer.signal();
+                    queue.offer(envelope);
+                    submitted++;
+                    enqueued();
                     logger.debug("envelope submitted");
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -195,12 +306,19 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
             };
         }
 
+        private void enqueued() {
+            peakOccupancy = Math.max(peakOccupancy, queue.size());
+            producer.signal();
+        }
+
         public void shutdown() {
             try {
                 lock.lock();
                 run = false;
                 producer.signalAll();
                 consumer.signalAll();
+                logger.info("{}: {} envelopes submitted, {} conflated, {} dropped, peak occupancy {}/{}", getName(),
+                        submitted, conflated, dropped, peakOccupancy, queue.capacity());
             } finally {
                 lock.unlock();
             }
@@ -210,6 +328,28 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
             submitter.accept(envelope);
         }
 
+        /**
+         * Logs the queue statistics once per interval, at info level if envelopes have been dropped or conflated
+         * during the interval. Must be called holding the lock.
+         */
+        private void reportStatistics() {
+            final long now = System.nanoTime();
+            if (now - nextReport < 0) {
+                return;
+            }
+            nextReport = now + STATISTICS_INTERVAL_NANOS;
+            if (dropped != lastReportedDropped || conflated != lastReportedConflated) {
+                logger.info("{}: occupancy {}/{}, peak {}, {} envelopes dropped and {} conflated in the last interval",
+                        getName(), queue.size(), queue.capacity(), peakOccupancy, dropped - lastReportedDropped,
+                        conflated - lastReportedConflated);
+            } else {
+                logger.debug("{}: occupancy {}/{}, peak {}", getName(), queue.size(), queue.capacity(),
+                        peakOccupancy);
+            }
+            lastReportedDropped = dropped;
+            lastReportedConflated = conflated;
+        }
+
         @Override
         public void run() {
             while (run) {
@@ -217,13 +357,16 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
                     WireEnvelope next = null;
                     try {
                         lock.lock();
+                        reportStatistics();
                         while (run && queue.isEmpty()) {
-                            producer.await();
+                            // wake up at the end of the interval to report the statistics of an idle queue
+                            producer.awaitNanos(nextReport - System.nanoTime());
+                            reportStatistics();
                         }
                         if (!run) {
                             break;
                         }
-                        next = queue.remove(0);
+                        next = queue.poll();
                         consumer.signal();
                     } finally {
                         lock.unlock();
@@ -41,6 +41,7 @@ import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordBatch;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
@@ -195,7 +196,9 @@ public class H2DbWireRecordFilter implements WireEmitter, WireReceiver, Configur
                 }
             }
             logger.debug("Refreshed typed values");
-            return dataRecords;
+            // the rows of a query share the same columns, the receivers supporting batches read them by column
+            final WireRecordBatch recordBatch = WireRecordBatch.from(dataRecords);
+            return recordBatch != null ? recordBatch : Collections.unmodifiableList(dataRecords);
         });
     }
 
@@ -250,7 +253,7 @@ public class H2DbWireRecordFilter implements WireEmitter, WireReceiver, Configur
 
         List<WireRecord> result;
         if (nonNull(this.lastRecords)) {
-            result = Collections.unmodifiableList(this.lastRecords);
+            result = this.lastRecords;
         } else {
             result = Collections.unmodifiableList(new ArrayList<WireRecord>());
         }
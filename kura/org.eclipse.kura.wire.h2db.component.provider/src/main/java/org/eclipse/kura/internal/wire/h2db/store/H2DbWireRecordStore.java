@@ -54,6 +54,8 @@ import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordBatch;
+import org.eclipse.kura.wire.WireRecordBatch.Schema;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
@@ -261,8 +263,13 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
                 logger.warn("Exception while trying to clean db");
             }
 
-            for (WireRecord wireRecord : records) {
-                store(wireRecord);
+            final WireRecordBatch recordBatch = wireEvelope.getRecordBatch();
+            if (recordBatch != null) {
+                store(recordBatch);
+            } else {
+                for (WireRecord wireRecord : records) {
+                    store(wireRecord);
+                }
             }
         } else {
             logger.warn("DbService instance not attached");
@@ -296,6 +303,34 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
         } while (retryCount < 2);
     }
 
+    /**
+     * Stores the provided {@link WireRecordBatch} in the database, inserting all the rows with a single
+     * statement
+     *
+     * @param recordBatch
+     *            the {@link WireRecordBatch} to be stored
+     * @throws NullPointerException
+     *             if the provided argument is null
+     */
+    private void store(final WireRecordBatch recordBatch) {
+        requireNonNull(recordBatch, "Wire Record Batch cannot be null");
+        if (recordBatch.isEmpty()) {
+            return;
+        }
+        int retryCount = 0;
+        final String tableName = this.wireRecordStoreOptions.getTableName();
+        do {
+            try {
+                insertRecordBatch(tableName, recordBatch);
+                break;
+            } catch (final SQLException e) {
+                logger.error("Insertion failed. Reconciling Table and Columns...", e);
+                reconcileDB(getColumnTypes(recordBatch.getSchema()), tableName);
+                retryCount++;
+            }
+        } while (retryCount < 2);
+    }
+
     /**
      * Tries to reconcile the database.
      *
@@ -305,10 +340,34 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
      *            the table name in the database that needs to be reconciled.
      */
     private void reconcileDB(final WireRecord wireRecord, final String tableName) {
+        final Map<String, DataType> columnTypes = CollectionUtil.newHashMap();
+        for (Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+            columnTypes.put(entry.getKey(), entry.getValue().getType());
+        }
+        reconcileDB(columnTypes, tableName);
+    }
+
+    private static Map<String, DataType> getColumnTypes(final Schema schema) {
+        final Map<String, DataType> columnTypes = CollectionUtil.newHashMap();
+        for (int column = 0; column < schema.size(); column++) {
+            columnTypes.put(schema.getName(column), schema.getType(column));
+        }
+        return columnTypes;
+    }
+
+    /**
+     * Tries to reconcile the database.
+     *
+     * @param columnTypes
+     *            the column names and types against which the database columns have to be reconciled.
+     * @param tableName
+     *            the table name in the database that needs to be reconciled.
+     */
+    private void reconcileDB(final Map<String, DataType> columnTypes, final String tableName) {
         try {
             if (nonNull(tableName) && !tableName.isEmpty()) {
                 reconcileTable(tableName);
-                reconcileColumns(tableName, wireRecord);
+                reconcileColumns(tableName, columnTypes);
             }
         } catch (final SQLException ee) {
             logger.error("Error while storing Wire Records...", ee);
@@ -376,16 +435,17 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
      *
      * @param tableName
      *            the table name
-     * @param wireRecord
-     *            the data record
+     * @param columnTypes
+     *            the column names and types
      * @throws SQLException
      *             the SQL exception
      * @throws NullPointerException
      *             if any of the provided arguments is null
      */
-    private void reconcileColumns(final String tableName, final WireRecord wireRecord) throws SQLException {
+    private void reconcileColumns(final String tableName, final Map<String, DataType> columnTypes)
+            throws SQLException {
         requireNonNull(tableName, "Table name cannot be null");
-        requireNonNull(wireRecord, "Wire Record cannot be null");
+        requireNonNull(columnTypes, "Column types cannot be null");
 
         final Map<String, Integer> columns = CollectionUtil.newHashMap();
 
@@ -402,10 +462,10 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
                 }
             }
 
-            for (Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+            for (Entry<String, DataType> entry : columnTypes.entrySet()) {
                 final String sqlColName = this.dbHelper.sanitizeSqlTableAndColumnName(entry.getKey());
                 final Integer sqlColType = columns.get(sqlColName);
-                final JdbcType jdbcType = H2DbDataTypeMapper.getJdbcType(entry.getValue().getType());
+                final JdbcType jdbcType = H2DbDataTypeMapper.getJdbcType(entry.getValue());
                 final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
                 if (isNull(sqlColType)) {
                     // add column
@@ -454,6 +514,82 @@ public class H2DbWireRecordStore implements WireEmitter, WireReceiver, Configura
         logger.debug("Stored typed value");
     }
 
+    /**
+     * Inserts all the rows of the provided {@link WireRecordBatch} to the specified table, reading the values
+     * directly from the columns of the batch
+     *
+     * @param tableName
+     *            the table name
+     * @param recordBatch
+     *            the {@link WireRecordBatch}
+     * @throws SQLException
+     *             the SQL exception
+     */
+    private void insertRecordBatch(final String tableName, final WireRecordBatch recordBatch) throws SQLException {
+        final Schema schema = recordBatch.getSchema();
+        final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
+        final StringBuilder sbCols = new StringBuilder("TIMESTAMP");
+        final StringBuilder sbVals = new StringBuilder("?");
+        for (int column = 0; column < schema.size(); column++) {
+            sbCols.append(", ").append(this.dbHelper.sanitizeSqlTableAndColumnName(schema.getName(column)));
+            sbVals.append(", ?");
+        }
+        final String sqlInsert = MessageFormat.format(SQL_INSERT_RECORD, sqlTableName, sbCols.toString(),
+                sbVals.toString());
+        final long timestamp = new Date().getTime();
+
+        this.dbHelper.withConnection(c -> {
+            try (final PreparedStatement stmt = c.prepareStatement(sqlInsert)) {
+                for (int row = 0; row < recordBatch.getRowCount(); row++) {
+                    stmt.setLong(1, timestamp);
+                    for (int column = 0; column < schema.size(); column++) {
+                        setParameter(stmt, column + 2, recordBatch, row, column);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                c.commit();
+                return (Void) null;
+            }
+        });
+
+        logger.debug("Stored {} records into table {}", recordBatch.getRowCount(), sqlTableName);
+    }
+
+    private static void setParameter(final PreparedStatement stmt, final int index,
+            final WireRecordBatch recordBatch, final int row, final int column) throws SQLException {
+        final DataType dataType = recordBatch.getSchema().getType(column);
+        if (!recordBatch.isPresent(row, column)) {
+            stmt.setNull(index, H2DbDataTypeMapper.getJdbcType(dataType).getType());
+            return;
+        }
+        switch (dataType) {
+        case BOOLEAN:
+            stmt.setBoolean(index, recordBatch.getBoolean(row, column));
+            break;
+        case FLOAT:
+            stmt.setFloat(index, recordBatch.getFloat(row, column));
+            break;
+        case DOUBLE:
+            stmt.setDouble(index, recordBatch.getDouble(row, column));
+            break;
+        case INTEGER:
+            stmt.setInt(index, recordBatch.getInt(row, column));
+            break;
+        case LONG:
+            stmt.setLong(index, recordBatch.getLong(row, column));
+            break;
+        case BYTE_ARRAY:
+            stmt.setBlob(index, new ByteArrayInputStream(recordBatch.getByteArray(row, column)));
+            break;
+        case STRING:
+            stmt.setString(index, recordBatch.getString(row, column));
+            break;
+        default:
+            break;
+        }
+    }
+
     private PreparedStatement prepareStatement(Connection connection, String tableName,
             final Map<String, TypedValue<?>> properties, long timestamp) throws SQLException {
 
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the wire components asynchronously: each wire component receives its envelopes through its own
+ * {@link WireMailbox}, and the mailboxes are drained by a shared pool of threads.
+ */
+final class AsyncWireExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncWireExecutor.class);
+
+    private final WireExecutionOptions options;
+    private final ExecutorService executor;
+    private final Map<String, WireMailbox> mailboxes = new ConcurrentHashMap<>();
+
+    AsyncWireExecutor(WireExecutionOptions options) {
+        this.options = options;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(options.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "WireExecutor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    WireExecutionOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Creates the mailbox of a wire component, replacing the one of a previous instance with the same PID.
+     */
+    WireMailbox newMailbox(String kuraServicePid) {
+        WireMailbox mailbox = new WireMailbox(kuraServicePid, this.options.getMailboxCapacity(),
+                this.options.getOverflowPolicy(kuraServicePid), this.executor);
+        this.mailboxes.put(kuraServicePid, mailbox);
+        return mailbox;
+    }
+
+    /**
+     * Removes the mailboxes of the wire components no longer registered.
+     */
+    void retainMailboxes(Set<String> kuraServicePids) {
+        this.mailboxes.keySet().retainAll(kuraServicePids);
+    }
+
+    List<WireMailbox.Statistics> getStatistics() {
+        List<WireMailbox.Statistics> statistics = new ArrayList<>(this.mailboxes.size());
+        for (WireMailbox mailbox : this.mailboxes.values()) {
+            statistics.add(mailbox.getStatistics());
+        }
+        statistics.sort((a, b) -> a.getPid().compareTo(b.getPid()));
+        return statistics;
+    }
+
+    /**
+     * Stops accepting new tasks and waits for the queued deliveries to complete. The envelopes received afterwards
+     * are delivered on the emitter thread.
+     */
+    void shutdown() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for the pending wire deliveries to complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+/**
+ * What a {@link WireMailbox} does with an envelope received while it is full.
+ */
+enum MailboxOverflowPolicy {
+
+    /** The emitter waits until there is room in the mailbox. */
+    BLOCK("block"),
+    /** The oldest envelope in the mailbox is discarded. */
+    DROP_OLDEST("drop-oldest"),
+    /** The received envelope is discarded. */
+    DROP_NEWEST("drop-newest");
+
+    private final String value;
+
+    private MailboxOverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    String getValue() {
+        return this.value;
+    }
+
+    static MailboxOverflowPolicy fromValue(String value) {
+        for (MailboxOverflowPolicy policy : values()) {
+            if (policy.value.equalsIgnoreCase(value.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown mailbox overflow policy: " + value);
+    }
+}
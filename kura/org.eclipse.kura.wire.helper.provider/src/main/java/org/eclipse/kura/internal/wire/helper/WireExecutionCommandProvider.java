@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.service.command.Descriptor;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireStatistics;
+
+/**
+ * Provides Gogo Shell commands to list the runtime statistics of the wire graph, and the mailboxes of the wire
+ * components when the wire graph runs asynchronously
+ */
+public final class WireExecutionCommandProvider {
+
+    private volatile WireHelperServiceImpl wireHelperService;
+
+    public synchronized void bindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == null && wireHelperService instanceof WireHelperServiceImpl) {
+            this.wireHelperService = (WireHelperServiceImpl) wireHelperService;
+        }
+    }
+
+    public synchronized void unbindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == wireHelperService) {
+            this.wireHelperService = null;
+        }
+    }
+
+    /**
+     * The command {@code wireMailboxes} lists the queue depth, the dropped envelopes and the delivery latency of
+     * the wire component mailboxes
+     */
+    @Descriptor("List the mailboxes of the Wire Components when the Wire Graph runs asynchronously")
+    public void wireMailboxes() {
+        final WireHelperServiceImpl helper = this.wireHelperService;
+        final AsyncWireExecutor executor = helper != null ? helper.getAsyncExecutor() : null;
+        final List<WireMailbox.Statistics> statistics = helper != null ? helper.getMailboxStatistics() : null;
+        if (executor == null || statistics == null) {
+            System.out.println("The Wire Graph runs synchronously");
+            return;
+        }
+
+        System.out.println("=================== Wire Component Mailboxes ===================");
+        System.out.format("%-30s %-12s %9s %10s %8s %10s %10s%n", "PID", "Policy", "Depth", "Delivered", "Dropped",
+                "Avg (ms)", "Max (ms)");
+        for (final WireMailbox.Statistics stats : statistics) {
+            System.out.format("%-30s %-12s %4d/%-4d %10d %8d %10d %10d%n", stats.getPid(),
+                    executor.getOptions().getOverflowPolicy(stats.getPid()).getValue(), stats.getDepth(),
+                    stats.getCapacity(), stats.getDelivered(), stats.getDropped(),
+                    stats.getAverageLatency(TimeUnit.MILLISECONDS), stats.getMaxLatency(TimeUnit.MILLISECONDS));
+        }
+        System.out.println("================================================================");
+    }
+
+    /**
+     * The command {@code wireStatistics} lists the invocations, the receive time and the records exchanged by the
+     * wire components, and the envelopes transmitted over the wires
+     */
+    @Descriptor("List the runtime statistics of the Wire Components and of the Wires")
+    public void wireStatistics() {
+        final WireHelperServiceImpl helper = this.wireHelperService;
+        if (helper == null) {
+            return;
+        }
+
+        System.out.println("==================== Wire Component Statistics =====================");
+        System.out.format("%-30s %10s %10s %9s %9s %9s %10s %10s %8s%n", "PID", "Calls", "Total (ms)", "p50 (us)",
+                "p99 (us)", "Max (us)", "Records in", "Rec. out", "Dropped");
+        for (final WireComponentStatistics stats : helper.getComponentStatistics()) {
+            System.out.format("%-30s %10d %10d %9d %9d %9d %10d %10d %8d%n", stats.getPid(), stats.getInvocations(),
+                    stats.getTotalReceiveTime(TimeUnit.MILLISECONDS),
+                    stats.getReceiveTimePercentile(50, TimeUnit.MICROSECONDS),
+                    stats.getReceiveTimePercentile(99, TimeUnit.MICROSECONDS),
+                    stats.getMaxReceiveTime(TimeUnit.MICROSECONDS), stats.getRecordsIn(), stats.getRecordsOut(),
+                    stats.getEnvelopesDropped());
+        }
+        System.out.println("=========================== Wire Statistics ===========================");
+        System.out.format("%-50s %10s %10s %8s%n", "Wire", "Envelopes", "Records", "Dropped");
+        for (final WireStatistics stats : helper.getWireStatistics()) {
+            System.out.format("%-50s %10d %10d %8d%n",
+                    stats.getEmitterPid() + "[" + stats.getEmitterPort() + "] -> " + stats.getReceiverPid() + "["
+                            + stats.getReceiverPort() + "]",
+                    stats.getEnvelopes(), stats.getRecords(), stats.getEnvelopesDropped());
+        }
+        System.out.println("=======================================================================");
+    }
+}
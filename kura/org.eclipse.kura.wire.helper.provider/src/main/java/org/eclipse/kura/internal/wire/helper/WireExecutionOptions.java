@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The execution options of the wire graph, read from the configuration of the WireService.
+ */
+final class WireExecutionOptions {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireExecutionOptions.class);
+
+    static final String EXECUTION_MODE_PROP_NAME = "execution.mode";
+    static final String THREADS_PROP_NAME = "execution.threads";
+    static final String MAILBOX_CAPACITY_PROP_NAME = "execution.mailbox.capacity";
+    static final String OVERFLOW_POLICY_PROP_NAME = "execution.mailbox.policy";
+    static final String OVERFLOW_POLICY_OVERRIDES_PROP_NAME = "execution.mailbox.policy.overrides";
+
+    static final String EXECUTION_MODE_SYNC = "sync";
+    static final String EXECUTION_MODE_ASYNC = "async";
+
+    private static final int THREADS_DEFAULT = 4;
+    private static final int MAILBOX_CAPACITY_DEFAULT = 100;
+
+    private final boolean async;
+    private final int threads;
+    private final int mailboxCapacity;
+    private final MailboxOverflowPolicy overflowPolicy;
+    private final Map<String, MailboxOverflowPolicy> overflowPolicyOverrides;
+
+    WireExecutionOptions(Map<String, Object> properties) {
+        Map<String, Object> props = properties != null ? properties : Collections.emptyMap();
+
+        this.async = EXECUTION_MODE_ASYNC.equals(props.get(EXECUTION_MODE_PROP_NAME));
+        this.threads = Math.max(1, getInt(props.get(THREADS_PROP_NAME), THREADS_DEFAULT));
+        this.mailboxCapacity = Math.max(1, getInt(props.get(MAILBOX_CAPACITY_PROP_NAME), MAILBOX_CAPACITY_DEFAULT));
+        this.overflowPolicy = parsePolicy(props.get(OVERFLOW_POLICY_PROP_NAME), MailboxOverflowPolicy.BLOCK);
+        this.overflowPolicyOverrides = parseOverrides(props.get(OVERFLOW_POLICY_OVERRIDES_PROP_NAME));
+    }
+
+    private static int getInt(Object value, int defaultValue) {
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    private static MailboxOverflowPolicy parsePolicy(Object value, MailboxOverflowPolicy defaultValue) {
+        if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return MailboxOverflowPolicy.fromValue((String) value);
+        } catch (IllegalArgumentException e) {
+            logger.warn("{}, using {}", e.getMessage(), defaultValue.getValue());
+            return defaultValue;
+        }
+    }
+
+    private Map<String, MailboxOverflowPolicy> parseOverrides(Object value) {
+        if (!(value instanceof String)) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, MailboxOverflowPolicy> overrides = new HashMap<>();
+        for (String entry : ((String) value).split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                logger.warn("Ignoring invalid mailbox policy override: {}", entry);
+                continue;
+            }
+            overrides.put(entry.substring(0, separator).trim(),
+                    parsePolicy(entry.substring(separator + 1), this.overflowPolicy));
+        }
+        return overrides;
+    }
+
+    boolean isAsync() {
+        return this.async;
+    }
+
+    int getThreads() {
+        return this.threads;
+    }
+
+    int getMailboxCapacity() {
+        return this.mailboxCapacity;
+    }
+
+    MailboxOverflowPolicy getOverflowPolicy(String kuraServicePid) {
+        return this.overflowPolicyOverrides.getOrDefault(kuraServicePid, this.overflowPolicy);
+    }
+
+    boolean sameExecution(WireExecutionOptions other) {
+        return other != null && this.async == other.async && this.threads == other.threads
+                && this.mailboxCapacity == other.mailboxCapacity && this.overflowPolicy == other.overflowPolicy
+                && this.overflowPolicyOverrides.equals(other.overflowPolicyOverrides);
+    }
+}
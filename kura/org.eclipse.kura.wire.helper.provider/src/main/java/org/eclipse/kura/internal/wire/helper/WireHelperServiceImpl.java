@@ -19,15 +19,24 @@ import static org.eclipse.kura.wire.graph.Constants.EMITTER_PORT_COUNT_PROP_NAME
 import static org.eclipse.kura.wire.graph.Constants.RECEIVER_PORT_COUNT_PROP_NAME;
 import static org.osgi.framework.Constants.SERVICE_PID;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.kura.util.service.ServiceUtil;
 import org.eclipse.kura.wire.WireComponent;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireSupport;
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireStatistics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The Class WireHelperServiceImpl is the implementation of
@@ -35,6 +44,74 @@ import org.osgi.framework.ServiceReference;
  */
 public final class WireHelperServiceImpl implements WireHelperService {
 
+    private static final Logger logger = LoggerFactory.getLogger(WireHelperServiceImpl.class);
+
+    private WireExecutionOptions executionOptions;
+
+    // null when the wire graph runs synchronously
+    private volatile AsyncWireExecutor asyncExecutor;
+
+    private final WireProfiler profiler = new WireProfiler();
+
+    protected void activate(final Map<String, Object> properties) {
+        updated(properties);
+    }
+
+    /**
+     * Receives the configuration of the WireService, which holds the execution options of the wire graph.
+     */
+    protected synchronized void updated(final Map<String, Object> properties) {
+        final WireExecutionOptions newOptions = new WireExecutionOptions(properties);
+        if (newOptions.sameExecution(this.executionOptions)) {
+            return;
+        }
+        this.executionOptions = newOptions;
+
+        // the pending deliveries complete before the new mode applies, so that a component is never called
+        // concurrently by the old and the new executor
+        final AsyncWireExecutor oldExecutor = this.asyncExecutor;
+        if (oldExecutor != null) {
+            oldExecutor.shutdown();
+        }
+
+        if (newOptions.isAsync()) {
+            logger.info("Running the wire graph asynchronously on {} threads, mailbox capacity: {}",
+                    newOptions.getThreads(), newOptions.getMailboxCapacity());
+            this.asyncExecutor = new AsyncWireExecutor(newOptions);
+        } else {
+            if (oldExecutor != null) {
+                logger.info("Running the wire graph synchronously");
+            }
+            this.asyncExecutor = null;
+        }
+    }
+
+    protected synchronized void deactivate() {
+        final AsyncWireExecutor oldExecutor = this.asyncExecutor;
+        this.asyncExecutor = null;
+        this.executionOptions = null;
+        if (oldExecutor != null) {
+            oldExecutor.shutdown();
+        }
+    }
+
+    AsyncWireExecutor getAsyncExecutor() {
+        return this.asyncExecutor;
+    }
+
+    /**
+     * Returns the statistics of the mailboxes of the registered wire components, or null if the wire graph runs
+     * synchronously.
+     */
+    List<WireMailbox.Statistics> getMailboxStatistics() {
+        final AsyncWireExecutor executor = this.asyncExecutor;
+        if (executor == null) {
+            return null;
+        }
+        retainRegisteredComponents();
+        return executor.getStatistics();
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getPid(final WireComponent wireComponent) {
@@ -151,6 +228,39 @@ public final class WireHelperServiceImpl implements WireHelperService {
         int emitterPortCount = getIntOrDefault(wireComponentRef.getProperty(EMITTER_PORT_COUNT_PROP_NAME.value()),
                 wireComponent instanceof WireEmitter ? 1 : 0);
 
-        return new WireSupportImpl(wireComponent, servicePid, kuraServicePid, receiverPortCount, emitterPortCount);
+        return new WireSupportImpl(wireComponent, servicePid, kuraServicePid, receiverPortCount, emitterPortCount,
+                this::getAsyncExecutor, this.profiler);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<WireComponentStatistics> getComponentStatistics() {
+        retainRegisteredComponents();
+        return this.profiler.getComponentStatistics();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<WireStatistics> getWireStatistics() {
+        retainRegisteredComponents();
+        return this.profiler.getWireStatistics();
+    }
+
+    private void retainRegisteredComponents() {
+        final BundleContext context = FrameworkUtil.getBundle(WireHelperServiceImpl.class).getBundleContext();
+        final ServiceReference<?>[] refs = ServiceUtil.getServiceReferences(context, WireComponent.class, null);
+        try {
+            final Set<String> kuraServicePids = new HashSet<>();
+            for (final ServiceReference<?> ref : refs) {
+                kuraServicePids.add(String.valueOf(ref.getProperty(KURA_SERVICE_PID)));
+            }
+            this.profiler.retainComponents(kuraServicePids);
+            final AsyncWireExecutor executor = this.asyncExecutor;
+            if (executor != null) {
+                executor.retainMailboxes(kuraServicePids);
+            }
+        } finally {
+            ServiceUtil.ungetServiceReferences(context, refs);
+        }
     }
 }
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded queue of the deliveries to a wire component, executed one at a time on a shared executor.
+ * <p>
+ * The deliveries are executed in the order they are received and never concurrently, so a wire component sees the
+ * same sequence of calls as with the synchronous execution, only on a different thread. At most one task per
+ * mailbox is submitted to the executor at any time; it executes a batch of deliveries and resubmits itself if more
+ * are pending, so that a busy component does not starve the others.
+ * <p>
+ * With the {@link MailboxOverflowPolicy#BLOCK} policy, an emitter finding the mailbox full waits only while a thread
+ * is actually executing its deliveries. Otherwise it drains the mailbox itself, even if a task is already submitted
+ * to the executor, as that task may be queued behind executor threads that are all blocked. A wire graph has no
+ * cycles, so a blocked emitter always waits on a thread that makes progress, and the graph cannot deadlock even if
+ * all the executor threads are blocked.
+ */
+final class WireMailbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireMailbox.class);
+
+    private static final int BATCH_SIZE = 32;
+
+    private final String pid;
+    private final int capacity;
+    private final MailboxOverflowPolicy policy;
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = this.lock.newCondition();
+    private final ArrayDeque<Delivery> deliveries;
+    // a drain task has been submitted to the executor and has not started yet
+    private boolean scheduled;
+    // a thread is executing the deliveries
+    private boolean running;
+
+    // guarded by lock
+    private long delivered;
+    private long dropped;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    WireMailbox(String pid, int capacity, MailboxOverflowPolicy policy, Executor executor) {
+        this.pid = pid;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.deliveries = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    String getPid() {
+        return this.pid;
+    }
+
+    MailboxOverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Queues a delivery, applying the overflow policy if the mailbox is full.
+     *
+     * @return false if the delivery has been dropped
+     */
+    boolean offer(Runnable delivery) {
+        boolean schedule = false;
+        this.lock.lock();
+        try {
+            while (this.deliveries.size() >= this.capacity) {
+                if (this.policy == MailboxOverflowPolicy.DROP_NEWEST) {
+                    this.dropped++;
+                    return false;
+                } else if (this.policy == MailboxOverflowPolicy.DROP_OLDEST) {
+                    this.deliveries.poll();
+                    this.dropped++;
+                } else if (!this.running) {
+                    this.running = true;
+                    this.lock.unlock();
+                    try {
+                        drain(this.capacity);
+                    } finally {
+                        this.lock.lock();
+                    }
+                } else {
+                    this.notFull.awaitUninterruptibly();
+                }
+            }
+
+            this.deliveries.add(new Delivery(delivery, System.nanoTime()));
+            schedule = scheduleIfIdle();
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (schedule) {
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Marks a drain task as scheduled if there are deliveries and no thread is going to execute them. Must be
+     * called holding the lock.
+     *
+     * @return true if the caller must submit the task
+     */
+    private boolean scheduleIfIdle() {
+        if (this.deliveries.isEmpty() || this.scheduled || this.running) {
+            return false;
+        }
+        this.scheduled = true;
+        return true;
+    }
+
+    private void schedule() {
+        try {
+            this.executor.execute(() -> runScheduled(BATCH_SIZE));
+        } catch (RejectedExecutionException e) {
+            // the executor is shutting down, deliver on the current thread
+            runScheduled(Integer.MAX_VALUE);
+        }
+    }
+
+    private void runScheduled(int max) {
+        this.lock.lock();
+        try {
+            this.scheduled = false;
+            if (this.running) {
+                // an emitter is draining the mailbox, it schedules a new task if needed
+                return;
+            }
+            this.running = true;
+        } finally {
+            this.lock.unlock();
+        }
+        drain(max);
+    }
+
+    /**
+     * Executes up to {@code max} deliveries. Must be called by the thread that has set {@code running}: the flag is
+     * cleared on return, even if a delivery throws, and a new task is scheduled if deliveries are left.
+     */
+    private void drain(int max) {
+        try {
+            for (int i = 0; i < max; i++) {
+                Delivery delivery;
+                this.lock.lock();
+                try {
+                    delivery = this.deliveries.poll();
+                    if (delivery == null) {
+                        return;
+                    }
+                    this.notFull.signalAll();
+                } finally {
+                    this.lock.unlock();
+                }
+
+                try {
+                    delivery.runnable.run();
+                } catch (Exception e) {
+                    logger.warn("Failed to deliver wire envelope to {}", this.pid, e);
+                }
+                record(System.nanoTime() - delivery.queuedOn);
+            }
+        } finally {
+            boolean schedule;
+            this.lock.lock();
+            try {
+                this.running = false;
+                // the emitters waiting for a running drain can now drain the mailbox themselves
+                this.notFull.signalAll();
+                schedule = scheduleIfIdle();
+            } finally {
+                this.lock.unlock();
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+    }
+
+    private void record(long latencyNanos) {
+        this.lock.lock();
+        try {
+            this.delivered++;
+            this.totalLatencyNanos += latencyNanos;
+            this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latencyNanos);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    Statistics getStatistics() {
+        this.lock.lock();
+        try {
+            return new Statistics(this.pid, this.deliveries.size(), this.capacity, this.delivered, this.dropped,
+                    this.delivered > 0 ? this.totalLatencyNanos / this.delivered : 0, this.maxLatencyNanos);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private static final class Delivery {
+
+        private final Runnable runnable;
+        private final long queuedOn;
+
+        Delivery(Runnable runnable, long queuedOn) {
+            this.runnable = runnable;
+            this.queuedOn = queuedOn;
+        }
+    }
+
+    /**
+     * The queue depth of a mailbox and the latency of its deliveries, from the time they are queued to the time the
+     * wire component returns.
+     */
+    static final class Statistics {
+
+        private final String pid;
+        private final int depth;
+        private final int capacity;
+        private final long delivered;
+        private final long dropped;
+        private final long averageLatencyNanos;
+        private final long maxLatencyNanos;
+
+        Statistics(String pid, int depth, int capacity, long delivered, long dropped, long averageLatencyNanos,
+                long maxLatencyNanos) {
+            this.pid = pid;
+            this.depth = depth;
+            this.capacity = capacity;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.averageLatencyNanos = averageLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        String getPid() {
+            return this.pid;
+        }
+
+        int getDepth() {
+            return this.depth;
+        }
+
+        int getCapacity() {
+            return this.capacity;
+        }
+
+        long getDelivered() {
+            return this.delivered;
+        }
+
+        long getDropped() {
+            return this.dropped;
+        }
+
+        long getAverageLatency(TimeUnit unit) {
+            return unit.convert(this.averageLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        long getMaxLatency(TimeUnit unit) {
+            return unit.convert(this.maxLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
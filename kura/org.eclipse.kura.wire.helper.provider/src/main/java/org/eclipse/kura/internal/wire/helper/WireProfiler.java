@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.eclipse.kura.wire.graph.Constants.EMITTER_KURA_SERVICE_PID_PROP_NAME;
+import static org.eclipse.kura.wire.graph.Constants.RECEIVER_KURA_SERVICE_PID_PROP_NAME;
+import static org.eclipse.kura.wire.graph.Constants.WIRE_EMITTER_PORT_PROP_NAME;
+import static org.eclipse.kura.wire.graph.Constants.WIRE_RECEIVER_PORT_PROP_NAME;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireStatistics;
+import org.osgi.service.wireadmin.Wire;
+
+/**
+ * Collects the runtime statistics of the wire components and of the wires.
+ * <p>
+ * The counters are updated by the {@link WireSupportImpl} instances on every delivery, so they are striped
+ * ({@link LongAdder}) and never locked: concurrent deliveries to different components, or to the same component in
+ * the asynchronous mode, only contend on the cache lines of the adders. The profiles are looked up when a
+ * {@link WireSupportImpl} is created or its wires are connected, never on the delivery path.
+ */
+final class WireProfiler {
+
+    private final Map<String, ComponentProfile> components = new ConcurrentHashMap<>();
+    private final Map<WireKey, WireProfile> wires = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the profile of a wire component, replacing the one of a previous instance with the same PID.
+     */
+    ComponentProfile newComponentProfile(String kuraServicePid) {
+        final ComponentProfile profile = new ComponentProfile(kuraServicePid);
+        this.components.put(kuraServicePid, profile);
+        return profile;
+    }
+
+    /**
+     * Returns the profile of a wire, identified by the PIDs and ports of its endpoints, or null if the wire
+     * properties do not identify the endpoints.
+     */
+    WireProfile getWireProfile(Wire wire) {
+        final WireKey key = WireKey.of(wire);
+        return key != null ? this.wires.computeIfAbsent(key, WireProfile::new) : null;
+    }
+
+    /**
+     * Discards the profiles of the wire components that are no longer registered, and of the wires connecting
+     * them.
+     */
+    void retainComponents(Set<String> kuraServicePids) {
+        this.components.keySet().retainAll(kuraServicePids);
+        this.wires.keySet().removeIf(key -> !kuraServicePids.contains(key.emitterPid)
+                || !kuraServicePids.contains(key.receiverPid));
+    }
+
+    /**
+     * Discards the profiles of the wires connected to a receiver that are not among the provided ones.
+     */
+    void retainWires(String receiverPid, Set<WireProfile> connected) {
+        this.wires.values().removeIf(profile -> profile.key.receiverPid.equals(receiverPid)
+                && !connected.contains(profile));
+    }
+
+    List<WireComponentStatistics> getComponentStatistics() {
+        final List<WireComponentStatistics> result = new ArrayList<>(this.components.size());
+        for (final ComponentProfile profile : this.components.values()) {
+            result.add(profile.snapshot());
+        }
+        result.sort(Comparator.comparing(WireComponentStatistics::getPid));
+        return result;
+    }
+
+    List<WireStatistics> getWireStatistics() {
+        final List<WireStatistics> result = new ArrayList<>(this.wires.size());
+        for (final WireProfile profile : this.wires.values()) {
+            result.add(profile.snapshot());
+        }
+        result.sort(Comparator.comparing(WireStatistics::getEmitterPid).thenComparing(WireStatistics::getReceiverPid)
+                .thenComparingInt(WireStatistics::getEmitterPort).thenComparingInt(WireStatistics::getReceiverPort));
+        return result;
+    }
+
+    /**
+     * The counters of a wire component. The receive times are recorded in a histogram with power of two buckets,
+     * bucket {@code i} counting the times in {@code [2^(i-1), 2^i)} nanoseconds.
+     */
+    static final class ComponentProfile {
+
+        private static final int BUCKETS = 64;
+
+        private final String pid;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder totalReceiveNanos = new LongAdder();
+        private final LongAccumulator maxReceiveNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] receiveNanosHistogram = new LongAdder[BUCKETS];
+        private final LongAdder recordsIn = new LongAdder();
+        private final LongAdder recordsOut = new LongAdder();
+        private final LongAdder envelopesDropped = new LongAdder();
+
+        ComponentProfile(String pid) {
+            this.pid = pid;
+            for (int i = 0; i < BUCKETS; i++) {
+                this.receiveNanosHistogram[i] = new LongAdder();
+            }
+        }
+
+        void received(int records, long receiveNanos) {
+            final long nanos = Math.max(receiveNanos, 0);
+            this.invocations.increment();
+            this.recordsIn.add(records);
+            this.totalReceiveNanos.add(nanos);
+            this.maxReceiveNanos.accumulate(nanos);
+            this.receiveNanosHistogram[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        }
+
+        void emitted(int records) {
+            this.recordsOut.add(records);
+        }
+
+        void dropped() {
+            this.envelopesDropped.increment();
+        }
+
+        ComponentStatisticsSnapshot snapshot() {
+            final long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = this.receiveNanosHistogram[i].sum();
+            }
+            return new ComponentStatisticsSnapshot(this.pid, this.invocations.sum(), this.totalReceiveNanos.sum(),
+                    this.maxReceiveNanos.get(), histogram, this.recordsIn.sum(), this.recordsOut.sum(),
+                    this.envelopesDropped.sum());
+        }
+    }
+
+    /**
+     * The counters of a wire, updated on the receiver side.
+     */
+    static final class WireProfile {
+
+        private final WireKey key;
+        private final LongAdder envelopes = new LongAdder();
+        private final LongAdder records = new LongAdder();
+        private final LongAdder envelopesDropped = new LongAdder();
+
+        WireProfile(WireKey key) {
+            this.key = key;
+        }
+
+        void transmitted(int recordCount) {
+            this.envelopes.increment();
+            this.records.add(recordCount);
+        }
+
+        void dropped() {
+            this.envelopesDropped.increment();
+        }
+
+        WireStatisticsSnapshot snapshot() {
+            return new WireStatisticsSnapshot(this.key, this.envelopes.sum(), this.records.sum(),
+                    this.envelopesDropped.sum());
+        }
+    }
+
+    static final class WireKey {
+
+        private final String emitterPid;
+        private final int emitterPort;
+        private final String receiverPid;
+        private final int receiverPort;
+
+        WireKey(String emitterPid, int emitterPort, String receiverPid, int receiverPort) {
+            this.emitterPid = emitterPid;
+            this.emitterPort = emitterPort;
+            this.receiverPid = receiverPid;
+            this.receiverPort = receiverPort;
+        }
+
+        static WireKey of(Wire wire) {
+            @SuppressWarnings("rawtypes")
+            final Dictionary properties = wire.getProperties();
+            if (properties == null) {
+                return null;
+            }
+            final Object emitterPid = properties.get(EMITTER_KURA_SERVICE_PID_PROP_NAME.value());
+            final Object receiverPid = properties.get(RECEIVER_KURA_SERVICE_PID_PROP_NAME.value());
+            final Object emitterPort = properties.get(WIRE_EMITTER_PORT_PROP_NAME.value());
+            final Object receiverPort = properties.get(WIRE_RECEIVER_PORT_PROP_NAME.value());
+            if (!(emitterPid instanceof String) || !(receiverPid instanceof String)) {
+                return null;
+            }
+            return new WireKey((String) emitterPid, emitterPort instanceof Integer ? (Integer) emitterPort : 0,
+                    (String) receiverPid, receiverPort instanceof Integer ? (Integer) receiverPort : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.emitterPid, this.emitterPort, this.receiverPid, this.receiverPort);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WireKey)) {
+                return false;
+            }
+            final WireKey other = (WireKey) obj;
+            return this.emitterPort == other.emitterPort && this.receiverPort == other.receiverPort
+                    && this.emitterPid.equals(other.emitterPid) && this.receiverPid.equals(other.receiverPid);
+        }
+    }
+
+    static final class ComponentStatisticsSnapshot implements WireComponentStatistics {
+
+        private final String pid;
+        private final long invocations;
+        private final long totalReceiveNanos;
+        private final long maxReceiveNanos;
+        private final long[] receiveNanosHistogram;
+        private final long recordsIn;
+        private final long recordsOut;
+        private final long envelopesDropped;
+
+        ComponentStatisticsSnapshot(String pid, long invocations, long totalReceiveNanos, long maxReceiveNanos,
+                long[] receiveNanosHistogram, long recordsIn, long recordsOut, long envelopesDropped) {
+            this.pid = pid;
+            this.invocations = invocations;
+            this.totalReceiveNanos = totalReceiveNanos;
+            this.maxReceiveNanos = maxReceiveNanos;
+            this.receiveNanosHistogram = receiveNanosHistogram;
+            this.recordsIn = recordsIn;
+            this.recordsOut = recordsOut;
+            this.envelopesDropped = envelopesDropped;
+        }
+
+        @Override
+        public String getPid() {
+            return this.pid;
+        }
+
+        @Override
+        public long getInvocations() {
+            return this.invocations;
+        }
+
+        @Override
+        public long getTotalReceiveTime(TimeUnit unit) {
+            return unit.convert(this.totalReceiveNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long getMaxReceiveTime(TimeUnit unit) {
+            return unit.convert(this.maxReceiveNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long getReceiveTimePercentile(double percentile, TimeUnit unit) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            long count = 0;
+            for (final long bucketCount : this.receiveNanosHistogram) {
+                count += bucketCount;
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long cumulative = 0;
+            for (int i = 0; i < this.receiveNanosHistogram.length; i++) {
+                cumulative += this.receiveNanosHistogram[i];
+                if (cumulative >= rank) {
+                    // the upper bound of the bucket, never above the maximum observed
+                    final long upperBound = (1L << i) - 1;
+                    return unit.convert(Math.min(upperBound, this.maxReceiveNanos), TimeUnit.NANOSECONDS);
+                }
+            }
+            return unit.convert(this.maxReceiveNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long getRecordsIn() {
+            return this.recordsIn;
+        }
+
+        @Override
+        public long getRecordsOut() {
+            return this.recordsOut;
+        }
+
+        @Override
+        public long getEnvelopesDropped() {
+            return this.envelopesDropped;
+        }
+    }
+
+    static final class WireStatisticsSnapshot implements WireStatistics {
+
+        private final WireKey key;
+        private final long envelopes;
+        private final long records;
+        private final long envelopesDropped;
+
+        WireStatisticsSnapshot(WireKey key, long envelopes, long records, long envelopesDropped) {
+            this.key = key;
+            this.envelopes = envelopes;
+            this.records = records;
+            this.envelopesDropped = envelopesDropped;
+        }
+
+        @Override
+        public String getEmitterPid() {
+            return this.key.emitterPid;
+        }
+
+        @Override
+        public int getEmitterPort() {
+            return this.key.emitterPort;
+        }
+
+        @Override
+        public String getReceiverPid() {
+            return this.key.receiverPid;
+        }
+
+        @Override
+        public int getReceiverPort() {
+            return this.key.receiverPort;
+        }
+
+        @Override
+        public long getEnvelopes() {
+            return this.envelopes;
+        }
+
+        @Override
+        public long getRecords() {
+            return this.records;
+        }
+
+        @Override
+        public long getEnvelopesDropped() {
+            return this.envelopesDropped;
+        }
+    }
+}
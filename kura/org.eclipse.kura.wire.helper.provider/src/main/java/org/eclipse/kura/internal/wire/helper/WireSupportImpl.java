@@ -18,13 +18,17 @@ import static org.eclipse.kura.wire.graph.Constants.WIRE_EMITTER_PORT_PROP_NAME;
 import static org.eclipse.kura.wire.graph.Constants.WIRE_RECEIVER_PORT_PROP_NAME;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import org.eclipse.kura.internal.wire.helper.WireProfiler.ComponentProfile;
+import org.eclipse.kura.internal.wire.helper.WireProfiler.WireProfile;
 import org.eclipse.kura.wire.WireComponent;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireReceiver;
@@ -40,6 +44,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The Class WireSupportImpl implements {@link WireSupport}
+ * <p>
+ * The wires connected to the ports are kept in immutable snapshots, {@link Outgoing} and {@link Incoming}, that are
+ * rebuilt and published as a whole when WireAdmin reports a change of the connected wires. {@link #emit(List)} and
+ * {@link #updated(Wire, Object)} read the current snapshot without locking, so a component emitting from several
+ * threads is never serialized by its own emits or by a concurrent rewiring: every envelope is delivered either to the
+ * wires connected before or to the ones connected after the rewiring, never to a mix of the two.
  */
 final class WireSupportImpl implements WireSupport, MultiportWireSupport {
 
@@ -55,10 +65,34 @@ final class WireSupportImpl implements WireSupport, MultiportWireSupport {
 
     private final String kuraServicePid;
 
-    private final Map<Wire, ReceiverPortImpl> receiverPortByWire;
+    private final Supplier<AsyncWireExecutor> asyncExecutor;
+
+    private final WireProfiler profiler;
+
+    private final ComponentProfile profile;
+
+    // read without locking by emit and updated, replaced as a whole under the wiring lock
+    private volatile Outgoing outgoing;
+
+    private volatile Incoming incoming;
+
+    // serializes the rewirings, so that the wires published last are the ones of the last call
+    private final Object wiringLock = new Object();
+
+    // the mailbox of the component when the wire graph runs asynchronously, created lazily under the lock
+    private final Object mailboxLock = new Object();
+
+    private volatile MailboxBinding mailbox;
 
     WireSupportImpl(final WireComponent wireComponent, final String servicePid, final String kuraServicePid,
             int inputPortCount, int outputPortCount) {
+        this(wireComponent, servicePid, kuraServicePid, inputPortCount, outputPortCount, () -> null,
+                new WireProfiler());
+    }
+
+    WireSupportImpl(final WireComponent wireComponent, final String servicePid, final String kuraServicePid,
+            int inputPortCount, int outputPortCount, final Supplier<AsyncWireExecutor> asyncExecutor,
+            final WireProfiler profiler) {
         requireNonNull(wireComponent, "Wire component cannot be null");
         requireNonNull(servicePid, "service pid cannot be null");
         requireNonNull(kuraServicePid, "kura service pid cannot be null");
@@ -66,6 +100,9 @@ final class WireSupportImpl implements WireSupport, MultiportWireSupport {
         this.servicePid = servicePid;
         this.kuraServicePid = kuraServicePid;
         this.wireComponent = wireComponent;
+        this.asyncExecutor = requireNonNull(asyncExecutor);
+        this.profiler = requireNonNull(profiler);
+        this.profile = profiler.newComponentProfile(kuraServicePid);
 
         if (inputPortCount < 0) {
             throw new IllegalArgumentException("Input port count must be greater or equal than zero");
@@ -74,81 +111,94 @@ final class WireSupportImpl implements WireSupport, MultiportWireSupport {
             throw new IllegalArgumentException("Output port count must be greater or equal than zero");
         }
 
-        this.receiverPorts = new ArrayList<>(inputPortCount);
-        this.emitterPorts = new ArrayList<>(outputPortCount);
-        this.receiverPortByWire = new HashMap<>();
+        final List<ReceiverPort> receivers = new ArrayList<>(inputPortCount);
+        final List<EmitterPort> emitters = new ArrayList<>(outputPortCount);
 
         for (int i = 0; i < inputPortCount; i++) {
-            receiverPorts.add(new ReceiverPortImpl());
+            receivers.add(new ReceiverPortImpl(i));
         }
 
         for (int i = 0; i < outputPortCount; i++) {
-            emitterPorts.add(new EmitterPortImpl());
+            emitters.add(new EmitterPortImpl(i));
         }
-    }
 
-    private void clearReceiverPorts() {
-        this.receiverPortByWire.clear();
-        for (final ReceiverPort port : this.receiverPorts) {
-            ((PortImpl) port).connectedWires.clear();
-        }
-    }
-
-    private void clearEmitterPorts() {
-        for (final EmitterPort port : this.emitterPorts) {
-            ((PortImpl) port).connectedWires.clear();
-        }
+        this.receiverPorts = Collections.unmodifiableList(receivers);
+        this.emitterPorts = Collections.unmodifiableList(emitters);
+        this.outgoing = new Outgoing(new Wire[outputPortCount][0]);
+        this.incoming = new Incoming(new Wire[inputPortCount][0], Collections.emptyMap());
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void consumersConnected(final Wire[] wires) {
-        clearEmitterPorts();
-        if (wires == null) {
-            return;
-        }
-        for (Wire w : wires) {
-            try {
-                final int outputPort = (Integer) w.getProperties().get(WIRE_EMITTER_PORT_PROP_NAME.value());
-                ((PortImpl) this.emitterPorts.get(outputPort)).connectedWires.add(w);
-            } catch (Exception e) {
-                logger.warn("Failed to assign outgoing wire to port", e);
+    public void consumersConnected(final Wire[] wires) {
+        synchronized (this.wiringLock) {
+            final List<List<Wire>> wiresByPort = newPortLists(this.emitterPorts.size());
+            if (wires != null) {
+                for (Wire w : wires) {
+                    try {
+                        final int outputPort = (Integer) w.getProperties().get(WIRE_EMITTER_PORT_PROP_NAME.value());
+                        wiresByPort.get(outputPort).add(w);
+                    } catch (Exception e) {
+                        logger.warn("Failed to assign outgoing wire to port", e);
+                    }
+                }
             }
+            this.outgoing = new Outgoing(toArrays(wiresByPort));
         }
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void emit(final List<WireRecord> wireRecords) {
+    public void emit(final List<WireRecord> wireRecords) {
         requireNonNull(wireRecords, "Wire Records cannot be null");
         final WireEnvelope envelope = createWireEnvelope(wireRecords);
-        for (EmitterPort emitterPort : this.emitterPorts) {
-            emitterPort.emit(envelope);
+        this.profile.emitted(wireRecords.size());
+        for (final Wire[] portWires : this.outgoing.wiresByPort) {
+            send(portWires, envelope);
+        }
+    }
+
+    private static void send(final Wire[] wires, final WireEnvelope envelope) {
+        for (final Wire wire : wires) {
+            wire.update(envelope);
         }
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized Object polled(final Wire wire) {
+    public Object polled(final Wire wire) {
         return wire.getLastValue();
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void producersConnected(final Wire[] wires) {
-        clearReceiverPorts();
-        if (wires == null) {
-            return;
-        }
-        for (Wire w : wires) {
-            try {
-                final int receiverPortIndex = (Integer) w.getProperties().get(WIRE_RECEIVER_PORT_PROP_NAME.value());
-                final ReceiverPortImpl receiverPort = (ReceiverPortImpl) this.receiverPorts.get(receiverPortIndex);
-                receiverPort.connectedWires.add(w);
-                this.receiverPortByWire.put(w, receiverPort);
-            } catch (Exception e) {
-                logger.warn("Failed to assign incomimg wire to port", e);
+    public void producersConnected(final Wire[] wires) {
+        synchronized (this.wiringLock) {
+            final List<List<Wire>> wiresByPort = newPortLists(this.receiverPorts.size());
+            final Map<Wire, IncomingWire> incomingWires = new HashMap<>();
+            if (wires != null) {
+                for (Wire w : wires) {
+                    ReceiverPortImpl receiverPort = null;
+                    try {
+                        final int receiverPortIndex = (Integer) w.getProperties()
+                                .get(WIRE_RECEIVER_PORT_PROP_NAME.value());
+                        receiverPort = (ReceiverPortImpl) this.receiverPorts.get(receiverPortIndex);
+                        wiresByPort.get(receiverPortIndex).add(w);
+                    } catch (Exception e) {
+                        logger.warn("Failed to assign incomimg wire to port", e);
+                    }
+                    incomingWires.put(w, new IncomingWire(receiverPort, this.profiler.getWireProfile(w)));
+                }
             }
+            this.incoming = new Incoming(toArrays(wiresByPort), incomingWires);
+
+            final HashSet<WireProfile> connected = new HashSet<>();
+            for (final IncomingWire incomingWire : incomingWires.values()) {
+                if (incomingWire.profile != null) {
+                    connected.add(incomingWire.profile);
+                }
+            }
+            this.profiler.retainWires(this.kuraServicePid, connected);
         }
     }
 
@@ -159,51 +209,179 @@ final class WireSupportImpl implements WireSupport, MultiportWireSupport {
             logger.warn("Wire cannot be null");
             return;
         }
+        // a wire disconnected by a concurrent rewiring can still be delivered to a WireReceiver, but has no port
+        final IncomingWire incomingWire = this.incoming.wires.getOrDefault(wire, IncomingWire.UNKNOWN);
         final WireEnvelope envelope = (WireEnvelope) value;
-        if (wireComponent instanceof WireReceiver) {
-            ((WireReceiver) this.wireComponent).onWireReceive(envelope);
-        } else {
-            final ReceiverPortImpl receiverPort = this.receiverPortByWire.get(wire);
-            receiverPort.consumer.accept(envelope);
+        final int recordCount = envelope.getRecords().size();
+        final WireProfile wireProfile = incomingWire.profile;
+        if (wireProfile != null) {
+            wireProfile.transmitted(recordCount);
+        }
+
+        final AsyncWireExecutor executor = this.asyncExecutor.get();
+        if (executor == null) {
+            deliver(incomingWire, envelope, recordCount);
+        } else if (!getMailbox(executor).offer(() -> deliver(incomingWire, envelope, recordCount))) {
+            this.profile.dropped();
+            if (wireProfile != null) {
+                wireProfile.dropped();
+            }
+        }
+    }
+
+    private WireMailbox getMailbox(final AsyncWireExecutor executor) {
+        final MailboxBinding current = this.mailbox;
+        if (current != null && current.executor == executor) {
+            return current.mailbox;
+        }
+        synchronized (this.mailboxLock) {
+            MailboxBinding binding = this.mailbox;
+            if (binding == null || binding.executor != executor) {
+                binding = new MailboxBinding(executor, executor.newMailbox(this.kuraServicePid));
+                this.mailbox = binding;
+            }
+            return binding.mailbox;
+        }
+    }
+
+    private void deliver(final IncomingWire incomingWire, final WireEnvelope envelope, final int recordCount) {
+        final long start = System.nanoTime();
+        try {
+            if (wireComponent instanceof WireReceiver) {
+                ((WireReceiver) this.wireComponent).onWireReceive(envelope);
+            } else if (incomingWire.port != null) {
+                incomingWire.port.consumer.accept(envelope);
+            }
+        } finally {
+            this.profile.received(recordCount, System.nanoTime() - start);
         }
     }
 
     @Override
     public List<EmitterPort> getEmitterPorts() {
-        return Collections.unmodifiableList(this.emitterPorts);
+        return this.emitterPorts;
     }
 
     @Override
     public List<ReceiverPort> getReceiverPorts() {
-        return Collections.unmodifiableList(this.receiverPorts);
+        return this.receiverPorts;
+    }
+
+    private static List<List<Wire>> newPortLists(final int portCount) {
+        final List<List<Wire>> result = new ArrayList<>(portCount);
+        for (int i = 0; i < portCount; i++) {
+            result.add(new ArrayList<>());
+        }
+        return result;
+    }
+
+    private static Wire[][] toArrays(final List<List<Wire>> wiresByPort) {
+        final Wire[][] result = new Wire[wiresByPort.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = wiresByPort.get(i).toArray(new Wire[0]);
+        }
+        return result;
+    }
+
+    /**
+     * The wires connected to the emitter ports, indexed by port. Never modified after publication.
+     */
+    private static final class Outgoing {
+
+        private final Wire[][] wiresByPort;
+
+        Outgoing(final Wire[][] wiresByPort) {
+            this.wiresByPort = wiresByPort;
+        }
+    }
+
+    /**
+     * The wires connected to the receiver ports, indexed by port and by wire. Never modified after publication.
+     */
+    private static final class Incoming {
+
+        private final Wire[][] wiresByPort;
+        private final Map<Wire, IncomingWire> wires;
+
+        Incoming(final Wire[][] wiresByPort, final Map<Wire, IncomingWire> wires) {
+            this.wiresByPort = wiresByPort;
+            this.wires = wires;
+        }
+    }
+
+    private static final class IncomingWire {
+
+        private static final IncomingWire UNKNOWN = new IncomingWire(null, null);
+
+        private final ReceiverPortImpl port;
+        private final WireProfile profile;
+
+        IncomingWire(final ReceiverPortImpl port, final WireProfile profile) {
+            this.port = port;
+            this.profile = profile;
+        }
+    }
+
+    private static final class MailboxBinding {
+
+        private final AsyncWireExecutor executor;
+        private final WireMailbox mailbox;
+
+        MailboxBinding(final AsyncWireExecutor executor, final WireMailbox mailbox) {
+            this.executor = executor;
+            this.mailbox = mailbox;
+        }
     }
 
     private abstract class PortImpl implements Port {
 
-        List<Wire> connectedWires = new CopyOnWriteArrayList<>();
+        protected final int index;
+
+        PortImpl(final int index) {
+            this.index = index;
+        }
+
+        protected abstract Wire[] connectedWires();
 
         @Override
         public List<Wire> listConnectedWires() {
-            return Collections.unmodifiableList(connectedWires);
+            return Collections.unmodifiableList(Arrays.asList(connectedWires()));
         }
     }
 
     private class EmitterPortImpl extends PortImpl implements EmitterPort {
 
+        EmitterPortImpl(final int index) {
+            super(index);
+        }
+
+        @Override
+        protected Wire[] connectedWires() {
+            return WireSupportImpl.this.outgoing.wiresByPort[this.index];
+        }
+
         @Override
         public void emit(WireEnvelope envelope) {
-            for (final Wire wire : this.connectedWires) {
-                wire.update(envelope);
-            }
+            WireSupportImpl.this.profile.emitted(envelope.getRecords().size());
+            send(connectedWires(), envelope);
         }
     }
 
     private class ReceiverPortImpl extends PortImpl implements ReceiverPort {
 
-        Consumer<WireEnvelope> consumer = envelope -> {
+        private volatile Consumer<WireEnvelope> consumer = envelope -> {
             // do nothing
         };
 
+        ReceiverPortImpl(final int index) {
+            super(index);
+        }
+
+        @Override
+        protected Wire[] connectedWires() {
+            return WireSupportImpl.this.incoming.wiresByPort[this.index];
+        }
+
         @Override
         public void onWireReceive(Consumer<WireEnvelope> consumer) {
             requireNonNull(consumer);
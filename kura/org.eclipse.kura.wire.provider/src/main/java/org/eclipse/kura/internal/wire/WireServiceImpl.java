@@ -45,12 +45,15 @@ import org.eclipse.kura.marshalling.Unmarshaller;
 import org.eclipse.kura.util.service.ServiceUtil;
 import org.eclipse.kura.wire.WireComponent;
 import org.eclipse.kura.wire.WireConfiguration;
+import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireService;
 import org.eclipse.kura.wire.graph.Constants;
 import org.eclipse.kura.wire.graph.MultiportWireConfiguration;
 import org.eclipse.kura.wire.graph.WireComponentConfiguration;
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
 import org.eclipse.kura.wire.graph.WireGraphConfiguration;
 import org.eclipse.kura.wire.graph.WireGraphService;
+import org.eclipse.kura.wire.graph.WireStatistics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
@@ -82,6 +85,8 @@ public class WireServiceImpl implements ConfigurableComponent, WireService, Wire
     private ConfigurationService configurationService;
     private BundleContext bundleContext;
 
+    private volatile WireHelperService wireHelperService;
+
     private WireGraphConfiguration currentConfiguration;
 
     /**
@@ -116,6 +121,16 @@ public class WireServiceImpl implements ConfigurableComponent, WireService, Wire
         this.configurationService = null;
     }
 
+    public void bindWireHelperService(final WireHelperService wireHelperService) {
+        this.wireHelperService = wireHelperService;
+    }
+
+    public void unbindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == wireHelperService) {
+            this.wireHelperService = null;
+        }
+    }
+
     protected void activate(final ComponentContext componentContext, final Map<String, Object> properties) {
         logger.info("Activating Wire Service...");
         this.bundleContext = componentContext.getBundleContext();
@@ -557,6 +572,18 @@ public class WireServiceImpl implements ConfigurableComponent, WireService, Wire
         currentConfiguration = newWireGraphConfiguration;
     }
 
+    @Override
+    public List<WireComponentStatistics> getComponentStatistics() {
+        final WireHelperService helper = this.wireHelperService;
+        return helper != null ? helper.getComponentStatistics() : Collections.emptyList();
+    }
+
+    @Override
+    public List<WireStatistics> getWireStatistics() {
+        final WireHelperService helper = this.wireHelperService;
+        return helper != null ? helper.getWireStatistics() : Collections.emptyList();
+    }
+
     @Override
     public WireGraphConfiguration get() throws KuraException {
 
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.KuraInvalidMessageException;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class CloudPayloadProtoBufCodecTest {
+
+    @Test
+    public void testSameBytesAsGeneratedClasses() throws IOException {
+        KuraPayload payload = buildPayload();
+
+        KuraPayloadProto.KuraPayload.Builder expected = KuraPayloadProto.KuraPayload.newBuilder();
+        expected.setTimestamp(-5L);
+        expected.setPosition(KuraPayloadProto.KuraPayload.KuraPosition.newBuilder().setLatitude(45.5)
+                .setLongitude(-12.25).setAltitude(100).setSpeed(3.5).setTimestamp(1234567890123L).setSatellites(7)
+                .setStatus(-1));
+        Map<String, KuraMetric.Builder> metrics = new HashMap<>();
+        metrics.put("string", KuraMetric.newBuilder().setType(ValueType.STRING).setStringValue("h\u00e9llo \u20ac"));
+        metrics.put("double", KuraMetric.newBuilder().setType(ValueType.DOUBLE).setDoubleValue(-1.5));
+        metrics.put("float", KuraMetric.newBuilder().setType(ValueType.FLOAT).setFloatValue(2.5f));
+        metrics.put("long", KuraMetric.newBuilder().setType(ValueType.INT64).setLongValue(Long.MIN_VALUE));
+        metrics.put("int", KuraMetric.newBuilder().setType(ValueType.INT32).setIntValue(-300));
+        metrics.put("bool", KuraMetric.newBuilder().setType(ValueType.BOOL).setBoolValue(true));
+        metrics.put("bytes", KuraMetric.newBuilder().setType(ValueType.BYTES)
+                .setBytesValue(ByteString.copyFrom(new byte[] { 1, 2, 3 })));
+        // in the iteration order of the payload metrics
+        for (String name : payload.metrics().keySet()) {
+            expected.addMetric(metrics.get(name).setName(name));
+        }
+        expected.setBody(ByteString.copyFrom(new byte[300]));
+
+        assertArrayEquals(expected.build().toByteArray(), new CloudPayloadProtoBufEncoderImpl(payload).getBytes());
+    }
+
+    @Test
+    public void testEmptyPayload() throws IOException {
+        assertArrayEquals(new byte[0], new CloudPayloadProtoBufEncoderImpl(new KuraPayload()).getBytes());
+
+        KuraPayload payload = new KuraPayload();
+        payload.setBody(new byte[0]);
+        payload.addMetric("null", null);
+        assertArrayEquals(KuraPayloadProto.KuraPayload.newBuilder().setBody(ByteString.EMPTY).build().toByteArray(),
+                new CloudPayloadProtoBufEncoderImpl(payload).getBytes());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        KuraPayload payload = buildPayload();
+
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+        KuraPayload decoded = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+
+        assertEquals(payload.getTimestamp(), decoded.getTimestamp());
+        KuraPosition position = decoded.getPosition();
+        assertEquals(45.5, position.getLatitude(), 0);
+        assertEquals(-12.25, position.getLongitude(), 0);
+        assertEquals(100, position.getAltitude(), 0);
+        assertNull(position.getPrecision());
+        assertNull(position.getHeading());
+        assertEquals(3.5, position.getSpeed(), 0);
+        assertEquals(new Date(1234567890123L), position.getTimestamp());
+        assertEquals(7, (int) position.getSatellites());
+        assertEquals(-1, (int) position.getStatus());
+
+        Map<String, Object> metrics = decoded.metrics();
+        assertEquals(7, metrics.size());
+        for (Map.Entry<String, Object> metric : payload.metrics().entrySet()) {
+            if (metric.getValue() instanceof byte[]) {
+                assertArrayEquals((byte[]) metric.getValue(), (byte[]) metrics.get(metric.getKey()));
+            } else {
+                assertEquals(metric.getValue(), metrics.get(metric.getKey()));
+            }
+        }
+        assertArrayEquals(payload.getBody(), decoded.getBody());
+    }
+
+    @Test
+    public void testDecodeDefaultsAndUnknownFields() throws Exception {
+        KuraPayloadProto.KuraPayload.Builder builder = KuraPayloadProto.KuraPayload.newBuilder();
+        builder.addMetric(KuraMetric.newBuilder().setName("string").setType(ValueType.STRING));
+        builder.addMetric(KuraMetric.newBuilder().setName("bytes").setType(ValueType.BYTES));
+        builder.addMetric(KuraMetric.newBuilder().setName("int").setType(ValueType.INT32).setDoubleValue(1.0));
+        byte[] metrics = builder.build().toByteArray();
+
+        // an unknown varint field 3, in the extension range
+        byte[] bytes = new byte[metrics.length + 2];
+        bytes[0] = 3 << 3;
+        bytes[1] = 42;
+        System.arraycopy(metrics, 0, bytes, 2, metrics.length);
+
+        KuraPayload decoded = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+        assertEquals("", decoded.getMetric("string"));
+        assertArrayEquals(new byte[0], (byte[]) decoded.getMetric("bytes"));
+        assertEquals(0, decoded.getMetric("int"));
+        assertNull(decoded.getPosition());
+        assertNull(decoded.getBody());
+    }
+
+    @Test(expected = KuraInvalidMessageException.class)
+    public void testDecodeMissingMetricType() throws Exception {
+        byte[] bytes = KuraPayloadProto.KuraPayload.newBuilder()
+                .addMetric(KuraMetric.newBuilder().setName("name").setType(ValueType.INT32)).build().toByteArray();
+        // drop the type field, the last two bytes of the metric
+        byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        truncated[3] -= 2;
+
+        new CloudPayloadProtoBufDecoderImpl(truncated).buildFromByteArray();
+    }
+
+    @Test(expected = KuraInvalidMessageException.class)
+    public void testDecodeTruncated() throws Exception {
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(buildPayload()).getBytes();
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        new CloudPayloadProtoBufDecoderImpl(truncated).buildFromByteArray();
+    }
+
+    private static KuraPayload buildPayload() {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(-5L));
+
+        KuraPosition position = new KuraPosition();
+        position.setLatitude(45.5);
+        position.setLongitude(-12.25);
+        position.setAltitude(100.0);
+        position.setSpeed(3.5);
+        position.setTimestamp(new Date(1234567890123L));
+        position.setSatellites(7);
+        position.setStatus(-1);
+        payload.setPosition(position);
+
+        payload.addMetric("string", "h\u00e9llo \u20ac");
+        payload.addMetric("double", -1.5);
+        payload.addMetric("float", 2.5f);
+        payload.addMetric("long", Long.MIN_VALUE);
+        payload.addMetric("int", -300);
+        payload.addMetric("bool", true);
+        payload.addMetric("bytes", new byte[] { 1, 2, 3 });
+        payload.setBody(new byte[300]);
+        return payload;
+    }
+}
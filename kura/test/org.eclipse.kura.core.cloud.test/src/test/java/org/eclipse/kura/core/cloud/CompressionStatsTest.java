@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.eclipse.kura.core.util.GZipUtil;
+import org.junit.Test;
+
+public class CompressionStatsTest {
+
+    @Test
+    public void testMinSize() throws IOException {
+        CompressionStats stats = new CompressionStats("app", 64);
+        byte[] small = new byte[63];
+
+        assertArrayEquals(small, new CloudPayloadGZipEncoder(() -> small, stats).getBytes());
+        assertEquals(1, stats.getMessages());
+        assertEquals(0, stats.getCompressedMessages());
+
+        byte[] large = new byte[1000];
+        byte[] compressed = new CloudPayloadGZipEncoder(() -> large, stats).getBytes();
+        assertTrue(GZipUtil.isCompressed(compressed));
+        assertArrayEquals(large, GZipUtil.decompress(compressed));
+        assertEquals(2, stats.getMessages());
+        assertEquals(1, stats.getCompressedMessages());
+        assertTrue(stats.getCompressionRatio() < 0.1);
+    }
+
+    @Test
+    public void testBackoffOnPoorRatio() throws IOException {
+        CompressionStats stats = new CompressionStats("app", 0);
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+
+        // random data does not shrink, the payload is sent as is
+        for (int i = 0; i < CompressionStats.POOR_STREAK; i++) {
+            assertArrayEquals(random, new CloudPayloadGZipEncoder(() -> random, stats).getBytes());
+        }
+        assertEquals(0, stats.getCompressedMessages());
+
+        for (int i = 0; i < CompressionStats.BACKOFF_MESSAGES; i++) {
+            assertFalse(stats.shouldCompress(random.length));
+        }
+        assertTrue(stats.shouldCompress(random.length));
+    }
+}
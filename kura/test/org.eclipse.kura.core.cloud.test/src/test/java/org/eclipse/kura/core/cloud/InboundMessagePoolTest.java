@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.core.cloud.InboundMessagePool.OverflowPolicy;
+import org.junit.Test;
+
+public class InboundMessagePoolTest {
+
+    @Test
+    public void testOrderPerTopic() throws InterruptedException {
+        InboundMessagePool pool = new InboundMessagePool("test", 4, 100, OverflowPolicy.BLOCK);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(8 * 200);
+
+        for (int i = 0; i < 200; i++) {
+            for (int t = 0; t < 8; t++) {
+                String topic = "topic/" + t;
+                int sequence = i;
+                assertTrue(pool.submit(topic, () -> {
+                    received.computeIfAbsent(topic, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(sequence);
+                    done.countDown();
+                }));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> sequences : received.values()) {
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, (int) sequences.get(i));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        InboundMessagePool pool = new InboundMessagePool("test", 1, 2, OverflowPolicy.DROP);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // keep the worker busy
+        assertTrue(pool.submit("a", () -> {
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(pool.submit("a", () -> {
+        }));
+        assertTrue(pool.submit("a", () -> {
+        }));
+        assertFalse(pool.submit("a", () -> {
+        }));
+        assertEquals(2, pool.getQueueDepth());
+        assertEquals(1, pool.getDroppedMessages());
+
+        release.countDown();
+        pool.shutdown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getProcessedMessages() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, pool.getProcessedMessages());
+        assertFalse(pool.submit("a", () -> {
+        }));
+    }
+
+    @Test
+    public void testBlockWhenFull() throws InterruptedException {
+        InboundMessagePool pool = new InboundMessagePool("test", 1, 1, OverflowPolicy.BLOCK);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+
+        pool.submit("a", () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.submit("a", () -> {
+        });
+
+        Thread producer = new Thread(() -> {
+            pool.submit("a", () -> {
+            });
+            submitted.countDown();
+        });
+        producer.start();
+
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getDroppedMessages());
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testReplacementStartsAfterPrevious() throws InterruptedException {
+        InboundMessagePool previous = new InboundMessagePool("previous", 1, 10, OverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+
+        previous.submit("a", () -> {
+            awaitQuietly(release);
+            processed.add("previous");
+        });
+
+        InboundMessagePool next = new InboundMessagePool("next", 2, 10, OverflowPolicy.BLOCK, previous);
+        previous.shutdown();
+        assertTrue(previous.isShutdown());
+        assertFalse(previous.submit("a", () -> {
+        }));
+
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(next.submit("a", () -> {
+            processed.add("next");
+            done.countDown();
+        }));
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(previous.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("previous", "next"), processed);
+        next.shutdownNow();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
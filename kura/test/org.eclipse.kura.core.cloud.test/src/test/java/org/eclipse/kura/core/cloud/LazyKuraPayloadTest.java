@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.junit.Test;
+
+public class LazyKuraPayloadTest {
+
+    @Test
+    public void testDecodedOnceOnFirstAccess() {
+        AtomicInteger decodings = new AtomicInteger();
+        LazyKuraPayload payload = new LazyKuraPayload(() -> {
+            decodings.incrementAndGet();
+            KuraPayload decoded = new KuraPayload();
+            decoded.setTimestamp(new Date(1000L));
+            decoded.addMetric("temperature", 21.5);
+            decoded.setBody(new byte[] { 1, 2 });
+            return decoded;
+        });
+
+        assertFalse(payload.isDecoded());
+        assertEquals(0, decodings.get());
+
+        assertEquals(21.5, payload.getMetric("temperature"));
+        assertTrue(payload.isDecoded());
+        assertEquals(new Date(1000L), payload.getTimestamp());
+        assertArrayEquals(new byte[] { 1, 2 }, payload.getBody());
+        assertEquals(1, payload.metrics().size());
+        assertEquals(1, decodings.get());
+    }
+
+    @Test
+    public void testChangesBeforeAccessAreKept() {
+        LazyKuraPayload payload = new LazyKuraPayload(() -> {
+            KuraPayload decoded = new KuraPayload();
+            decoded.addMetric("a", 1);
+            decoded.addMetric("b", 2);
+            return decoded;
+        });
+
+        // the changes apply to the decoded payload, not to an empty one
+        payload.addMetric("c", 3);
+        payload.removeMetric("a");
+
+        assertEquals(2, payload.metricNames().size());
+        assertEquals(2, payload.getMetric("b"));
+        assertEquals(3, payload.getMetric("c"));
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kura.KuraException;
+import org.eclipse.kura.KuraInvalidMessageException;
+import org.eclipse.kura.message.KuraPayload;
+import org.junit.Test;
+
+public class MetricDictionaryTest {
+
+    @Test
+    public void testVersioning() {
+        MetricDictionary dictionary = new MetricDictionary(1000);
+
+        MetricDictionary.Snapshot v1 = dictionary.resolve(Arrays.asList("temperature", "humidity"));
+        assertEquals(1000, v1.getBase());
+        assertEquals(1001, v1.getVersion());
+        assertEquals(Arrays.asList("temperature", "humidity"), v1.getNames());
+
+        // known names do not change the dictionary
+        assertSame(v1, dictionary.resolve(Arrays.asList("humidity")));
+
+        // new names are appended, existing indices are kept
+        MetricDictionary.Snapshot v2 = dictionary.resolve(Arrays.asList("pressure", "temperature", "pressure"));
+        assertEquals(1002, v2.getVersion());
+        assertEquals(0, v2.getIndex("temperature"));
+        assertEquals(1, v2.getIndex("humidity"));
+        assertEquals(2, v2.getIndex("pressure"));
+        assertEquals(-1, v2.getIndex("voltage"));
+        assertEquals(2, v1.getNames().size());
+    }
+
+    @Test
+    public void testRoundTrip() throws KuraException, IOException {
+        MetricDictionary dictionary = new MetricDictionary(1000);
+        MetricDictionaryDecoder decoder = new MetricDictionaryDecoder();
+
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1234567890L));
+        payload.addMetric("temperature", 21.5);
+        payload.addMetric("status", "ok");
+        payload.setBody(new byte[] { 1, 2, 3 });
+
+        MetricDictionary.Snapshot snapshot = dictionary.resolve(payload.metrics().keySet());
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload, snapshot).getBytes();
+        byte[] plain = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+        assertTrue(bytes.length < plain.length);
+
+        // the metrics are sent by index
+        KuraPayload indexed = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+        assertEquals("ok", indexed.getMetric(Integer.toString(snapshot.getIndex("status"))));
+
+        decoder.update(snapshot.toPayload());
+        KuraPayload decoded = decoder.decode(bytes);
+        assertEquals(payload.getTimestamp(), decoded.getTimestamp());
+        assertEquals(payload.metrics(), decoded.metrics());
+        assertArrayEquals(payload.getBody(), decoded.getBody());
+
+        // plain payloads are returned as they are
+        assertEquals(payload.metrics(), decoder.decode(plain).metrics());
+    }
+
+    @Test
+    public void testDecodeWithLaterVersion() throws KuraException, IOException {
+        MetricDictionary dictionary = new MetricDictionary(1000);
+        MetricDictionaryDecoder decoder = new MetricDictionaryDecoder();
+
+        KuraPayload first = new KuraPayload();
+        first.addMetric("a", 1);
+        byte[] firstBytes = new CloudPayloadProtoBufEncoderImpl(first,
+                dictionary.resolve(first.metrics().keySet())).getBytes();
+
+        KuraPayload second = new KuraPayload();
+        second.addMetric("b", 2L);
+        second.addMetric("a", 3);
+        MetricDictionary.Snapshot latest = dictionary.resolve(second.metrics().keySet());
+        byte[] secondBytes = new CloudPayloadProtoBufEncoderImpl(second, latest).getBytes();
+
+        try {
+            decoder.decode(firstBytes);
+            fail("Dictionary should be unknown");
+        } catch (KuraInvalidMessageException e) {
+            // expected
+        }
+
+        decoder.update(latest.toPayload());
+        assertEquals(first.metrics(), decoder.decode(firstBytes).metrics());
+        assertEquals(second.metrics(), decoder.decode(secondBytes).metrics());
+
+        // a dictionary from a previous run does not replace the current one
+        MetricDictionary previous = new MetricDictionary(500);
+        decoder.update(previous.resolve(Arrays.asList("x")).toPayload());
+        assertEquals(second.metrics(), decoder.decode(secondBytes).metrics());
+    }
+
+    @Test
+    public void testNewEpochWhenFull() {
+        AtomicLong clock = new AtomicLong(1000);
+        MetricDictionary dictionary = new MetricDictionary(3, clock::get);
+
+        MetricDictionary.Snapshot v1 = dictionary.resolve(Arrays.asList("a", "b"));
+        assertEquals(1000, v1.getBase());
+        MetricDictionary.Snapshot v2 = dictionary.resolve(Arrays.asList("c"));
+        assertEquals(1002, v2.getVersion());
+
+        // the clock has not moved, the new base still follows the versions of the previous epoch
+        MetricDictionary.Snapshot v3 = dictionary.resolve(Arrays.asList("d", "a"));
+        assertEquals(1003, v3.getBase());
+        assertEquals(1004, v3.getVersion());
+        assertEquals(Arrays.asList("d", "a"), v3.getNames());
+
+        clock.set(5000);
+        MetricDictionary.Snapshot v4 = dictionary.resolve(Arrays.asList("e", "f"));
+        assertEquals(5000, v4.getBase());
+        assertEquals(Arrays.asList("e", "f"), v4.getNames());
+    }
+
+    @Test
+    public void testLateReceiver() throws KuraException, IOException {
+        MetricDictionary dictionary = new MetricDictionary(1000);
+
+        MetricDictionary.Snapshot v1 = dictionary.resolve(Arrays.asList("a", "b"));
+        KuraPayload first = new KuraPayload();
+        first.addMetric("b", 2);
+        byte[] firstBytes = new CloudPayloadProtoBufEncoderImpl(first, v1).getBytes();
+
+        dictionary.resolve(Arrays.asList("c"));
+        MetricDictionary.Snapshot v3 = dictionary.resolve(Arrays.asList("d"));
+        KuraPayload last = new KuraPayload();
+        last.addMetric("d", 4);
+        last.addMetric("a", 1);
+        byte[] lastBytes = new CloudPayloadProtoBufEncoderImpl(last, v3).getBytes();
+
+        // a receiver subscribing late only gets the last version, retained by the broker
+        MetricDictionaryDecoder decoder = new MetricDictionaryDecoder();
+        decoder.update(v3.toPayload());
+
+        assertEquals(first.metrics(), decoder.decode(firstBytes).metrics());
+        assertEquals(last.metrics(), decoder.decode(lastBytes).metrics());
+    }
+
+    @Test
+    public void testUnconfirmedNamesSentByName() throws KuraException, IOException {
+        MetricDictionary dictionary = new MetricDictionary(1000);
+        MetricDictionaryDecoder decoder = new MetricDictionaryDecoder();
+
+        MetricDictionary.Snapshot v1 = dictionary.resolve(Collections.singletonList("a"));
+        decoder.update(v1.toPayload());
+
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("a", 1);
+        payload.addMetric("b", 2);
+        dictionary.resolve(payload.metrics().keySet());
+
+        // the payload is encoded with the version known by the receivers, the added name is sent by name
+        assertTrue(v1.canEncode(payload.metrics().keySet()));
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload, v1).getBytes();
+
+        KuraPayload encoded = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+        assertEquals(1, encoded.getMetric("0"));
+        assertEquals(2, encoded.getMetric("b"));
+        assertEquals(payload.metrics(), decoder.decode(bytes).metrics());
+
+        // a name that could be mistaken for an index cannot be sent by name
+        assertFalse(v1.canEncode(Arrays.asList("a", "7")));
+    }
+}
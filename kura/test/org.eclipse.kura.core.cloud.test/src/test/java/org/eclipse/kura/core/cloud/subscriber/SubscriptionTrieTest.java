@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.cloud.subscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SubscriptionTrieTest {
+
+    private static final String[] FILTERS = { "$EDC/#account-name/#client-id/APP/#", "$EDC/acc/+/APP/a",
+            "$EDC/acc/dev/APP/a/b", "$EDC/acc/dev/#", "#", "+/acc/dev/APP/a", "$EDC/acc/dev/APP/+/b",
+            "$EDC/acc/dev/APP/a/+", "$EDC/acc/dev/APP", "$EDC/acc/dev/APP/" };
+
+    private static final String[] TOPICS = { "$EDC/acc/dev/APP/a", "$EDC/acc/dev/APP/a/b", "$EDC/other/dev/APP/x/y/z", "$EDC/acc", "foo/acc/dev/APP/a", "$EDC/acc/dev/APP/c/b" };
+
+    @Test
+    public void testMatchesLikeRecords() {
+        SubscriptionTrie trie = new SubscriptionTrie();
+        for (String filter : FILTERS) {
+            trie.add(new CloudSubscriptionRecord(filter, 0));
+        }
+
+        for (String topic : TOPICS) {
+            Set<String> expected = new HashSet<>();
+            for (String filter : FILTERS) {
+                if (new CloudSubscriptionRecord(filter, 0).matches(topic)) {
+                    expected.add(filter);
+                }
+            }
+            assertEquals(topic, expected, topics(trie.match(topic)));
+        }
+    }
+
+    @Test
+    public void testMultiLevelWildcardMatchesParent() {
+        SubscriptionTrie trie = new SubscriptionTrie();
+        trie.add(new CloudSubscriptionRecord("$EDC/#account-name/#client-id/APP/#", 0));
+
+        assertEquals(1, trie.match("$EDC/acc/dev/APP").size());
+        assertEquals(1, trie.match("$EDC/acc/dev/APP/").size());
+        assertTrue(trie.match("$EDC/acc/dev").isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        SubscriptionTrie trie = new SubscriptionTrie();
+        CloudSubscriptionRecord parent = new CloudSubscriptionRecord("$EDC/acc/dev/#", 1);
+        CloudSubscriptionRecord child = new CloudSubscriptionRecord("$EDC/acc/dev/APP/a", 1);
+        trie.add(parent);
+        trie.add(child);
+
+        trie.remove(child);
+        assertEquals(new HashSet<>(Arrays.asList("$EDC/acc/dev/#")), topics(trie.match("$EDC/acc/dev/APP/a")));
+
+        trie.remove(parent);
+        assertTrue(trie.match("$EDC/acc/dev/APP/a").isEmpty());
+
+        // removing an unknown subscription is harmless
+        trie.remove(new CloudSubscriptionRecord("$EDC/acc/other", 0));
+        trie.add(child);
+        assertEquals(1, trie.match("$EDC/acc/dev/APP/a").size());
+    }
+
+    @Test
+    public void testTokenAndWildcardOnSameNode() {
+        // both filters are indexed as +/acc/dev/APP/a
+        SubscriptionTrie trie = new SubscriptionTrie();
+        CloudSubscriptionRecord token = new CloudSubscriptionRecord("#account-name/acc/dev/APP/a", 0);
+        CloudSubscriptionRecord wildcard = new CloudSubscriptionRecord("+/acc/dev/APP/a", 1);
+        trie.add(token);
+        trie.add(wildcard);
+
+        assertEquals(new HashSet<>(Arrays.asList("#account-name/acc/dev/APP/a", "+/acc/dev/APP/a")),
+                topics(trie.match("foo/acc/dev/APP/a")));
+
+        trie.remove(token);
+        assertEquals(new HashSet<>(Arrays.asList("+/acc/dev/APP/a")), topics(trie.match("foo/acc/dev/APP/a")));
+
+        trie.remove(wildcard);
+        assertTrue(trie.match("foo/acc/dev/APP/a").isEmpty());
+    }
+
+    private static Set<String> topics(List<CloudSubscriptionRecord> records) {
+        Set<String> topics = new HashSet<>();
+        for (CloudSubscriptionRecord record : records) {
+            topics.add(record.getTopic());
+        }
+        return topics;
+    }
+}
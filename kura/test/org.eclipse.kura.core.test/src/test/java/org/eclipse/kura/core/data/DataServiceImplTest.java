@@ -11,6 +11,7 @@ package org.eclipse.kura.core.data;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
@@ -20,8 +21,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +36,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.internal.data.InFlightWindow;
+import org.eclipse.kura.core.internal.data.PriorityLanes;
 import org.eclipse.kura.core.testutil.TestUtil;
 import org.eclipse.kura.data.DataTransportService;
 import org.eclipse.kura.data.DataTransportToken;
@@ -80,17 +85,14 @@ public class DataServiceImplTest {
         // the actual invocation
         svc.setH2DbService(dbServiceMock);
 
-        verify(storeMock, times(1)).start(dbServiceMock, hkInterval, age, capacity);
+        verify(storeMock, times(1)).start(dbServiceMock, hkInterval, age, 0, capacity);
 
-        Map<DataTransportToken, Integer> ifMsgs = (Map<DataTransportToken, Integer>) TestUtil.getFieldValue(svc,
-                "inFlightMsgIds");
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
 
-        assertEquals(1, ifMsgs.size());
-        ifMsgs.forEach((key, value) -> {
-            assertEquals(id, (int) value);
-            assertEquals(pmi, key.getMessageId());
-            assertEquals(sessionId, key.getSessionId());
-        });
+        assertEquals(1, window.getOccupancy());
+        assertEquals(InFlightWindow.NOT_TRACKED, window.confirm(pmi, "other session"));
+        assertEquals(id, window.confirm(pmi, sessionId));
+        assertEquals(0, window.getOccupancy());
     }
 
     @Test
@@ -104,7 +106,7 @@ public class DataServiceImplTest {
         DataStore storeMock = mock(DataStore.class);
         TestUtil.setFieldValue(svc, "store", storeMock);
 
-        doThrow(new KuraStoreException("test")).when(storeMock).start(dbServiceMock, 900, 60, 10000);
+        doThrow(new KuraStoreException("test")).when(storeMock).start(dbServiceMock, 900, 60, 0, 10000);
 
         Map<String, Object> properties = new HashMap<>();
         DataServiceOptions dataServiceOptions = new DataServiceOptions(properties);
@@ -114,7 +116,7 @@ public class DataServiceImplTest {
         // the actual invocation
         svc.setH2DbService(dbServiceMock);
 
-        verify(storeMock, times(1)).start(dbServiceMock, 900, 60, 10000);
+        verify(storeMock, times(1)).start(dbServiceMock, 900, 60, 0, 10000);
     }
 
     @Test
@@ -139,14 +141,14 @@ public class DataServiceImplTest {
 
         TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = mock(Map.class);
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+        window.restore(1, "session", 1);
 
         svc.onConnectionEstablished(true);
 
         verify(ccssMock, times(1)).updateStatus(svc, CloudConnectionStatusEnum.ON);
         verify(storeMock, times(1)).dropAllInFlightMessages();
-        verify(inFlightMsgIds, times(1)).clear();
+        assertEquals(0, window.getOccupancy());
     }
 
     @Test
@@ -173,14 +175,14 @@ public class DataServiceImplTest {
 
         TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = mock(Map.class);
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+        window.restore(1, "session", 1);
 
         svc.onConnectionEstablished(true);
 
         verify(ccssMock, times(1)).updateStatus(svc, CloudConnectionStatusEnum.ON);
         verify(storeMock, times(1)).dropAllInFlightMessages();
-        verify(inFlightMsgIds, times(0)).clear();
+        assertEquals(1, window.getOccupancy());
     }
 
     @Test
@@ -205,14 +207,14 @@ public class DataServiceImplTest {
 
         TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = mock(Map.class);
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+        window.restore(1, "session", 1);
 
         svc.onConnectionEstablished(true);
 
         verify(ccssMock, times(1)).updateStatus(svc, CloudConnectionStatusEnum.ON);
         verify(storeMock, times(1)).unpublishAllInFlighMessages();
-        verify(inFlightMsgIds, times(1)).clear();
+        assertEquals(0, window.getOccupancy());
     }
 
     @Test
@@ -239,14 +241,14 @@ public class DataServiceImplTest {
 
         TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = mock(Map.class);
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+        window.restore(1, "session", 1);
 
         svc.onConnectionEstablished(true);
 
         verify(ccssMock, times(1)).updateStatus(svc, CloudConnectionStatusEnum.ON);
         verify(storeMock, times(1)).unpublishAllInFlighMessages();
-        verify(inFlightMsgIds, times(0)).clear();
+        assertEquals(1, window.getOccupancy());
     }
 
     @Test
@@ -496,9 +498,6 @@ public class DataServiceImplTest {
         String sessionId = "sess1234";
         DataTransportToken token = new DataTransportToken(msgId, sessionId);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = new HashMap<>();
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
-
         Map<String, Object> properties = new HashMap<>();
         properties.put("in-flight-messages.max-number", 0);
         DataServiceOptions dataServiceOptions = new DataServiceOptions(properties);
@@ -518,9 +517,8 @@ public class DataServiceImplTest {
         String sessionId = "sess1234";
         DataTransportToken token = new DataTransportToken(msgId, sessionId);
 
-        Map<DataTransportToken, Integer> inFlightMsgIds = new HashMap<>();
-        inFlightMsgIds.put(token, msgId);
-        TestUtil.setFieldValue(svc, "inFlightMsgIds", inFlightMsgIds);
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+        window.restore(msgId, sessionId, msgId);
 
         DataStore storeMock = mock(DataStore.class);
         TestUtil.setFieldValue(svc, "store", storeMock);
@@ -666,7 +664,195 @@ public class DataServiceImplTest {
 
         TestUtil.invokePrivate(svc, "handleInFlightCongestion");
 
-        verify(congestionMock, times(1)).schedule((Runnable) anyObject(), eq(100L), eq(TimeUnit.SECONDS));
+        verify(congestionMock, times(1)).submit((Runnable) anyObject());
+    }
+
+    @Test
+    public void testPublishBatchInFlightLimit() throws Throwable {
+        // publish a batch and stop when the in-flight window is full
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("in-flight-messages.max-number", 2);
+        properties.put("enable.rate.limit", false);
+        DataServiceOptions dataServiceOptions = new DataServiceOptions(properties);
+        TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
+
+        ((InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow")).setCapacity(2);
+
+        DataStore storeMock = mock(DataStore.class);
+        TestUtil.setFieldValue(svc, "store", storeMock);
+
+        DataTransportService dtsMock = mock(DataTransportService.class);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+
+        AtomicInteger mqttId = new AtomicInteger();
+        when(dtsMock.publish(anyObject(), anyObject(), anyInt(), eq(false)))
+                .thenAnswer(invocation -> new DataTransportToken(mqttId.incrementAndGet(), "session"));
+
+        List<DataMessage> messages = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            messages.add(new DataMessage.Builder(i).withTopic("topic").withQos(1).withPayload(new byte[0]).build());
+        }
+
+        List<DataMessage> published = (List<DataMessage>) TestUtil.invokePrivate(svc, "publishInternal",
+                new Class[] { List.class }, messages);
+
+        assertEquals(2, published.size());
+        assertEquals(1, published.get(0).getId());
+        assertEquals(2, published.get(1).getId());
+
+        verify(dtsMock, times(2)).publish(anyObject(), anyObject(), anyInt(), eq(false));
+        verify(storeMock, times(1)).published((List<DataMessage>) anyObject());
+        verify(storeMock, times(0)).published(anyInt(), anyInt(), anyObject());
+    }
+
+    @Test
+    public void testPublishVolatile() throws Throwable {
+        // QoS 0 messages go to the volatile ring while connected, the others to the store
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("volatile.enable", true);
+        properties.put("volatile.min.priority", 5);
+        properties.put("volatile.capacity", 2);
+        DataServiceOptions dataServiceOptions = new DataServiceOptions(properties);
+        TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
+        TestUtil.invokePrivate(svc, "createVolatileMessages");
+
+        DataStore storeMock = mock(DataStore.class);
+        TestUtil.setFieldValue(svc, "store", storeMock);
+        when(storeMock.store(anyObject(), anyObject(), anyInt(), eq(false), anyInt()))
+                .thenReturn(new DataMessage.Builder(10).build());
+
+        DataTransportService dtsMock = mock(DataTransportService.class);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+        when(dtsMock.isConnected()).thenReturn(true);
+
+        assertEquals(-1, svc.publish("topic", new byte[0], 0, false, 7));
+        assertEquals(-2, svc.publish("topic", new byte[0], 0, false, 5));
+        verify(storeMock, times(0)).store(anyObject(), anyObject(), anyInt(), eq(false), anyInt());
+
+        // ring full
+        assertEquals(10, svc.publish("topic", new byte[0], 0, false, 7));
+        // QoS 1
+        assertEquals(10, svc.publish("topic", new byte[0], 1, false, 7));
+        // high priority
+        assertEquals(10, svc.publish("topic", new byte[0], 0, false, 4));
+        verify(storeMock, times(3)).store(anyObject(), anyObject(), anyInt(), eq(false), anyInt());
+    }
+
+    @Test
+    public void testPriorityLanes() throws Throwable {
+        // stored messages are queued by priority until they are published
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        DataServiceOptions dataServiceOptions = new DataServiceOptions(new HashMap<>());
+        TestUtil.setFieldValue(svc, "dataServiceOptions", dataServiceOptions);
+
+        DataStore storeMock = mock(DataStore.class);
+        TestUtil.setFieldValue(svc, "store", storeMock);
+        when(storeMock.store(anyObject(), anyObject(), anyInt(), eq(false), anyInt()))
+                .thenReturn(new DataMessage.Builder(10).withPriority(7).build())
+                .thenReturn(new DataMessage.Builder(11).withPriority(2).build());
+
+        DataTransportService dtsMock = mock(DataTransportService.class);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+
+        svc.publish("topic", new byte[0], 0, false, 7);
+        svc.publish("topic", new byte[0], 0, false, 2);
+
+        PriorityLanes lanes = (PriorityLanes) TestUtil.getFieldValue(svc, "lanes");
+        assertEquals(Arrays.asList(11, 10), lanes.peek(10));
+        assertEquals(1, lanes.getDepth(7));
+
+        TestUtil.invokePrivate(svc, "publishInternal", new Class[] { DataMessage.class },
+                new DataMessage.Builder(11).withTopic("topic").withPayload(new byte[0]).withPriority(2).build());
+
+        assertEquals(Arrays.asList(10), lanes.peek(10));
+        verify(storeMock, times(1)).published(11);
+    }
+
+    @Test
+    public void testConfirmedWhileMarkingPublished() throws Throwable {
+        // a confirmation arriving before the message is marked as published is deferred until it is
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("enable.rate.limit", false);
+        TestUtil.setFieldValue(svc, "dataServiceOptions", new DataServiceOptions(properties));
+
+        DataStore storeMock = mock(DataStore.class);
+        TestUtil.setFieldValue(svc, "store", storeMock);
+
+        DataTransportService dtsMock = mock(DataTransportService.class);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+
+        DataTransportToken token = new DataTransportToken(1, "session");
+        when(dtsMock.publish(anyObject(), anyObject(), anyInt(), eq(false))).thenReturn(token);
+        doAnswer(invocation -> {
+            svc.onMessageConfirmed(token);
+            verify(storeMock, times(0)).confirmed(anyInt());
+            return null;
+        }).when(storeMock).published((List<DataMessage>) anyObject());
+
+        List<DataMessage> messages = Arrays
+                .asList(new DataMessage.Builder(5).withTopic("topic").withQos(1).withPayload(new byte[0]).build());
+        TestUtil.invokePrivate(svc, "publishInternal", new Class[] { List.class }, messages);
+        verify(storeMock, times(0)).confirmed(anyInt());
+
+        TestUtil.invokePrivate(svc, "confirmEarlyConfirmedMessages");
+        verify(storeMock, times(1)).confirmed(5);
     }
 
+    @Test
+    public void testPublishMetricsNotCounted() throws Throwable {
+        // the metrics messages bypass the store, so that they are not counted in the metrics they report
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        DataStore storeMock = mock(DataStore.class);
+        TestUtil.setFieldValue(svc, "store", storeMock);
+
+        DataTransportService dtsMock = mock(DataTransportService.class);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+        when(dtsMock.isConnected()).thenReturn(true);
+
+        TestUtil.invokePrivate(svc, "publishMetrics", new Class[] { String.class }, "metrics");
+
+        verify(dtsMock, times(1)).publish(eq("metrics"), anyObject(), eq(0), eq(false));
+        verify(storeMock, times(0)).store(anyObject(), anyObject(), anyInt(), anyBoolean(), anyInt());
+        assertEquals(0, svc.getStoredMessages());
+        assertEquals(0, svc.getPublishedMessages());
+    }
+
+    @Test
+    public void testInFlightCapacityLimitedByTransport() throws Throwable {
+        // the in-flight window does not exceed the maximum of the transport
+
+        DataServiceImpl svc = new DataServiceImpl();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("in-flight-messages.max-number", 20);
+        TestUtil.setFieldValue(svc, "dataServiceOptions", new DataServiceOptions(properties));
+
+        DataTransportService dtsMock = mock(DataTransportService.class,
+                withSettings().extraInterfaces(DataTransportFlowControl.class));
+        when(((DataTransportFlowControl) dtsMock).getMaxInFlightMessages()).thenReturn(4);
+        TestUtil.setFieldValue(svc, "dataTransportService", dtsMock);
+
+        InFlightWindow window = (InFlightWindow) TestUtil.getFieldValue(svc, "inFlightWindow");
+
+        TestUtil.invokePrivate(svc, "updateInFlightCapacity");
+        assertEquals(4, window.getCapacity());
+
+        // no limit from the transport
+        when(((DataTransportFlowControl) dtsMock).getMaxInFlightMessages()).thenReturn(0);
+        TestUtil.invokePrivate(svc, "updateInFlightCapacity");
+        assertEquals(20, window.getCapacity());
+    }
 }
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests shared by all the {@link DataStore} implementations.
+ */
+public abstract class DataStoreTest {
+
+    protected static final int HOUSEKEEPER_INTERVAL = 900;
+    protected static final int PURGE_AGE = 60;
+    protected static final int CAPACITY = 10;
+
+    protected DataStore store;
+
+    /**
+     * Creates and starts the store under test.
+     */
+    protected abstract DataStore startStore() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        this.store = startStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.store.stop();
+    }
+
+    @Test
+    public void testStoreAndGet() throws Exception {
+        byte[] payload = { 1, 2, 3 };
+
+        DataMessage stored = this.store.store("a/topic", payload, 1, true, 5);
+
+        assertNotNull(stored);
+        assertEquals("a/topic", stored.getTopic());
+        assertArrayEquals(payload, stored.getPayload());
+        assertEquals(1, stored.getQos());
+        assertTrue(stored.isRetain());
+        assertEquals(5, stored.getPriority());
+        assertNotNull(stored.getCreatedOn());
+        assertNull(stored.getPublishedOn());
+
+        DataMessage loaded = this.store.get(stored.getId());
+        assertEquals(stored.getId(), loaded.getId());
+        assertEquals("a/topic", loaded.getTopic());
+        assertArrayEquals(payload, loaded.getPayload());
+
+        assertNull(this.store.get(stored.getId() + 1000));
+    }
+
+    @Test
+    public void testGetByIds() throws Exception {
+        int first = this.store.store("first", new byte[0], 0, false, 5).getId();
+        int second = this.store.store("second", new byte[0], 0, false, 5).getId();
+        this.store.store("third", new byte[0], 0, false, 5);
+
+        List<DataMessage> loaded = this.store.get(Arrays.asList(second, first + 1000, first));
+        assertEquals(2, loaded.size());
+        assertEquals("second", loaded.get(0).getTopic());
+        assertEquals("first", loaded.get(1).getTopic());
+
+        assertTrue(this.store.get(Collections.<Integer> emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            this.store.store("topic", new byte[0], 0, false, 5);
+        }
+
+        try {
+            this.store.store("topic", new byte[0], 0, false, 5);
+            fail("Capacity exceeded");
+        } catch (KuraStoreCapacityReachedException e) {
+            // expected
+        }
+
+        // life-cycle messages bypass the capacity
+        assertNotNull(this.store.store("topic", new byte[0], 0, false, 0));
+        assertNotNull(this.store.store("topic", new byte[0], 0, false, 1));
+    }
+
+    @Test
+    public void testNextMessageOrder() throws Exception {
+        int low1 = this.store.store("low1", new byte[0], 0, false, 7).getId();
+        Thread.sleep(2);
+        int high = this.store.store("high", new byte[0], 0, false, 2).getId();
+        Thread.sleep(2);
+        int low2 = this.store.store("low2", new byte[0], 0, false, 7).getId();
+
+        List<DataMessage> next = this.store.getNextMessages(10);
+        assertEquals(3, next.size());
+        assertEquals(high, next.get(0).getId());
+        assertEquals(low1, next.get(1).getId());
+        assertEquals(low2, next.get(2).getId());
+        assertNotNull(next.get(0).getPayload());
+
+        assertEquals(2, this.store.getNextMessages(2).size());
+
+        assertEquals(high, this.store.getNextMessage().getId());
+        this.store.published(high);
+        assertEquals(low1, this.store.getNextMessage().getId());
+        this.store.published(low1, 12, "session");
+        assertEquals(low2, this.store.getNextMessage().getId());
+        this.store.published(low2);
+        assertNull(this.store.getNextMessage());
+        assertTrue(this.store.getNextMessages(10).isEmpty());
+    }
+
+    @Test
+    public void testPublishedAndConfirmed() throws Exception {
+        int qos0 = this.store.store("qos0", new byte[0], 0, false, 5).getId();
+        int qos1 = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+
+        assertEquals(2, this.store.allUnpublishedMessagesNoPayload().size());
+
+        this.store.published(qos0);
+        this.store.published(qos1, 42, "session");
+
+        assertTrue(this.store.allUnpublishedMessagesNoPayload().isEmpty());
+
+        List<DataMessage> inFlight = this.store.allInFlightMessagesNoPayload();
+        assertEquals(1, inFlight.size());
+        assertEquals(qos1, inFlight.get(0).getId());
+        assertEquals(42, inFlight.get(0).getPublishedMessageId());
+        assertEquals("session", inFlight.get(0).getSessionId());
+        assertNull(inFlight.get(0).getPayload());
+
+        this.store.confirmed(qos1);
+        assertTrue(this.store.allInFlightMessagesNoPayload().isEmpty());
+        assertNotNull(this.store.get(qos1).getConfirmedOn());
+    }
+
+    @Test
+    public void testPublishedBatch() throws Exception {
+        int qos0 = this.store.store("qos0", new byte[0], 0, false, 5).getId();
+        int qos1 = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+
+        List<DataMessage> acks = new ArrayList<>();
+        acks.add(new DataMessage.Builder(qos0).build());
+        acks.add(new DataMessage.Builder(qos1).withQos(1).withPublishedMessageId(7).withSessionId("session").build());
+        this.store.published(acks);
+
+        assertNull(this.store.getNextMessage());
+        assertNotNull(this.store.get(qos0).getPublishedOn());
+
+        DataMessage published = this.store.get(qos1);
+        assertNotNull(published.getPublishedOn());
+        assertEquals(7, published.getPublishedMessageId());
+        assertEquals("session", published.getSessionId());
+    }
+
+    @Test
+    public void testUnpublishAllInFlightMessages() throws Exception {
+        int qos1 = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+        this.store.published(qos1, 1, "session");
+        assertNull(this.store.getNextMessage());
+
+        this.store.unpublishAllInFlighMessages();
+
+        assertEquals(qos1, this.store.getNextMessage().getId());
+        assertTrue(this.store.allInFlightMessagesNoPayload().isEmpty());
+    }
+
+    @Test
+    public void testDropAllInFlightMessages() throws Exception {
+        int qos1 = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+        this.store.published(qos1, 1, "session");
+
+        this.store.dropAllInFlightMessages();
+
+        List<DataMessage> dropped = this.store.allDroppedInFlightMessagesNoPayload();
+        assertEquals(1, dropped.size());
+        assertEquals(qos1, dropped.get(0).getId());
+        assertTrue(this.store.allInFlightMessagesNoPayload().isEmpty());
+    }
+
+    @Test
+    public void testDeleteStaleMessages() throws Exception {
+        int published = this.store.store("qos0", new byte[0], 0, false, 5).getId();
+        int confirmed = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+        int inFlight = this.store.store("qos1", new byte[0], 1, false, 5).getId();
+        int unpublished = this.store.store("qos0", new byte[0], 0, false, 5).getId();
+
+        this.store.published(published);
+        this.store.published(confirmed, 1, "session");
+        this.store.confirmed(confirmed);
+        this.store.published(inFlight, 2, "session");
+
+        this.store.deleteStaleMessages(PURGE_AGE);
+        assertNotNull(this.store.get(published));
+        assertNotNull(this.store.get(confirmed));
+
+        Thread.sleep(2);
+        this.store.deleteStaleMessages(0);
+
+        assertNull(this.store.get(published));
+        assertNull(this.store.get(confirmed));
+        assertNotNull(this.store.get(inFlight));
+        assertNotNull(this.store.get(unpublished));
+        assertFalse(this.store.allUnpublishedMessagesNoPayload().isEmpty());
+    }
+
+    @Test
+    public void testDeleteStaleMessagesInChunks() throws Exception {
+        int[] ids = new int[6];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.store.store("qos0", new byte[0], 0, false, 5).getId();
+            if (i % 2 == 0) {
+                this.store.published(ids[i]);
+            }
+        }
+
+        Thread.sleep(2);
+        int deleted = 0;
+        int chunks = 0;
+        for (int count; (count = this.store.deleteStaleMessages(0, 2)) >= 0; chunks++) {
+            assertTrue(count <= 2);
+            deleted += count;
+        }
+
+        assertEquals(3, chunks);
+        assertEquals(3, deleted);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i % 2 != 0, this.store.get(ids[i]) != null);
+        }
+
+        // the next pass starts over
+        this.store.published(ids[1]);
+        Thread.sleep(2);
+        assertEquals(1, this.store.deleteStaleMessages(0, 2));
+        assertEquals(0, this.store.deleteStaleMessages(0, 2));
+        assertEquals(-1, this.store.deleteStaleMessages(0, 2));
+        assertNull(this.store.get(ids[1]));
+    }
+
+    @Test
+    public void testStoreAll() throws Exception {
+        for (int i = 0; i < CAPACITY - 1; i++) {
+            this.store.store("filler", new byte[0], 0, false, 5);
+        }
+
+        List<DataMessage> messages = new ArrayList<>();
+        messages.add(new DataMessage.Builder(0).withTopic("a").withPayload(new byte[] { 1 }).withQos(1)
+                .withPriority(5).build());
+        messages.add(new DataMessage.Builder(0).withTopic("b").withPayload(new byte[] { 2 }).withPriority(5).build());
+        messages.add(new DataMessage.Builder(0).withTopic("c").withPayload(new byte[] { 3 }).withRetain(true)
+                .withPriority(0).build());
+
+        List<DataMessage> stored = this.store.storeAll(messages);
+
+        assertEquals(3, stored.size());
+        assertNull(stored.get(1));
+        assertTrue(stored.get(0).getId() != stored.get(2).getId());
+
+        DataMessage a = this.store.get(stored.get(0).getId());
+        assertEquals("a", a.getTopic());
+        assertEquals(1, a.getQos());
+        assertArrayEquals(new byte[] { 1 }, a.getPayload());
+
+        DataMessage c = this.store.get(stored.get(2).getId());
+        assertEquals("c", c.getTopic());
+        assertTrue(c.isRetain());
+        assertEquals(0, c.getPriority());
+    }
+
+    @Test
+    public void testPayloadCompression() throws Exception {
+        byte[] repetitive = new byte[4096];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte) "metric.name".charAt(i % 11);
+        }
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        byte[] small = new byte[] { 1, 2, 3 };
+
+        this.store.setPayloadCompression(true);
+        int repetitiveId = this.store.store("repetitive", repetitive, 0, false, 5).getId();
+        int randomId = this.store.store("random", random, 0, false, 5).getId();
+        int smallId = this.store.store("small", small, 0, false, 5).getId();
+        int nullId = this.store.store("null", null, 0, false, 5).getId();
+        DataMessage batched = this.store
+                .storeAll(Collections.singletonList(
+                        new DataMessage.Builder(0).withTopic("batched").withPayload(repetitive).withPriority(5).build()))
+                .get(0);
+
+        // readable whatever the current setting
+        this.store.setPayloadCompression(false);
+
+        assertArrayEquals(repetitive, this.store.get(repetitiveId).getPayload());
+        assertArrayEquals(random, this.store.get(randomId).getPayload());
+        assertArrayEquals(small, this.store.get(smallId).getPayload());
+        assertNull(this.store.get(nullId).getPayload());
+        assertArrayEquals(repetitive, this.store.get(batched.getId()).getPayload());
+        assertArrayEquals(repetitive, this.store.getNextMessage().getPayload());
+    }
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.core.data.DataStore;
+import org.eclipse.kura.db.H2DbService;
+import org.eclipse.kura.db.H2DbService.ConnectionCallable;
+
+public class DbDataStoreTest extends DataStoreTest {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private Connection connection;
+
+    @Override
+    protected DataStore startStore() throws Exception {
+        Class.forName("org.h2.Driver");
+        this.connection = DriverManager.getConnection("jdbc:h2:mem:dbdatastoretest" + databases.incrementAndGet(),
+                "sa", "");
+        this.connection.setAutoCommit(false);
+
+        H2DbService dbService = mock(H2DbService.class);
+        when(dbService.withConnection(anyObject()))
+                .thenAnswer(invocation -> ((ConnectionCallable<?>) invocation.getArguments()[0]).call(this.connection));
+
+        DbDataStore dbStore = new DbDataStore("ds_messages");
+        dbStore.start(dbService, HOUSEKEEPER_INTERVAL, PURGE_AGE, 0, CAPACITY);
+        return dbStore;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        this.connection.close();
+    }
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.junit.Test;
+
+public class FileDataStoreTest extends DataStoreTest {
+
+    private File directory;
+
+    @Override
+    protected DataStore startStore() throws Exception {
+        this.directory = Files.createTempDirectory("filedatastoretest").toFile();
+        return start();
+    }
+
+    private DataStore start() throws Exception {
+        FileDataStore fileStore = new FileDataStore(this.directory);
+        fileStore.start(null, HOUSEKEEPER_INTERVAL, PURGE_AGE, 0, CAPACITY);
+        return fileStore;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        int published = this.store.store("published", new byte[] { 1 }, 1, false, 5).getId();
+        int unpublished = this.store.store("unpublished", new byte[] { 2 }, 0, true, 3).getId();
+        this.store.published(published, 5, "session");
+
+        this.store.stop();
+        this.store = start();
+
+        List<DataMessage> inFlight = this.store.allInFlightMessagesNoPayload();
+        assertEquals(1, inFlight.size());
+        assertEquals(published, inFlight.get(0).getId());
+        assertEquals(5, inFlight.get(0).getPublishedMessageId());
+        assertEquals("session", inFlight.get(0).getSessionId());
+
+        DataMessage next = this.store.getNextMessage();
+        assertEquals(unpublished, next.getId());
+        assertTrue(next.isRetain());
+        assertArrayEquals(new byte[] { 2 }, next.getPayload());
+
+        // new IDs do not clash with the reloaded ones
+        assertTrue(this.store.store("new", new byte[0], 0, false, 5).getId() > unpublished);
+    }
+
+    @Test
+    public void testReloadCompressedPayload() throws Exception {
+        byte[] payload = new byte[1024];
+        Arrays.fill(payload, (byte) 7);
+        this.store.setPayloadCompression(true);
+        int id = this.store.store("compressed", payload, 0, false, 5).getId();
+        this.store.stop();
+
+        this.store = start();
+        assertArrayEquals(payload, this.store.get(id).getPayload());
+    }
+
+    @Test
+    public void testReloadDiscardsCorruptedRecords() throws Exception {
+        int first = this.store.store("first", new byte[0], 0, false, 5).getId();
+        int second = this.store.store("second", new byte[] { 1, 2, 3, 4 }, 0, false, 5).getId();
+        this.store.stop();
+
+        // corrupt the last byte of the payload of the second message
+        File segment = this.directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long position = 0;
+            int length;
+            long last = 0;
+            while ((length = readInt(raf, position)) != 0) {
+                last = position + 8 + length;
+                position = last;
+            }
+            raf.seek(last - 1);
+            raf.write(0x7f);
+        }
+
+        this.store = start();
+        assertNotNull(this.store.get(first));
+        assertNull(this.store.get(second));
+
+        // the store keeps appending after the last valid record
+        int third = this.store.store("third", new byte[0], 0, false, 5).getId();
+        this.store.stop();
+        this.store = start();
+        assertNotNull(this.store.get(third));
+    }
+
+    @Test
+    public void testSegmentsDeleted() throws Exception {
+        // fill more than one segment with messages larger than half a segment
+        byte[] payload = new byte[3 * 1024 * 1024];
+        int first = this.store.store("first", payload, 0, false, 5).getId();
+        int second = this.store.store("second", payload, 0, false, 5).getId();
+        assertEquals(2, this.directory.listFiles().length);
+
+        this.store.published(first);
+        this.store.published(second);
+        Thread.sleep(2);
+        this.store.deleteStaleMessages(0);
+
+        assertEquals(1, this.directory.listFiles().length);
+        assertNull(this.store.get(first));
+        assertNull(this.store.get(second));
+    }
+
+    @Test
+    public void testPurgedMessagesNotReloaded() throws Exception {
+        int purged = this.store.store("purged", new byte[] { 1 }, 0, false, 5).getId();
+        int chunkPurged = this.store.store("chunkPurged", new byte[] { 2 }, 0, false, 5).getId();
+        int kept = this.store.store("kept", new byte[] { 3 }, 0, false, 5).getId();
+
+        this.store.published(purged);
+        Thread.sleep(2);
+        assertEquals(1, this.store.deleteStaleMessages(0));
+
+        this.store.published(chunkPurged);
+        Thread.sleep(2);
+        int deleted = 0;
+        for (int count; (count = this.store.deleteStaleMessages(0, 1)) >= 0;) {
+            deleted += count;
+        }
+        assertEquals(1, deleted);
+
+        this.store.stop();
+        this.store = start();
+
+        assertNull(this.store.get(purged));
+        assertNull(this.store.get(chunkPurged));
+        assertEquals(kept, this.store.getNextMessage().getId());
+    }
+
+    @Test
+    public void testRepairDiscardsCorruptedTail() throws Exception {
+        int first = this.store.store("first", new byte[0], 0, false, 5).getId();
+        int second = this.store.store("second", new byte[] { 1, 2, 3, 4 }, 0, false, 5).getId();
+        int third = this.store.store("third", new byte[] { 5, 6, 7, 8 }, 0, false, 5).getId();
+
+        // corrupt the payload of the second message while the store is running
+        File segment = this.directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long position = 8 + readInt(raf, 0);
+            position += 8 + readInt(raf, position);
+            raf.seek(position - 1);
+            raf.write(0x7f);
+        }
+
+        this.store.repair();
+
+        assertNotNull(this.store.get(first));
+        assertNull(this.store.get(second));
+        assertNull(this.store.get(third));
+
+        // the store keeps appending after the last valid record
+        int fourth = this.store.store("fourth", new byte[0], 0, false, 5).getId();
+        this.store.stop();
+        this.store = start();
+        assertNotNull(this.store.get(first));
+        assertNotNull(this.store.get(fourth));
+        assertNull(this.store.get(third));
+    }
+
+    private static int readInt(RandomAccessFile raf, long position) throws Exception {
+        raf.seek(position);
+        return raf.readInt();
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupCommitterTest {
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final List<Integer> groupSizes = new ArrayList<>();
+    private final CountDownLatch blockedCommit = new CountDownLatch(1);
+    private final CountDownLatch releaseCommit = new CountDownLatch(1);
+    private volatile long commitMillis;
+
+    private DataStore store;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.store = mock(DataStore.class);
+        when(this.store.storeAll(anyListOf(DataMessage.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<DataMessage> messages = (List<DataMessage>) invocation.getArguments()[0];
+            synchronized (this.groupSizes) {
+                this.groupSizes.add(messages.size());
+            }
+            if (!messages.isEmpty() && "blocked".equals(messages.get(0).getTopic())) {
+                this.blockedCommit.countDown();
+                this.releaseCommit.await();
+            }
+            Thread.sleep(this.commitMillis);
+            List<DataMessage> stored = new ArrayList<>();
+            for (DataMessage message : messages) {
+                stored.add(message.getPriority() == 9 ? null
+                        : new DataMessage.Builder(this.nextId.getAndIncrement()).withTopic(message.getTopic())
+                                .withPriority(message.getPriority()).build());
+            }
+            return stored;
+        });
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentPublishersShareCommits() throws Exception {
+        // the publishers queue up while a commit is in progress
+        this.commitMillis = 50;
+        GroupCommitter committer = new GroupCommitter(this.store, 200, TimeUnit.MILLISECONDS, 100);
+
+        int publishers = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<DataMessage>> results = new ArrayList<>();
+        for (int i = 0; i < publishers; i++) {
+            String topic = "topic/" + i;
+            results.add(this.executor.submit(() -> {
+                start.await();
+                return committer.store(topic, new byte[0], 0, false, 5);
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < publishers; i++) {
+            DataMessage message = results.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("topic/" + i, message.getTopic());
+            ids.add(message.getId());
+        }
+
+        assertEquals(publishers, ids.size());
+        assertTrue(this.groupSizes.size() < publishers);
+        assertEquals(this.groupSizes.size(), committer.getGroupCount());
+    }
+
+    @Test
+    public void testLoneMessageIsCommittedRightAway() throws Exception {
+        GroupCommitter committer = new GroupCommitter(this.store, 1, TimeUnit.HOURS, 100);
+
+        Future<DataMessage> result = this.executor.submit(() -> committer.store("a", new byte[0], 0, false, 5));
+
+        assertEquals("a", result.get(5, TimeUnit.SECONDS).getTopic());
+        assertEquals(1, committer.getGroupCount());
+    }
+
+    @Test
+    public void testFullGroupIsCommittedBeforeTheWindowElapses() throws Exception {
+        GroupCommitter committer = new GroupCommitter(this.store, 1, TimeUnit.HOURS, 2);
+
+        Future<DataMessage> blocked = this.executor
+                .submit(() -> committer.store("blocked", new byte[0], 0, false, 5));
+        assertTrue(this.blockedCommit.await(5, TimeUnit.SECONDS));
+
+        // the next messages are grouped while the first commit is in progress
+        Future<DataMessage> first = this.executor.submit(() -> committer.store("a", new byte[0], 0, false, 5));
+        Future<DataMessage> second = this.executor.submit(() -> committer.store("b", new byte[0], 0, false, 5));
+
+        assertEquals("a", first.get(5, TimeUnit.SECONDS).getTopic());
+        assertEquals("b", second.get(5, TimeUnit.SECONDS).getTopic());
+        assertFalse(blocked.isDone());
+
+        this.releaseCommit.countDown();
+        assertEquals("blocked", blocked.get(5, TimeUnit.SECONDS).getTopic());
+        assertEquals(2, committer.getGroupCount());
+        assertEquals(1.5, committer.getAverageGroupSize(), 0.0);
+    }
+
+    @Test
+    public void testRejectedMessage() throws Exception {
+        GroupCommitter committer = new GroupCommitter(this.store, 0, TimeUnit.MILLISECONDS, 10);
+
+        try {
+            committer.store("rejected", new byte[0], 0, false, 9);
+            fail("Exception expected");
+        } catch (KuraStoreCapacityReachedException e) {
+            // expected
+        }
+        assertTrue(committer.store("accepted", new byte[0], 0, false, 5).getId() > 0);
+    }
+
+    @Test
+    public void testStoreFailureIsReportedToAllTheCallers() throws Exception {
+        KuraStoreException failure = new KuraStoreException("test");
+        when(this.store.storeAll(anyListOf(DataMessage.class))).thenThrow(failure);
+        GroupCommitter committer = new GroupCommitter(this.store, 0, TimeUnit.MILLISECONDS, 10);
+
+        try {
+            committer.store("topic", new byte[0], 0, false, 5);
+            fail("Exception expected");
+        } catch (KuraStoreException e) {
+            assertSame(failure, e);
+        }
+    }
+}
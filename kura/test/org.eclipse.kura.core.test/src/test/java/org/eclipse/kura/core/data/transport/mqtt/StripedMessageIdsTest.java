@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.data.transport.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.kura.KuraTooManyInflightMessagesException;
+import org.junit.Test;
+
+public class StripedMessageIdsTest {
+
+    @Test
+    public void testIdsAreUniqueWhileInUse() throws Exception {
+        StripedMessageIds ids = new StripedMessageIds(2);
+        Set<Integer> inUse = new HashSet<>();
+
+        for (int i = 1; i <= StripedMessageIds.MAX_ID; i++) {
+            int id = ids.assign();
+            assertTrue(id > 0 && id <= StripedMessageIds.MAX_ID);
+            assertTrue(inUse.add(id));
+        }
+
+        // all the IDs are in use
+        try {
+            ids.assign();
+            fail("Exception expected");
+        } catch (KuraTooManyInflightMessagesException e) {
+            // expected
+        }
+
+        ids.release(3);
+        assertEquals(3, ids.assign());
+    }
+
+    @Test
+    public void testReleasedIdNotReusedRightAway() throws Exception {
+        StripedMessageIds ids = new StripedMessageIds(1);
+
+        int first = ids.assign();
+        ids.release(first);
+        int second = ids.assign();
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void testRetainPending() throws Exception {
+        StripedMessageIds ids = new StripedMessageIds(1);
+
+        for (int i = 1; i <= StripedMessageIds.MAX_ID; i++) {
+            ids.assign();
+        }
+        ids.retain(Arrays.asList(1, 2));
+
+        Set<Integer> assigned = new HashSet<>();
+        for (int i = 2; i < StripedMessageIds.MAX_ID; i++) {
+            assigned.add(ids.assign());
+        }
+        assertEquals(StripedMessageIds.MAX_ID - 2, assigned.size());
+        assertTrue(!assigned.contains(1) && !assigned.contains(2));
+        try {
+            ids.assign();
+            fail("Exception expected");
+        } catch (KuraTooManyInflightMessagesException e) {
+            // expected
+        }
+    }
+}
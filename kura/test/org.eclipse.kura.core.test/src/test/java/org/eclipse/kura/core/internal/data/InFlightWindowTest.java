@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void testTrackAndConfirm() {
+        InFlightWindow window = new InFlightWindow(2);
+
+        assertTrue(window.tryAcquire());
+        window.beginPublish();
+        assertTrue(window.track(1, "session", 10, System.nanoTime()));
+        window.endPublish();
+
+        assertTrue(window.tryAcquire());
+        assertTrue(window.isFull());
+        assertFalse(window.tryAcquire());
+        window.release();
+        assertEquals(1, window.getOccupancy());
+
+        assertEquals(InFlightWindow.NOT_TRACKED, window.confirm(2, "session"));
+        assertEquals(InFlightWindow.NOT_TRACKED, window.confirm(1, "other session"));
+        assertEquals(10, window.confirm(1, "session"));
+        assertEquals(InFlightWindow.NOT_TRACKED, window.confirm(1, "session"));
+        assertEquals(0, window.getOccupancy());
+        assertEquals(1, window.getConfirmedCount());
+    }
+
+    @Test
+    public void testEarlyConfirmation() {
+        InFlightWindow window = new InFlightWindow(1);
+
+        assertTrue(window.tryAcquire());
+        window.beginPublish();
+        // the confirmation is received before the message is tracked
+        assertEquals(InFlightWindow.CONFIRM_DEFERRED, window.confirm(7, "session"));
+        assertFalse(window.track(7, "session", 10, System.nanoTime()));
+        window.endPublish();
+
+        assertEquals(0, window.getOccupancy());
+        assertEquals(1, window.getConfirmedCount());
+
+        // a confirmation left over by a previous publish section is ignored
+        assertTrue(window.tryAcquire());
+        window.beginPublish();
+        assertEquals(InFlightWindow.CONFIRM_DEFERRED, window.confirm(8, "session"));
+        window.endPublish();
+        window.beginPublish();
+        assertTrue(window.track(8, "session", 11, System.nanoTime()));
+        window.endPublish();
+        assertEquals(11, window.confirm(8, "session"));
+    }
+
+    @Test
+    public void testNewSession() {
+        InFlightWindow window = new InFlightWindow(10);
+        window.restore(1, "old", 10);
+        window.restore(2, "old", 11);
+        assertEquals(2, window.getOccupancy());
+
+        assertTrue(window.tryAcquire());
+        window.beginPublish();
+        assertTrue(window.track(1, "new", 12, System.nanoTime()));
+        window.endPublish();
+
+        assertEquals(1, window.getOccupancy());
+        assertEquals(12, window.confirm(1, "new"));
+        assertEquals(InFlightWindow.NOT_TRACKED, window.confirm(2, "new"));
+    }
+
+    @Test
+    public void testAwaitRelease() throws InterruptedException {
+        InFlightWindow window = new InFlightWindow(1);
+        assertTrue(window.awaitRelease(TimeUnit.SECONDS.toNanos(10)));
+
+        window.restore(1, "session", 10);
+        assertFalse(window.awaitRelease(TimeUnit.MILLISECONDS.toNanos(10)));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch parked = new CountDownLatch(1);
+            executor.execute(() -> {
+                parked.countDown();
+                window.confirm(1, "session");
+            });
+            parked.await();
+            assertTrue(window.awaitRelease(0));
+            assertFalse(window.isFull());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentConfirmations() throws InterruptedException {
+        final int count = 100000;
+        InFlightWindow window = new InFlightWindow(64);
+        BlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the broker confirms the messages while the publisher keeps the window full
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        int mqttId = sent.take();
+                        while (window.confirm(mqttId, "session") == InFlightWindow.NOT_TRACKED) {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            for (int i = 0; i < count; i++) {
+                while (!window.tryAcquire()) {
+                    window.awaitRelease(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                int mqttId = i % 65535 + 1;
+                window.beginPublish();
+                sent.add(mqttId);
+                window.track(mqttId, "session", i + 1, System.nanoTime());
+                window.endPublish();
+            }
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, window.getOccupancy());
+            assertEquals(count, window.getConfirmedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500, TimeUnit.MICROSECONDS);
+        histogram.record(1, TimeUnit.MILLISECONDS);
+        histogram.record(3, TimeUnit.MILLISECONDS);
+        histogram.record(1500, TimeUnit.MILLISECONDS);
+        histogram.record(1, TimeUnit.MINUTES);
+
+        long[] bounds = histogram.getBoundsMillis();
+        long[] counts = histogram.getCounts();
+        assertEquals(bounds.length + 1, counts.length);
+        assertArrayEquals(new long[] { 2, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1 }, counts);
+    }
+}
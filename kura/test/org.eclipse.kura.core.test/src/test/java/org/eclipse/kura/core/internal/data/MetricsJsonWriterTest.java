@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.core.data.DataServiceMetrics;
+import org.junit.Test;
+
+public class MetricsJsonWriterTest {
+
+    @Test
+    public void testToJson() {
+        DataServiceMetrics metrics = mock(DataServiceMetrics.class);
+        when(metrics.getStoredMessages()).thenReturn(12L);
+        when(metrics.getStoreRate()).thenReturn(1.5);
+        when(metrics.getPublishedMessages()).thenReturn(10L);
+        when(metrics.getPublishRate()).thenReturn(1.25);
+        when(metrics.getConfirmedMessages()).thenReturn(8L);
+        when(metrics.getAverageConfirmLatency(any(TimeUnit.class))).thenReturn(3L);
+        when(metrics.getMaxConfirmLatency(any(TimeUnit.class))).thenReturn(40L);
+        when(metrics.getConfirmLatencyHistogramBounds()).thenReturn(new long[] { 1, 10 });
+        when(metrics.getConfirmLatencyHistogram()).thenReturn(new long[] { 2, 5, 1 });
+        Map<Integer, Integer> backlog = new LinkedHashMap<>();
+        backlog.put(7, 1);
+        backlog.put(5, 2);
+        when(metrics.getBacklogDepths()).thenReturn(backlog);
+        when(metrics.getInFlightMessages()).thenReturn(2);
+        when(metrics.getThrottledPublishes()).thenReturn(4L);
+        when(metrics.getCongestionEvents()).thenReturn(1L);
+
+        assertEquals("{\"timestamp\":1000,\"stored\":{\"count\":12,\"rate\":1.50},"
+                + "\"published\":{\"count\":10,\"rate\":1.25},"
+                + "\"confirmed\":{\"count\":8,\"averageLatencyMs\":3,\"maxLatencyMs\":40,"
+                + "\"latencyHistogramMs\":{\"1\":2,\"10\":5,\"+Inf\":1}},"
+                + "\"backlog\":{\"7\":1,\"5\":2},\"inFlight\":2,\"throttled\":4,\"congestionEvents\":1}",
+                MetricsJsonWriter.toJson(metrics, 1000));
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.kura.core.data.DataMessage;
+import org.junit.Test;
+
+public class PriorityLanesTest {
+
+    @Test
+    public void testPeekOrder() {
+        PriorityLanes lanes = new PriorityLanes();
+        lanes.add(1, 7);
+        lanes.add(2, 5);
+        lanes.add(3, 7);
+        lanes.add(4, 0);
+        lanes.add(5, 5);
+
+        assertEquals(Arrays.asList(4, 2, 5, 1, 3), lanes.peek(10));
+        assertEquals(Arrays.asList(4, 2), lanes.peek(2));
+        assertEquals(5, lanes.size());
+    }
+
+    @Test
+    public void testHigherPriorityOvertakesBacklog() {
+        PriorityLanes lanes = new PriorityLanes();
+        for (int id = 1; id <= 1000; id++) {
+            lanes.add(id, 9);
+        }
+        lanes.add(1001, 1);
+
+        assertEquals(Collections.singletonList(1001), lanes.peek(1));
+    }
+
+    @Test
+    public void testRemove() {
+        PriorityLanes lanes = new PriorityLanes();
+        lanes.add(1, 5);
+        lanes.add(2, 5);
+        lanes.add(3, 6);
+
+        assertTrue(lanes.remove(1));
+        assertFalse(lanes.remove(1));
+        // not at the head of its lane
+        assertTrue(lanes.remove(3));
+
+        assertEquals(Collections.singletonList(2), lanes.peek(10));
+        assertTrue(lanes.remove(2));
+        assertTrue(lanes.isEmpty());
+        assertTrue(lanes.peek(1).isEmpty());
+    }
+
+    @Test
+    public void testDuplicatesIgnored() {
+        PriorityLanes lanes = new PriorityLanes();
+        lanes.add(1, 5);
+        lanes.add(1, 3);
+
+        assertEquals(1, lanes.size());
+        assertEquals(1, lanes.getDepth(5));
+        assertEquals(0, lanes.getDepth(3));
+    }
+
+    @Test
+    public void testResetAndDepths() {
+        PriorityLanes lanes = new PriorityLanes();
+        lanes.add(100, 2);
+
+        lanes.reset(Arrays.asList(new DataMessage.Builder(1).withPriority(4).build(),
+                new DataMessage.Builder(2).withPriority(4).build(), new DataMessage.Builder(3).withPriority(8).build()));
+
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        expected.put(4, 2);
+        expected.put(8, 1);
+        assertEquals(expected, lanes.getDepths());
+        assertEquals(Arrays.asList(1, 2, 3), lanes.peek(10));
+        assertFalse(lanes.remove(100));
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        AtomicLong clock = new AtomicLong(1000);
+        RateLimiter limiter = new RateLimiter(3, 100, clock::get);
+
+        assertEquals(3, limiter.getAvailableTokens());
+        assertEquals(0, limiter.getWaitTime(TimeUnit.NANOSECONDS));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.getAvailableTokens());
+        assertEquals(100, limiter.getWaitTime(TimeUnit.NANOSECONDS));
+
+        clock.addAndGet(40);
+        assertFalse(limiter.tryAcquire());
+        assertEquals(60, limiter.getWaitTime(TimeUnit.NANOSECONDS));
+        assertEquals(1, limiter.getWaitTime(TimeUnit.MILLISECONDS));
+
+        clock.addAndGet(60);
+        assertEquals(1, limiter.getAvailableTokens());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // an idle limiter does not accumulate more than the burst size
+        clock.addAndGet(10000);
+        assertEquals(3, limiter.getAvailableTokens());
+
+        assertEquals(4, limiter.getAcquiredCount());
+        assertEquals(3, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testPriorityBands() {
+        AtomicLong clock = new AtomicLong();
+        RateLimiter alarms = new RateLimiter(1, 10, clock::get);
+        RateLimiter telemetry = new RateLimiter(1, 1000, clock::get);
+        PriorityRateLimiter limiter = new PriorityRateLimiter.Builder().withBand(5, 6, alarms)
+                .withBand(5, Integer.MAX_VALUE, telemetry).build();
+
+        assertNull(limiter.getRateLimiter(2));
+        assertSame(alarms, limiter.getRateLimiter(6));
+        assertSame(telemetry, limiter.getRateLimiter(7));
+
+        assertTrue(limiter.tryAcquire(2));
+        assertTrue(limiter.tryAcquire(2));
+        assertTrue(limiter.tryAcquire(7));
+        assertFalse(limiter.tryAcquire(9));
+
+        // the telemetry budget does not affect the other bands
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire(5));
+        assertEquals(10, limiter.getWaitTime(5, TimeUnit.NANOSECONDS));
+        assertEquals(1000, limiter.getWaitTime(7, TimeUnit.NANOSECONDS));
+        assertEquals(0, limiter.getWaitTime(0, TimeUnit.NANOSECONDS));
+        assertEquals(2, limiter.getThrottledCount());
+    }
+}
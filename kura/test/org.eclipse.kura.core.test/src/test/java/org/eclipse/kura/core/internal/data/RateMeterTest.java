@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RateMeterTest {
+
+    @Test
+    public void testRate() {
+        AtomicLong clock = new AtomicLong();
+        RateMeter meter = new RateMeter(TimeUnit.SECONDS.toNanos(5), clock::get);
+
+        meter.mark(10);
+        clock.set(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, meter.getRate(), 0.001);
+
+        meter.mark(40);
+        clock.set(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(10, meter.getRate(), 0.001);
+
+        // the rate is kept until the next period is complete
+        meter.mark();
+        clock.set(TimeUnit.SECONDS.toNanos(7));
+        assertEquals(10, meter.getRate(), 0.001);
+
+        clock.set(TimeUnit.SECONDS.toNanos(15));
+        assertEquals(0.1, meter.getRate(), 0.001);
+        assertEquals(51, meter.getCount());
+    }
+}
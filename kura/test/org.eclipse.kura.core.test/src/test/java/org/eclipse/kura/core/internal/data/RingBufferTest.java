@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+    @Test
+    public void testFifo() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+
+        assertEquals(3, ring.capacity());
+        assertTrue(ring.isEmpty());
+        assertNull(ring.peek());
+        assertNull(ring.poll());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ring.offer(i));
+        }
+        // the configured capacity is enforced, not the rounded up number of slots
+        assertFalse(ring.offer(3));
+        assertEquals(3, ring.size());
+
+        assertEquals(0, (int) ring.peek());
+        assertEquals(0, (int) ring.poll());
+        assertTrue(ring.offer(3));
+        assertFalse(ring.offer(4));
+
+        for (int i = 1; i < 4; i++) {
+            assertEquals(i, (int) ring.poll());
+        }
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int count = 10000;
+
+        RingBuffer<Integer> ring = new RingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= count; i++) {
+                    while (!ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        AtomicLong sum = new AtomicLong();
+        int received = 0;
+        while (received < producers * count) {
+            Integer value = ring.poll();
+            if (value == null) {
+                Thread.yield();
+            } else {
+                sum.addAndGet(value);
+                received++;
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals((long) producers * count * (count + 1) / 2, sum.get());
+        assertTrue(ring.isEmpty());
+    }
+}
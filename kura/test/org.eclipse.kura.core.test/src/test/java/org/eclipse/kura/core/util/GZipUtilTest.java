@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class GZipUtilTest {
+
+    @Test
+    public void testInteroperability() throws IOException {
+        Random random = new Random(42);
+        for (int size : new int[] { 0, 1, 100, 1024, 5000, 200000 }) {
+            byte[] data = new byte[size];
+            // half random, half repeated so that the output is neither trivial nor incompressible
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (i % 2 == 0 ? random.nextInt() : i / 100);
+            }
+
+            byte[] compressed = GZipUtil.compress(data);
+            assertTrue(GZipUtil.isCompressed(compressed));
+            assertArrayEquals(data, streamDecompress(compressed));
+            assertArrayEquals(data, GZipUtil.decompress(compressed));
+            assertArrayEquals(data, GZipUtil.decompress(streamCompress(data)));
+        }
+    }
+
+    @Test
+    public void testConcatenatedMembers() throws IOException {
+        byte[] first = GZipUtil.compress("hello ".getBytes("UTF-8"));
+        byte[] second = GZipUtil.compress("world".getBytes("UTF-8"));
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+
+        assertArrayEquals("hello world".getBytes("UTF-8"), GZipUtil.decompress(both));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptTrailer() throws IOException {
+        byte[] compressed = GZipUtil.compress(new byte[100]);
+        compressed[compressed.length - 1] ^= 1;
+        GZipUtil.decompress(compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        byte[] compressed = GZipUtil.compress(new byte[100]);
+        byte[] truncated = new byte[compressed.length - 10];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        GZipUtil.decompress(truncated);
+    }
+
+    @Test
+    public void testEndPooledCodecs() throws IOException {
+        byte[] data = "hello world".getBytes("UTF-8");
+        assertArrayEquals(data, GZipUtil.decompress(GZipUtil.compress(data)));
+
+        GZipUtil.endPooledCodecs();
+
+        // new codecs are created once the pooled ones are ended
+        assertArrayEquals(data, GZipUtil.decompress(GZipUtil.compress(data)));
+    }
+
+    private static byte[] streamCompress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] streamDecompress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
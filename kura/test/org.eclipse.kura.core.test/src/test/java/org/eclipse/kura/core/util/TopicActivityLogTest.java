@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+
+public class TopicActivityLogTest {
+
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(60);
+
+    @Test
+    public void testSummaryOncePerInterval() {
+        Logger logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        AtomicLong clock = new AtomicLong(1000);
+        TopicActivityLog log = new TopicActivityLog(logger, "Published", INTERVAL, clock::get);
+
+        log.record("a");
+        log.record("b");
+        log.record("a");
+        verify(logger, never()).info(anyString(), (Object[]) anyVararg());
+
+        clock.addAndGet(INTERVAL);
+        log.record("a");
+
+        ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(logger, times(1)).info(anyString(), args.capture(), args.capture(), args.capture(), args.capture(),
+                args.capture());
+        assertEquals("Published", args.getAllValues().get(0));
+        assertEquals(4L, args.getAllValues().get(1));
+        assertEquals(2, args.getAllValues().get(2));
+        assertEquals(60L, args.getAllValues().get(3));
+        assertEquals("a=3, b=1", args.getAllValues().get(4).toString());
+
+        // no new summary until the next interval
+        log.record("b");
+        clock.addAndGet(INTERVAL - 1);
+        log.record("b");
+        verify(logger, times(1)).info(anyString(), (Object[]) anyVararg());
+    }
+
+    @Test
+    public void testUnusedTopicsAreNotListed() {
+        Logger logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        AtomicLong clock = new AtomicLong();
+        TopicActivityLog log = new TopicActivityLog(logger, "Received", INTERVAL, clock::get);
+
+        log.record("a");
+        clock.addAndGet(INTERVAL);
+        log.record("b");
+        clock.addAndGet(INTERVAL);
+        log.record("c");
+
+        ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(logger, times(2)).info(anyString(), args.capture(), args.capture(), args.capture(), args.capture(),
+                args.capture());
+        assertEquals(2L, args.getAllValues().get(1));
+        // a and b are no longer listed
+        assertEquals(1L, args.getAllValues().get(6));
+        assertEquals(1, args.getAllValues().get(7));
+        assertEquals("c=1", args.getAllValues().get(9).toString());
+    }
+
+    @Test
+    public void testIdleTopicsAreEvicted() {
+        Logger logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        AtomicLong clock = new AtomicLong();
+        TopicActivityLog log = new TopicActivityLog(logger, "Published", INTERVAL, clock::get);
+
+        for (int i = 0; i < TopicActivityLog.MAX_TOPICS; i++) {
+            log.record("t" + i);
+        }
+        log.record("x");
+        clock.addAndGet(INTERVAL);
+        log.record("x");
+        clock.addAndGet(INTERVAL);
+        log.record("y");
+        // the counters of the t topics were idle and are dropped, a new topic gets its own counter again
+        clock.addAndGet(INTERVAL);
+        log.record("z");
+
+        ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(logger, times(3)).info(anyString(), args.capture(), args.capture(), args.capture(), args.capture(),
+                args.capture());
+        assertEquals(TopicActivityLog.OTHER_TOPICS + "=1", args.getAllValues().get(9).toString());
+        assertEquals("z=1", args.getAllValues().get(14).toString());
+    }
+}
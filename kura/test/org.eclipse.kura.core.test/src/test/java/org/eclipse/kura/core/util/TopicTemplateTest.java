@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class TopicTemplateTest {
+
+    private static final Pattern TOPIC_PATTERN = Pattern.compile("#([^\\s/]+)");
+
+    @Test
+    public void testExpand() {
+        Map<String, String> context = new HashMap<>();
+        context.put("account-name", "acme");
+        context.put("client-id", "device-1");
+
+        TopicTemplate template = TopicTemplate.compile("$EDC/#account-name/#client-id/MQTT/BIRTH", '#');
+        assertTrue(template.hasVariables());
+        assertEquals("$EDC/acme/device-1/MQTT/BIRTH", template.expand(context::get));
+
+        // unknown variables are left as they are
+        assertEquals("acme/x/#unknown", TopicTemplate.compile("#account-name/x/#unknown", '#').expand(context::get));
+    }
+
+    @Test
+    public void testSameAsRegex() {
+        Map<String, String> context = new HashMap<>();
+        context.put("account-name", "acme");
+        context.put("client-id", "device-1");
+        context.put("a#b", "ab");
+
+        String[] topics = { "", "#", "a/#", "#/a", "##", "#account-name", "x#client-id/y", "#a#b/c", "a/ #client-id",
+                "#client-id#", "#account-name/#client-id/#", "no/variables/here" };
+        for (String topic : topics) {
+            assertEquals(topic, replaceWithRegex(topic, context),
+                    TopicTemplate.compile(topic, '#').expand(context::get));
+        }
+        assertFalse(TopicTemplate.compile("a/#", '#').hasVariables());
+    }
+
+    @Test
+    public void testCache() {
+        TopicTemplate.Cache cache = new TopicTemplate.Cache('$', 2);
+        TopicTemplate a = cache.get("a/$x");
+        assertSame(a, cache.get("a/$x"));
+
+        cache.get("b/$x");
+        cache.get("c/$x");
+        assertNotSame(a, cache.get("a/$x"));
+
+        TopicTemplate b = cache.get("b/$x");
+        cache.clear();
+        assertNotSame(b, cache.get("b/$x"));
+    }
+
+    private static String replaceWithRegex(String topic, Map<String, String> context) {
+        Matcher matcher = TOPIC_PATTERN.matcher(topic);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String value = context.get(matcher.group(1));
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value != null ? value : matcher.group(0)));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.fifo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.eclipse.kura.internal.wire.fifo.EnvelopeRingBuffer.Result;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireRecord;
+import org.junit.Test;
+
+public class EnvelopeRingBufferTest {
+
+    @Test
+    public void testFifoOrderAcrossWrapAround() {
+        EnvelopeRingBuffer buffer = new EnvelopeRingBuffer(3);
+
+        for (int round = 0; round < 5; round++) {
+            WireEnvelope first = envelope("first");
+            WireEnvelope second = envelope("second");
+            assertTrue(buffer.offer(first));
+            assertTrue(buffer.offer(second));
+            assertEquals(2, buffer.size());
+
+            assertSame(first, buffer.poll());
+            assertSame(second, buffer.poll());
+            assertTrue(buffer.isEmpty());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testFull() {
+        EnvelopeRingBuffer buffer = new EnvelopeRingBuffer(2);
+
+        assertTrue(buffer.offer(envelope("a")));
+        assertTrue(buffer.offer(envelope("b")));
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.offer(envelope("c")));
+        assertEquals(Result.FULL, buffer.offer("c", envelope("c"), (queued, received) -> received));
+
+        buffer.poll();
+        assertFalse(buffer.isFull());
+        assertTrue(buffer.offer(envelope("c")));
+    }
+
+    @Test
+    public void testConflationKeepsPosition() {
+        EnvelopeRingBuffer buffer = new EnvelopeRingBuffer(4);
+
+        WireEnvelope a1 = envelope("a");
+        WireEnvelope b1 = envelope("b");
+        WireEnvelope a2 = envelope("a");
+
+        assertEquals(Result.ENQUEUED, buffer.offer("a", a1, (queued, received) -> received));
+        assertEquals(Result.ENQUEUED, buffer.offer("b", b1, (queued, received) -> received));
+        assertEquals(Result.CONFLATED, buffer.offer("a", a2, (queued, received) -> {
+            assertSame(a1, queued);
+            return received;
+        }));
+
+        assertEquals(2, buffer.size());
+        assertSame(a2, buffer.poll());
+        assertSame(b1, buffer.poll());
+    }
+
+    @Test
+    public void testKeyReleasedWhenPolled() {
+        EnvelopeRingBuffer buffer = new EnvelopeRingBuffer(4);
+
+        buffer.offer("a", envelope("a"), (queued, received) -> received);
+        buffer.poll();
+
+        WireEnvelope next = envelope("a");
+        assertEquals(Result.ENQUEUED, buffer.offer("a", next, (queued, received) -> received));
+        assertSame(next, buffer.poll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new EnvelopeRingBuffer(0);
+    }
+
+    private static WireEnvelope envelope(String name) {
+        WireRecord record = new WireRecord(
+                Collections.singletonMap("assetName", TypedValues.newStringValue(name)));
+        return new WireEnvelope("emitter", Collections.singletonList(record));
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ * Copyright (c) 2017, 2018 Eurotech and/or its affiliates and others
  *
  *   All rights reserved. This program and the accompanying materials
  *   are made available under the terms of the Eclipse Public License v1.0
@@ -11,19 +11,25 @@ package org.eclipse.kura.internal.wire.fifo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.kura.type.LongValue;
 import org.eclipse.kura.type.StringValue;
 import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireRecord;
@@ -183,6 +189,110 @@ public class FifoTest {
         assertEquals(1, wiresLatch.getCount());
     }
 
+    @Test
+    public void testConflation() throws InterruptedException {
+        CountDownLatch firstEmit = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger emitted = new AtomicInteger();
+        Map<String, Map<String, TypedValue<?>>> latest = new ConcurrentHashMap<>();
+
+        Fifo fifo = new Fifo();
+
+        WireHelperService wireHelperServiceMock = mock(WireHelperService.class);
+        fifo.bindWireHelperService(wireHelperServiceMock);
+
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        doAnswer(invocation -> {
+            List<WireRecord> wireRecords = (List<WireRecord>) invocation.getArguments()[0];
+            Map<String, TypedValue<?>> properties = wireRecords.get(0).getProperties();
+            latest.put((String) properties.get("assetName").getValue(), properties);
+            emitted.incrementAndGet();
+            firstEmit.countDown();
+            release.await(); // the downstream is busy until released
+            return null;
+        }).when(wireSupportMock).emit(anyListOf(WireRecord.class));
+        when(wireHelperServiceMock.newWireSupport(fifo, null)).thenReturn(wireSupportMock);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("queue.capacity", 2);
+        properties.put("conflate.envelopes", true);
+        properties.put("conflation.key", "assetName");
+
+        fifo.activate(properties, mock(ComponentContext.class));
+
+        fifo.onWireReceive(createAssetEnvelope("asset1", "ch1", 0));
+        assertTrue(firstEmit.await(1, TimeUnit.SECONDS));
+
+        // while the first envelope is being emitted, conflate a burst for two assets, and a third asset that does
+        // not fit in the queue
+        for (int i = 1; i <= 100; i++) {
+            fifo.onWireReceive(createAssetEnvelope("asset1", "ch1", i));
+            fifo.onWireReceive(createAssetEnvelope("asset2", "ch1", i));
+        }
+        fifo.onWireReceive(createAssetEnvelope("asset2", "ch2", 7));
+        fifo.onWireReceive(createAssetEnvelope("asset3", "ch1", 1));
+
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (emitted.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        fifo.deactivate();
+
+        assertEquals(3, emitted.get());
+        assertEquals(100L, latest.get("asset1").get("ch1").getValue());
+        assertEquals(100L, latest.get("asset2").get("ch1").getValue());
+        // a channel missing from the newer envelope keeps its latest value
+        assertEquals(7L, latest.get("asset2").get("ch2").getValue());
+        assertFalse(latest.containsKey("asset3"));
+    }
+
+    @Test
+    public void testConflationWithFailedRead() {
+        Map<String, TypedValue<?>> queuedProps = new HashMap<>();
+        queuedProps.put("assetName", TypedValues.newStringValue("asset1"));
+        queuedProps.put("ch1", TypedValues.newLongValue(1));
+        queuedProps.put("ch1_timestamp", TypedValues.newLongValue(1000));
+        queuedProps.put("ch1_error", TypedValues.newStringValue(""));
+        queuedProps.put("ch2", TypedValues.newLongValue(2));
+        queuedProps.put("ch2_timestamp", TypedValues.newLongValue(1000));
+        WireEnvelope queued = new WireEnvelope("asset1", Collections.singletonList(new WireRecord(queuedProps)));
+
+        // the read of ch1 failed, the record reports the error without the value
+        Map<String, TypedValue<?>> receivedProps = new HashMap<>();
+        receivedProps.put("assetName", TypedValues.newStringValue("asset1"));
+        receivedProps.put("ch1_timestamp", TypedValues.newLongValue(2000));
+        receivedProps.put("ch1_error", TypedValues.newStringValue("read failed"));
+        WireEnvelope received = new WireEnvelope("asset1", Collections.singletonList(new WireRecord(receivedProps)));
+
+        Map<String, TypedValue<?>> conflated = Fifo.conflate(queued, received).getRecords().get(0).getProperties();
+
+        assertFalse(conflated.containsKey("ch1"));
+        assertEquals(2000L, conflated.get("ch1_timestamp").getValue());
+        assertEquals("read failed", conflated.get("ch1_error").getValue());
+        // the channels missing from the newer record keep their latest group
+        assertEquals(2L, conflated.get("ch2").getValue());
+        assertEquals(1000L, conflated.get("ch2_timestamp").getValue());
+        assertEquals(5, conflated.size());
+    }
+
+    @Test
+    public void testConflationKeyFallsBackToEmitter() {
+        WireEnvelope envelope = new WireEnvelope("emitter",
+                Collections.singletonList(new WireRecord(Collections.emptyMap())));
+
+        assertEquals("emitter", Fifo.getConflationKey(envelope, "assetName"));
+        assertEquals("asset1", Fifo.getConflationKey(createAssetEnvelope("asset1", "ch1", 0), "assetName"));
+    }
+
+    private WireEnvelope createAssetEnvelope(String assetName, String channel, long value) {
+        Map<String, TypedValue<?>> recordProps = new HashMap<>();
+        recordProps.put("assetName", TypedValues.newStringValue(assetName));
+        recordProps.put(channel, TypedValues.newLongValue(value));
+        return new WireEnvelope(assetName, Collections.singletonList(new WireRecord(recordProps)));
+    }
+
     private WireEnvelope createWireEnvelope() {
         String emitterPid = "emitter";
         List<WireRecord> wireRecords = new ArrayList<WireRecord>();
@@ -9,6 +9,7 @@
 package org.eclipse.kura.internal.wire.h2db.filter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
@@ -23,6 +24,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -31,8 +33,11 @@ import org.eclipse.kura.db.H2DbService;
 import org.eclipse.kura.internal.wire.h2db.common.H2DbServiceHelper;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordBatch;
 import org.eclipse.kura.wire.WireSupport;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.wireadmin.Wire;
 
@@ -203,6 +208,64 @@ public class H2DbWireRecordFilterTest {
         verify(mockWireSupport).emit(any());
     }
 
+    @Test
+    public void testOnWireReceiveEmitsBatch() throws SQLException {
+        Connection mockConnection = mock(Connection.class);
+
+        H2DbService mockDbService = createMockH2DbService(mockConnection);
+
+        WireHelperService mockWireHelperService = mock(WireHelperService.class);
+
+        H2DbWireRecordFilter filter = new H2DbWireRecordFilter() {
+
+            @Override
+            protected void restartDbServiceTracker() {
+                bindDbService(mockDbService);
+            }
+        };
+        filter.bindWireHelperService(mockWireHelperService);
+
+        WireSupport mockWireSupport = mock(WireSupport.class);
+        when(mockWireHelperService.newWireSupport(filter, null)).thenReturn(mockWireSupport);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache.expiration.interval", 10);
+        properties.put("sql.view", "sql command");
+
+        filter.activate(mock(ComponentContext.class), properties);
+
+        ResultSetMetaData mockResultSetMetaData = mock(ResultSetMetaData.class);
+        when(mockResultSetMetaData.getColumnCount()).thenReturn(2);
+        when(mockResultSetMetaData.getColumnLabel(1)).thenReturn("id");
+        when(mockResultSetMetaData.getColumnLabel(2)).thenReturn("name");
+
+        // the second row has no name
+        ResultSet mockResultSet = mock(ResultSet.class);
+        when(mockResultSet.next()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(mockResultSet.getMetaData()).thenReturn(mockResultSetMetaData);
+        when(mockResultSet.getObject(1)).thenReturn(1L).thenReturn(2L);
+        when(mockResultSet.getObject(2)).thenReturn("first").thenReturn(null);
+
+        Statement mockStatement = mock(Statement.class);
+        when(mockStatement.executeQuery("sql command")).thenReturn(mockResultSet);
+        when(mockConnection.createStatement()).thenReturn(mockStatement);
+
+        filter.onWireReceive(mock(WireEnvelope.class));
+
+        ArgumentCaptor<List<WireRecord>> emitted = ArgumentCaptor.forClass((Class) List.class);
+        verify(mockWireSupport).emit(emitted.capture());
+        assertTrue(emitted.getValue() instanceof WireRecordBatch);
+
+        WireRecordBatch batch = (WireRecordBatch) emitted.getValue();
+        assertEquals(2, batch.getRowCount());
+        int id = batch.getSchema().indexOf("id");
+        int name = batch.getSchema().indexOf("name");
+        assertEquals(2L, batch.getLong(1, id));
+        assertEquals("first", batch.getString(0, name));
+        assertFalse(batch.isPresent(1, name));
+        assertEquals(1, batch.get(1).getProperties().size());
+    }
+
     @Test
     public void testPolled() {
         H2DbService mockDbService = mock(H2DbService.class);
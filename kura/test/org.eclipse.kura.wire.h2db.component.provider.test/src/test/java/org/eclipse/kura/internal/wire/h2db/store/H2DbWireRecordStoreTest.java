@@ -9,9 +9,13 @@
 package org.eclipse.kura.internal.wire.h2db.store;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
@@ -28,6 +32,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.kura.db.H2DbService;
 import org.eclipse.kura.type.BooleanValue;
 import org.eclipse.kura.type.ByteArrayValue;
+import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.DoubleValue;
 import org.eclipse.kura.type.FloatValue;
 import org.eclipse.kura.type.IntegerValue;
@@ -37,6 +42,8 @@ import org.eclipse.kura.type.TypedValue;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordBatch;
+import org.eclipse.kura.wire.WireRecordBatch.Schema;
 import org.eclipse.kura.wire.WireSupport;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -435,4 +442,75 @@ public class H2DbWireRecordStoreTest {
         connection.prepareStatement("SHUTDOWN").execute();
     }
 
+    @Test
+    public void testStoreRecordBatch() throws SQLException {
+        // store a batch of records, check that the values are stored column by column and the batch is forwarded
+
+        Connection connection = getConnection();
+
+        H2DbService dbServiceMock = createMockH2DbService(connection);
+
+        H2DbWireRecordStore store = new H2DbWireRecordStore() {
+
+            @Override
+            protected void restartDbServiceTracker() {
+                bindDbService(dbServiceMock);
+            }
+        };
+
+        WireHelperService whsMock = mock(WireHelperService.class);
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        when(whsMock.newWireSupport(store, null)).thenReturn(wireSupportMock);
+
+        store.bindWireHelperService(whsMock);
+
+        ComponentContext ctx = mock(ComponentContext.class);
+        Map<String, Object> props = new HashMap<String, Object>();
+        String tableName = "H2_STORE_BATCH_TEST";
+        props.put("table.name", tableName);
+
+        // init
+        store.activate(ctx, props);
+
+        Schema schema = new Schema(new String[] { "intkey", "dblkey", "strkey" },
+                new DataType[] { DataType.INTEGER, DataType.DOUBLE, DataType.STRING });
+        WireRecordBatch.Builder builder = new WireRecordBatch.Builder(schema, 2);
+        for (int i = 0; i < 5; i++) {
+            builder.addRow().setInt(0, i).setDouble(1, i * 1.5);
+            if (i % 2 == 0) {
+                builder.setString(2, "val" + i);
+            }
+        }
+        WireRecordBatch batch = builder.build();
+
+        assertEquals(5, batch.size());
+        assertEquals(3, batch.getInt(3, 0));
+        assertFalse(batch.isPresent(1, 2));
+        assertEquals(new IntegerValue(4), batch.get(4).getProperties().get("intkey"));
+        assertEquals(2, batch.get(1).getProperties().size());
+
+        WireEnvelope wireEvelope = new WireEnvelope("emitter", batch);
+        assertSame(batch, wireEvelope.getRecordBatch());
+        assertNull(new WireEnvelope("emitter", new ArrayList<>(batch)).getRecordBatch());
+
+        store.onWireReceive(wireEvelope);
+
+        ResultSet resultSet = connection
+                .prepareStatement("SELECT \"intkey\", \"dblkey\", \"strkey\" FROM " + tableName + " ORDER BY ID")
+                .executeQuery();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(resultSet.next());
+            assertEquals(i, resultSet.getInt(1));
+            assertEquals(i * 1.5, resultSet.getDouble(2), 0.0);
+            assertEquals(i % 2 == 0 ? "val" + i : null, resultSet.getString(3));
+        }
+        assertFalse(resultSet.next());
+
+        verify(wireSupportMock).emit(batch);
+
+        // deinit
+        store.deactivate(null);
+        connection.prepareStatement("SHUTDOWN").execute();
+    }
+
 }
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WireMailboxTest {
+
+    @Test
+    public void testDeliveriesInOrderAndOneAtATime() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WireMailbox mailbox = new WireMailbox("test", 10, MailboxOverflowPolicy.BLOCK, executor);
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1000);
+
+            for (int i = 0; i < 1000; i++) {
+                final int value = i;
+                assertTrue(mailbox.offer(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    received.add(value);
+                    running.decrementAndGet();
+                    done.countDown();
+                }));
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) received.get(i));
+            }
+            // the delivery is counted after the task returns, possibly after the latch has been released
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (mailbox.getStatistics().getDelivered() < 1000 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(1000, mailbox.getStatistics().getDelivered());
+            assertEquals(0, mailbox.getStatistics().getDropped());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDropNewest() {
+        List<Runnable> tasks = new ArrayList<>();
+        WireMailbox mailbox = new WireMailbox("test", 2, MailboxOverflowPolicy.DROP_NEWEST, tasks::add);
+        List<String> received = new ArrayList<>();
+
+        assertTrue(mailbox.offer(() -> received.add("a")));
+        assertTrue(mailbox.offer(() -> received.add("b")));
+        assertFalse(mailbox.offer(() -> received.add("c")));
+        assertEquals(2, mailbox.getStatistics().getDepth());
+        assertEquals(1, mailbox.getStatistics().getDropped());
+
+        runAll(tasks);
+        assertEquals(Arrays.asList("a", "b"), received);
+    }
+
+    @Test
+    public void testDropOldest() {
+        List<Runnable> tasks = new ArrayList<>();
+        WireMailbox mailbox = new WireMailbox("test", 2, MailboxOverflowPolicy.DROP_OLDEST, tasks::add);
+        List<String> received = new ArrayList<>();
+
+        assertTrue(mailbox.offer(() -> received.add("a")));
+        assertTrue(mailbox.offer(() -> received.add("b")));
+        assertTrue(mailbox.offer(() -> received.add("c")));
+        assertEquals(1, mailbox.getStatistics().getDropped());
+
+        runAll(tasks);
+        assertEquals(Arrays.asList("b", "c"), received);
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            WireMailbox mailbox = new WireMailbox("test", 1, MailboxOverflowPolicy.BLOCK, executor);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(3);
+
+            // the first delivery keeps the executor busy, the second fills the mailbox
+            mailbox.offer(() -> {
+                started.countDown();
+                await(release);
+                done.countDown();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            mailbox.offer(done::countDown);
+
+            Thread emitter = new Thread(() -> mailbox.offer(done::countDown));
+            emitter.start();
+            emitter.join(200);
+            assertTrue(emitter.isAlive());
+
+            release.countDown();
+            emitter.join(5000);
+            assertFalse(emitter.isAlive());
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, mailbox.getStatistics().getDropped());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBlockedExecutorThreadDrainsScheduledMailbox() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            WireMailbox mailbox = new WireMailbox("test", 1, MailboxOverflowPolicy.BLOCK, executor);
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicInteger received = new AtomicInteger();
+
+            // the only executor thread emits to a mailbox whose drain task is queued behind the emitter
+            executor.execute(() -> {
+                for (int i = 0; i < 3; i++) {
+                    mailbox.offer(received::incrementAndGet);
+                }
+                done.countDown();
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.get() < 3 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(3, received.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDrainResumesAfterError() {
+        List<Runnable> tasks = new ArrayList<>();
+        WireMailbox mailbox = new WireMailbox("test", 4, MailboxOverflowPolicy.BLOCK, tasks::add);
+        List<String> received = new ArrayList<>();
+
+        mailbox.offer(() -> {
+            throw new OutOfMemoryError();
+        });
+        mailbox.offer(() -> received.add("a"));
+        boolean propagated = false;
+        try {
+            tasks.remove(0).run();
+        } catch (OutOfMemoryError e) {
+            propagated = true;
+        }
+        assertTrue(propagated);
+
+        // the remaining delivery has been rescheduled
+        runAll(tasks);
+        assertEquals(Collections.singletonList("a"), received);
+
+        mailbox.offer(() -> received.add("b"));
+        runAll(tasks);
+        assertEquals(Arrays.asList("a", "b"), received);
+    }
+
+    @Test
+    public void testOverflowPolicyOverrides() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(WireExecutionOptions.EXECUTION_MODE_PROP_NAME, WireExecutionOptions.EXECUTION_MODE_ASYNC);
+        properties.put(WireExecutionOptions.OVERFLOW_POLICY_PROP_NAME, "drop-newest");
+        properties.put(WireExecutionOptions.OVERFLOW_POLICY_OVERRIDES_PROP_NAME,
+                "publisher=drop-oldest, store = block,invalid");
+
+        WireExecutionOptions options = new WireExecutionOptions(properties);
+        assertTrue(options.isAsync());
+        assertEquals(MailboxOverflowPolicy.DROP_OLDEST, options.getOverflowPolicy("publisher"));
+        assertEquals(MailboxOverflowPolicy.BLOCK, options.getOverflowPolicy("store"));
+        assertEquals(MailboxOverflowPolicy.DROP_NEWEST, options.getOverflowPolicy("timer"));
+
+        assertFalse(new WireExecutionOptions(null).isAsync());
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
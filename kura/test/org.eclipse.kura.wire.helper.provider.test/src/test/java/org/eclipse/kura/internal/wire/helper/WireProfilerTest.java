@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.internal.wire.helper.WireProfiler.ComponentProfile;
+import org.eclipse.kura.internal.wire.helper.WireProfiler.WireProfile;
+import org.eclipse.kura.wire.graph.Constants;
+import org.eclipse.kura.wire.graph.WireComponentStatistics;
+import org.eclipse.kura.wire.graph.WireStatistics;
+import org.junit.Test;
+import org.osgi.service.wireadmin.Wire;
+
+public class WireProfilerTest {
+
+    @Test
+    public void testComponentCounters() {
+        WireProfiler profiler = new WireProfiler();
+        ComponentProfile profile = profiler.newComponentProfile("receiver");
+
+        profile.received(3, 1000);
+        profile.received(2, 3000);
+        profile.emitted(4);
+        profile.dropped();
+
+        List<WireComponentStatistics> statistics = profiler.getComponentStatistics();
+        assertEquals(1, statistics.size());
+
+        WireComponentStatistics stats = statistics.get(0);
+        assertEquals("receiver", stats.getPid());
+        assertEquals(2, stats.getInvocations());
+        assertEquals(5, stats.getRecordsIn());
+        assertEquals(4, stats.getRecordsOut());
+        assertEquals(1, stats.getEnvelopesDropped());
+        assertEquals(4000, stats.getTotalReceiveTime(TimeUnit.NANOSECONDS));
+        assertEquals(4, stats.getTotalReceiveTime(TimeUnit.MICROSECONDS));
+        assertEquals(3000, stats.getMaxReceiveTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testReceiveTimePercentiles() {
+        WireProfiler profiler = new WireProfiler();
+        ComponentProfile profile = profiler.newComponentProfile("receiver");
+
+        for (int i = 0; i < 99; i++) {
+            profile.received(1, 1000);
+        }
+        profile.received(1, 1_000_000);
+
+        WireComponentStatistics stats = profiler.getComponentStatistics().get(0);
+
+        long p50 = stats.getReceiveTimePercentile(50, TimeUnit.NANOSECONDS);
+        assertTrue(p50 >= 1000 && p50 < 2000);
+        long p99 = stats.getReceiveTimePercentile(99, TimeUnit.NANOSECONDS);
+        assertTrue(p99 >= 1000 && p99 < 2000);
+        assertEquals(1_000_000, stats.getReceiveTimePercentile(100, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testPercentileWithoutInvocations() {
+        WireProfiler profiler = new WireProfiler();
+        profiler.newComponentProfile("receiver");
+
+        assertEquals(0, profiler.getComponentStatistics().get(0).getReceiveTimePercentile(99, TimeUnit.NANOSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileOutOfRange() {
+        WireProfiler profiler = new WireProfiler();
+        profiler.newComponentProfile("receiver");
+
+        profiler.getComponentStatistics().get(0).getReceiveTimePercentile(101, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void testWireCounters() {
+        WireProfiler profiler = new WireProfiler();
+        Wire wire = mockWire("emitter", 1, "receiver", 0);
+
+        WireProfile profile = profiler.getWireProfile(wire);
+        assertSame(profile, profiler.getWireProfile(mockWire("emitter", 1, "receiver", 0)));
+
+        profile.transmitted(10);
+        profile.transmitted(5);
+        profile.dropped();
+
+        List<WireStatistics> statistics = profiler.getWireStatistics();
+        assertEquals(1, statistics.size());
+
+        WireStatistics stats = statistics.get(0);
+        assertEquals("emitter", stats.getEmitterPid());
+        assertEquals(1, stats.getEmitterPort());
+        assertEquals("receiver", stats.getReceiverPid());
+        assertEquals(0, stats.getReceiverPort());
+        assertEquals(2, stats.getEnvelopes());
+        assertEquals(15, stats.getRecords());
+        assertEquals(1, stats.getEnvelopesDropped());
+    }
+
+    @Test
+    public void testWireWithoutEndpoints() {
+        WireProfiler profiler = new WireProfiler();
+        Wire wire = mock(Wire.class);
+        when(wire.getProperties()).thenReturn(new Hashtable<>());
+
+        assertNull(profiler.getWireProfile(wire));
+    }
+
+    @Test
+    public void testRetain() {
+        WireProfiler profiler = new WireProfiler();
+        profiler.newComponentProfile("a");
+        profiler.newComponentProfile("b");
+        profiler.newComponentProfile("c");
+        WireProfile ab = profiler.getWireProfile(mockWire("a", 0, "b", 0));
+        profiler.getWireProfile(mockWire("c", 0, "b", 0));
+        profiler.getWireProfile(mockWire("b", 0, "c", 0));
+
+        profiler.retainWires("b", Collections.singleton(ab));
+        assertEquals(2, profiler.getWireStatistics().size());
+
+        profiler.retainComponents(new HashSet<>(Arrays.asList("a", "b")));
+        assertEquals(2, profiler.getComponentStatistics().size());
+
+        List<WireStatistics> wires = profiler.getWireStatistics();
+        assertEquals(1, wires.size());
+        assertEquals("a", wires.get(0).getEmitterPid());
+    }
+
+    private static Wire mockWire(String emitterPid, int emitterPort, String receiverPid, int receiverPort) {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(Constants.EMITTER_KURA_SERVICE_PID_PROP_NAME.value(), emitterPid);
+        properties.put(Constants.WIRE_EMITTER_PORT_PROP_NAME.value(), emitterPort);
+        properties.put(Constants.RECEIVER_KURA_SERVICE_PID_PROP_NAME.value(), receiverPid);
+        properties.put(Constants.WIRE_RECEIVER_PORT_PROP_NAME.value(), receiverPort);
+
+        Wire wire = mock(Wire.class);
+        when(wire.getProperties()).thenReturn(properties);
+        return wire;
+    }
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kura.wire.WireComponent;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.graph.Constants;
+import org.eclipse.kura.wire.graph.WireStatistics;
+import org.junit.Test;
+import org.osgi.service.wireadmin.Wire;
+
+public class WireSupportImplTest {
+
+    private static final int EMITTER_THREADS = 8;
+    private static final int EMITS_PER_THREAD = 20000;
+
+    @Test
+    public void testEmitToConnectedWires() {
+        WireSupportImpl support = new WireSupportImpl(new WireComponent() {
+        }, "emitter", "emitter", 0, 2);
+        CountingWire first = new CountingWire(0, 0);
+        CountingWire second = new CountingWire(1, 0);
+
+        support.consumersConnected(new Wire[] { first, second });
+        support.emit(Collections.emptyList());
+
+        assertEquals(1, first.updates.get());
+        assertEquals(1, second.updates.get());
+        assertEquals(Collections.singletonList(first), support.getEmitterPorts().get(0).listConnectedWires());
+        assertEquals(Collections.singletonList(second), support.getEmitterPorts().get(1).listConnectedWires());
+
+        support.consumersConnected(null);
+        support.emit(Collections.emptyList());
+
+        assertEquals(1, first.updates.get());
+        assertTrue(support.getEmitterPorts().get(0).listConnectedWires().isEmpty());
+    }
+
+    @Test
+    public void testEmitWhileRewiring() throws InterruptedException {
+        WireSupportImpl support = new WireSupportImpl(new WireComponent() {
+        }, "emitter", "emitter", 0, 2);
+
+        // the stable wire is connected in every configuration, the other ones come and go
+        CountingWire stable = new CountingWire(0, 0);
+        List<CountingWire> transient0 = newWires(0, 4);
+        List<CountingWire> transient1 = newWires(1, 4);
+
+        support.consumersConnected(new Wire[] { stable });
+
+        AtomicBoolean rewiring = new AtomicBoolean(true);
+        Thread rewirer = new Thread(() -> {
+            int i = 0;
+            while (rewiring.get()) {
+                List<Wire> wires = new ArrayList<>();
+                wires.add(stable);
+                wires.add(transient0.get(i % transient0.size()));
+                wires.add(transient1.get(i % transient1.size()));
+                support.consumersConnected(wires.toArray(new Wire[0]));
+                i++;
+            }
+        });
+        rewirer.start();
+
+        ConcurrentLinkedQueue<Throwable> failures = runConcurrently(() -> {
+            List<WireRecord> records = Collections.emptyList();
+            for (int i = 0; i < EMITS_PER_THREAD; i++) {
+                support.emit(records);
+            }
+        });
+
+        rewiring.set(false);
+        rewirer.join();
+
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        long total = (long) EMITTER_THREADS * EMITS_PER_THREAD;
+        assertEquals(total, stable.updates.get());
+        assertTrue(sum(transient0) <= total);
+        assertTrue(sum(transient1) <= total);
+        // a snapshot connects one wire per port, so both ports see the same envelopes
+        assertEquals(sum(transient0), sum(transient1));
+    }
+
+    @Test
+    public void testReceiveWhileRewiring() throws InterruptedException {
+        AtomicLong received = new AtomicLong();
+        WireSupportImpl support = new WireSupportImpl(new WireComponent() {
+        }, "receiver", "receiver", 1, 0);
+        support.getReceiverPorts().get(0).onWireReceive(envelope -> received.incrementAndGet());
+
+        CountingWire stable = new CountingWire(0, 0);
+        List<CountingWire> others = newWires(0, 4);
+
+        support.producersConnected(new Wire[] { stable });
+
+        AtomicBoolean rewiring = new AtomicBoolean(true);
+        Thread rewirer = new Thread(() -> {
+            int i = 0;
+            while (rewiring.get()) {
+                support.producersConnected(new Wire[] { stable, others.get(i % others.size()) });
+                i++;
+            }
+        });
+        rewirer.start();
+
+        WireEnvelope envelope = new WireEnvelope("emitter", Collections.emptyList());
+        ConcurrentLinkedQueue<Throwable> failures = runConcurrently(() -> {
+            for (int i = 0; i < EMITS_PER_THREAD; i++) {
+                support.updated(stable, envelope);
+            }
+        });
+
+        rewiring.set(false);
+        rewirer.join();
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals((long) EMITTER_THREADS * EMITS_PER_THREAD, received.get());
+    }
+
+    @Test
+    public void testConcurrentRewiringKeepsProfilesConsistent() throws InterruptedException {
+        WireProfiler profiler = new WireProfiler();
+        WireSupportImpl support = new WireSupportImpl(new WireComponent() {
+        }, "receiver", "receiver", 1, 0, () -> null, profiler);
+
+        for (int i = 0; i < 1000; i++) {
+            CountingWire first = new CountingWire(0, 0, "first", "receiver");
+            CountingWire second = new CountingWire(0, 0, "second", "receiver");
+            CountDownLatch start = new CountDownLatch(1);
+            Thread firstThread = new Thread(() -> {
+                await(start);
+                support.producersConnected(new Wire[] { first });
+            });
+            Thread secondThread = new Thread(() -> {
+                await(start);
+                support.producersConnected(new Wire[] { second });
+            });
+            firstThread.start();
+            secondThread.start();
+            start.countDown();
+            firstThread.join();
+            secondThread.join();
+
+            // the profiled wires are the ones of the rewiring that has been published last
+            List<Wire> connected = support.getReceiverPorts().get(0).listConnectedWires();
+            assertEquals(1, connected.size());
+            List<WireStatistics> statistics = profiler.getWireStatistics();
+            assertEquals(1, statistics.size());
+            assertEquals(connected.get(0) == first ? "first" : "second", statistics.get(0).getEmitterPid());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ConcurrentLinkedQueue<Throwable> runConcurrently(Runnable task) throws InterruptedException {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < EMITTER_THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return failures;
+    }
+
+    private static List<CountingWire> newWires(int emitterPort, int count) {
+        List<CountingWire> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new CountingWire(emitterPort, 0));
+        }
+        return result;
+    }
+
+    private static long sum(List<CountingWire> wires) {
+        long result = 0;
+        for (CountingWire wire : wires) {
+            result += wire.updates.get();
+        }
+        return result;
+    }
+
+    private static final class CountingWire implements Wire {
+
+        private final Hashtable<String, Object> properties = new Hashtable<>();
+        private final AtomicLong updates = new AtomicLong();
+
+        CountingWire(int emitterPort, int receiverPort) {
+            this.properties.put(Constants.WIRE_EMITTER_PORT_PROP_NAME.value(), emitterPort);
+            this.properties.put(Constants.WIRE_RECEIVER_PORT_PROP_NAME.value(), receiverPort);
+        }
+
+        CountingWire(int emitterPort, int receiverPort, String emitterPid, String receiverPid) {
+            this(emitterPort, receiverPort);
+            this.properties.put(Constants.EMITTER_KURA_SERVICE_PID_PROP_NAME.value(), emitterPid);
+            this.properties.put(Constants.RECEIVER_KURA_SERVICE_PID_PROP_NAME.value(), receiverPid);
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Class[] getFlavors() {
+            return null;
+        }
+
+        @Override
+        public void update(Object value) {
+            this.updates.incrementAndGet();
+        }
+
+        @Override
+        public Object poll() {
+            return null;
+        }
+
+        @Override
+        public Object getLastValue() {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Dictionary getProperties() {
+            return this.properties;
+        }
+
+        @Override
+        public String[] getScope() {
+            return null;
+        }
+
+        @Override
+        public boolean hasScope(String name) {
+            return true;
+        }
+    }
+}